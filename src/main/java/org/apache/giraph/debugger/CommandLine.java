@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.giraph.debugger.gui.ServerUtils;
 import org.apache.giraph.debugger.mock.ComputationComputeTestGenerator;
@@ -32,6 +33,9 @@ import org.apache.giraph.debugger.mock.MasterComputeTestGenerator;
 import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
 import org.apache.giraph.debugger.utils.GiraphMasterScenarioWrapper;
 import org.apache.giraph.debugger.utils.GiraphVertexScenarioWrapper;
+import org.apache.giraph.debugger.utils.TraceCompactor;
+import org.apache.giraph.debugger.utils.TraceRetention;
+import org.apache.giraph.debugger.utils.TraceStores;
 import org.apache.log4j.Logger;
 
 import com.google.common.collect.Lists;
@@ -40,7 +44,8 @@ import com.google.common.collect.Sets;
 /**
  * This main class is the command line interface for the debugger. The command
  * syntax is as follows: list <job_id> dump <job_id> <superstep> <vertex> mktest
- * <job_id> <superstep> <vertex> [output_prefix]
+ * <job_id> <superstep> <vertex> [output_prefix] compact <job_id> retain
+ * <max_age_days> [max_total_mb]
  */
 public final class CommandLine {
 
@@ -65,7 +70,8 @@ public final class CommandLine {
     if (args.length == 0 || !mode.equalsIgnoreCase("list") &&
       !mode.equalsIgnoreCase("dump") && !mode.equalsIgnoreCase("mktest") &&
       !mode.equalsIgnoreCase("dump-master") &&
-      !mode.equalsIgnoreCase("mktest-master")) {
+      !mode.equalsIgnoreCase("mktest-master") &&
+      !mode.equalsIgnoreCase("compact") && !mode.equalsIgnoreCase("retain")) {
       printHelp();
     }
 
@@ -73,9 +79,30 @@ public final class CommandLine {
       printHelp();
     }
 
+    if (mode.equalsIgnoreCase("retain")) {
+      long maxAge = TimeUnit.DAYS.toMillis(Long.parseLong(args[1]));
+      long maxTotalSize = args.length > 2 ?
+        Long.parseLong(args[2]) * 1024 * 1024 : 0;
+      try {
+        for (String deletedJobId : TraceRetention.apply(
+          TraceStores.getDefault(), maxAge, maxTotalSize)) {
+          LOG.info("Deleted traces of " + deletedJobId);
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
+
     String jobId = args[1];
 
-    if (mode.equalsIgnoreCase("list")) {
+    if (mode.equalsIgnoreCase("compact")) {
+      try {
+        TraceCompactor.compact(TraceStores.getDefault(), jobId);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    } else if (mode.equalsIgnoreCase("list")) {
       try {
         List<Long> superstepsDebuggedMaster = ServerUtils
           .getSuperstepsMasterDebugged(jobId);
@@ -218,6 +245,13 @@ public final class CommandLine {
     LOG.info("\t\tGenerate a JUnit test case code from a trace. If an " +
       "output_prefix is provided, a .java file is generated at the " +
       "specified path.");
+    LOG.info("\tcompact <job_id>");
+    LOG.info("\t\tMove the traces of a finished job into a few archive " +
+      "files");
+    LOG.info("\tretain <max_age_days> [<max_total_mb>]");
+    LOG.info("\t\tDelete the traces of jobs older than max_age_days, then " +
+      "of the oldest jobs until all traces take at most max_total_mb. Use 0 " +
+      "for no limit.");
     System.exit(1);
   }
 }
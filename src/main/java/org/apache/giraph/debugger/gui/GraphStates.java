@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * The state of the graph as of a superstep, materialized on the server as
+ * debugger.js used to do by merging the scenarios of all supersteps up to it:
+ * every vertex debugged so far, with its scenario of the last superstep it
+ * was debugged in, and enabled if it was debugged in the superstep itself.
+ * Snapshots of the state are kept every {@link #SNAPSHOT_INTERVAL} supersteps,
+ * so that the state of any superstep costs one snapshot plus the scenarios of
+ * the few supersteps after it, which serve as the forward deltas. Only the
+ * supersteps traced are read, so supersteps past the last one traced cost
+ * nothing more than it. Snapshots are only kept for supersteps before the
+ * last one traced, as the last one may still be written, and are weighed by
+ * the estimated size of their scenarios, as in the {@link ScenarioCache},
+ * since they keep scenarios alive after it evicted them.
+ */
+final class GraphStates {
+
+  /**
+   * Number of supersteps between two snapshots.
+   */
+  public static final int SNAPSHOT_INTERVAL = Integer.getInteger(
+    "giraph.debugger.snapshotInterval", 16);
+  /**
+   * Maximum estimated size in bytes of the cached snapshots.
+   */
+  public static final long MAX_SNAPSHOT_BYTES = Long.getLong(
+    "giraph.debugger.snapshotCacheBytes", 64L * 1024 * 1024);
+
+  /**
+   * Name of the property telling whether a vertex was debugged in the
+   * superstep of the state.
+   */
+  private static final String ENABLED_KEY = "enabled";
+
+  /**
+   * Snapshots of the states of the jobs browsed recently.
+   */
+  private static final Cache<SnapshotKey, GraphState> SNAPSHOTS =
+    CacheBuilder.newBuilder().maximumWeight(MAX_SNAPSHOT_BYTES).weigher(
+      new Weigher<SnapshotKey, GraphState>() {
+        @Override
+        public int weigh(SnapshotKey key, GraphState state) {
+          return (int) Math.min(state.estimatedSize, Integer.MAX_VALUE);
+        }
+      }).recordStats().build();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private GraphStates() { }
+
+  /**
+   * @return the hit, miss and eviction counts of the cached snapshots.
+   */
+  static CacheStats getCacheStats() {
+    return SNAPSHOTS.stats();
+  }
+
+  /**
+   * @return the number of cached snapshots.
+   */
+  static long getCacheSize() {
+    return SNAPSHOTS.size();
+  }
+
+  /**
+   * Returns the state of the graph as of the given superstep, as an object
+   * mapping each vertex debugged so far to its scenario, with an additional
+   * enabled property.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep.
+   * @return the state of the graph.
+   * @throws IOException thrown when a trace cannot be read.
+   */
+  static JSONObject getState(String jobId, long superstepNo)
+    throws IOException {
+    SortedSet<Long> superstepNos = new TreeSet<>(
+      ServerUtils.getSuperstepsDebugged(jobId));
+    long lastSuperstepNo = superstepNos.isEmpty() ? -1 : superstepNos.last();
+    // Snapshots of the last superstep traced are not kept.
+    long lastSnapshotNo = getSnapshotNo(lastSuperstepNo - 1);
+    // The snapshot at or before the superstep.
+    long snapshotNo = Math.min(getSnapshotNo(Math.min(superstepNo,
+      lastSuperstepNo)), lastSnapshotNo);
+    GraphState state = applyDeltas(jobId, getSnapshot(jobId, snapshotNo,
+      lastSnapshotNo, superstepNos), superstepNo, superstepNos);
+    try {
+      return state.toJSON();
+    } catch (JSONException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * @param superstepNo a superstep, or -2 for none.
+   * @return the superstep of the snapshot at or before it, or -1 for the
+   *         empty state.
+   */
+  static long getSnapshotNo(long superstepNo) {
+    return (superstepNo + 1) / SNAPSHOT_INTERVAL * SNAPSHOT_INTERVAL - 1;
+  }
+
+  /**
+   * Applies the scenarios of the traced supersteps after the one of a state
+   * up to a given superstep to the state.
+   *
+   * @param jobId id of the job.
+   * @param state a state.
+   * @param superstepNo the superstep to bring the state to.
+   * @param superstepNos the supersteps traced, in increasing order.
+   * @return the state as of the given superstep.
+   */
+  private static GraphState applyDeltas(String jobId, GraphState state,
+    long superstepNo, SortedSet<Long> superstepNos) throws IOException {
+    for (long deltaNo : ServerUtils.getSuperstepsInRange(superstepNos,
+      state.superstepNo + 1, superstepNo)) {
+      state = state.apply(deltaNo, ScenarioBatchReader.readScenarios(jobId,
+        deltaNo, null));
+    }
+    return state.superstepNo == superstepNo ? state : state.advance(
+      superstepNo);
+  }
+
+  /**
+   * Returns a snapshot, building it from the closest snapshot before it and
+   * the scenarios in between if it is not cached.
+   *
+   * @param jobId id of the job.
+   * @param snapshotNo the superstep of the snapshot, one before a multiple of
+   *        {@link #SNAPSHOT_INTERVAL}.
+   * @param lastSnapshotNo the last superstep a snapshot may be kept for.
+   * @param superstepNos the supersteps traced, in increasing order.
+   * @return the snapshot.
+   */
+  private static GraphState getSnapshot(String jobId, long snapshotNo,
+    long lastSnapshotNo, SortedSet<Long> superstepNos) throws IOException {
+    long baseNo = snapshotNo;
+    GraphState state = null;
+    while (baseNo >= 0 && state == null) {
+      state = SNAPSHOTS.getIfPresent(new SnapshotKey(jobId, baseNo));
+      if (state == null) {
+        baseNo -= SNAPSHOT_INTERVAL;
+      }
+    }
+    if (state == null) {
+      state = GraphState.EMPTY;
+    }
+    for (long nextSnapshotNo = state.superstepNo + SNAPSHOT_INTERVAL;
+      nextSnapshotNo <= snapshotNo; nextSnapshotNo += SNAPSHOT_INTERVAL) {
+      state = applyDeltas(jobId, state, nextSnapshotNo, superstepNos);
+      SNAPSHOTS.put(new SnapshotKey(jobId, nextSnapshotNo), state);
+    }
+    return state;
+  }
+
+  /**
+   * The state of the graph as of a superstep. States are immutable and share
+   * the scenarios of their vertices.
+   */
+  private static class GraphState {
+    /**
+     * The state before the first superstep.
+     */
+    private static final GraphState EMPTY = new GraphState(-1,
+      Collections.<String, JSONObject>emptyMap(),
+      Collections.<String>emptySet(), 0);
+
+    /**
+     * The superstep of the state.
+     */
+    private final long superstepNo;
+    /**
+     * The last scenario of each vertex debugged so far.
+     */
+    private final Map<String, JSONObject> vertices;
+    /**
+     * The vertices debugged in the superstep of the state.
+     */
+    private final Set<String> enabledVertices;
+    /**
+     * Estimated size in bytes of the scenarios of the state.
+     */
+    private final long estimatedSize;
+
+    /**
+     * Constructor.
+     *
+     * @param superstepNo the superstep of the state.
+     * @param vertices the last scenario of each vertex debugged so far.
+     * @param enabledVertices the vertices debugged in the superstep.
+     * @param estimatedSize estimated size in bytes of the scenarios.
+     */
+    GraphState(long superstepNo, Map<String, JSONObject> vertices,
+      Set<String> enabledVertices, long estimatedSize) {
+      this.superstepNo = superstepNo;
+      this.vertices = vertices;
+      this.enabledVertices = enabledVertices;
+      this.estimatedSize = estimatedSize;
+    }
+
+    /**
+     * @param nextSuperstepNo the superstep after the one of this state.
+     * @param scenarios the scenarios of the vertices debugged in it.
+     * @return the state as of the given superstep.
+     */
+    GraphState apply(long nextSuperstepNo, Map<String, JSONObject> scenarios) {
+      Map<String, JSONObject> nextVertices = new LinkedHashMap<>(vertices);
+      long nextEstimatedSize = estimatedSize;
+      for (Map.Entry<String, JSONObject> scenario : scenarios.entrySet()) {
+        JSONObject previousScenario = nextVertices.put(scenario.getKey(),
+          scenario.getValue());
+        if (previousScenario != null) {
+          nextEstimatedSize -= ScenarioCache.estimateSize(previousScenario);
+        }
+        nextEstimatedSize += ScenarioCache.estimateSize(scenario.getValue());
+      }
+      return new GraphState(nextSuperstepNo, nextVertices,
+        scenarios.keySet(), nextEstimatedSize);
+    }
+
+    /**
+     * @param laterSuperstepNo a superstep after the one of this state, with
+     *        no traces since.
+     * @return the state as of the given superstep, with no vertices enabled.
+     */
+    GraphState advance(long laterSuperstepNo) {
+      return new GraphState(laterSuperstepNo, vertices,
+        Collections.<String>emptySet(), estimatedSize);
+    }
+
+    /**
+     * @return the state as JSON.
+     */
+    JSONObject toJSON() throws JSONException {
+      JSONObject stateObj = new JSONObject();
+      for (Map.Entry<String, JSONObject> vertex : vertices.entrySet()) {
+        // Copied, as the scenarios are shared.
+        JSONObject vertexObj = new JSONObject(vertex.getValue(),
+          JSONObject.getNames(vertex.getValue()));
+        vertexObj.put(ENABLED_KEY, enabledVertices.contains(vertex.getKey()));
+        stateObj.put(vertex.getKey(), vertexObj);
+      }
+      return stateObj;
+    }
+  }
+
+  /**
+   * Identifies a snapshot.
+   */
+  private static class SnapshotKey {
+    /**
+     * Id of the job.
+     */
+    private final String jobId;
+    /**
+     * The superstep of the snapshot.
+     */
+    private final long superstepNo;
+
+    /**
+     * Constructor.
+     *
+     * @param jobId id of the job.
+     * @param superstepNo the superstep of the snapshot.
+     */
+    SnapshotKey(String jobId, long superstepNo) {
+      this.jobId = jobId;
+      this.superstepNo = superstepNo;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SnapshotKey)) {
+        return false;
+      }
+      SnapshotKey other = (SnapshotKey) obj;
+      return superstepNo == other.superstepNo && jobId.equals(other.jobId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(jobId, superstepNo);
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.giraph.debugger.utils.TraceFileStatus;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceStore;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * What the GUI server knows about the traces of the jobs browsed recently, so
+ * that requests do not scan a job's trace directory each time. The
+ * {@link TraceIndex} of a job is loaded on first access; for jobs traced
+ * without one, the names of the trace files are listed instead. Either is
+ * refreshed at most every {@link #REFRESH_INTERVAL} milliseconds while the job
+ * may still be writing traces, and only the parts that changed are read
+ * again: the supersteps whose index or manifests changed, or the directories
+ * whose modification time changed. Compacted jobs no longer change and are
+ * never refreshed.
+ */
+final class JobTraceCache {
+
+  /**
+   * Minimum time in milliseconds between two refreshes of a job's traces.
+   */
+  public static final long REFRESH_INTERVAL = Long.getLong(
+    "giraph.debugger.indexRefreshInterval", 2000);
+
+  /**
+   * Maximum number of jobs to keep the traces of.
+   */
+  private static final int MAX_CACHED_JOBS = 64;
+
+  /**
+   * Index of each job, null for jobs traced without one.
+   */
+  private static final Cache<String, CachedTraceIndex> TRACE_INDEXES =
+    CacheBuilder.newBuilder().maximumSize(MAX_CACHED_JOBS).build();
+  /**
+   * Trace file names of each job traced without an index.
+   */
+  private static final Cache<String, CachedTraceFileNames> TRACE_FILE_NAMES =
+    CacheBuilder.newBuilder().maximumSize(MAX_CACHED_JOBS).build();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private JobTraceCache() { }
+
+  /**
+   * @param jobId id of the job.
+   * @return the index of the job, or null if it was traced without one.
+   */
+  static TraceIndex getTraceIndex(String jobId) throws IOException {
+    CachedTraceIndex cached = TRACE_INDEXES.getIfPresent(jobId);
+    long now = System.currentTimeMillis();
+    if (cached != null && (now - cached.refreshTime < REFRESH_INTERVAL ||
+      ServerUtils.getTraceLayout(jobId).isCompacted())) {
+      return cached.traceIndex;
+    }
+    TraceIndex traceIndex;
+    if (cached == null || cached.traceIndex == null) {
+      traceIndex = TraceIndex.load(ServerUtils.getTraceStore(), jobId);
+    } else {
+      traceIndex = cached.traceIndex.refresh();
+    }
+    TRACE_INDEXES.put(jobId, new CachedTraceIndex(traceIndex, now));
+    return traceIndex;
+  }
+
+  /**
+   * Lists the names of all trace files of the given job, wherever its layout
+   * puts them. Used only for jobs traced without a {@link TraceIndex}.
+   *
+   * @param jobId id of the job.
+   * @return the file names of the job's traces.
+   */
+  static List<String> getTraceFileNames(String jobId) throws IOException {
+    CachedTraceFileNames cached = TRACE_FILE_NAMES.getIfPresent(jobId);
+    long now = System.currentTimeMillis();
+    if (cached != null && now - cached.refreshTime < REFRESH_INTERVAL) {
+      return cached.fileNames;
+    }
+    TraceStore traceStore = ServerUtils.getTraceStore();
+    Map<String, CachedTraceDir> traceDirs = new HashMap<>();
+    List<String> fileNames = new ArrayList<>();
+    // The trace store throws FileNotFoundException when path is not found.
+    for (String traceDir : ServerUtils.getTraceLayout(jobId).getTraceDirs(
+      traceStore, jobId)) {
+      CachedTraceDir cachedDir = cached == null ? null :
+        cached.traceDirs.get(traceDir);
+      TraceFileStatus dirStatus = traceStore.lookup(traceDir);
+      if (dirStatus == null) {
+        throw new FileNotFoundException("Directory not found: " + traceDir);
+      }
+      if (cachedDir == null || cachedDir.modificationTime !=
+        dirStatus.getModificationTime()) {
+        cachedDir = new CachedTraceDir(dirStatus.getModificationTime(),
+          listFileNames(traceStore, traceDir));
+      }
+      traceDirs.put(traceDir, cachedDir);
+      fileNames.addAll(cachedDir.fileNames);
+    }
+    fileNames = Collections.unmodifiableList(fileNames);
+    TRACE_FILE_NAMES.put(jobId, new CachedTraceFileNames(traceDirs, fileNames,
+      now));
+    return fileNames;
+  }
+
+  /**
+   * @param jobId id of the job traced without an index.
+   * @param fileName the name of a trace file.
+   * @return true if the job has a trace file with the given name.
+   */
+  static boolean hasTraceFile(String jobId, String fileName)
+    throws IOException {
+    getTraceFileNames(jobId);
+    CachedTraceFileNames cached = TRACE_FILE_NAMES.getIfPresent(jobId);
+    return cached != null && cached.fileNameSet.contains(fileName);
+  }
+
+  /**
+   * Forgets the traces of the given job, e.g., once it was found to have been
+   * compacted, so that they are read from scratch on the next access.
+   *
+   * @param jobId id of the job.
+   */
+  static void invalidate(String jobId) {
+    TRACE_INDEXES.invalidate(jobId);
+    TRACE_FILE_NAMES.invalidate(jobId);
+  }
+
+  /**
+   * @param traceStore the store to list the directory of.
+   * @param traceDir a directory holding trace files.
+   * @return the names of the files in the directory.
+   */
+  private static List<String> listFileNames(TraceStore traceStore,
+    String traceDir) throws IOException {
+    List<String> fileNames = new ArrayList<>();
+    for (TraceFileStatus fileStatus : traceStore.list(traceDir)) {
+      if (!fileStatus.isDirectory()) {
+        fileNames.add(fileStatus.getName());
+      }
+    }
+    return fileNames;
+  }
+
+  /**
+   * The index of a job as of its last refresh.
+   */
+  private static class CachedTraceIndex {
+    /**
+     * The index, or null if the job had none.
+     */
+    private final TraceIndex traceIndex;
+    /**
+     * Time the index was loaded or refreshed.
+     */
+    private final long refreshTime;
+
+    /**
+     * Constructor.
+     *
+     * @param traceIndex the index, or null if the job had none.
+     * @param refreshTime time the index was loaded or refreshed.
+     */
+    CachedTraceIndex(TraceIndex traceIndex, long refreshTime) {
+      this.traceIndex = traceIndex;
+      this.refreshTime = refreshTime;
+    }
+  }
+
+  /**
+   * The trace file names of a job as of its last refresh.
+   */
+  private static class CachedTraceFileNames {
+    /**
+     * The listing of each trace directory.
+     */
+    private final Map<String, CachedTraceDir> traceDirs;
+    /**
+     * The file names in all trace directories.
+     */
+    private final List<String> fileNames;
+    /**
+     * The file names in all trace directories, to look them up.
+     */
+    private final Set<String> fileNameSet;
+    /**
+     * Time the directories were listed.
+     */
+    private final long refreshTime;
+
+    /**
+     * Constructor.
+     *
+     * @param traceDirs the listing of each trace directory.
+     * @param fileNames the file names in all trace directories.
+     * @param refreshTime time the directories were listed.
+     */
+    CachedTraceFileNames(Map<String, CachedTraceDir> traceDirs,
+      List<String> fileNames, long refreshTime) {
+      this.traceDirs = traceDirs;
+      this.fileNames = fileNames;
+      this.fileNameSet = new HashSet<>(fileNames);
+      this.refreshTime = refreshTime;
+    }
+  }
+
+  /**
+   * The file names of a trace directory as of its modification time.
+   */
+  private static class CachedTraceDir {
+    /**
+     * Modification time of the directory when it was listed.
+     */
+    private final long modificationTime;
+    /**
+     * The names of the files in the directory.
+     */
+    private final List<String> fileNames;
+
+    /**
+     * Constructor.
+     *
+     * @param modificationTime modification time of the directory.
+     * @param fileNames the names of the files in the directory.
+     */
+    CachedTraceDir(long modificationTime, List<String> fileNames) {
+      this.modificationTime = modificationTime;
+      this.fileNames = fileNames;
+    }
+  }
+}
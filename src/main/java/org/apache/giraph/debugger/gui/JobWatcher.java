@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Watches the traces of a job for the browsers following it, and pushes the
+ * changes to them as Server-Sent Events. There is one watcher per job however
+ * many browsers follow it, which polls the job's traces every
+ * {@link #WATCH_INTERVAL} milliseconds and stops once no browser follows it
+ * anymore. Each change is a superstep event whose data is a JSON object with
+ * the superstepId, whether its traces are complete, and the lastSuperstepId
+ * traced so far. A superstep is complete once it is merged into the job's
+ * index, or once a later superstep is traced. A browser gets an event for
+ * each superstep traced so far when it starts following the job.
+ *
+ * Events are queued for each browser and written on a pool of their own, so
+ * that a slow browser holds up neither the polls nor the other browsers. A
+ * browser is dropped when {@link #MAX_QUEUED_EVENTS} polls worth of events
+ * wait for it, or when a write to it takes longer than
+ * {@link #SEND_TIMEOUT} milliseconds.
+ */
+final class JobWatcher {
+
+  /**
+   * Time in milliseconds between two polls of a job's traces.
+   */
+  public static final long WATCH_INTERVAL = Long.getLong(
+    "giraph.debugger.watchInterval", JobTraceCache.REFRESH_INTERVAL);
+
+  /**
+   * Time in milliseconds without events after which a comment is sent, to
+   * keep the connections open and to notice the closed ones.
+   */
+  private static final long HEARTBEAT_INTERVAL = 15000;
+  /**
+   * Maximum number of polls whose events may wait to be sent to a browser.
+   */
+  private static final int MAX_QUEUED_EVENTS = 64;
+  /**
+   * Time in milliseconds a write to a browser may take before the browser is
+   * dropped.
+   */
+  private static final long SEND_TIMEOUT = 30000;
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(JobWatcher.class);
+
+  /**
+   * The watcher of each job followed.
+   */
+  private static final ConcurrentMap<String, JobWatcher> WATCHERS =
+    new ConcurrentHashMap<>();
+
+  /**
+   * The thread all watchers poll on.
+   */
+  private static final ScheduledExecutorService WATCH_POOL = Executors
+    .newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "job-watcher");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  /**
+   * The threads events are written to the browsers on.
+   */
+  private static final ExecutorService SEND_POOL = Executors
+    .newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "job-watcher-sender");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+  /**
+   * Id of the job.
+   */
+  private final String jobId;
+  /**
+   * The browsers following the job.
+   */
+  private final List<Subscriber> subscribers = new ArrayList<>();
+  /**
+   * Whether each superstep traced so far is complete, as of the last poll.
+   */
+  private final Map<Long, Boolean> supersteps = new TreeMap<>();
+  /**
+   * The last superstep traced so far.
+   */
+  private long lastSuperstepNo = -1;
+  /**
+   * Time of the last event or comment queued.
+   */
+  private long lastSendTime;
+  /**
+   * Whether the job has been polled.
+   */
+  private boolean polled;
+  /**
+   * Whether the watcher has stopped, as no browser follows the job.
+   */
+  private boolean stopped;
+  /**
+   * The scheduled polls.
+   */
+  private ScheduledFuture<?> pollFuture;
+
+  /**
+   * Constructor.
+   *
+   * @param jobId id of the job.
+   */
+  private JobWatcher(String jobId) {
+    this.jobId = jobId;
+  }
+
+  /**
+   * Makes the given response body follow the given job. It is sent the events
+   * of the supersteps traced so far right away, and those of the changes as
+   * they are found. It is closed once the browser disconnects or falls
+   * behind.
+   *
+   * @param jobId id of the job.
+   * @param body the response body of the event stream.
+   * @throws IOException thrown when the job's traces cannot be read.
+   */
+  static void subscribe(String jobId, OutputStream body) throws IOException {
+    while (true) {
+      JobWatcher watcher = WATCHERS.get(jobId);
+      if (watcher == null) {
+        JobWatcher newWatcher = new JobWatcher(jobId);
+        watcher = WATCHERS.putIfAbsent(jobId, newWatcher);
+        if (watcher == null) {
+          watcher = newWatcher;
+          watcher.start();
+        }
+      }
+      // A watcher stopping concurrently is replaced by a new one.
+      if (watcher.add(body)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Schedules the polls of the job.
+   */
+  private synchronized void start() {
+    pollFuture = WATCH_POOL.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        // CHECKSTYLE: stop IllegalCatch
+        try {
+          watch();
+        } catch (Exception e) {
+          // Keep polling, e.g., when the traces are being moved.
+          LOG.warn("Cannot poll the traces of " + jobId + ": " + e);
+        }
+        // CHECKSTYLE: resume IllegalCatch
+      }
+    }, WATCH_INTERVAL, WATCH_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param body the response body of a browser starting to follow the job.
+   * @return false if the watcher stopped already.
+   */
+  private synchronized boolean add(OutputStream body) throws IOException {
+    if (stopped) {
+      return false;
+    }
+    if (!polled) {
+      poll();
+    }
+    StringBuilder events = new StringBuilder();
+    for (Map.Entry<Long, Boolean> superstep : supersteps.entrySet()) {
+      events.append(toEvent(superstep.getKey(), superstep.getValue()));
+    }
+    // An empty comment, so that the browser sees the stream open.
+    events.append(":\n\n");
+    Subscriber subscriber = new Subscriber(body);
+    subscriber.offer(events.toString());
+    subscribers.add(subscriber);
+    return true;
+  }
+
+  /**
+   * Reads the job's traces and sends the events of the supersteps traced or
+   * completed since the last poll, or a heartbeat if there are none for a
+   * while.
+   */
+  private synchronized void poll() throws IOException {
+    if (stopped) {
+      return;
+    }
+    List<Long> superstepNos = ServerUtils.getSuperstepsDebugged(jobId);
+    Collections.sort(superstepNos);
+    if (!superstepNos.isEmpty()) {
+      lastSuperstepNo = Math.max(lastSuperstepNo,
+        superstepNos.get(superstepNos.size() - 1));
+    }
+    boolean firstPoll = !polled;
+    polled = true;
+    StringBuilder events = new StringBuilder();
+    for (long superstepNo : superstepNos) {
+      boolean complete = superstepNo < lastSuperstepNo ||
+        ServerUtils.isSuperstepCompleted(jobId, superstepNo);
+      Boolean wasComplete = supersteps.put(superstepNo, complete);
+      if (wasComplete == null || wasComplete != complete) {
+        events.append(toEvent(superstepNo, complete));
+        // Supersteps completed while the job is followed are likely to be
+        // searched next, unlike all those complete before.
+        if (complete && !firstPoll) {
+          ValueIndex.buildInBackground(jobId, superstepNo);
+        }
+      }
+    }
+    if (events.length() == 0 && System.currentTimeMillis() - lastSendTime >=
+      HEARTBEAT_INTERVAL) {
+      events.append(":\n\n");
+    }
+    if (events.length() > 0) {
+      broadcast(events.toString());
+    }
+  }
+
+  /**
+   * Polls the job, and stops the watcher if no browser follows the job
+   * anymore.
+   */
+  private synchronized void watch() throws IOException {
+    try {
+      poll();
+    } finally {
+      if (subscribers.isEmpty()) {
+        stopped = true;
+        pollFuture.cancel(false);
+        WATCHERS.remove(jobId, this);
+      }
+    }
+  }
+
+  /**
+   * Queues the given events for all browsers following the job, and forgets
+   * those that disconnected or fell behind.
+   *
+   * @param events the events.
+   */
+  private void broadcast(String events) {
+    long now = System.currentTimeMillis();
+    Iterator<Subscriber> it = subscribers.iterator();
+    while (it.hasNext()) {
+      Subscriber subscriber = it.next();
+      if (subscriber.isStuck(now) || !subscriber.offer(events)) {
+        LOG.debug("Dropping an event stream of " + jobId +
+          ", which is closed or too slow");
+        it.remove();
+        subscriber.drop();
+      }
+    }
+    lastSendTime = now;
+  }
+
+  /**
+   * @param superstepNo a superstep.
+   * @param complete whether its traces are complete.
+   * @return the event of the superstep.
+   */
+  private String toEvent(long superstepNo, boolean complete) {
+    JSONObject dataObj = new JSONObject();
+    try {
+      dataObj.put("superstepId", superstepNo);
+      dataObj.put("complete", complete);
+      dataObj.put("lastSuperstepId", lastSuperstepNo);
+    } catch (JSONException e) {
+      throw new IllegalStateException(e);
+    }
+    return "event: superstep\ndata: " + dataObj + "\n\n";
+  }
+
+  /**
+   * A browser following the job, with the events waiting to be sent to it.
+   * At most one thread of the {@link #SEND_POOL} sends them at a time.
+   */
+  private final class Subscriber implements Runnable {
+    /**
+     * The response body of the event stream.
+     */
+    private final OutputStream body;
+    /**
+     * The events waiting to be sent.
+     */
+    private final BlockingQueue<String> queuedEvents =
+      new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS);
+    /**
+     * Whether a thread is sending the queued events.
+     */
+    private final AtomicBoolean sending = new AtomicBoolean();
+    /**
+     * When the write in progress started, or 0 if none is.
+     */
+    private volatile long sendStartTime;
+    /**
+     * Whether the stream was dropped, or failed.
+     */
+    private volatile boolean closed;
+    /**
+     * Whether the body was closed, only accessed by the sending thread.
+     */
+    private boolean bodyClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param body the response body of the event stream.
+     */
+    Subscriber(OutputStream body) {
+      this.body = body;
+    }
+
+    /**
+     * @param events events to send.
+     * @return false if the stream is closed or too many events wait already.
+     */
+    boolean offer(String events) {
+      if (closed || !queuedEvents.offer(events)) {
+        return false;
+      }
+      startSending();
+      return true;
+    }
+
+    /**
+     * @param now the current time.
+     * @return true if a write has been in progress for too long.
+     */
+    boolean isStuck(long now) {
+      long startTime = sendStartTime;
+      return startTime > 0 && now - startTime > SEND_TIMEOUT;
+    }
+
+    /**
+     * Stops sending events, and closes the stream once no write is in
+     * progress.
+     */
+    void drop() {
+      closed = true;
+      startSending();
+    }
+
+    /**
+     * Sends the queued events on the {@link #SEND_POOL} unless a thread is
+     * doing so already.
+     */
+    private void startSending() {
+      if (sending.compareAndSet(false, true)) {
+        SEND_POOL.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        String events;
+        while (!closed && (events = queuedEvents.poll()) != null) {
+          sendStartTime = System.currentTimeMillis();
+          body.write(events.getBytes(Charsets.UTF_8));
+          body.flush();
+          sendStartTime = 0;
+        }
+      } catch (IOException e) {
+        LOG.debug("Event stream of " + jobId + " closed: " + e);
+        closed = true;
+      }
+      if (closed && !bodyClosed) {
+        bodyClosed = true;
+        try {
+          body.close();
+        } catch (IOException e) {
+          LOG.debug("Cannot close the event stream: " + e);
+        }
+      }
+      sending.set(false);
+      // Events queued or a drop requested after the loop above ended.
+      if (closed ? !bodyClosed : !queuedEvents.isEmpty()) {
+        startSending();
+      }
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.giraph.debugger.utils.TraceFileStatus;
+import org.apache.giraph.debugger.utils.TraceStore;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * A {@link TraceStore} that counts the files opened, the bytes read and the
+ * time spent reading in the {@link ServerMetrics}, and otherwise passes
+ * everything on to the store it wraps.
+ */
+class MeteredTraceStore implements TraceStore {
+
+  /**
+   * The store wrapped.
+   */
+  private final TraceStore traceStore;
+
+  /**
+   * Constructor.
+   *
+   * @param traceStore the store to wrap.
+   */
+  MeteredTraceStore(TraceStore traceStore) {
+    this.traceStore = traceStore;
+  }
+
+  /**
+   * @param otherTraceStore a store.
+   * @return true if this store wraps the given one.
+   */
+  boolean wraps(TraceStore otherTraceStore) {
+    return traceStore == otherTraceStore;
+  }
+
+  @Override
+  public void write(String path, MessageLite message) throws IOException {
+    traceStore.write(path, message);
+  }
+
+  @Override
+  public void write(String path, byte[] bytes) throws IOException {
+    traceStore.write(path, bytes);
+  }
+
+  @Override
+  public OutputStream create(String path) throws IOException {
+    return traceStore.create(path);
+  }
+
+  @Override
+  public void append(String path, Collection<? extends MessageLite> records)
+    throws IOException {
+    traceStore.append(path, records);
+  }
+
+  @Override
+  public InputStream open(String path) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      InputStream input = traceStore.open(path);
+      ServerMetrics.TRACE_FILES_OPENED.incrementAndGet();
+      return new MeteredInputStream(input);
+    } finally {
+      ServerMetrics.TRACE_READ_NANOS.addAndGet(System.nanoTime() - startTime);
+    }
+  }
+
+  @Override
+  public TraceFileStatus lookup(String path) throws IOException {
+    return traceStore.lookup(path);
+  }
+
+  @Override
+  public List<TraceFileStatus> list(String directory) throws IOException {
+    return traceStore.list(directory);
+  }
+
+  @Override
+  public boolean delete(String path, boolean recursive) throws IOException {
+    return traceStore.delete(path, recursive);
+  }
+
+  @Override
+  public void rename(String source, String destination) throws IOException {
+    traceStore.rename(source, destination);
+  }
+
+  @Override
+  public String toString() {
+    return traceStore.toString();
+  }
+
+  /**
+   * Counts the bytes read from a file and the time spent reading them.
+   */
+  private static class MeteredInputStream extends FilterInputStream {
+    /**
+     * Constructor.
+     *
+     * @param input the stream over the file.
+     */
+    MeteredInputStream(InputStream input) {
+      super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+      long startTime = System.nanoTime();
+      int b = super.read();
+      count(b < 0 ? 0 : 1, startTime);
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length)
+      throws IOException {
+      long startTime = System.nanoTime();
+      int count = super.read(buffer, offset, length);
+      count(Math.max(count, 0), startTime);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long startTime = System.nanoTime();
+      long skipped = super.skip(n);
+      count(skipped, startTime);
+      return skipped;
+    }
+
+    /**
+     * @param bytes the number of bytes read or skipped.
+     * @param startTime when the read started, as by
+     *        {@link System#nanoTime()}.
+     */
+    private static void count(long bytes, long startTime) {
+      ServerMetrics.TRACE_READ_NANOS.addAndGet(System.nanoTime() - startTime);
+      ServerMetrics.TRACE_BYTES_READ.addAndGet(bytes);
+    }
+  }
+}
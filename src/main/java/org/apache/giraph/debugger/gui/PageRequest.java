@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Ordering;
+
+/**
+ * The page of vertex or task ids a request asks for, read from its URL
+ * parameters. Ids are sorted, numerically if they are numbers, and can be
+ * restricted to a range and to vertices whose value lies in a range. A page
+ * starts after the cursor, i.e., the last id of the previous page, so walking
+ * the pages of a running job neither skips nor repeats ids. The cursor of the
+ * next page is sent in the {@link #NEXT_CURSOR_HEADER} header, which is absent
+ * on the last page.
+ *
+ * URL Params: [cursor], [limit], [sort], [minId], [maxId], [minValue],
+ * [maxValue]
+ * sort: asc (default) or desc.
+ * minValue and maxValue: only apply where the vertex values are read anyway.
+ */
+final class PageRequest {
+
+  /**
+   * Response header holding the cursor of the next page.
+   */
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+  /**
+   * String for specifying the cursor parameter.
+   */
+  public static final String CURSOR_KEY = "cursor";
+  /**
+   * String for specifying the page size parameter.
+   */
+  public static final String LIMIT_KEY = "limit";
+  /**
+   * String for specifying the sort order parameter.
+   */
+  public static final String SORT_KEY = "sort";
+  /**
+   * String for specifying the smallest id parameter.
+   */
+  public static final String MIN_ID_KEY = "minId";
+  /**
+   * String for specifying the largest id parameter.
+   */
+  public static final String MAX_ID_KEY = "maxId";
+  /**
+   * String for specifying the smallest vertex value parameter.
+   */
+  public static final String MIN_VALUE_KEY = "minValue";
+  /**
+   * String for specifying the largest vertex value parameter.
+   */
+  public static final String MAX_VALUE_KEY = "maxValue";
+
+  /**
+   * The last id of the previous page, or null for the first page.
+   */
+  private final IdKey cursor;
+  /**
+   * Maximum number of items on the page.
+   */
+  private final int limit;
+  /**
+   * Whether the ids are sorted in descending order.
+   */
+  private final boolean descending;
+  /**
+   * Smallest id to return, or null.
+   */
+  private final IdKey minId;
+  /**
+   * Largest id to return, or null.
+   */
+  private final IdKey maxId;
+  /**
+   * Smallest vertex value to return, or null.
+   */
+  private final Double minValue;
+  /**
+   * Largest vertex value to return, or null.
+   */
+  private final Double maxValue;
+
+  /**
+   * Reads the page from the URL parameters.
+   *
+   * @param paramMap the URL parameters of the request.
+   * @param defaultLimit the page size if none is given.
+   * @throws InvalidParameterException thrown when the limit, the sort order
+   *         or a value bound is invalid.
+   */
+  PageRequest(Map<String, String> paramMap, int defaultLimit) {
+    this.cursor = IdKey.of(paramMap.get(CURSOR_KEY));
+    this.limit = parseLimit(paramMap, defaultLimit);
+    String sort = paramMap.get(SORT_KEY);
+    if (sort != null && !sort.equals("asc") && !sort.equals("desc")) {
+      throw new InvalidParameterException(SORT_KEY + " must be asc or desc.");
+    }
+    this.descending = "desc".equals(sort);
+    this.minId = IdKey.of(paramMap.get(MIN_ID_KEY));
+    this.maxId = IdKey.of(paramMap.get(MAX_ID_KEY));
+    this.minValue = parseValue(paramMap, MIN_VALUE_KEY);
+    this.maxValue = parseValue(paramMap, MAX_VALUE_KEY);
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Sorts the given ids and keeps those in the requested range that come
+   * after the cursor. The result is not cut to the page size, as callers
+   * filtering by value may need to look beyond it.
+   *
+   * @param ids the ids to select from.
+   * @return the selected ids, in the requested order.
+   */
+  List<String> select(Collection<String> ids) {
+    // Each id is parsed once, rather than at each comparison.
+    List<IdKey> selectedKeys = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      IdKey key = new IdKey(id);
+      if ((minId == null || key.compareTo(minId) >= 0) &&
+        (maxId == null || key.compareTo(maxId) <= 0) &&
+        (cursor == null || (descending ? key.compareTo(cursor) < 0 :
+        key.compareTo(cursor) > 0))) {
+        selectedKeys.add(key);
+      }
+    }
+    Collections.sort(selectedKeys, descending ?
+      Collections.<IdKey>reverseOrder() : Ordering.<IdKey>natural());
+    List<String> selectedIds = new ArrayList<>(selectedKeys.size());
+    for (IdKey key : selectedKeys) {
+      selectedIds.add(key.id);
+    }
+    return selectedIds;
+  }
+
+  /**
+   * @param value a vertex value.
+   * @return true if the value lies in the requested range. Values that are
+   *         not numbers lie in no range.
+   */
+  boolean acceptsValue(Object value) {
+    if (minValue == null && maxValue == null) {
+      return true;
+    }
+    Double number;
+    try {
+      number = value == null ? null : Double.valueOf(value.toString());
+    } catch (NumberFormatException e) {
+      number = null;
+    }
+    return number != null && (minValue == null || number >= minValue) &&
+      (maxValue == null || number <= maxValue);
+  }
+
+  /**
+   * @param paramMap the URL parameters of a request.
+   * @param defaultLimit the page size if none is given.
+   * @return the page size.
+   * @throws InvalidParameterException thrown when the page size is not a
+   *         positive integer.
+   */
+  static int parseLimit(Map<String, String> paramMap, int defaultLimit) {
+    String rawLimit = paramMap.get(LIMIT_KEY);
+    if (rawLimit == null) {
+      return defaultLimit;
+    }
+    int limit;
+    try {
+      limit = Integer.parseInt(rawLimit);
+    } catch (NumberFormatException e) {
+      limit = 0;
+    }
+    if (limit <= 0) {
+      throw new InvalidParameterException(LIMIT_KEY +
+        " must be a positive integer.");
+    }
+    return limit;
+  }
+
+  /**
+   * @param paramMap the URL parameters of a request.
+   * @param key the parameter of a value bound.
+   * @return the value bound, or null if none is given.
+   * @throws InvalidParameterException thrown when the bound is not a
+   *         number.
+   */
+  static Double parseValue(Map<String, String> paramMap, String key) {
+    String rawValue = paramMap.get(key);
+    try {
+      return rawValue == null ? null : Double.valueOf(rawValue);
+    } catch (NumberFormatException e) {
+      throw new InvalidParameterException(key + " must be a number.");
+    }
+  }
+
+  /**
+   * An id with its sort key: ids are ordered numerically if both are
+   * numbers, or else as strings, with numbers first.
+   */
+  private static class IdKey implements Comparable<IdKey> {
+    /**
+     * The id.
+     */
+    private final String id;
+    /**
+     * The id as a number, or null if it is not one.
+     */
+    private final Long number;
+
+    /**
+     * Constructor.
+     *
+     * @param id the id.
+     */
+    IdKey(String id) {
+      this.id = id;
+      this.number = parseNumber(id);
+    }
+
+    /**
+     * @param id an id, or null.
+     * @return the key of the id, or null.
+     */
+    static IdKey of(String id) {
+      return id == null ? null : new IdKey(id);
+    }
+
+    @Override
+    public int compareTo(IdKey other) {
+      if (number != null && other.number != null) {
+        return number.compareTo(other.number);
+      } else if (number != null) {
+        return -1;
+      } else if (other.number != null) {
+        return 1;
+      }
+      return id.compareTo(other.id);
+    }
+
+    /**
+     * @param id an id.
+     * @return the id as a number, or null if it is not one. Ids that are
+     *         not made of digits are told apart without throwing, as all
+     *         ids of a job are often of that form.
+     */
+    private static Long parseNumber(String id) {
+      int start = id.startsWith("-") || id.startsWith("+") ? 1 : 0;
+      if (id.length() == start) {
+        return null;
+      }
+      for (int i = start; i < id.length(); i++) {
+        if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+          return null;
+        }
+      }
+      try {
+        return Long.valueOf(id);
+      } catch (NumberFormatException e) {
+        // Too large for a long.
+        return null;
+      }
+    }
+  }
+}
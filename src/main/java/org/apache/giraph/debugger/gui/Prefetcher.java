@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Objects;
+
+/**
+ * Reads the scenarios of the supersteps around the one a browser is looking
+ * at into the {@link ScenarioCache} in the background, so that moving to the
+ * next or previous superstep is served from memory. The supersteps within
+ * {@link #PREFETCH_DISTANCE} of the one accessed are read on a pool of
+ * {@link #PREFETCH_THREADS} low-priority threads, each reading one superstep
+ * at a time, which bounds the number of traces prefetched at the same time.
+ * Only the most recent requests are kept waiting; older ones are dropped, as
+ * the browser has moved on. At most {@link #MAX_PREFETCH_VERTICES} vertices
+ * are read per superstep, so that a large superstep does not evict the
+ * scenarios being browsed. The values of the complete supersteps are indexed
+ * for searching too, see {@link ValueIndex}.
+ */
+final class Prefetcher {
+
+  /**
+   * Number of supersteps prefetched at the same time.
+   */
+  public static final int PREFETCH_THREADS = Integer.getInteger(
+    "giraph.debugger.prefetchThreads", 2);
+  /**
+   * Number of supersteps prefetched before and after the one accessed.
+   */
+  public static final int PREFETCH_DISTANCE = Integer.getInteger(
+    "giraph.debugger.prefetchDistance", 1);
+  /**
+   * Maximum number of vertices prefetched per superstep.
+   */
+  public static final int MAX_PREFETCH_VERTICES = Integer.getInteger(
+    "giraph.debugger.prefetchVertices", 1000);
+
+  /**
+   * Maximum number of supersteps waiting to be prefetched.
+   */
+  private static final int MAX_PENDING = 16;
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(Prefetcher.class);
+
+  /**
+   * The supersteps waiting to be or being prefetched.
+   */
+  private static final Set<SuperstepKey> PENDING = Collections
+    .newSetFromMap(new ConcurrentHashMap<SuperstepKey, Boolean>());
+
+  /**
+   * The pool supersteps are prefetched on. When the queue is full, the
+   * oldest superstep waiting is dropped.
+   */
+  private static final ThreadPoolExecutor PREFETCH_POOL =
+    new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 0,
+      TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "superstep-prefetcher");
+          thread.setDaemon(true);
+          thread.setPriority(Thread.MIN_PRIORITY);
+          return thread;
+        }
+      }, new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable runnable,
+          ThreadPoolExecutor executor) {
+          Runnable oldest = executor.getQueue().poll();
+          if (oldest instanceof PrefetchTask) {
+            PENDING.remove(((PrefetchTask) oldest).key);
+          }
+          if (!executor.getQueue().offer(runnable)) {
+            PENDING.remove(((PrefetchTask) runnable).key);
+          }
+        }
+      });
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private Prefetcher() { }
+
+  /**
+   * Schedules the prefetching of the supersteps around the given one, nearest
+   * first and the next one before the previous one. Supersteps already
+   * waiting to be prefetched are not scheduled again.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep accessed.
+   */
+  static void prefetchAround(String jobId, long superstepNo) {
+    for (int distance = 1; distance <= PREFETCH_DISTANCE; distance++) {
+      prefetch(jobId, superstepNo + distance);
+      if (superstepNo - distance >= -1) {
+        prefetch(jobId, superstepNo - distance);
+      }
+    }
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo the superstep to prefetch.
+   */
+  private static void prefetch(String jobId, long superstepNo) {
+    SuperstepKey key = new SuperstepKey(jobId, superstepNo);
+    if (PENDING.add(key)) {
+      PREFETCH_POOL.execute(new PrefetchTask(key));
+    }
+  }
+
+  /**
+   * Reads the scenarios of a superstep into the cache.
+   */
+  private static class PrefetchTask implements Runnable {
+    /**
+     * The superstep to prefetch.
+     */
+    private final SuperstepKey key;
+
+    /**
+     * Constructor.
+     *
+     * @param key the superstep to prefetch.
+     */
+    PrefetchTask(SuperstepKey key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      // CHECKSTYLE: stop IllegalCatch
+      try {
+        if (!ServerUtils.getSuperstepsDebugged(key.jobId).contains(
+          key.superstepNo)) {
+          return;
+        }
+        ValueIndex.buildInBackground(key.jobId, key.superstepNo);
+        List<String> vertexIds = ServerUtils.getVerticesDebugged(key.jobId,
+          key.superstepNo, DebugTrace.VERTEX_ALL);
+        for (String vertexId : vertexIds.subList(0, Math.min(
+          vertexIds.size(), MAX_PREFETCH_VERTICES))) {
+          ServerUtils.readScenarioJSON(key.jobId, key.superstepNo, vertexId,
+            DebugTrace.VERTEX_REGULAR);
+        }
+      } catch (Exception e) {
+        // The superstep is read again when it is accessed.
+        LOG.debug("Cannot prefetch superstep " + key.superstepNo + " of " +
+          key.jobId + ": " + e);
+      } finally {
+        PENDING.remove(key);
+      }
+      // CHECKSTYLE: resume IllegalCatch
+    }
+  }
+
+  /**
+   * Identifies a superstep to prefetch.
+   */
+  private static class SuperstepKey {
+    /**
+     * Id of the job.
+     */
+    private final String jobId;
+    /**
+     * The superstep.
+     */
+    private final long superstepNo;
+
+    /**
+     * Constructor.
+     *
+     * @param jobId id of the job.
+     * @param superstepNo the superstep.
+     */
+    SuperstepKey(String jobId, long superstepNo) {
+      this.jobId = jobId;
+      this.superstepNo = superstepNo;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SuperstepKey)) {
+        return false;
+      }
+      SuperstepKey other = (SuperstepKey) obj;
+      return superstepNo == other.superstepNo && jobId.equals(other.jobId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(jobId, superstepNo);
+    }
+  }
+}
@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.giraph.debugger.Scenario.RawTraceRecord;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Reads the scenarios of a range of supersteps for the batch scenario
+ * endpoint, as JSON or as stored. The traces are read and decoded in parallel
+ * on a shared pool of {@link #READ_PARALLELISM} threads, which bounds the
+ * number of traces read at the same time across all requests. The scenarios
+ * are written out one superstep at a time, in superstep order, while the
+ * traces of the next superstep are being read.
+ */
+final class ScenarioBatchReader {
+
+  /**
+   * Maximum number of traces read at the same time.
+   */
+  public static final int READ_PARALLELISM = Integer.getInteger(
+    "giraph.debugger.batchReadThreads", 8);
+
+  /**
+   * The pool the traces are read on.
+   */
+  private static final ForkJoinPool READ_POOL = new ForkJoinPool(
+    READ_PARALLELISM);
+
+  /**
+   * Reads the scenario of a vertex as JSON.
+   */
+  private static final TraceReader<JSONObject> JSON_READER =
+    new TraceReader<JSONObject>() {
+      @Override
+      public JSONObject read(String jobId, long superstepNo, String vertexId)
+        throws Exception {
+        return ServerUtils.readScenarioJSON(jobId, superstepNo, vertexId,
+          DebugTrace.VERTEX_REGULAR);
+      }
+    };
+  /**
+   * Reads the trace of a vertex as stored.
+   */
+  private static final TraceReader<ByteString> RAW_READER =
+    new TraceReader<ByteString>() {
+      @Override
+      public ByteString read(String jobId, long superstepNo, String vertexId)
+        throws Exception {
+        return ServerUtils.readRawScenario(jobId, superstepNo, vertexId,
+          DebugTrace.VERTEX_REGULAR);
+      }
+    };
+
+  /**
+   * Reads the value of a vertex after the superstep, and nothing else.
+   */
+  private static final TraceReader<String> VALUE_READER =
+    new TraceReader<String>() {
+      @Override
+      public String read(String jobId, long superstepNo, String vertexId)
+        throws Exception {
+        return ServerUtils.readVertexValue(jobId, superstepNo, vertexId);
+      }
+    };
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private ScenarioBatchReader() { }
+
+  /**
+   * Writes the scenarios of the given supersteps as a JSON object mapping
+   * each superstep to the object /scenario returns for it. Supersteps without
+   * traces are left out, and so are vertices without a regular trace in a
+   * superstep.
+   *
+   * @param writer the writer to write the scenarios to.
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep to read.
+   * @param lastSuperstepNo the last superstep to read.
+   * @param vertexIds the vertices to read, or null to read all vertices
+   *        debugged in each superstep.
+   * @throws IOException thrown when a trace cannot be read, or the scenarios
+   *         cannot be written.
+   */
+  static void writeScenarios(Writer writer, String jobId,
+    long firstSuperstepNo, long lastSuperstepNo, List<String> vertexIds)
+    throws IOException {
+    List<Long> superstepNos = getSuperstepsDebugged(jobId, firstSuperstepNo,
+      lastSuperstepNo);
+    Map<String, Future<JSONObject>> nextReads = superstepNos.isEmpty() ?
+      null : submitReads(JSON_READER, jobId, superstepNos.get(0), vertexIds);
+    try {
+      writer.write('{');
+      for (int i = 0; i < superstepNos.size(); i++) {
+        Map<String, Future<JSONObject>> reads = nextReads;
+        nextReads = i + 1 < superstepNos.size() ? submitReads(JSON_READER,
+          jobId, superstepNos.get(i + 1), vertexIds) : null;
+        JSONObject scenarioObj = new JSONObject(getResults(reads));
+        if (i > 0) {
+          writer.write(',');
+        }
+        writer.write(JSONObject.quote(Long.toString(superstepNos.get(i))));
+        writer.write(':');
+        scenarioObj.write(writer);
+      }
+      writer.write('}');
+    } catch (JSONException e) {
+      throw new IOException(e);
+    } finally {
+      cancel(nextReads);
+    }
+  }
+
+  /**
+   * Writes the regular traces of the given supersteps as stored, see
+   * {@link ServerUtils#readRawScenario}, without decoding them. Each is sent
+   * in the vertexScenario field of a {@link RawTraceRecord}, preceded by the
+   * record's length as a varint, i.e., as protobuf's writeDelimitedTo writes
+   * messages, so that they can be read back with
+   * RawTraceRecord.parseDelimitedFrom. The traces come in superstep order,
+   * and in the order of the vertices within a superstep. Vertices without a
+   * regular trace in a superstep are left out of that superstep.
+   *
+   * A trace whose blobs are in a blob dictionary is preceded by a record
+   * holding the dictionary's path in blobDictionary and its Blob records in
+   * blobs, unless they were sent before. Dictionaries of running supersteps
+   * grow, so more of their blobs may follow in records with the same path,
+   * which are to be appended to those sent before.
+   *
+   * @param out the stream to write the traces to.
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep to read.
+   * @param lastSuperstepNo the last superstep to read.
+   * @param vertexIds the vertices to read, or null to read all vertices
+   *        debugged in each superstep.
+   * @throws IOException thrown when a trace cannot be read, or the traces
+   *         cannot be written.
+   */
+  static void writeRawScenarios(OutputStream out, String jobId,
+    long firstSuperstepNo, long lastSuperstepNo, List<String> vertexIds)
+    throws IOException {
+    List<Long> superstepNos = getSuperstepsDebugged(jobId, firstSuperstepNo,
+      lastSuperstepNo);
+    Map<String, Future<ByteString>> nextReads = superstepNos.isEmpty() ?
+      null : submitReads(RAW_READER, jobId, superstepNos.get(0), vertexIds);
+    try {
+      CodedOutputStream codedOut = CodedOutputStream.newInstance(out);
+      Map<String, Long> blobsWritten = new HashMap<>();
+      for (int i = 0; i < superstepNos.size(); i++) {
+        Map<String, Future<ByteString>> reads = nextReads;
+        nextReads = i + 1 < superstepNos.size() ? submitReads(RAW_READER,
+          jobId, superstepNos.get(i + 1), vertexIds) : null;
+        for (ByteString trace : getResults(reads).values()) {
+          writeBlobs(codedOut, jobId, superstepNos.get(i), trace,
+            blobsWritten);
+          codedOut.writeMessageNoTag(RawTraceRecord.newBuilder()
+            .setVertexScenario(trace).build());
+        }
+      }
+      codedOut.flush();
+    } finally {
+      cancel(nextReads);
+    }
+  }
+
+  /**
+   * Writes the blobs of the dictionary a trace refers to that were not
+   * written yet, see {@link #writeRawScenarios}. The dictionaries of the
+   * supersteps merged in the job's index are complete, and are not looked up
+   * again once written.
+   *
+   * @param codedOut the stream to write the blobs to.
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the trace.
+   * @param trace a trace as stored.
+   * @param blobsWritten the number of bytes of each dictionary written so
+   *        far, keyed by its path, which is updated.
+   * @throws IOException thrown when the dictionary cannot be read, or its
+   *         blobs cannot be written.
+   */
+  private static void writeBlobs(CodedOutputStream codedOut, String jobId,
+    long superstepNo, ByteString trace, Map<String, Long> blobsWritten)
+    throws IOException {
+    String dictionary = ServerUtils.getBlobDictionary(trace);
+    if (dictionary == null) {
+      return;
+    }
+    Long written = blobsWritten.get(dictionary);
+    if (written != null && ServerUtils.isSuperstepIndexed(jobId,
+      superstepNo)) {
+      return;
+    }
+    ByteString blobs = ServerUtils.readBlobs(jobId, dictionary,
+      written == null ? 0 : written);
+    if (written != null && blobs.isEmpty()) {
+      return;
+    }
+    codedOut.writeMessageNoTag(RawTraceRecord.newBuilder()
+      .setBlobDictionary(dictionary).setBlobs(blobs).build());
+    blobsWritten.put(dictionary, (written == null ? 0 : written) +
+      blobs.size());
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep of a range.
+   * @param lastSuperstepNo the last superstep of the range.
+   * @return the supersteps debugged within the range, in increasing order.
+   *         Only these are read, as the range comes from the client and may
+   *         be as large as it likes.
+   */
+  private static List<Long> getSuperstepsDebugged(String jobId,
+    long firstSuperstepNo, long lastSuperstepNo) throws IOException {
+    return new ArrayList<>(ServerUtils.getSuperstepsInRange(
+      new TreeSet<>(ServerUtils.getSuperstepsDebugged(jobId)),
+      firstSuperstepNo, lastSuperstepNo));
+  }
+
+  /**
+   * Reads the scenarios of a superstep in parallel.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep to read.
+   * @param vertexIds the vertices to read, or null to read all vertices
+   *        debugged in the superstep.
+   * @return the scenarios by vertex id, in the order of the vertices, without
+   *         the vertices that have no regular trace.
+   * @throws IOException thrown when a trace cannot be read.
+   */
+  static Map<String, JSONObject> readScenarios(String jobId,
+    long superstepNo, List<String> vertexIds) throws IOException {
+    Map<String, Future<JSONObject>> reads = submitReads(JSON_READER, jobId,
+      superstepNo, vertexIds);
+    try {
+      return getResults(reads);
+    } finally {
+      cancel(reads);
+    }
+  }
+
+  /**
+   * Reads the values of all vertices debugged in a superstep in parallel,
+   * without rendering their scenarios.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep to read.
+   * @return the values after the superstep by vertex id, without the
+   *         vertices that have no regular trace.
+   * @throws IOException thrown when a trace cannot be read.
+   */
+  static Map<String, String> readVertexValues(String jobId,
+    long superstepNo) throws IOException {
+    Map<String, Future<String>> reads = submitReads(VALUE_READER, jobId,
+      superstepNo, null);
+    try {
+      return getResults(reads);
+    } finally {
+      cancel(reads);
+    }
+  }
+
+  /**
+   * Summarizes the traces of a vertex in each of the given supersteps in
+   * parallel, see {@link ServerUtils#readVertexSummary}.
+   *
+   * @param jobId id of the job.
+   * @param vertexId id of the vertex.
+   * @param superstepNos the supersteps to read.
+   * @return the summaries by superstep, in the order of the supersteps,
+   *         without the supersteps the vertex has no trace in.
+   * @throws IOException thrown when a trace cannot be read.
+   */
+  static Map<Long, JSONObject> readVertexHistory(final String jobId,
+    final String vertexId, List<Long> superstepNos) throws IOException {
+    Map<Long, Future<JSONObject>> reads = new LinkedHashMap<>();
+    for (final long superstepNo : superstepNos) {
+      reads.put(superstepNo, READ_POOL.submit(new Callable<JSONObject>() {
+        @Override
+        public JSONObject call() throws Exception {
+          return ServerUtils.readVertexSummary(jobId, superstepNo, vertexId);
+        }
+      }));
+    }
+    try {
+      return getResults(reads);
+    } finally {
+      cancel(reads);
+    }
+  }
+
+  /**
+   * Starts reading the traces of the given vertices in a superstep.
+   *
+   * @param <T> the type of what is read from a trace.
+   * @param reader reads a trace.
+   * @param jobId id of the job.
+   * @param superstepNo the superstep to read.
+   * @param vertexIds the vertices to read, or null to read all vertices
+   *        debugged in the superstep.
+   * @return the pending reads by vertex id, in the order of the vertices.
+   */
+  private static <T> Map<String, Future<T>> submitReads(
+    final TraceReader<T> reader, final String jobId, final long superstepNo,
+    List<String> vertexIds) throws IOException {
+    Map<String, Future<T>> reads = new LinkedHashMap<>();
+    for (final String vertexId : vertexIds != null ? vertexIds :
+      ServerUtils.getVerticesDebugged(jobId, superstepNo,
+        DebugTrace.VERTEX_ALL)) {
+      reads.put(vertexId, READ_POOL.submit(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          return reader.read(jobId, superstepNo, vertexId.trim());
+        }
+      }));
+    }
+    return reads;
+  }
+
+  /**
+   * @param <K> the type of what the reads are keyed by, e.g., vertex ids.
+   * @param <T> the type of what is read from a trace.
+   * @param reads pending reads, e.g., by vertex id.
+   * @return what was read by the keys of the reads, without those that found
+   *         no trace.
+   * @throws IOException thrown when a trace could not be read.
+   */
+  private static <K, T> Map<K, T> getResults(Map<K, Future<T>> reads)
+    throws IOException {
+    Map<K, T> results = new LinkedHashMap<>();
+    for (Map.Entry<K, Future<T>> read : reads.entrySet()) {
+      T result = getResult(read.getValue());
+      if (result != null) {
+        results.put(read.getKey(), result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @param <T> the type of what is read from a trace.
+   * @param read a pending read.
+   * @return what was read, or null if the vertex has no regular trace.
+   * @throws IOException thrown when the trace could not be read.
+   */
+  private static <T> T getResult(Future<T> read) throws IOException {
+    try {
+      return read.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading traces", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * @param reads pending reads that are no longer needed, or null.
+   */
+  private static void cancel(Map<?, ? extends Future<?>> reads) {
+    if (reads != null) {
+      for (Future<?> read : reads.values()) {
+        read.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Reads what a request needs from the trace of a vertex.
+   *
+   * @param <T> the type of what is read.
+   */
+  private interface TraceReader<T> {
+    /**
+     * @param jobId id of the job.
+     * @param superstepNo the superstep of the trace.
+     * @param vertexId id of the vertex.
+     * @return what was read from the trace, or null if the vertex has no
+     *         trace.
+     */
+    T read(String jobId, long superstepNo, String vertexId) throws Exception;
+  }
+}
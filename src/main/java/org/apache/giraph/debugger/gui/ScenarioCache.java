@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Scenarios of vertices already rendered as JSON, so that moving back and
+ * forth between supersteps in the GUI does not read and convert the same
+ * traces again. A trace never changes once written, so entries are never
+ * invalidated; the least recently used ones are evicted once the estimated
+ * size of all entries exceeds {@link #MAX_BYTES}. Traces that were not found
+ * are not cached, as they may still be written.
+ */
+public final class ScenarioCache {
+
+  /**
+   * Maximum estimated size in bytes of the cached scenarios.
+   */
+  public static final long MAX_BYTES = Long.getLong(
+    "giraph.debugger.scenarioCacheBytes", 64L * 1024 * 1024);
+
+  /**
+   * Estimated size in bytes of an entry besides its JSON text.
+   */
+  private static final int ENTRY_OVERHEAD = 256;
+  /**
+   * Estimated number of characters of the JSON text around a value, i.e.,
+   * its key, quotes and separators.
+   */
+  private static final int VALUE_OVERHEAD = 16;
+
+  /**
+   * The rendered scenarios.
+   */
+  private static final Cache<Key, JSONObject> SCENARIOS = CacheBuilder
+    .newBuilder().maximumWeight(MAX_BYTES).weigher(new Weigher<Key,
+      JSONObject>() {
+      @Override
+      public int weigh(Key key, JSONObject scenario) {
+        return estimateSize(scenario);
+      }
+    }).recordStats().build();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private ScenarioCache() { }
+
+  /**
+   * Returns a cached scenario. The scenario is shared, so callers must not
+   * modify it.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number.
+   * @param vertexId id of the vertex.
+   * @param debugTrace type of the trace the scenario was read from.
+   * @return the scenario, or null if it is not cached.
+   */
+  static JSONObject get(String jobId, long superstepNo, String vertexId,
+    DebugTrace debugTrace) {
+    return SCENARIOS.getIfPresent(new Key(jobId, superstepNo, vertexId,
+      debugTrace));
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo superstep number.
+   * @param vertexId id of the vertex.
+   * @param debugTrace type of the trace the scenario was read from.
+   * @param scenario the scenario rendered as JSON.
+   */
+  static void put(String jobId, long superstepNo, String vertexId,
+    DebugTrace debugTrace, JSONObject scenario) {
+    SCENARIOS.put(new Key(jobId, superstepNo, vertexId, debugTrace),
+      scenario);
+  }
+
+  /**
+   * @param scenario a scenario rendered as JSON.
+   * @return the estimated size in bytes of the scenario in memory, counted
+   *         while it was rendered if it is a {@link SizedJSONObject}.
+   */
+  static int estimateSize(JSONObject scenario) {
+    // Two bytes per character of the text the scenario renders to.
+    return ENTRY_OVERHEAD + 2 * (scenario instanceof SizedJSONObject ?
+      ((SizedJSONObject) scenario).textLength : scenario.toString().length());
+  }
+
+  /**
+   * @return the hit, miss and eviction counts of the cache.
+   */
+  public static CacheStats getStats() {
+    return SCENARIOS.stats();
+  }
+
+  /**
+   * @return the number of cached scenarios.
+   */
+  public static long size() {
+    return SCENARIOS.size();
+  }
+
+  /**
+   * A scenario being rendered as JSON, which counts the length of the text
+   * its values render to as they are put, so that it is weighed without
+   * rendering it to text again.
+   */
+  static final class SizedJSONObject extends JSONObject {
+    /**
+     * Number of characters of the text counted so far.
+     */
+    private int textLength;
+
+    /**
+     * @param value a value of the scenario, or null.
+     * @return the value as a string, counted in the text length, or null.
+     */
+    String countText(Object value) {
+      if (value == null) {
+        return null;
+      }
+      String text = value.toString();
+      textLength += text.length() + VALUE_OVERHEAD;
+      return text;
+    }
+
+    /**
+     * Puts a value as a string, counted in the text length.
+     *
+     * @param key the key of the value.
+     * @param value the value, or null to remove the key.
+     * @throws JSONException thrown when the key is null.
+     */
+    void putText(String key, Object value) throws JSONException {
+      put(key, countText(value));
+    }
+  }
+
+  /**
+   * Identifies a scenario.
+   */
+  private static class Key {
+    /**
+     * Id of the job.
+     */
+    private final String jobId;
+    /**
+     * Superstep number.
+     */
+    private final long superstepNo;
+    /**
+     * Id of the vertex.
+     */
+    private final String vertexId;
+    /**
+     * Type of the trace the scenario was read from.
+     */
+    private final DebugTrace debugTrace;
+
+    /**
+     * Constructor.
+     *
+     * @param jobId id of the job.
+     * @param superstepNo superstep number.
+     * @param vertexId id of the vertex.
+     * @param debugTrace type of the trace the scenario was read from.
+     */
+    Key(String jobId, long superstepNo, String vertexId,
+      DebugTrace debugTrace) {
+      this.jobId = jobId;
+      this.superstepNo = superstepNo;
+      this.vertexId = vertexId;
+      this.debugTrace = debugTrace;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return superstepNo == other.superstepNo &&
+        jobId.equals(other.jobId) && vertexId.equals(other.vertexId) &&
+        debugTrace == other.debugTrace;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(jobId, superstepNo, vertexId, debugTrace);
+    }
+  }
+}
@@ -17,14 +17,19 @@
  */
 package org.apache.giraph.debugger.gui;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.ws.rs.core.MediaType;
 
@@ -41,6 +46,7 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.google.common.collect.Lists;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -59,6 +65,26 @@ public class Server {
    */
   private static final int SERVER_PORT = Integer.parseInt(System.getProperty(
     "giraph.debugger.guiPort", "8000"));
+  /**
+   * Number of threads handling requests when virtual threads are not used.
+   */
+  private static final int SERVER_THREADS = Integer.getInteger(
+    "giraph.debugger.guiThreads", 16);
+  /**
+   * MimeType of Server-Sent Events, which MediaType lacks.
+   */
+  private static final String EVENT_STREAM_TYPE = "text/event-stream";
+  /**
+   * MimeType of the Prometheus text format of metrics.
+   */
+  private static final String PROMETHEUS_TEXT_TYPE =
+    "text/plain; version=0.0.4; charset=utf-8";
+  /**
+   * Whether to handle each request on its own virtual thread when the JVM
+   * supports them (Java 21+).
+   */
+  private static final boolean SERVER_VIRTUAL_THREADS = Boolean.parseBoolean(
+    System.getProperty("giraph.debugger.guiVirtualThreads", "true"));
 
   /**
    * Private constructor to disallow construction outside of the class.
@@ -73,21 +99,83 @@ public class Server {
     HttpServer server = HttpServer
       .create(new InetSocketAddress(SERVER_PORT), 0);
     // Attach JobHandler instance to handle /job GET call.
-    server.createContext("/vertices", new GetVertices());
-    server.createContext("/supersteps", new GetSupersteps());
-    server.createContext("/scenario", new GetScenario());
-    server.createContext("/integrity", new GetIntegrity());
-    server.createContext("/test/vertex", new GetVertexTest());
-    server.createContext("/test/master", new GetMasterTest());
-    server.createContext("/test/graph", new GetTestGraph());
-    server.createContext("/", new GetEditor());
-    // Creates a default executor.
-    server.setExecutor(null);
+    createContext(server, "/vertices",
+      ServerHttpHandler.forEachRequest(GetVertices.class));
+    createContext(server, "/supersteps",
+      ServerHttpHandler.forEachRequest(GetSupersteps.class));
+    createContext(server, "/scenario",
+      ServerHttpHandler.forEachRequest(GetScenario.class));
+    createContext(server, "/scenarios",
+      ServerHttpHandler.forEachRequest(GetScenarios.class));
+    createContext(server, "/state",
+      ServerHttpHandler.forEachRequest(GetState.class));
+    createContext(server, "/events",
+      ServerHttpHandler.forEachRequest(GetEvents.class));
+    createContext(server, "/search",
+      ServerHttpHandler.forEachRequest(GetSearch.class));
+    createContext(server, "/vertex/history",
+      ServerHttpHandler.forEachRequest(GetVertexHistory.class));
+    createContext(server, "/metrics",
+      ServerHttpHandler.forEachRequest(GetMetrics.class));
+    createContext(server, "/integrity",
+      ServerHttpHandler.forEachRequest(GetIntegrity.class));
+    createContext(server, "/test/vertex",
+      ServerHttpHandler.forEachRequest(GetVertexTest.class));
+    createContext(server, "/test/master",
+      ServerHttpHandler.forEachRequest(GetMasterTest.class));
+    createContext(server, "/test/graph",
+      ServerHttpHandler.forEachRequest(GetTestGraph.class));
+    createContext(server, "/", new GetEditor());
+    // Handle requests concurrently, so that a slow trace read does not block
+    // the other requests.
+    server.setExecutor(createExecutor());
+    // Read the landing page and the files it links to ahead of the first
+    // request.
+    StaticAssets.get("index.html");
     server.start();
   }
 
   /**
-   * Handler when accessing the landing page for the server.
+   * Registers the handler of an endpoint, counting its requests in the
+   * {@link ServerMetrics}.
+   *
+   * @param server the server.
+   * @param path the path of the endpoint.
+   * @param handler the handler of the endpoint.
+   */
+  private static void createContext(HttpServer server, String path,
+    HttpHandler handler) {
+    server.createContext(path, ServerMetrics.instrument(path, handler));
+  }
+
+  /**
+   * @return an executor running each request on a new virtual thread if
+   *         enabled and supported, or else on a fixed pool of threads.
+   */
+  private static ExecutorService createExecutor() {
+    if (SERVER_VIRTUAL_THREADS) {
+      try {
+        // Looked up reflectively, as the debugger is built for Java 7.
+        Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod(
+          "newVirtualThreadPerTaskExecutor");
+        LOG.info("Handling requests on virtual threads");
+        return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+      } catch (NoSuchMethodException e) {
+        LOG.debug("Virtual threads are not supported by this JVM");
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        LOG.warn("Cannot create virtual threads: " + e);
+      }
+    }
+    LOG.info("Handling requests on " + SERVER_THREADS + " threads");
+    return Executors.newFixedThreadPool(SERVER_THREADS);
+  }
+
+  /**
+   * Handler when accessing the landing page for the server, and the other
+   * files of the GUI, which are served from memory, see {@link StaticAssets}.
+   * Files are sent gzip-compressed if the client accepts it, and with an ETag.
+   * Those asked for with their current hash, and the WebJars, may be cached
+   * for good; others must be revalidated.
    */
   static class GetEditor implements HttpHandler {
 
@@ -102,10 +190,8 @@ public class Server {
             path += "index.html";
           }
           path = path.replaceFirst("^/", "");
-          LOG.debug("resource path to look for = " + path);
-          LOG.debug("resource URL = " + getClass().getResource(path));
-          InputStream fs = getClass().getResourceAsStream(path);
-          if (fs == null) {
+          StaticAssets.Asset asset = StaticAssets.get(path);
+          if (asset == null) {
             // Object does not exist or is not a file: reject
             // with 404 error.
             String response = "404 (Not Found)\n";
@@ -113,22 +199,42 @@ public class Server {
             OutputStream os = t.getResponseBody();
             os.write(response.getBytes());
             os.close();
-          } else {
-            // Object exists and is a file: accept with response
-            // code 200.
-            t.sendResponseHeaders(200, 0);
-            OutputStream os = t.getResponseBody();
-            final byte[] buffer = new byte[0x10000];
-            int count = 0;
-            while ((count = fs.read(buffer)) >= 0) {
-              os.write(buffer, 0, count);
-            }
-            fs.close();
-            os.close();
+            return;
+          }
+          Headers headers = t.getResponseHeaders();
+          headers.add("Content-Type", asset.getContentType());
+          headers.add("Vary", "Accept-Encoding");
+          String version = ServerUtils.getUrlParams(uri.getQuery()).get(
+            StaticAssets.VERSION_KEY);
+          headers.add("Cache-Control", asset.isImmutable(version) ?
+            "public, max-age=31536000, immutable" : "no-cache");
+          String eTag = "\"" + asset.getHash() + "\"";
+          String gzipETag = "\"" + asset.getHash() +
+            ServerHttpHandler.GZIP_ETAG_SUFFIX + "\"";
+          String matchingETag = ServerHttpHandler.getMatchingETag(
+            t.getRequestHeaders(), eTag, gzipETag);
+          if (matchingETag != null) {
+            headers.add("ETag", matchingETag);
+            // A length of -1 sends no body.
+            t.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            t.close();
+            return;
+          }
+          boolean gzip = asset.isGzipped(ServerHttpHandler.acceptsGzip(
+            t.getRequestHeaders()));
+          if (gzip) {
+            headers.add("Content-Encoding", "gzip");
+          }
+          headers.add("ETag", gzip ? gzipETag : eTag);
+          byte[] content = asset.getContent(gzip);
+          t.sendResponseHeaders(HttpURLConnection.HTTP_OK, content.length);
+          try (OutputStream os = t.getResponseBody()) {
+            os.write(content);
           }
         } catch (IOException e) {
-          e.printStackTrace();
-          t.sendResponseHeaders(404, 0);
+          LOG.error("Cannot serve " + uri + ": " + e);
+          t.sendResponseHeaders(HttpURLConnection.HTTP_INTERNAL_ERROR, -1);
+          t.close();
         }
       } catch (IOException e) {
         e.printStackTrace();
@@ -139,7 +245,10 @@ public class Server {
   /**
    * Returns the list of vertices debugged in a given Superstep for a given job.
    *
-   * URL parameters: {jobId, superstepId}
+   * URL parameters: {jobId, superstepId, [traceType]} and those of
+   * {@link PageRequest}, except for the vertex value bounds.
+   * traceType: Can be one of reg, err, msg or vv. All vertex traces if not
+   *       supplied.
    */
   static class GetVertices extends ServerHttpHandler {
     @Override
@@ -159,9 +268,22 @@ public class Server {
         if (superstepNo < -1) {
           throw new NumberFormatException("Superstep must be integer >= -1.");
         }
+        if (this.checkTracesNotModified(jobId, superstepNo, superstepNo)) {
+          return;
+        }
+        String traceType = paramMap.get(
+          ServerUtils.VERTEX_TEST_TRACE_TYPE_KEY);
+        DebugTrace debugTrace = traceType == null ? DebugTrace.VERTEX_ALL :
+          DebuggerUtils.getVertexDebugTraceForPrefix(traceType);
+        PageRequest page = new PageRequest(paramMap, Integer.MAX_VALUE);
         // May throw IOException. Handled below.
-        vertexIds = ServerUtils.getVerticesDebugged(jobId, superstepNo,
-          DebugTrace.VERTEX_ALL);
+        vertexIds = page.select(ServerUtils.getVerticesDebugged(jobId,
+          superstepNo, debugTrace));
+        if (vertexIds.size() > page.getLimit()) {
+          vertexIds = vertexIds.subList(0, page.getLimit());
+          this.setResponseHeader(PageRequest.NEXT_CURSOR_HEADER,
+            vertexIds.get(vertexIds.size() - 1));
+        }
         this.statusCode = HttpURLConnection.HTTP_OK;
         // Returns output as an array ["id1", "id2", "id3" .... ]
         this.response = new JSONArray(vertexIds).toString();
@@ -204,13 +326,63 @@ public class Server {
   }
 
   /**
-   * Returns the scenario for a given superstep of a given job.
+   * Streams the changes to the supersteps traced for the given job as
+   * Server-Sent Events, see {@link JobWatcher}, so that browsers following a
+   * running job need not poll /supersteps.
+   *
+   * URL Params: {jobId}
+   */
+  static class GetEvents extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      final String jobId = paramMap.get(ServerUtils.JOB_ID_KEY);
+      // CHECKSTYLE: stop IllegalCatch
+      try {
+        if (jobId == null) {
+          throw new IllegalArgumentException("Missing mandatory params.");
+        }
+        // Fails before the stream is opened if the job was not traced.
+        // May throw IOException. Handled below.
+        ServerUtils.getSuperstepsDebugged(jobId);
+        this.statusCode = HttpURLConnection.HTTP_OK;
+        this.responseContentType = EVENT_STREAM_TYPE;
+        this.setResponseHeader("Cache-Control", "no-cache");
+        this.detachedResponse = new DetachedResponse() {
+          @Override
+          public void attach(OutputStream body) throws IOException {
+            try {
+              JobWatcher.subscribe(jobId, body);
+            } catch (IOException e) {
+              body.close();
+              throw e;
+            }
+          }
+        };
+      } catch (Exception e) {
+        this.handleException(e, String.format(
+          "Invalid parameters. %s is a mandatory parameter.",
+          ServerUtils.JOB_ID_KEY));
+      }
+      // CHECKSTYLE: resume IllegalCatch
+    }
+  }
+
+  /**
+   * Returns the scenario for a given superstep of a given job. The scenarios
+   * of the supersteps around it are prefetched, see {@link Prefetcher}.
    *
    * URL Params: {jobId, superstepId, [vertexId], [raw]}
    * vertexId: vertexId is optional. It can be a single value or a comma
    *       separated list. If it is not supplied, returns the scenario for all
-   *       vertices. If 'raw' parameter is specified, returns the raw protocol
-   *       buffer.
+   *       vertices.
+   * raw: if specified, returns the protocol buffers of the regular traces
+   *       instead, as application/octet-stream: length-delimited
+   *       RawTraceRecords, each holding a GiraphVertexScenario as stored,
+   *       with its Writables possibly packed, or the blobs of a dictionary
+   *       the traces after it refer to, see
+   *       {@link ScenarioBatchReader#writeRawScenarios}. Vertices without a
+   *       regular trace are then left out.
    */
   static class GetScenario extends ServerHttpHandler {
     @Override
@@ -233,9 +405,22 @@ public class Server {
             ServerUtils.SUPERSTEP_ID_KEY);
           return;
         }
+        if (!isRaw(paramMap)) {
+          Prefetcher.prefetchAround(jobId, superstepNo);
+        }
+        if (this.checkTracesNotModified(jobId, superstepNo, superstepNo)) {
+          return;
+        }
         List<String> vertexIds = null;
         // Get the single vertexId or the list of vertexIds (comma-separated).
         String rawVertexIds = paramMap.get(ServerUtils.VERTEX_ID_KEY);
+        if (isRaw(paramMap)) {
+          this.statusCode = HttpURLConnection.HTTP_OK;
+          this.setRawResponse(jobId, superstepNo, superstepNo,
+            rawVertexIds == null ? null : Lists.newArrayList(
+              rawVertexIds.split(",")));
+          return;
+        }
         // No vertex Id supplied. Return scenario for all vertices.
         if (rawVertexIds == null) {
           // Read scenario for all vertices.
@@ -249,21 +434,282 @@ public class Server {
         // Send JSON by default.
         JSONObject scenarioObj = new JSONObject();
         for (String vertexId : vertexIds) {
-          GiraphVertexScenarioWrapper giraphScenarioWrapper;
-          giraphScenarioWrapper = ServerUtils.readScenarioFromTrace(jobId,
+          JSONObject vertexScenarioObj = ServerUtils.readScenarioJSON(jobId,
             superstepNo, vertexId.trim(), DebugTrace.VERTEX_REGULAR);
-          scenarioObj.put(vertexId,
-            ServerUtils.scenarioToJSON(giraphScenarioWrapper));
+          if (vertexScenarioObj == null) {
+            throw new FileNotFoundException("Debug Trace not found.");
+          }
+          scenarioObj.put(vertexId, vertexScenarioObj);
+        }
+        // Stream the JSONObject as the response.
+        this.setJSONResponse(scenarioObj);
+      } catch (Exception e) {
+        this.handleException(e, String.format(
+          "Invalid parameters. %s and %s are mandatory parameter.",
+          ServerUtils.JOB_ID_KEY, ServerUtils.SUPERSTEP_ID_KEY));
+      }
+      // CHECKSTYLE: stop IllegalCatch
+    }
+  }
+
+  /**
+   * Returns the scenarios of a range of supersteps of a given job in one
+   * response, as an object mapping each superstep to what /scenario returns
+   * for it. The response is streamed in superstep order. Supersteps without
+   * traces are left out.
+   *
+   * URL Params: {jobId, startSuperstepId, endSuperstepId, [vertexId], [raw]}
+   * vertexId: vertexId is optional. It can be a single value or a comma
+   *       separated list. If it is not supplied, returns the scenarios of all
+   *       vertices debugged in each superstep. Vertices not debugged in a
+   *       superstep are left out of it.
+   * raw: if specified, returns the protocol buffers of the traces for
+   *       programmatic clients, in the format of /scenario with raw, see
+   *       {@link ScenarioBatchReader#writeRawScenarios}.
+   */
+  static class GetScenarios extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      final String jobId = paramMap.get(ServerUtils.JOB_ID_KEY);
+      String startSuperstepId = paramMap.get(
+        ServerUtils.START_SUPERSTEP_ID_KEY);
+      String endSuperstepId = paramMap.get(ServerUtils.END_SUPERSTEP_ID_KEY);
+      // CHECKSTYLE: stop IllegalCatch
+      try {
+        if (jobId == null || startSuperstepId == null ||
+          endSuperstepId == null) {
+          throw new IllegalArgumentException("Missing mandatory parameters");
+        }
+        final long startSuperstepNo = Long.parseLong(startSuperstepId);
+        final long endSuperstepNo = Long.parseLong(endSuperstepId);
+        if (startSuperstepNo < -1 || endSuperstepNo < startSuperstepNo) {
+          throw new NumberFormatException();
         }
-        // Set status as OK and convert JSONObject to string.
+        if (this.checkTracesNotModified(jobId, startSuperstepNo,
+          endSuperstepNo)) {
+          return;
+        }
+        String rawVertexIds = paramMap.get(ServerUtils.VERTEX_ID_KEY);
+        final List<String> vertexIds = rawVertexIds == null ? null :
+          Lists.newArrayList(rawVertexIds.split(","));
         this.statusCode = HttpURLConnection.HTTP_OK;
-        this.response = scenarioObj.toString();
+        if (isRaw(paramMap)) {
+          this.setRawResponse(jobId, startSuperstepNo, endSuperstepNo,
+            vertexIds);
+          return;
+        }
+        this.streamingResponse = new StreamingResponse() {
+          @Override
+          public void writeTo(Writer writer) throws IOException {
+            ScenarioBatchReader.writeScenarios(writer, jobId,
+              startSuperstepNo, endSuperstepNo, vertexIds);
+          }
+        };
+      } catch (Exception e) {
+        this.handleException(e, String.format(
+          "Invalid parameters. %s, %s and %s are mandatory parameters.",
+          ServerUtils.JOB_ID_KEY, ServerUtils.START_SUPERSTEP_ID_KEY,
+          ServerUtils.END_SUPERSTEP_ID_KEY));
+      }
+      // CHECKSTYLE: resume IllegalCatch
+    }
+  }
+
+  /**
+   * Returns the state of the graph as of a given superstep of a given job, as
+   * an object mapping each vertex debugged up to the superstep to its last
+   * scenario, with enabled set to whether it was debugged in the superstep.
+   * The state is built from the closest snapshot before the superstep, see
+   * {@link GraphStates}. The scenarios of the supersteps around it are
+   * prefetched, see {@link Prefetcher}.
+   *
+   * URL Params: {jobId, superstepId}
+   */
+  static class GetState extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      String jobId = paramMap.get(ServerUtils.JOB_ID_KEY);
+      String superstepId = paramMap.get(ServerUtils.SUPERSTEP_ID_KEY);
+      // CHECKSTYLE: stop IllegalCatch
+      try {
+        if (jobId == null || superstepId == null) {
+          throw new IllegalArgumentException("Missing mandatory parameters");
+        }
+        long superstepNo = Long.parseLong(superstepId);
+        if (superstepNo < -1) {
+          throw new NumberFormatException();
+        }
+        Prefetcher.prefetchAround(jobId, superstepNo);
+        // The state is built from all supersteps up to the given one.
+        if (this.checkTracesNotModified(jobId, -1, superstepNo)) {
+          return;
+        }
+        this.setJSONResponse(GraphStates.getState(jobId, superstepNo));
       } catch (Exception e) {
         this.handleException(e, String.format(
           "Invalid parameters. %s and %s are mandatory parameter.",
           ServerUtils.JOB_ID_KEY, ServerUtils.SUPERSTEP_ID_KEY));
       }
+      // CHECKSTYLE: resume IllegalCatch
+    }
+  }
+
+  /**
+   * Finds the vertices debugged in a range of supersteps of a given job whose
+   * value after the superstep lies in a given range, or equals a given value,
+   * using the {@link ValueIndex}. Only numeric values are searched. Returns
+   * an object holding the matches, an object mapping each superstep with a
+   * match to an object mapping the vertices found to their value, in
+   * increasing order of value, and whether the matches were truncated to the
+   * limit.
+   *
+   * URL Params: {jobId, [startSuperstepId], [endSuperstepId], [value],
+   * [minValue], [maxValue], [limit]}
+   * startSuperstepId, endSuperstepId: all supersteps traced by default.
+   * value: the value to find, which may be NaN. Overrides minValue and
+   *       maxValue, which are inclusive and unbounded by default.
+   * limit: maximum number of vertices to return, 1000 by default.
+   */
+  static class GetSearch extends ServerHttpHandler {
+    /**
+     * Maximum number of vertices returned unless a limit is requested.
+     */
+    private static final int DEFAULT_LIMIT = 1000;
+
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      String jobId = paramMap.get(ServerUtils.JOB_ID_KEY);
       // CHECKSTYLE: stop IllegalCatch
+      try {
+        if (jobId == null) {
+          throw new IllegalArgumentException("Missing mandatory params.");
+        }
+        double minValue = parseValue(paramMap, PageRequest.MIN_VALUE_KEY,
+          Double.NEGATIVE_INFINITY);
+        double maxValue = parseValue(paramMap, PageRequest.MAX_VALUE_KEY,
+          Double.POSITIVE_INFINITY);
+        if (paramMap.containsKey(ServerUtils.VALUE_KEY)) {
+          minValue = parseValue(paramMap, ServerUtils.VALUE_KEY, Double.NaN);
+          maxValue = minValue;
+        }
+        int limit = PageRequest.parseLimit(paramMap, DEFAULT_LIMIT);
+        // May throw IOException. Handled below.
+        List<Long> searchedSuperstepNos = this.getSuperstepRange(jobId,
+          paramMap);
+        if (searchedSuperstepNos == null) {
+          return;
+        }
+        // Asks for one more match than the limit to tell if it is reached.
+        Map<Long, Map<String, Double>> matches = ValueIndex.search(jobId,
+          searchedSuperstepNos, minValue, maxValue, limit + 1);
+        JSONObject matchesObj = new JSONObject();
+        int numMatches = 0;
+        for (Map.Entry<Long, Map<String, Double>> superstepMatches :
+          matches.entrySet()) {
+          JSONObject superstepObj = new JSONObject();
+          for (Map.Entry<String, Double> match :
+            superstepMatches.getValue().entrySet()) {
+            if (numMatches++ < limit) {
+              // As a string, as JSON has no NaN.
+              superstepObj.put(match.getKey(), String.valueOf(
+                match.getValue()));
+            }
+          }
+          if (superstepObj.length() > 0) {
+            matchesObj.put(Long.toString(superstepMatches.getKey()),
+              superstepObj);
+          }
+        }
+        JSONObject searchObj = new JSONObject();
+        searchObj.put("matches", matchesObj);
+        searchObj.put("truncated", numMatches > limit);
+        this.setJSONResponse(searchObj);
+      } catch (Exception e) {
+        this.handleException(e, String.format(
+          "Invalid parameters. %s is a mandatory parameter.",
+          ServerUtils.JOB_ID_KEY));
+      }
+      // CHECKSTYLE: resume IllegalCatch
+    }
+
+    /**
+     * @param paramMap map of parameters.
+     * @param key the parameter of a value bound.
+     * @param defaultValue the bound if none is given.
+     * @return the value bound.
+     * @throws InvalidParameterException thrown when the bound is not a
+     *         number.
+     */
+    private static double parseValue(Map<String, String> paramMap,
+      String key, double defaultValue) {
+      Double value = PageRequest.parseValue(paramMap, key);
+      return value == null ? defaultValue : value;
+    }
+  }
+
+  /**
+   * Returns the history of a given vertex of a given job: for each superstep
+   * it was debugged in, the types of its traces, its value after the
+   * superstep, and the number of messages it received and sent, read from
+   * one of its traces without decoding it, see
+   * {@link ServerUtils#readVertexSummary}. The supersteps are read in
+   * parallel.
+   *
+   * URL Params: {jobId, vertexId, [startSuperstepId], [endSuperstepId]}
+   * startSuperstepId, endSuperstepId: all supersteps traced by default.
+   */
+  static class GetVertexHistory extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      String jobId = paramMap.get(ServerUtils.JOB_ID_KEY);
+      String vertexId = paramMap.get(ServerUtils.VERTEX_ID_KEY);
+      // CHECKSTYLE: stop IllegalCatch
+      try {
+        if (jobId == null || vertexId == null) {
+          throw new IllegalArgumentException("Missing mandatory params.");
+        }
+        // May throw IOException. Handled below.
+        List<Long> superstepNos = this.getSuperstepRange(jobId, paramMap);
+        if (superstepNos == null) {
+          return;
+        }
+        JSONObject historyObj = new JSONObject();
+        for (Map.Entry<Long, JSONObject> summary : ScenarioBatchReader
+          .readVertexHistory(jobId, vertexId, superstepNos).entrySet()) {
+          historyObj.put(Long.toString(summary.getKey()), summary.getValue());
+        }
+        this.setJSONResponse(historyObj);
+      } catch (Exception e) {
+        this.handleException(e, String.format(
+          "Invalid parameters. %s and %s are mandatory parameters.",
+          ServerUtils.JOB_ID_KEY, ServerUtils.VERTEX_ID_KEY));
+      }
+      // CHECKSTYLE: resume IllegalCatch
+    }
+  }
+
+  /**
+   * Returns the metrics of the server in the Prometheus text format, see
+   * {@link ServerMetrics}.
+   *
+   * URL Params: none
+   */
+  static class GetMetrics extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      this.statusCode = HttpURLConnection.HTTP_OK;
+      this.responseContentType = PROMETHEUS_TEXT_TYPE;
+      this.streamingResponse = new StreamingResponse() {
+        @Override
+        public void writeTo(Writer writer) throws IOException {
+          ServerMetrics.write(writer);
+        }
+      };
     }
   }
 
@@ -299,6 +745,9 @@ public class Server {
         GiraphVertexScenarioWrapper giraphScenarioWrapper = ServerUtils
           .readScenarioFromTrace(jobId, superstepNo, vertexId.trim(),
             debugTrace);
+        if (giraphScenarioWrapper == null) {
+          throw new FileNotFoundException("Debug Trace not found.");
+        }
         ComputationComputeTestGenerator testGenerator =
           new ComputationComputeTestGenerator();
         String testClassName = String.format("%sTest_%s_S%s_V%s",
@@ -379,15 +828,19 @@ public class Server {
    *
    * URL Params: jobId, superstepId, violiationType It is an optional parameter
    *            and is only used when violationType = V
+   * The violations are paged as described in {@link PageRequest}, by task id
+   * for M and by vertex id for V and E. The vertex value bounds apply to V and
+   * E.
    */
   static class GetIntegrity extends ServerHttpHandler {
     /**
      * The server returns only a limited number of msg or vertex value
-     * violations. For message violations, it may not put the limit at exactly
-     * this number because it reads each violation trace which may include
-     * multiple message violations and adds all the violations in the trace to
-     * the response. Once the total message violations is over this number it
-     * stops reading traces.
+     * violations per page unless a limit is requested. For message
+     * violations, it may not put the limit at exactly this number because it
+     * reads each violation trace which may include multiple message
+     * violations and adds all the violations in the trace to the response.
+     * Once the total message violations is over this number it stops reading
+     * traces.
      */
     private static final int NUM_VIOLATIONS_THRESHOLD = 50;
 
@@ -408,69 +861,95 @@ public class Server {
         if (superstepNo < -1) {
           throw new NumberFormatException();
         }
+        if (this.checkTracesNotModified(jobId, superstepNo, superstepNo)) {
+          return;
+        }
         // JSON object that will be finally returned.
         JSONObject integrityObj = new JSONObject();
         // Message violation
         if (violationType.equals("M")) {
-          List<String> taskIds = ServerUtils.getTasksWithIntegrityViolations(
-            jobId, superstepNo, DebugTrace.INTEGRITY_MESSAGE_ALL);
+          PageRequest page = new PageRequest(paramMap,
+            NUM_VIOLATIONS_THRESHOLD);
+          List<String> taskIds = page.select(
+            ServerUtils.getTasksWithIntegrityViolations(jobId, superstepNo,
+              DebugTrace.INTEGRITY_MESSAGE_ALL));
 
           int numViolations = 0;
-          for (String taskId : taskIds) {
+          for (int i = 0; i < taskIds.size(); i++) {
+            String taskId = taskIds.get(i);
             MsgIntegrityViolationWrapper msgIntegrityViolationWrapper =
               ServerUtils.readMsgIntegrityViolationFromTrace(jobId, taskId,
                 superstepNo);
             integrityObj.put(taskId,
               ServerUtils.msgIntegrityToJson(msgIntegrityViolationWrapper));
             numViolations += msgIntegrityViolationWrapper.numMsgWrappers();
-            if (numViolations >= NUM_VIOLATIONS_THRESHOLD) {
+            if (numViolations >= page.getLimit()) {
+              setNextCursor(taskIds, i);
               break;
             }
           }
-          this.response = integrityObj.toString();
-          this.statusCode = HttpURLConnection.HTTP_OK;
+          this.setJSONResponse(integrityObj);
         } else if (violationType.equals("V")) {
-          List<String> vertexIds = ServerUtils.getVerticesDebugged(jobId,
-            superstepNo, DebugTrace.INTEGRITY_VERTEX);
+          PageRequest page = new PageRequest(paramMap,
+            NUM_VIOLATIONS_THRESHOLD);
+          List<String> vertexIds = page.select(
+            ServerUtils.getVerticesDebugged(jobId, superstepNo,
+              DebugTrace.INTEGRITY_VERTEX));
           int numViolations = 0;
-          for (String vertexId : vertexIds) {
+          for (int i = 0; i < vertexIds.size(); i++) {
+            String vertexId = vertexIds.get(i);
             GiraphVertexScenarioWrapper giraphVertexScenarioWrapper =
               ServerUtils.readVertexIntegrityViolationFromTrace(jobId,
                 superstepNo, vertexId);
+            if (!page.acceptsValue(giraphVertexScenarioWrapper
+              .getContextWrapper().getVertexValueAfterWrapper())) {
+              continue;
+            }
             numViolations++;
             integrityObj.put(vertexId,
               ServerUtils.vertexIntegrityToJson(giraphVertexScenarioWrapper));
-            if (numViolations >= NUM_VIOLATIONS_THRESHOLD) {
+            if (numViolations >= page.getLimit()) {
+              setNextCursor(vertexIds, i);
               break;
             }
           }
-          this.response = integrityObj.toString();
-          this.statusCode = HttpURLConnection.HTTP_OK;
+          this.setJSONResponse(integrityObj);
         } else if (violationType.equals("E")) {
           List<String> vertexIds = null;
+          PageRequest page = new PageRequest(paramMap, Integer.MAX_VALUE);
           // Get the single vertexId or the list of vertexIds (comma-separated).
           String rawVertexIds = paramMap.get(ServerUtils.VERTEX_ID_KEY);
           // No vertex Id supplied. Return exceptions for all vertices.
           if (rawVertexIds == null) {
             // Read exceptions for all vertices.
-            vertexIds = ServerUtils.getVerticesDebugged(jobId, superstepNo,
-              DebugTrace.VERTEX_EXCEPTION);
+            vertexIds = page.select(ServerUtils.getVerticesDebugged(jobId,
+              superstepNo, DebugTrace.VERTEX_EXCEPTION));
           } else {
             // Split the vertices by comma.
             vertexIds = Lists.newArrayList(rawVertexIds.split(","));
           }
           // Send JSON by default.
           JSONObject scenarioObj = new JSONObject();
-          for (String vertexId : vertexIds) {
-            GiraphVertexScenarioWrapper giraphScenarioWrapper;
-            giraphScenarioWrapper = ServerUtils.readScenarioFromTrace(jobId,
+          int numViolations = 0;
+          for (int i = 0; i < vertexIds.size(); i++) {
+            String vertexId = vertexIds.get(i);
+            JSONObject vertexScenarioObj = ServerUtils.readScenarioJSON(jobId,
               superstepNo, vertexId.trim(), DebugTrace.VERTEX_EXCEPTION);
-            scenarioObj.put(vertexId,
-              ServerUtils.scenarioToJSON(giraphScenarioWrapper));
+            if (vertexScenarioObj == null) {
+              throw new FileNotFoundException("Debug Trace not found.");
+            }
+            if (!page.acceptsValue(vertexScenarioObj.opt("vertexValue"))) {
+              continue;
+            }
+            numViolations++;
+            scenarioObj.put(vertexId, vertexScenarioObj);
+            if (numViolations >= page.getLimit()) {
+              setNextCursor(vertexIds, i);
+              break;
+            }
           }
-          // Set status as OK and convert JSONObject to string.
-          this.statusCode = HttpURLConnection.HTTP_OK;
-          this.response = scenarioObj.toString();
+          // Stream the JSONObject as the response.
+          this.setJSONResponse(scenarioObj);
         }
       } catch (Exception e) {
         this.handleException(e, String.format(
@@ -479,6 +958,20 @@ public class Server {
           ServerUtils.INTEGRITY_VIOLATION_TYPE_KEY));
       }
     }
+
+    /**
+     * Sends the cursor of the next page if there are ids left after the
+     * given one.
+     *
+     * @param ids the ids of the page and the pages after it.
+     * @param lastIndex index of the last id of the page.
+     */
+    private void setNextCursor(List<String> ids, int lastIndex) {
+      if (lastIndex < ids.size() - 1) {
+        this.setResponseHeader(PageRequest.NEXT_CURSOR_HEADER,
+          ids.get(lastIndex));
+      }
+    }
   }
 
   /**
@@ -17,23 +17,36 @@
  */
 package org.apache.giraph.debugger.gui;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.core.MediaType;
 
 import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import com.google.common.base.Charsets;
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 /**
- * The Abstract class for HTTP handlers.
+ * The Abstract class for HTTP handlers. The fields hold the state of a single
+ * request, so each request must be handled by its own instance; register
+ * handlers with {@link #forEachRequest(Class)}.
  */
 public abstract class ServerHttpHandler implements HttpHandler {
 
@@ -41,6 +54,20 @@ public abstract class ServerHttpHandler implements HttpHandler {
    * Logger for this class.
    */
   private static final Logger LOG = Logger.getLogger(ServerHttpHandler.class);
+  /**
+   * Minimum length of the responses to compress, as compressing shorter ones
+   * saves little.
+   */
+  static final int MIN_GZIP_LENGTH = 1024;
+  /**
+   * Size of the buffer used when compressing responses.
+   */
+  private static final int GZIP_BUFFER_SIZE = 8192;
+  /**
+   * Suffix of the ETags of compressed responses, which must differ from
+   * those of uncompressed ones.
+   */
+  static final String GZIP_ETAG_SUFFIX = "-gzip";
   /**
    * Response body.
    */
@@ -49,6 +76,33 @@ public abstract class ServerHttpHandler implements HttpHandler {
    * Response body as a byte array
    */
   protected byte[] responseBytes;
+  /**
+   * Writes the response body incrementally, for responses sent while they
+   * are still being produced. Used instead of the response fields when set
+   * and the status code is OK.
+   */
+  protected StreamingResponse streamingResponse;
+  /**
+   * Writes a binary response body incrementally, like
+   * {@link #streamingResponse}.
+   */
+  protected BinaryStreamingResponse binaryStreamingResponse;
+  /**
+   * Takes over the response body once the headers are sent, for responses
+   * written after the request is handled, e.g., event streams. Used instead
+   * of the response fields when set and the status code is OK.
+   */
+  protected DetachedResponse detachedResponse;
+  /**
+   * Version of what the response is built from, which its ETag is derived
+   * from, or null for responses without one.
+   */
+  protected String responseVersion;
+  /**
+   * Whether the response never changes, so that clients may cache it for
+   * good.
+   */
+  protected boolean immutableResponse;
   /**
    * Response status code. Please use HttpUrlConnection final static members.
    */
@@ -62,6 +116,85 @@ public abstract class ServerHttpHandler implements HttpHandler {
    */
   protected HttpExchange httpExchange;
 
+  /**
+   * A response body written incrementally.
+   */
+  protected interface StreamingResponse {
+    /**
+     * Writes the response body. The status code and headers are sent already,
+     * so failures can only cut the response short.
+     *
+     * @param writer the writer to the response body.
+     * @throws IOException thrown when the response cannot be produced or
+     *         written.
+     */
+    void writeTo(Writer writer) throws IOException;
+  }
+
+  /**
+   * A binary response body written incrementally.
+   */
+  protected interface BinaryStreamingResponse {
+    /**
+     * Writes the response body, see {@link StreamingResponse#writeTo}.
+     *
+     * @param out the stream to the response body.
+     * @throws IOException thrown when the response cannot be produced or
+     *         written.
+     */
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  /**
+   * A response body written after the request is handled, so that long-lived
+   * responses do not hold a request thread.
+   */
+  protected interface DetachedResponse {
+    /**
+     * Takes over the response body, which must be closed once the response
+     * is over. The status code and headers are sent already.
+     *
+     * @param body the response body.
+     * @throws IOException thrown when the response cannot be started.
+     */
+    void attach(OutputStream body) throws IOException;
+  }
+
+  /**
+   * Creates a handler that handles each request with a new instance of the
+   * given handler class, so that requests handled concurrently do not share
+   * their response.
+   *
+   * @param handlerClass the class of the handler, with a constructor without
+   *        arguments.
+   * @return the handler to register with the server.
+   * @throws IllegalArgumentException thrown when the class has no
+   *         constructor without arguments.
+   */
+  public static HttpHandler forEachRequest(
+    final Class<? extends ServerHttpHandler> handlerClass) {
+    final Constructor<? extends ServerHttpHandler> constructor;
+    try {
+      constructor = handlerClass.getDeclaredConstructor();
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException("Handler " + handlerClass.getName() +
+        " has no constructor without arguments", e);
+    }
+    return new HttpHandler() {
+      @Override
+      public void handle(HttpExchange httpExchange) throws IOException {
+        ServerHttpHandler handler;
+        try {
+          handler = constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+          throw new IllegalStateException("Cannot create handler " +
+            handlerClass.getName(), e);
+        }
+        handler.handle(httpExchange);
+      }
+    };
+  }
+
   /**
    * Handles an HTTP call's lifecycle - read parameters, process and send
    * response.
@@ -84,6 +217,15 @@ public abstract class ServerHttpHandler implements HttpHandler {
       this.statusCode = HttpURLConnection.HTTP_BAD_REQUEST;
       this.response = "Malformed URL. Given encoding is not supported.";
     }
+    if (this.statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      // Cross-origin clients need the CORS headers to see the 304 too.
+      this.setMandatoryResponseHeaders();
+      this.setCachingHeaders(null);
+      // A length of -1 sends no body.
+      this.httpExchange.sendResponseHeaders(this.statusCode, -1);
+      this.httpExchange.close();
+      return;
+    }
     // In case of an error statusCode, we just write the exception string.
     // (Consider using JSON).
     if (this.statusCode != HttpURLConnection.HTTP_OK) {
@@ -95,21 +237,295 @@ public abstract class ServerHttpHandler implements HttpHandler {
   }
 
   /**
-   * Writes the text response.
+   * Writes the response, gzip-compressed if the client accepts it. Streaming
+   * and compressed responses are sent with chunked transfer encoding, others
+   * with their length in bytes.
    */
   private void writeResponse() throws IOException {
-    OutputStream os = this.httpExchange.getResponseBody();
+    if (this.detachedResponse != null &&
+      this.statusCode == HttpURLConnection.HTTP_OK) {
+      // Sent uncompressed and chunked, as it is written a bit at a time.
+      this.httpExchange.sendResponseHeaders(this.statusCode, 0);
+      this.detachedResponse.attach(this.httpExchange.getResponseBody());
+      return;
+    }
+    boolean gzip = acceptsGzip();
+    if (gzip) {
+      setResponseHeader("Content-Encoding", "gzip");
+    }
+    if (this.statusCode == HttpURLConnection.HTTP_OK) {
+      setCachingHeaders(gzip ? GZIP_ETAG_SUFFIX : "");
+    }
+    if ((this.streamingResponse != null ||
+      this.binaryStreamingResponse != null) &&
+      this.statusCode == HttpURLConnection.HTTP_OK) {
+      // A zero length makes the response chunked.
+      this.httpExchange.sendResponseHeaders(this.statusCode, 0);
+      try (OutputStream out = new BufferedOutputStream(openResponseBody(gzip),
+        GZIP_BUFFER_SIZE)) {
+        if (this.binaryStreamingResponse != null) {
+          this.binaryStreamingResponse.writeTo(out);
+        } else {
+          Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+          this.streamingResponse.writeTo(writer);
+          writer.flush();
+        }
+      } catch (IOException e) {
+        LOG.error("Response cut short: " + e);
+        throw e;
+      }
+      return;
+    }
+    byte[] bytes;
     if (this.responseContentType == MediaType.APPLICATION_JSON ||
       this.responseContentType == MediaType.TEXT_PLAIN) {
-      this.httpExchange.sendResponseHeaders(this.statusCode,
-        this.response.length());
-      os.write(this.response.getBytes());
+      bytes = this.response.getBytes(Charsets.UTF_8);
     } else if (this.responseContentType == MediaType.APPLICATION_OCTET_STREAM) {
-      this.httpExchange.sendResponseHeaders(this.statusCode,
-        this.responseBytes.length);
-      os.write(this.responseBytes);
+      bytes = this.responseBytes;
+    } else {
+      bytes = new byte[0];
+    }
+    this.httpExchange.sendResponseHeaders(this.statusCode, gzip ? 0 :
+      bytes.length);
+    try (OutputStream os = openResponseBody(gzip)) {
+      os.write(bytes);
+    }
+  }
+
+  /**
+   * Makes the response conditional on the version of what it is built from:
+   * it is sent with an ETag derived from the version, and requests whose
+   * If-None-Match names that ETag are answered with 304 Not Modified. Call
+   * before building the response, which need not be built if this returns
+   * true.
+   *
+   * @param version the version of what the response is built from, or null
+   *        if it has none, which leaves the response unconditional.
+   * @param immutable whether the response never changes, e.g., because it is
+   *        built from supersteps that are over.
+   * @return true if the client has the response already.
+   */
+  protected boolean checkNotModified(String version, boolean immutable) {
+    this.responseVersion = version;
+    this.immutableResponse = immutable;
+    if (version == null) {
+      return false;
+    }
+    String eTag = getMatchingETag(this.httpExchange.getRequestHeaders(),
+      getETag(""), getETag(GZIP_ETAG_SUFFIX));
+    if (eTag == null) {
+      return false;
+    }
+    this.statusCode = HttpURLConnection.HTTP_NOT_MODIFIED;
+    setResponseHeader("ETag", eTag);
+    return true;
+  }
+
+  /**
+   * @param requestHeaders the headers of a request.
+   * @param eTag the ETag of the uncompressed response.
+   * @param gzipETag the ETag of the compressed response.
+   * @return the one of the ETags the If-None-Match header of the request
+   *         names, or null if it names neither.
+   */
+  static String getMatchingETag(Headers requestHeaders, String eTag,
+    String gzipETag) {
+    String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+    if (ifNoneMatch == null) {
+      return null;
+    }
+    for (String requestETag : ifNoneMatch.split(",")) {
+      // If-None-Match compares ETags weakly.
+      requestETag = requestETag.trim().replaceFirst("^W/", "");
+      if (requestETag.equals("*") || requestETag.equals(eTag)) {
+        return eTag;
+      } else if (requestETag.equals(gzipETag)) {
+        return gzipETag;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes the response conditional on the version of the traces of the given
+   * supersteps of a job, see {@link #checkNotModified(String, boolean)}. The
+   * response is immutable once the last of the supersteps is over.
+   *
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep the response is built from.
+   * @param lastSuperstepNo the last superstep the response is built from.
+   * @return true if the client has the response already.
+   */
+  protected boolean checkTracesNotModified(String jobId,
+    long firstSuperstepNo, long lastSuperstepNo) throws IOException {
+    return checkNotModified(ServerUtils.getTraceVersion(jobId,
+      firstSuperstepNo, lastSuperstepNo), ServerUtils.isSuperstepCompleted(
+      jobId, lastSuperstepNo));
+  }
+
+  /**
+   * Returns the supersteps traced for a job in the range given by the
+   * startSuperstepId and endSuperstepId parameters, which default to the
+   * first and last supersteps traced, and makes the response conditional on
+   * their traces, see {@link #checkTracesNotModified}.
+   *
+   * @param jobId id of the job.
+   * @param paramMap map of parameters.
+   * @return the supersteps in increasing order, or null if the client has
+   *         the response already.
+   * @throws NumberFormatException thrown when a bound is not a number.
+   */
+  protected List<Long> getSuperstepRange(String jobId,
+    Map<String, String> paramMap) throws IOException {
+    List<Long> superstepNos = ServerUtils.getSuperstepsDebugged(jobId);
+    Collections.sort(superstepNos);
+    long startSuperstepNo = superstepNos.isEmpty() ? -1 : superstepNos.get(0);
+    long endSuperstepNo = superstepNos.isEmpty() ? -1 :
+      superstepNos.get(superstepNos.size() - 1);
+    String startSuperstepId = paramMap.get(
+      ServerUtils.START_SUPERSTEP_ID_KEY);
+    if (startSuperstepId != null) {
+      startSuperstepNo = Long.parseLong(startSuperstepId);
+    }
+    String endSuperstepId = paramMap.get(ServerUtils.END_SUPERSTEP_ID_KEY);
+    if (endSuperstepId != null) {
+      endSuperstepNo = Long.parseLong(endSuperstepId);
     }
-    os.close();
+    if (checkTracesNotModified(jobId, startSuperstepNo, endSuperstepNo)) {
+      return null;
+    }
+    List<Long> rangeSuperstepNos = new ArrayList<>();
+    for (long superstepNo : superstepNos) {
+      if (superstepNo >= startSuperstepNo && superstepNo <= endSuperstepNo) {
+        rangeSuperstepNos.add(superstepNo);
+      }
+    }
+    return rangeSuperstepNos;
+  }
+
+  /**
+   * @param paramMap map of parameters.
+   * @return true if the traces are asked for as stored, see
+   *         {@link ServerUtils#RAW_KEY}.
+   */
+  protected static boolean isRaw(Map<String, String> paramMap) {
+    String raw = paramMap.get(ServerUtils.RAW_KEY);
+    return raw != null && !raw.equalsIgnoreCase("false");
+  }
+
+  /**
+   * Streams the regular traces of the given supersteps as stored, see
+   * {@link ScenarioBatchReader#writeRawScenarios}.
+   *
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep to send.
+   * @param lastSuperstepNo the last superstep to send.
+   * @param vertexIds the vertices to send, or null to send all vertices
+   *        debugged in each superstep.
+   */
+  protected void setRawResponse(final String jobId,
+    final long firstSuperstepNo, final long lastSuperstepNo,
+    final List<String> vertexIds) {
+    this.responseContentType = MediaType.APPLICATION_OCTET_STREAM;
+    this.binaryStreamingResponse = new BinaryStreamingResponse() {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        ScenarioBatchReader.writeRawScenarios(out, jobId, firstSuperstepNo,
+          lastSuperstepNo, vertexIds);
+      }
+    };
+  }
+
+  /**
+   * Sets the ETag and Cache-Control headers of responses with a version.
+   *
+   * @param eTagSuffix suffix telling the encodings of the response apart,
+   *        or null if the ETag is set already.
+   */
+  private void setCachingHeaders(String eTagSuffix) {
+    if (this.responseVersion == null) {
+      return;
+    }
+    if (eTagSuffix != null) {
+      setResponseHeader("ETag", getETag(eTagSuffix));
+    }
+    // Mutable responses may be cached too, but must be revalidated.
+    setResponseHeader("Cache-Control", this.immutableResponse ?
+      "public, max-age=31536000, immutable" : "no-cache");
+  }
+
+  /**
+   * @param eTagSuffix suffix telling the encodings of the response apart.
+   * @return the strong ETag of the response.
+   */
+  private String getETag(String eTagSuffix) {
+    return "\"" + this.responseVersion + eTagSuffix + "\"";
+  }
+
+  /**
+   * @param gzip whether to compress the response body.
+   * @return the stream to write the response body to.
+   */
+  private OutputStream openResponseBody(boolean gzip) throws IOException {
+    OutputStream os = this.httpExchange.getResponseBody();
+    return gzip ? new GZIPOutputStream(os, GZIP_BUFFER_SIZE) : os;
+  }
+
+  /**
+   * @return true if the client accepts gzip-compressed responses and the
+   *         response is worth compressing.
+   */
+  private boolean acceptsGzip() {
+    if (this.streamingResponse == null &&
+      this.binaryStreamingResponse == null &&
+      (this.response == null || this.response.length() < MIN_GZIP_LENGTH) &&
+      (this.responseBytes == null ||
+      this.responseBytes.length < MIN_GZIP_LENGTH)) {
+      return false;
+    }
+    return acceptsGzip(this.httpExchange.getRequestHeaders());
+  }
+
+  /**
+   * @param requestHeaders the headers of a request.
+   * @return true if the client accepts gzip-compressed responses.
+   */
+  static boolean acceptsGzip(Headers requestHeaders) {
+    String acceptEncoding = requestHeaders.getFirst("Accept-Encoding");
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      if (parts[0].trim().equalsIgnoreCase("gzip")) {
+        // A quality of zero means the client refuses gzip.
+        return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sends the given JSON object as the response, written straight to the
+   * response body rather than built as a string first.
+   *
+   * @param json the response.
+   */
+  protected void setJSONResponse(final JSONObject json) {
+    this.statusCode = HttpURLConnection.HTTP_OK;
+    this.streamingResponse = new StreamingResponse() {
+      @Override
+      public void writeTo(Writer writer) throws IOException {
+        long startTime = System.nanoTime();
+        try {
+          json.write(writer);
+        } catch (JSONException e) {
+          throw new IOException(e);
+        } finally {
+          ServerMetrics.observeJsonWrite(startTime);
+        }
+      }
+    };
   }
 
   /**
@@ -121,7 +537,11 @@ public abstract class ServerHttpHandler implements HttpHandler {
     // ENVIRONMENT**
     Headers headers = this.httpExchange.getResponseHeaders();
     headers.add("Access-Control-Allow-Origin", "*");
+    headers.add("Access-Control-Expose-Headers",
+      PageRequest.NEXT_CURSOR_HEADER);
     headers.add("Content-Type", this.responseContentType);
+    // Responses are compressed depending on the request's Accept-Encoding.
+    headers.add("Vary", "Accept-Encoding");
   }
 
   /**
@@ -147,7 +567,10 @@ public abstract class ServerHttpHandler implements HttpHandler {
   protected void handleException(Exception e, String illegalArgumentMessage) {
     e.printStackTrace();
     LOG.error(e);
-    if (e instanceof NumberFormatException) {
+    if (e instanceof InvalidParameterException) {
+      this.statusCode = HttpURLConnection.HTTP_BAD_REQUEST;
+      this.response = e.getMessage();
+    } else if (e instanceof NumberFormatException) {
       this.statusCode = HttpURLConnection.HTTP_BAD_REQUEST;
       this.response = String.format("%s must be an integer >= -1.",
         ServerUtils.SUPERSTEP_ID_KEY);
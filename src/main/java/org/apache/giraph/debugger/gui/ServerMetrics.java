@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.cache.CacheStats;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Metrics of the GUI server, for telling whether a slow GUI waits on the
+ * trace store, on decoding traces or on rendering them as JSON, written in
+ * the Prometheus text format by /metrics:
+ * <ul>
+ * <li>the number of requests per endpoint and status code, and a histogram
+ * of the time to handle them per endpoint. Event streams only count the
+ * time to start them.
+ * <li>the number of trace files opened, the bytes read from them and the
+ * time spent opening and reading them, see {@link MeteredTraceStore}.
+ * <li>histograms of the time to decode traces and to render scenarios as
+ * JSON, once read.
+ * <li>the hits, misses, evictions and entries of the caches of the server.
+ * </ul>
+ */
+final class ServerMetrics {
+
+  /**
+   * Number of trace files opened.
+   */
+  static final AtomicLong TRACE_FILES_OPENED = new AtomicLong();
+  /**
+   * Number of bytes read from trace files.
+   */
+  static final AtomicLong TRACE_BYTES_READ = new AtomicLong();
+  /**
+   * Time in nanoseconds spent opening and reading trace files.
+   */
+  static final AtomicLong TRACE_READ_NANOS = new AtomicLong();
+
+  /**
+   * Prefix of the names of the metrics.
+   */
+  private static final String PREFIX = "giraph_debugger_";
+  /**
+   * Upper bounds in seconds of the buckets of the histograms.
+   */
+  private static final double[] BUCKETS = {0.0001, 0.0005, 0.001, 0.005,
+    0.01, 0.05, 0.1, 0.5, 1, 5, 10 };
+
+  /**
+   * Times to decode a trace read into a wrapper.
+   */
+  private static final Histogram TRACE_DECODE_TIMES = new Histogram();
+  /**
+   * Times to render a scenario as JSON.
+   */
+  private static final Histogram JSON_RENDER_TIMES = new Histogram();
+  /**
+   * Times to write a JSON response as text.
+   */
+  private static final Histogram JSON_WRITE_TIMES = new Histogram();
+
+  /**
+   * Times to handle a request by endpoint.
+   */
+  private static final ConcurrentMap<String, Histogram> REQUEST_TIMES =
+    new ConcurrentHashMap<>();
+  /**
+   * Number of requests by status code by endpoint.
+   */
+  private static final ConcurrentMap<String, ConcurrentMap<Integer,
+    AtomicLong>> REQUEST_COUNTS = new ConcurrentHashMap<>();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private ServerMetrics() { }
+
+  /**
+   * Wraps the handler of an endpoint to count its requests and the time to
+   * handle them.
+   *
+   * @param endpoint the path the handler is registered at.
+   * @param handler the handler.
+   * @return the handler to register instead.
+   */
+  static HttpHandler instrument(final String endpoint,
+    final HttpHandler handler) {
+    final Histogram requestTimes = new Histogram();
+    REQUEST_TIMES.put(endpoint, requestTimes);
+    final ConcurrentMap<Integer, AtomicLong> requestCounts =
+      new ConcurrentHashMap<>();
+    REQUEST_COUNTS.put(endpoint, requestCounts);
+    return new HttpHandler() {
+      @Override
+      public void handle(HttpExchange httpExchange) throws IOException {
+        long startTime = System.nanoTime();
+        try {
+          handler.handle(httpExchange);
+        } finally {
+          requestTimes.observeSince(startTime);
+          // -1 if the handler failed before sending a response.
+          int statusCode = httpExchange.getResponseCode();
+          AtomicLong count = requestCounts.get(statusCode);
+          if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = requestCounts.putIfAbsent(statusCode, newCount);
+            if (count == null) {
+              count = newCount;
+            }
+          }
+          count.incrementAndGet();
+        }
+      }
+    };
+  }
+
+  /**
+   * @param startTime when the decoding of a trace started, as by
+   *        {@link System#nanoTime()}.
+   */
+  static void observeTraceDecode(long startTime) {
+    TRACE_DECODE_TIMES.observeSince(startTime);
+  }
+
+  /**
+   * @param startTime when the rendering of a scenario as JSON started, as by
+   *        {@link System#nanoTime()}.
+   */
+  static void observeJsonRender(long startTime) {
+    JSON_RENDER_TIMES.observeSince(startTime);
+  }
+
+  /**
+   * @param startTime when the writing of a JSON response started, as by
+   *        {@link System#nanoTime()}.
+   */
+  static void observeJsonWrite(long startTime) {
+    JSON_WRITE_TIMES.observeSince(startTime);
+  }
+
+  /**
+   * Writes all metrics in the Prometheus text format.
+   *
+   * @param writer the writer to write the metrics to.
+   * @throws IOException thrown when the metrics cannot be written.
+   */
+  static void write(Writer writer) throws IOException {
+    writeHeader(writer, "http_requests_total", "counter",
+      "Requests handled, by endpoint and status code.");
+    for (Map.Entry<String, ConcurrentMap<Integer, AtomicLong>> endpoint :
+      new TreeMap<>(REQUEST_COUNTS).entrySet()) {
+      for (Map.Entry<Integer, AtomicLong> count : new TreeMap<>(
+        endpoint.getValue()).entrySet()) {
+        writeSample(writer, "http_requests_total", "endpoint=\"" +
+          endpoint.getKey() + "\",code=\"" + count.getKey() + "\"",
+          count.getValue().get());
+      }
+    }
+    writeHeader(writer, "http_request_duration_seconds", "histogram",
+      "Time to handle a request, by endpoint.");
+    for (Map.Entry<String, Histogram> endpoint :
+      new TreeMap<>(REQUEST_TIMES).entrySet()) {
+      endpoint.getValue().write(writer, "http_request_duration_seconds",
+        "endpoint=\"" + endpoint.getKey() + "\",");
+    }
+    writeHeader(writer, "trace_files_opened_total", "counter",
+      "Trace files opened.");
+    writeSample(writer, "trace_files_opened_total", null,
+      TRACE_FILES_OPENED.get());
+    writeHeader(writer, "trace_read_bytes_total", "counter",
+      "Bytes read from trace files.");
+    writeSample(writer, "trace_read_bytes_total", null,
+      TRACE_BYTES_READ.get());
+    writeHeader(writer, "trace_read_seconds_total", "counter",
+      "Time spent opening and reading trace files.");
+    writeSample(writer, "trace_read_seconds_total", null,
+      toSeconds(TRACE_READ_NANOS.get()));
+    writeHeader(writer, "trace_decode_duration_seconds", "histogram",
+      "Time to decode a trace once read, in full if it is rendered as JSON.");
+    TRACE_DECODE_TIMES.write(writer, "trace_decode_duration_seconds", "");
+    writeHeader(writer, "json_render_duration_seconds", "histogram",
+      "Time to render a scenario as JSON.");
+    JSON_RENDER_TIMES.write(writer, "json_render_duration_seconds", "");
+    writeHeader(writer, "json_write_duration_seconds", "histogram",
+      "Time to write a JSON response, including sending it.");
+    JSON_WRITE_TIMES.write(writer, "json_write_duration_seconds", "");
+    Map<String, CacheStats> cacheStats = new TreeMap<>();
+    cacheStats.put("scenario", ScenarioCache.getStats());
+    cacheStats.put("state_snapshot", GraphStates.getCacheStats());
+    cacheStats.put("value_index", ValueIndex.getCacheStats());
+    Map<String, Long> cacheSizes = new TreeMap<>();
+    cacheSizes.put("scenario", ScenarioCache.size());
+    cacheSizes.put("state_snapshot", GraphStates.getCacheSize());
+    cacheSizes.put("value_index", ValueIndex.getCacheSize());
+    writeHeader(writer, "cache_hits_total", "counter", "Cache hits.");
+    for (Map.Entry<String, CacheStats> cache : cacheStats.entrySet()) {
+      writeSample(writer, "cache_hits_total", "cache=\"" + cache.getKey() +
+        "\"", cache.getValue().hitCount());
+    }
+    writeHeader(writer, "cache_misses_total", "counter", "Cache misses.");
+    for (Map.Entry<String, CacheStats> cache : cacheStats.entrySet()) {
+      writeSample(writer, "cache_misses_total", "cache=\"" + cache.getKey() +
+        "\"", cache.getValue().missCount());
+    }
+    writeHeader(writer, "cache_evictions_total", "counter",
+      "Entries evicted from caches.");
+    for (Map.Entry<String, CacheStats> cache : cacheStats.entrySet()) {
+      writeSample(writer, "cache_evictions_total", "cache=\"" +
+        cache.getKey() + "\"", cache.getValue().evictionCount());
+    }
+    writeHeader(writer, "cache_entries", "gauge", "Entries in caches.");
+    for (Map.Entry<String, Long> cache : cacheSizes.entrySet()) {
+      writeSample(writer, "cache_entries", "cache=\"" + cache.getKey() +
+        "\"", cache.getValue());
+    }
+  }
+
+  /**
+   * @param writer the writer to write the metric to.
+   * @param name name of the metric, without the prefix.
+   * @param type type of the metric.
+   * @param help description of the metric.
+   */
+  private static void writeHeader(Writer writer, String name, String type,
+    String help) throws IOException {
+    writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+    writer.write("# TYPE " + PREFIX + name + " " + type + "\n");
+  }
+
+  /**
+   * @param writer the writer to write the sample to.
+   * @param name name of the sample, without the prefix.
+   * @param labels labels of the sample, or null.
+   * @param value value of the sample.
+   */
+  private static void writeSample(Writer writer, String name, String labels,
+    Object value) throws IOException {
+    writer.write(PREFIX + name + (labels == null ? "" : "{" + labels + "}") +
+      " " + value + "\n");
+  }
+
+  /**
+   * @param nanos a time in nanoseconds.
+   * @return the time in seconds.
+   */
+  private static double toSeconds(long nanos) {
+    return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+
+  /**
+   * A histogram of times, with buckets bounded by {@link #BUCKETS}.
+   */
+  private static class Histogram {
+    /**
+     * Number of times in each bucket, and above the last one.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(
+      BUCKETS.length + 1);
+    /**
+     * Sum of the times in nanoseconds.
+     */
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    /**
+     * @param startTime when what is timed started, as by
+     *        {@link System#nanoTime()}.
+     */
+    void observeSince(long startTime) {
+      long nanos = System.nanoTime() - startTime;
+      double seconds = toSeconds(nanos);
+      int bucket = 0;
+      while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+        bucket++;
+      }
+      counts.incrementAndGet(bucket);
+      sumNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Writes the samples of the histogram.
+     *
+     * @param writer the writer to write the samples to.
+     * @param name name of the histogram, without the prefix.
+     * @param labels labels of the histogram, each followed by a comma.
+     */
+    void write(Writer writer, String name, String labels) throws IOException {
+      long count = 0;
+      for (int bucket = 0; bucket <= BUCKETS.length; bucket++) {
+        count += counts.get(bucket);
+        writeSample(writer, name + "_bucket", labels + "le=\"" +
+          (bucket < BUCKETS.length ? Double.toString(BUCKETS[bucket]) :
+          "+Inf") + "\"", count);
+      }
+      String sumLabels = labels.isEmpty() ? null : labels.substring(0,
+        labels.length() - 1);
+      writeSample(writer, name + "_sum", sumLabels, toSeconds(
+        sumNanos.get()));
+      writeSample(writer, name + "_count", sumLabels, count);
+    }
+  }
+}
@@ -17,23 +17,29 @@
  */
 package org.apache.giraph.debugger.gui;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URL;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.giraph.debugger.Manifest.TraceManifestEntry;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
 import org.apache.giraph.debugger.utils.AggregatedValueWrapper;
+import org.apache.giraph.debugger.utils.BaseWrapper;
 import org.apache.giraph.debugger.utils.DebuggerUtils;
 import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
 import org.apache.giraph.debugger.utils.ExceptionWrapper;
@@ -42,13 +48,20 @@ import org.apache.giraph.debugger.utils.GiraphVertexScenarioWrapper;
 import org.apache.giraph.debugger.utils.GiraphVertexScenarioWrapper.VertexContextWrapper;
 import org.apache.giraph.debugger.utils.GiraphVertexScenarioWrapper.VertexContextWrapper.NeighborWrapper;
 import org.apache.giraph.debugger.utils.GiraphVertexScenarioWrapper.VertexContextWrapper.OutgoingMessageWrapper;
+import org.apache.giraph.debugger.utils.JobClassLoaders;
 import org.apache.giraph.debugger.utils.MsgIntegrityViolationWrapper;
 import org.apache.giraph.debugger.utils.MsgIntegrityViolationWrapper.ExtendedOutgoingMessageWrapper;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FileStatus;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
+import org.apache.giraph.debugger.utils.TraceBlobResolver;
+import org.apache.giraph.debugger.utils.TraceFileStatus;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceStore;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.apache.giraph.debugger.utils.TraceTypeRegistry;
+import org.apache.giraph.debugger.utils.TraceWritableCodec;
+import org.apache.giraph.utils.WritableUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Writable;
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -57,6 +70,10 @@ import org.json.JSONObject;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 
 /**
  * Utility methods for Debugger Server.
@@ -75,6 +92,23 @@ public class ServerUtils {
    * String for specifying the superstep id parameter.
    */
   public static final String SUPERSTEP_ID_KEY = "superstepId";
+  /**
+   * String for specifying the first superstep of a range of supersteps.
+   */
+  public static final String START_SUPERSTEP_ID_KEY = "startSuperstepId";
+  /**
+   * String for specifying the last superstep of a range of supersteps.
+   */
+  public static final String END_SUPERSTEP_ID_KEY = "endSuperstepId";
+  /**
+   * String for specifying that traces are sent as stored, as length-delimited
+   * protocol buffers instead of JSON.
+   */
+  public static final String RAW_KEY = "raw";
+  /**
+   * String for specifying the vertex value to search for.
+   */
+  public static final String VALUE_KEY = "value";
   /**
    * String for specifying the type of integrity violation parameter.
    */
@@ -98,9 +132,17 @@ public class ServerUtils {
   private static final Logger LOG = Logger.getLogger(ServerUtils.class);
 
   /**
-   * Cached FileSystem opened by {@link #getFileSystem()}.
+   * Layouts of the jobs that recorded one. Jobs without a recorded layout
+   * are not cached, as their layout may only be recorded later.
+   */
+  private static final Map<String, TraceLayout> TRACE_LAYOUTS =
+    new ConcurrentHashMap<>();
+
+  /**
+   * The store returned by {@link #getTraceStore()}, wrapping the default
+   * store.
    */
-  private static FileSystem FILE_SYSTEM_CACHED;
+  private static volatile MeteredTraceStore METERED_TRACE_STORE;
 
   /**
    * Private constructor to disallow construction.
@@ -122,7 +164,9 @@ public class ServerUtils {
       for (String param : params) {
         String[] parts = param.split("=");
         String paramKey = URLDecoder.decode(parts[0], "UTF-8");
-        String paramValue = URLDecoder.decode(parts[1], "UTF-8");
+        // Parameters without a value, e.g., flags, map to an empty string.
+        String paramValue = parts.length > 1 ? URLDecoder.decode(parts[1],
+          "UTF-8") : "";
         paramMap.put(paramKey, paramValue);
       }
     }
@@ -130,54 +174,267 @@ public class ServerUtils {
   }
 
   /**
-   * Returns the HDFS FileSystem reference. Note: We assume that the classpath
-   * contains the Hadoop's conf directory or the core-site.xml and hdfs-site.xml
-   * configuration directories.
-   * @return a {@link FileSystem} object to be used to read from HDFS.
+   * Returns the {@link TraceStore} traces are read from, which counts its
+   * reads in the {@link ServerMetrics}. Note: For the default
+   * HDFS store, we assume that the classpath contains the Hadoop's conf
+   * directory or the core-site.xml and hdfs-site.xml configuration
+   * directories.
+   * @return a {@link TraceStore} object to be used to read traces.
+   */
+  public static TraceStore getTraceStore() throws IOException {
+    TraceStore traceStore = TraceStores.getDefault();
+    MeteredTraceStore meteredTraceStore = METERED_TRACE_STORE;
+    // The default store may be replaced, e.g., in benchmarks.
+    if (meteredTraceStore == null || !meteredTraceStore.wraps(traceStore)) {
+      meteredTraceStore = new MeteredTraceStore(traceStore);
+      METERED_TRACE_STORE = meteredTraceStore;
+    }
+    return meteredTraceStore;
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @return the layout the trace files of the job are stored in.
    */
-  public static FileSystem getFileSystem() throws IOException {
-    if (FILE_SYSTEM_CACHED == null) {
-      Configuration configuration = new Configuration();
-      FILE_SYSTEM_CACHED = FileSystem.get(configuration);
+  public static TraceLayout getTraceLayout(String jobId) throws IOException {
+    TraceLayout traceLayout = TRACE_LAYOUTS.get(jobId);
+    if (traceLayout == null) {
+      traceLayout = TraceLayout.load(getTraceStore(), jobId);
+      if (traceLayout != TraceLayout.FLAT) {
+        TRACE_LAYOUTS.put(jobId, traceLayout);
+      }
     }
-    return FILE_SYSTEM_CACHED;
+    return traceLayout;
   }
 
   /**
-   * @param jobId id of the job, whose jar path will be returned.
-   * @return a url wrapped inside an array for convenience.
+   * Loads a trace into the given wrapper, resolving the classes it names with
+   * the class loader of the job's jar. Traces of compacted jobs are read from
+   * the archive segment the job's index points to.
+   *
+   * @param wrapper the wrapper to load the trace into.
+   * @param jobId id of the job.
+   * @param superstepNo superstep number of the trace.
+   * @param traceFilePath path of the trace file as given by the layout.
    */
-  public static URL[] getCachedJobJarPath(String jobId) {
-    // read the jar signature file under the TRACE_ROOT/jobId/
-    Path jarSignaturePath = new Path(DebuggerUtils.getTraceFileRoot(jobId) +
-      "/" + "jar.signature");
-    try {
-      FileSystem fs = getFileSystem();
-      try (FSDataInputStream jarSignatureInput = fs.open(jarSignaturePath)) {
-        List<String> lines = IOUtils.readLines(jarSignatureInput);
-        if (lines.size() > 0) {
-          String jarSignature = lines.get(0);
-          // check if jar is already in JARCACHE_LOCAL
-          File localFile = new File(DebuggerUtils.JARCACHE_LOCAL + "/" +
-            jarSignature + ".jar");
-          if (!localFile.exists()) {
-            // otherwise, download from HDFS
-            Path hdfsPath = new Path(fs.getUri().resolve(
-              DebuggerUtils.JARCACHE_HDFS + "/" + jarSignature + ".jar"));
-            Logger.getLogger(ServerUtils.class).info(
-              "Copying from HDFS: " + hdfsPath + " to " + localFile);
-            localFile.getParentFile().mkdirs();
-            fs.copyToLocalFile(hdfsPath, new Path(localFile.toURI()));
-          }
-          return new URL[] { localFile.toURI().toURL() };
+  private static void loadTrace(BaseWrapper wrapper, String jobId,
+    long superstepNo, String traceFilePath) throws IOException,
+    ClassNotFoundException, InstantiationException, IllegalAccessException {
+    loadTrace(wrapper, jobId, superstepNo, traceFilePath, false);
+  }
+
+  /**
+   * Loads a trace into the given wrapper like
+   * {@link #loadTrace(BaseWrapper, String, long, String)}, optionally
+   * decoding the lazily decoded parts of vertex scenarios too, so that they
+   * are timed as part of the decoding rather than of what reads them.
+   *
+   * @param wrapper the wrapper to load the trace into.
+   * @param jobId id of the job.
+   * @param superstepNo superstep number of the trace.
+   * @param traceFilePath path of the trace file as given by the layout.
+   * @param decodeAll whether to decode the neighbors, messages and
+   *        aggregated values of a vertex scenario now.
+   */
+  private static void loadTrace(BaseWrapper wrapper, String jobId,
+    long superstepNo, String traceFilePath, boolean decodeAll)
+    throws IOException, ClassNotFoundException, InstantiationException,
+    IllegalAccessException {
+    // Read in full first, so that the decoding is timed on its own.
+    byte[] trace;
+    try (InputStream input = openTrace(jobId, superstepNo, traceFilePath)) {
+      trace = ByteStreams.toByteArray(input);
+    }
+    long startTime = System.nanoTime();
+    wrapper.loadFromStream(getTraceStore(), jobId, new ByteArrayInputStream(
+      trace), getJobClassLoader(jobId));
+    if (decodeAll && wrapper instanceof GiraphVertexScenarioWrapper) {
+      ((GiraphVertexScenarioWrapper) wrapper).getContextWrapper().decodeAll();
+    }
+    ServerMetrics.observeTraceDecode(startTime);
+  }
+
+  /**
+   * Opens a trace, in the archive segment the job's index points to if the
+   * job was compacted.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number of the trace.
+   * @param traceFilePath path of the trace file as given by the layout.
+   * @return the trace as stored.
+   */
+  private static InputStream openTrace(String jobId, long superstepNo,
+    String traceFilePath) throws IOException {
+    if (!getTraceLayout(jobId).isCompacted()) {
+      try {
+        return getTraceStore().open(traceFilePath);
+      } catch (FileNotFoundException e) {
+        // The job may have been compacted since its layout was cached.
+        TRACE_LAYOUTS.remove(jobId);
+        if (!getTraceLayout(jobId).isCompacted()) {
+          throw e;
         }
+        JobTraceCache.invalidate(jobId);
+      }
+    }
+    try {
+      return openIndexedTrace(jobId, superstepNo, traceFilePath);
+    } catch (FileNotFoundException e) {
+      // The cached index may predate the compaction of the job.
+      JobTraceCache.invalidate(jobId);
+      return openIndexedTrace(jobId, superstepNo, traceFilePath);
+    }
+  }
+
+  /**
+   * Opens a trace like {@link #openTrace}, unless the job's index tells that
+   * there is no such trace, see {@link #isSuperstepIndexed}.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number of the trace.
+   * @param traceFilePath path of the trace file as given by the layout.
+   * @return the trace as stored, or null if there is no such trace.
+   */
+  private static InputStream openTraceIfExists(String jobId,
+    long superstepNo, String traceFilePath) throws IOException {
+    if (isSuperstepIndexed(jobId, superstepNo) && !isTraceKnown(jobId,
+      superstepNo, traceFilePath)) {
+      return null;
+    }
+    try {
+      return openTrace(jobId, superstepNo, traceFilePath);
+    } catch (FileNotFoundException e) {
+      if (isSuperstepIndexed(jobId, superstepNo)) {
+        throw e;
       }
+      return null;
+    }
+  }
+
+  /**
+   * Tells whether the job's index merged a superstep, in which case it lists
+   * every trace of the superstep and is trusted to tell which traces do not
+   * exist, without looking them up in the trace store.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number.
+   * @return true if the superstep is merged in the job's index.
+   */
+  static boolean isSuperstepIndexed(String jobId, long superstepNo)
+    throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    return traceIndex != null && traceIndex.isMerged(superstepNo);
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo superstep number of the trace.
+   * @param traceFilePath path of the trace file as given by the layout.
+   * @return the trace, read from wherever the job's index points to.
+   */
+  private static InputStream openIndexedTrace(String jobId, long superstepNo,
+    String traceFilePath) throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    if (traceIndex == null) {
+      throw new FileNotFoundException("No trace index for job " + jobId);
+    }
+    return traceIndex.openTrace(superstepNo, TraceIndex.getLocation(jobId,
+      traceFilePath));
+  }
+
+  /**
+   * Tells whether a trace exists according to the job's index, or to the
+   * trace file names listed for jobs traced without one, without looking it
+   * up in the trace store. Either may be stale for a running job.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number of the trace.
+   * @param traceFilePath path of the trace file as given by the layout.
+   * @return true if the trace is known to exist.
+   */
+  private static boolean isTraceKnown(String jobId, long superstepNo,
+    String traceFilePath) throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    if (traceIndex != null) {
+      return traceIndex.findEntry(superstepNo, TraceIndex.getLocation(jobId,
+        traceFilePath)) != null;
+    }
+    return JobTraceCache.hasTraceFile(jobId, traceFilePath.substring(
+      traceFilePath.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * Returns a version of the traces of a range of supersteps, which changes
+   * whenever traces are added to them, to tell whether responses built from
+   * them are still current.
+   *
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep of the range.
+   * @param lastSuperstepNo the last superstep of the range.
+   * @return the version, or null if the job was traced without an index and
+   *         its traces have no known version.
+   */
+  public static String getTraceVersion(String jobId, long firstSuperstepNo,
+    long lastSuperstepNo) throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    if (traceIndex == null) {
+      return null;
+    }
+    long version = 1;
+    // Only the traced supersteps, as the range comes from the client and
+    // may be as large as it likes.
+    for (long superstepNo : getSuperstepsInRange(traceIndex.getSupersteps(),
+      firstSuperstepNo, lastSuperstepNo)) {
+      version = 31 * (31 * version + superstepNo) +
+        traceIndex.getVersion(superstepNo);
+    }
+    return Long.toHexString(version);
+  }
+
+  /**
+   * @param superstepNos supersteps in increasing order.
+   * @param firstSuperstepNo the first superstep of the range.
+   * @param lastSuperstepNo the last superstep of the range, which may be
+   *        {@link Long#MAX_VALUE}.
+   * @return the given supersteps within the range.
+   */
+  public static SortedSet<Long> getSuperstepsInRange(
+    SortedSet<Long> superstepNos, long firstSuperstepNo,
+    long lastSuperstepNo) {
+    if (firstSuperstepNo > lastSuperstepNo) {
+      return new TreeSet<>();
+    }
+    return lastSuperstepNo == Long.MAX_VALUE ? superstepNos.tailSet(
+      firstSuperstepNo) : superstepNos.subSet(firstSuperstepNo,
+      lastSuperstepNo + 1);
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo superstep number.
+   * @return true if the superstep is known to be over, so that its traces and
+   *         those of the supersteps before it no longer change.
+   */
+  public static boolean isSuperstepCompleted(String jobId, long superstepNo)
+    throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    return traceIndex != null && traceIndex.isMerged(superstepNo);
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @return the class loader for the job's jar, or the default one if the jar
+   *         cannot be read.
+   */
+  public static ClassLoader getJobClassLoader(String jobId) {
+    try {
+      return JobClassLoaders.get(getTraceStore(), jobId);
     } catch (IOException e) {
-      // gracefully ignore if we failed to read the jar.signature
+      // gracefully ignore if we failed to read the job's jar
       LOG.warn("An IOException is thrown but will be ignored: " +
         e.toString());
+      return JobClassLoaders.getDefaultClassLoader();
     }
-    return new URL[0];
   }
 
   /**
@@ -188,12 +445,11 @@ public class ServerUtils {
    * @return path of the vertex trace file on HDFS.
    */
   public static String getVertexTraceFilePath(String jobId, long superstepNo,
-    String vertexId, DebugTrace debugTrace) {
+    String vertexId, DebugTrace debugTrace) throws IOException {
     assert EnumSet.of(DebugTrace.VERTEX_EXCEPTION, DebugTrace.VERTEX_REGULAR,
       DebugTrace.INTEGRITY_VERTEX).contains(debugTrace);
-    return String.format("%s/%s", DebuggerUtils.getTraceFileRoot(jobId), String
-      .format(DebuggerUtils.getTraceFileFormat(debugTrace), superstepNo,
-        vertexId));
+    return getTraceLayout(jobId).getFullTraceFileName(debugTrace, jobId,
+      superstepNo, vertexId, null /* no task Id */);
   }
 
   /**
@@ -204,11 +460,10 @@ public class ServerUtils {
    * @return path of the vertex trace file on HDFS.
    */
   public static String getIntegrityTraceFilePath(String jobId, String taskId,
-    long superstepNo, DebugTrace debugTrace) {
+    long superstepNo, DebugTrace debugTrace) throws IOException {
     assert EnumSet.of(DebugTrace.INTEGRITY_MESSAGE_ALL).contains(debugTrace);
-    return String.format("%s/%s", DebuggerUtils.getTraceFileRoot(jobId),
-      String.format(DebuggerUtils.getTraceFileFormat(debugTrace), taskId,
-        superstepNo));
+    return getTraceLayout(jobId).getFullTraceFileName(debugTrace, jobId,
+      superstepNo, null /* no vertex Id */, taskId);
   }
 
   /**
@@ -218,11 +473,11 @@ public class ServerUtils {
    * @return path of the master compute trace file on HDFS.
    */
   public static String getMasterTraceFilePath(String jobId, long superstepNo,
-    DebugTrace debugTrace) {
+    DebugTrace debugTrace) throws IOException {
     assert EnumSet.of(DebugTrace.MASTER_ALL, DebugTrace.MASTER_EXCEPTION,
       DebugTrace.MASTER_REGULAR).contains(debugTrace);
-    return String.format("%s/%s", DebuggerUtils.getTraceFileRoot(jobId),
-      String.format(DebuggerUtils.getTraceFileFormat(debugTrace), superstepNo));
+    return getTraceLayout(jobId).getFullTraceFileName(debugTrace, jobId,
+      superstepNo, null /* no vertex Id */, null /* no task Id */);
   }
 
   /**
@@ -238,13 +493,35 @@ public class ServerUtils {
    * @param debugTrace - Can be either any one of VERTEX_* and
    *        INTEGRITY_MESSAGE_SINGLE_VERTEX.
    * @return the vertex scenario stored in the trace file represented as a
-   *        {@link GiraphVertexScenarioWrapper} object.
+   *        {@link GiraphVertexScenarioWrapper} object, or null if the vertex
+   *        has none of the traces.
    */
   public static GiraphVertexScenarioWrapper readScenarioFromTrace(String jobId,
     long superstepNo, String vertexId, DebugTrace debugTrace)
     throws IOException, ClassNotFoundException, InstantiationException,
     IllegalAccessException {
-    FileSystem fs = ServerUtils.getFileSystem();
+    return readScenarioFromTrace(jobId, superstepNo, vertexId, debugTrace,
+      false);
+  }
+
+  /**
+   * Reads the scenario of the given vertex like
+   * {@link #readScenarioFromTrace(String, long, String, DebugTrace)}.
+   *
+   * @param jobId ID of the job debugged.
+   * @param superstepNo Superstep number debugged.
+   * @param vertexId ID of the vertex debugged.
+   * @param debugTrace the type of the trace, or VERTEX_ALL.
+   * @param decodeAll whether to decode the lazily decoded parts of the
+   *        scenario now, see
+   *        {@link #loadTrace(BaseWrapper, String, long, String, boolean)}.
+   * @return the vertex scenario, or null if the vertex has none of the
+   *         traces.
+   */
+  private static GiraphVertexScenarioWrapper readScenarioFromTrace(
+    String jobId, long superstepNo, String vertexId, DebugTrace debugTrace,
+    boolean decodeAll) throws IOException, ClassNotFoundException,
+    InstantiationException, IllegalAccessException {
     GiraphVertexScenarioWrapper giraphScenarioWrapper =
       new GiraphVertexScenarioWrapper();
     EnumSet<DebugTrace> enumSet = EnumSet.of(debugTrace);
@@ -253,14 +530,39 @@ public class ServerUtils {
         DebugTrace.VERTEX_EXCEPTION, DebugTrace.INTEGRITY_VERTEX,
         DebugTrace.INTEGRITY_MESSAGE_SINGLE_VERTEX);
     }
+    // Reads the first trace known to exist directly, so that the trace types
+    // a vertex does not have cost no lookups.
+    for (DebugTrace enumValue : enumSet) {
+      String traceFilePath = ServerUtils.getVertexTraceFilePath(jobId,
+        superstepNo, vertexId, enumValue);
+      if (isTraceKnown(jobId, superstepNo, traceFilePath)) {
+        try {
+          loadTrace(giraphScenarioWrapper, jobId, superstepNo, traceFilePath,
+            decodeAll);
+          return giraphScenarioWrapper;
+        } catch (FileNotFoundException e) {
+          if (isSuperstepIndexed(jobId, superstepNo)) {
+            throw e;
+          }
+          // What is known about the traces may be stale. Look them all up.
+          LOG.info("readScenarioFromTrace: Known trace not found.");
+          break;
+        }
+      }
+    }
+    // The index lists every trace of the supersteps it merged, so there is
+    // nothing to look up.
+    if (isSuperstepIndexed(jobId, superstepNo)) {
+      return null;
+    }
     // Loops through all possible debug traces and returns the first one found.
     for (DebugTrace enumValue : enumSet) {
       String traceFilePath = ServerUtils.getVertexTraceFilePath(jobId,
         superstepNo, vertexId, enumValue);
       try {
         // If scenario is found, return it.
-        giraphScenarioWrapper.loadFromHDFS(fs, traceFilePath,
-          getCachedJobJarPath(jobId));
+        loadTrace(giraphScenarioWrapper, jobId, superstepNo, traceFilePath,
+          decodeAll);
         return giraphScenarioWrapper;
       } catch (FileNotFoundException e) {
         // Ignore the exception since we will try reading another traceType
@@ -268,8 +570,216 @@ public class ServerUtils {
         LOG.info("readScenarioFromTrace: File not found. Ignoring.");
       }
     }
-    // None of the debugTrace types were found. Throw exception.
-    throw new FileNotFoundException("Debug Trace not found.");
+    // None of the debugTrace types were found.
+    return null;
+  }
+
+  /**
+   * Reads the scenario of the given vertex like
+   * {@link #readScenarioFromTrace(String, long, String, DebugTrace)} and
+   * converts it to JSON like {@link #scenarioToJSON}, or returns it from the
+   * {@link ScenarioCache} if it was read before. The returned object is
+   * shared and must not be modified.
+   *
+   * @param jobId ID of the job debugged.
+   * @param superstepNo Superstep number debugged.
+   * @param vertexId ID of the vertex debugged.
+   * @param debugTrace Can be either any one of VERTEX_* and
+   *        INTEGRITY_MESSAGE_SINGLE_VERTEX.
+   * @return the vertex scenario stored in the trace file as json, or null if
+   *         the vertex has none of the traces.
+   */
+  public static JSONObject readScenarioJSON(String jobId, long superstepNo,
+    String vertexId, DebugTrace debugTrace) throws IOException,
+    ClassNotFoundException, InstantiationException, IllegalAccessException,
+    JSONException {
+    JSONObject scenarioObj = ScenarioCache.get(jobId, superstepNo, vertexId,
+      debugTrace);
+    if (scenarioObj == null) {
+      // Decoded in full, as all of it is rendered.
+      GiraphVertexScenarioWrapper scenarioWrapper = readScenarioFromTrace(
+        jobId, superstepNo, vertexId, debugTrace, true);
+      if (scenarioWrapper == null) {
+        return null;
+      }
+      long startTime = System.nanoTime();
+      scenarioObj = scenarioToJSON(scenarioWrapper);
+      ServerMetrics.observeJsonRender(startTime);
+      ScenarioCache.put(jobId, superstepNo, vertexId, debugTrace,
+        scenarioObj);
+    }
+    return scenarioObj;
+  }
+
+  /**
+   * Reads a vertex trace as stored, a serialized {@link GiraphVertexScenario}
+   * that is not decoded, so its ids, values and messages may be packed, see
+   * {@link TraceWritableCodec}, and its blobs may be in the blob dictionary
+   * it names, see {@link #getBlobDictionary} and {@link #readBlobs}.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number.
+   * @param vertexId id of the vertex.
+   * @param debugTrace Can be any one of VERTEX_*.
+   * @return the serialized trace, or null if the vertex has no such trace.
+   */
+  public static ByteString readRawScenario(String jobId, long superstepNo,
+    String vertexId, DebugTrace debugTrace) throws IOException {
+    try (InputStream input = openTraceIfExists(jobId, superstepNo,
+      getVertexTraceFilePath(jobId, superstepNo, vertexId, debugTrace))) {
+      if (input == null) {
+        return null;
+      }
+      return ByteString.readFrom(input);
+    }
+  }
+
+  /**
+   * Reads the blobs of a dictionary as stored, i.e., as length-delimited
+   * {@link org.apache.giraph.debugger.Scenario.Blob} records.
+   *
+   * @param jobId id of the job.
+   * @param dictionary the path of the dictionary, as traces name it.
+   * @param offset the number of bytes of the dictionary to skip, e.g.,
+   *        because they were read before.
+   * @return the rest of the dictionary, which is empty if it did not grow
+   *         beyond the offset.
+   */
+  public static ByteString readBlobs(String jobId, String dictionary,
+    long offset) throws IOException {
+    String dictionaryPath = TraceBlobResolver.getDictionaryPath(jobId,
+      dictionary);
+    TraceFileStatus fileStatus = getTraceStore().lookup(dictionaryPath);
+    if (fileStatus == null) {
+      throw new FileNotFoundException("Blob dictionary not found: " +
+        dictionary);
+    }
+    if (fileStatus.getLength() <= offset) {
+      return ByteString.EMPTY;
+    }
+    try (InputStream input = getTraceStore().open(dictionaryPath)) {
+      ByteStreams.skipFully(input, offset);
+      return ByteString.readFrom(input);
+    }
+  }
+
+  /**
+   * Summarizes the traces of a vertex in a superstep: the types of its traces,
+   * its value after the superstep, and the number of messages it received
+   * and sent. Only the value and the message counts are read from the
+   * protocol buffer of one of its traces, see {@link VertexTraceSummary}, and
+   * the value is decoded from the bytes read, without its Writable if it is
+   * of a common type, see {@link TraceWritableCodec}.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number.
+   * @param vertexId id of the vertex.
+   * @return the summary as json, or null if the vertex has no trace in the
+   *         superstep.
+   */
+  public static JSONObject readVertexSummary(String jobId, long superstepNo,
+    String vertexId) throws IOException, ClassNotFoundException,
+    JSONException {
+    JSONArray traceTypes = new JSONArray();
+    DebugTrace summarizedTrace = null;
+    for (DebugTrace debugTrace : EnumSet.of(DebugTrace.VERTEX_REGULAR,
+      DebugTrace.VERTEX_EXCEPTION, DebugTrace.INTEGRITY_VERTEX)) {
+      if (isTraceKnown(jobId, superstepNo, getVertexTraceFilePath(jobId,
+        superstepNo, vertexId, debugTrace))) {
+        traceTypes.put(DebuggerUtils.getPrefixForVertexDebugTrace(
+          debugTrace));
+        if (summarizedTrace == null) {
+          summarizedTrace = debugTrace;
+        }
+      }
+    }
+    if (summarizedTrace == null) {
+      return null;
+    }
+    VertexTraceSummary summary;
+    // Blob references are left unresolved, as they are only counted.
+    try (InputStream input = openTrace(jobId, superstepNo,
+      getVertexTraceFilePath(jobId, superstepNo, vertexId, summarizedTrace))) {
+      summary = VertexTraceSummary.read(ByteString.readFrom(input));
+    }
+    JSONObject summaryObj = new JSONObject();
+    summaryObj.put("traceTypes", traceTypes);
+    summaryObj.putOpt("vertexValue", getVertexValueString(jobId, summary));
+    summaryObj.put("numInMessages", summary.getNumInMessages());
+    summaryObj.put("numOutMessages", summary.getNumOutMessages());
+    return summaryObj;
+  }
+
+  /**
+   * Reads the value of a vertex after a superstep from its regular trace.
+   * Only the value is read from the protocol buffer of the trace, as by
+   * {@link #readVertexSummary}.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo superstep number.
+   * @param vertexId id of the vertex.
+   * @return the value as its Writable's toString renders it, or null if the
+   *         trace has none or the vertex has no regular trace in the
+   *         superstep.
+   */
+  public static String readVertexValue(String jobId, long superstepNo,
+    String vertexId) throws IOException, ClassNotFoundException {
+    VertexTraceSummary summary;
+    try (InputStream input = openTraceIfExists(jobId, superstepNo,
+      getVertexTraceFilePath(jobId, superstepNo, vertexId,
+        DebugTrace.VERTEX_REGULAR))) {
+      if (input == null) {
+        return null;
+      }
+      summary = VertexTraceSummary.read(ByteString.readFrom(input));
+    }
+    return getVertexValueString(jobId, summary);
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param summary the summary of a vertex trace.
+   * @return the value of the vertex after the superstep as its Writable's
+   *         toString renders it, or null if the trace has none.
+   */
+  private static String getVertexValueString(String jobId,
+    VertexTraceSummary summary) throws IOException, ClassNotFoundException {
+    if (summary.getPackedVertexValueAfter() != null) {
+      return TraceWritableCodec.getFirstValueString(
+        summary.getPackedVertexValueAfter());
+    } else if (summary.getVertexValueAfter() == null) {
+      return null;
+    }
+    // Values of other types can only be read by the Writable itself.
+    TraceTypeRegistry typeRegistry = TraceTypeRegistry.forClassLoader(
+      getJobClassLoader(jobId));
+    Writable value = (Writable) typeRegistry.newInstance(
+      typeRegistry.resolveClass(summary.getVertexValueClass(
+        getTraceStore(), jobId)));
+    if (value == null) {
+      return NullWritable.get().toString();
+    }
+    WritableUtils.readFieldsFromByteArray(summary.getVertexValueAfter()
+      .toByteArray(), value);
+    return value.toString();
+  }
+
+  /**
+   * @param trace a serialized vertex trace.
+   * @return the path of the blob dictionary the trace refers to, found
+   *         without parsing the trace, or null if it refers to none.
+   */
+  public static String getBlobDictionary(ByteString trace)
+    throws IOException {
+    CodedInputStream input = trace.newCodedInput();
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (WireFormat.getTagFieldNumber(tag) ==
+        GiraphVertexScenario.BLOBDICTIONARY_FIELD_NUMBER) {
+        return input.readString();
+      }
+      input.skipField(tag);
+    }
+    return null;
   }
 
   /**
@@ -295,9 +805,17 @@ public class ServerUtils {
       throw new IllegalArgumentException(
         "DebugTrace type is invalid. Use REGULAR, EXCEPTION or ALL_VERTICES");
     }
-    FileSystem fs = ServerUtils.getFileSystem();
     GiraphMasterScenarioWrapper giraphScenarioWrapper =
       new GiraphMasterScenarioWrapper();
+    // Skips looking up the regular trace when only an exception trace is
+    // known to exist.
+    if (debugTrace == DebugTrace.MASTER_ALL && !isTraceKnown(jobId,
+      superstepNo, ServerUtils.getMasterTraceFilePath(jobId, superstepNo,
+        DebugTrace.MASTER_REGULAR)) && isTraceKnown(jobId, superstepNo,
+      ServerUtils.getMasterTraceFilePath(jobId, superstepNo,
+        DebugTrace.MASTER_EXCEPTION))) {
+      debugTrace = DebugTrace.MASTER_EXCEPTION;
+    }
     // For each superstep, there is either a "regular" master trace (saved in
     // master_reg_stp_i.tr files), or an "exception" master trace (saved in
     // master_err_stp_i.tr files). We first check to see if a regular master
@@ -308,8 +826,7 @@ public class ServerUtils {
       String traceFilePath = ServerUtils.getMasterTraceFilePath(jobId,
         superstepNo, DebugTrace.MASTER_REGULAR);
       try {
-        giraphScenarioWrapper.loadFromHDFS(fs, traceFilePath,
-          getCachedJobJarPath(jobId));
+        loadTrace(giraphScenarioWrapper, jobId, superstepNo, traceFilePath);
         // If scenario is found, return it.
         return giraphScenarioWrapper;
       } catch (FileNotFoundException e) {
@@ -328,8 +845,7 @@ public class ServerUtils {
     // already.
     String traceFilePath = ServerUtils.getMasterTraceFilePath(jobId,
       superstepNo, DebugTrace.MASTER_EXCEPTION);
-    giraphScenarioWrapper.loadFromHDFS(fs, traceFilePath,
-      getCachedJobJarPath(jobId));
+    loadTrace(giraphScenarioWrapper, jobId, superstepNo, traceFilePath);
     return giraphScenarioWrapper;
   }
 
@@ -342,13 +858,11 @@ public class ServerUtils {
   public static MsgIntegrityViolationWrapper readMsgIntegrityViolationFromTrace(
     String jobId, String taskId, long superstepNo) throws IOException,
     ClassNotFoundException, InstantiationException, IllegalAccessException {
-    FileSystem fs = ServerUtils.getFileSystem();
     String traceFilePath = ServerUtils.getIntegrityTraceFilePath(jobId, taskId,
       superstepNo, DebugTrace.INTEGRITY_MESSAGE_ALL);
     MsgIntegrityViolationWrapper msgIntegrityViolationWrapper =
       new MsgIntegrityViolationWrapper();
-    msgIntegrityViolationWrapper.loadFromHDFS(fs, traceFilePath,
-      getCachedJobJarPath(jobId));
+    loadTrace(msgIntegrityViolationWrapper, jobId, superstepNo, traceFilePath);
     return msgIntegrityViolationWrapper;
   }
 
@@ -363,18 +877,19 @@ public class ServerUtils {
   readVertexIntegrityViolationFromTrace(String jobId, long superstepNo,
     String vertexId) throws IOException,
     ClassNotFoundException, InstantiationException, IllegalAccessException {
-    FileSystem fs = ServerUtils.getFileSystem();
     String traceFilePath = ServerUtils.getVertexTraceFilePath(jobId,
       superstepNo, vertexId, DebugTrace.INTEGRITY_VERTEX);
     GiraphVertexScenarioWrapper giraphScenarioWrapper =
       new GiraphVertexScenarioWrapper();
-    giraphScenarioWrapper.loadFromHDFS(fs, traceFilePath);
+    loadTrace(giraphScenarioWrapper, jobId, superstepNo, traceFilePath);
     return giraphScenarioWrapper;
   }
 
   /**
    * Converts a Giraph Scenario (giraphScenarioWrapper object) to JSON
-   * (JSONObject)
+   * (JSONObject). Values are rendered to strings as they are put, so that
+   * the length of the text the scenario renders to is counted along, see
+   * {@link ScenarioCache#estimateSize}.
    *
    * @param giraphScenarioWrapper Giraph Scenario object.
    * @return scenario data stored as json.
@@ -383,29 +898,37 @@ public class ServerUtils {
     GiraphVertexScenarioWrapper giraphScenarioWrapper) throws JSONException {
     VertexContextWrapper contextWrapper = giraphScenarioWrapper
       .getContextWrapper();
-    JSONObject scenarioObj = new JSONObject();
-    scenarioObj.put("vertexId", contextWrapper.getVertexIdWrapper());
-    scenarioObj.put("vertexValue", contextWrapper.getVertexValueAfterWrapper());
+    ScenarioCache.SizedJSONObject scenarioObj =
+      new ScenarioCache.SizedJSONObject();
+    scenarioObj.putText("vertexId", contextWrapper.getVertexIdWrapper());
+    scenarioObj.putText("vertexValue",
+      contextWrapper.getVertexValueAfterWrapper());
     JSONObject outgoingMessagesObj = new JSONObject();
     JSONArray neighborsList = new JSONArray();
     // Add outgoing messages.
     for (Object outgoingMessage : contextWrapper.getOutgoingMessageWrappers()) {
       OutgoingMessageWrapper outgoingMessageWrapper =
         (OutgoingMessageWrapper) outgoingMessage;
-      outgoingMessagesObj.put(outgoingMessageWrapper.getDestinationId().
-        toString(), outgoingMessageWrapper.getMessage().toString());
+      String destinationId = outgoingMessageWrapper.getDestinationId()
+        .toString();
+      outgoingMessagesObj.put(destinationId, scenarioObj.countText(
+        outgoingMessageWrapper.getMessage().toString()));
+      scenarioObj.countText(destinationId);
     }
     // Add incoming messages.
     ArrayList<String> incomingMessagesList = new ArrayList<String>();
     for (Object incomingMessage : contextWrapper.getIncomingMessageWrappers()) {
-      incomingMessagesList.add(incomingMessage.toString());
+      incomingMessagesList.add(scenarioObj.countText(
+        incomingMessage.toString()));
     }
     // Add neighbors.
     for (Object neighbor : contextWrapper.getNeighborWrappers()) {
       JSONObject neighborObject = new JSONObject();
       NeighborWrapper neighborWrapper = (NeighborWrapper) neighbor;
-      neighborObject.put("neighborId", neighborWrapper.getNbrId());
-      neighborObject.put("edgeValue", neighborWrapper.getEdgeValue());
+      neighborObject.put("neighborId", scenarioObj.countText(
+        neighborWrapper.getNbrId()));
+      neighborObject.put("edgeValue", scenarioObj.countText(
+        neighborWrapper.getEdgeValue()));
       neighborsList.put(neighborObject);
     }
     scenarioObj.put("outgoingMessages", outgoingMessagesObj);
@@ -416,8 +939,10 @@ public class ServerUtils {
       JSONObject exceptionObj = new JSONObject();
       ExceptionWrapper exceptionWrapper = giraphScenarioWrapper
         .getExceptionWrapper();
-      exceptionObj.put("message", exceptionWrapper.getErrorMessage());
-      exceptionObj.put("stackTrace", exceptionWrapper.getStackTrace());
+      exceptionObj.put("message", scenarioObj.countText(
+        exceptionWrapper.getErrorMessage()));
+      exceptionObj.put("stackTrace", scenarioObj.countText(
+        exceptionWrapper.getStackTrace()));
       scenarioObj.put("exception", exceptionObj);
     }
     JSONObject aggregateObj = new JSONObject();
@@ -425,8 +950,8 @@ public class ServerUtils {
       .getCommonVertexMasterContextWrapper().getPreviousAggregatedValues()) {
       AggregatedValueWrapper aggregatedValueWrapper =
         (AggregatedValueWrapper) aggregatedValue;
-      aggregateObj.put(aggregatedValueWrapper.getKey(),
-        aggregatedValueWrapper.getValue());
+      aggregateObj.put(scenarioObj.countText(aggregatedValueWrapper.getKey()),
+        scenarioObj.countText(aggregatedValueWrapper.getValue()));
     }
     scenarioObj.put("aggregators", aggregateObj);
     return scenarioObj;
@@ -485,28 +1010,30 @@ public class ServerUtils {
    * @param superstepNo superstep number.
    * @param debugTrace type of vertex trace files.
    * @return a list of vertex Ids that were debugged in the given superstep by
-   * reading (the file names of) the debug traces on HDFS. File names follow the
-   * <prefix>_stp_<superstepNo>_vid_<vertexId>.tr naming convention.
+   * reading the job's trace index. For jobs traced without an index, reads
+   * (the file names of) the debug traces on HDFS instead. File names follow
+   * the <prefix>_stp_<superstepNo>_vid_<vertexId>.tr naming convention.
    */
   public static List<String> getVerticesDebugged(String jobId,
     long superstepNo, DebugTrace debugTrace) throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    if (traceIndex != null) {
+      Set<String> indexedVertexIds = new LinkedHashSet<>();
+      for (TraceManifestEntry entry : traceIndex.getEntries(superstepNo,
+        TraceIndex.expand(debugTrace))) {
+        if (entry.hasVertexId()) {
+          indexedVertexIds.add(entry.getVertexId());
+        }
+      }
+      return Lists.newArrayList(indexedVertexIds);
+    }
     ArrayList<String> vertexIds = new ArrayList<String>();
-    FileSystem fs = ServerUtils.getFileSystem();
-    String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId);
     // Use this regex to match the file name and capture the vertex id.
     String regex = String.format(DebuggerUtils.getTraceFileFormat(debugTrace),
       superstepNo, "(.*?)");
     Pattern p = Pattern.compile(regex);
-    Path pt = new Path(traceFileRoot);
-    FileStatus[] fileStatuses = null;
-    // Hadoop listStatus returns null when path is not found.
-    fileStatuses = fs.listStatus(pt);
-    if (fileStatuses == null) {
-      throw new FileNotFoundException("Debug trace file not found.");
-    }
-    // Iterate through each file in this diFilerectory and match the regex.
-    for (FileStatus fileStatus : fileStatuses) {
-      String fileName = fileStatus.getPath().getName();
+    // Iterate through each trace file of the job and match the regex.
+    for (String fileName : JobTraceCache.getTraceFileNames(jobId)) {
       Matcher m = p.matcher(fileName);
       // Add this vertex id if there is a match.
       if (m.find()) {
@@ -531,22 +1058,22 @@ public class ServerUtils {
     assert EnumSet.of(DebugTrace.INTEGRITY_MESSAGE_ALL,
       DebugTrace.INTEGRITY_VERTEX).contains(debugTrace);
     ArrayList<String> taskIds = new ArrayList<String>();
-    FileSystem fs = ServerUtils.getFileSystem();
-    String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId);
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    if (traceIndex != null) {
+      for (TraceManifestEntry entry : traceIndex.getEntries(superstepNo,
+        TraceIndex.expand(debugTrace))) {
+        if (entry.hasTaskId()) {
+          taskIds.add(entry.getTaskId());
+        }
+      }
+      return taskIds;
+    }
     // Use this regex to match the file name and capture the vertex id.
     String regex = String.format(DebuggerUtils.getTraceFileFormat(debugTrace),
       "(.*?)", superstepNo);
     Pattern p = Pattern.compile(regex);
-    Path pt = new Path(traceFileRoot);
-    FileStatus[] fileStatuses = null;
-    // Hadoop listStatus returns null when path is not found.
-    fileStatuses = fs.listStatus(pt);
-    if (fileStatuses == null) {
-      throw new FileNotFoundException("Debug trace file not found.");
-    }
-    // Iterate through each file in this directory and match the regex.
-    for (FileStatus fileStatus : fileStatuses) {
-      String fileName = fileStatus.getPath().getName();
+    // Iterate through each trace file of the job and match the regex.
+    for (String fileName : JobTraceCache.getTraceFileNames(jobId)) {
       Matcher m = p.matcher(fileName);
       // Add this vertex id if there is a match.
       if (m.find()) {
@@ -563,16 +1090,19 @@ public class ServerUtils {
    */
   public static List<Long> getSuperstepsDebugged(String jobId)
     throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    if (traceIndex != null) {
+      return Lists.newArrayList(traceIndex.getSupersteps(EnumSet.of(
+        DebugTrace.VERTEX_REGULAR, DebugTrace.VERTEX_EXCEPTION,
+        DebugTrace.INTEGRITY_MESSAGE_SINGLE_VERTEX,
+        DebugTrace.INTEGRITY_VERTEX)));
+    }
     Set<Long> superstepIds = Sets.newHashSet();
-    FileSystem fs = ServerUtils.getFileSystem();
-    String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId);
     // Use this regex to match the file name and capture the vertex id.
     String regex = "(reg|err|msg_intgrty|vv_intgrty)_stp_(.*?)_vid_(.*?).tr$";
     Pattern p = Pattern.compile(regex);
-    Path pt = new Path(traceFileRoot);
-    // Iterate through each file in this directory and match the regex.
-    for (FileStatus fileStatus : fs.listStatus(pt)) {
-      String fileName = fileStatus.getPath().getName();
+    // Iterate through each trace file of the job and match the regex.
+    for (String fileName : JobTraceCache.getTraceFileNames(jobId)) {
       Matcher m = p.matcher(fileName);
       // Add this vertex id if there is a match.
       if (m.find()) {
@@ -589,16 +1119,17 @@ public class ServerUtils {
    */
   public static List<Long> getSuperstepsMasterDebugged(String jobId)
     throws IOException {
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    if (traceIndex != null) {
+      return Lists.newArrayList(traceIndex.getSupersteps(
+        TraceIndex.expand(DebugTrace.MASTER_ALL)));
+    }
     Set<Long> superstepIds = Sets.newHashSet();
-    FileSystem fs = ServerUtils.getFileSystem();
-    String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId);
     // Use this regex to match the file name and capture the vertex id.
     String regex = "master_.*_stp_(\\d+?).tr$";
     Pattern p = Pattern.compile(regex);
-    Path pt = new Path(traceFileRoot);
-    // Iterate through each file in this directory and match the regex.
-    for (FileStatus fileStatus : fs.listStatus(pt)) {
-      String fileName = fileStatus.getPath().getName();
+    // Iterate through each trace file of the job and match the regex.
+    for (String fileName : JobTraceCache.getTraceFileNames(jobId)) {
       Matcher m = p.matcher(fileName);
       // Add this vertex id if there is a match.
       if (m.find()) {
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * The files of the GUI, i.e., the resources of this package and the
+ * libraries bundled as WebJars, served from memory. Each file is read from
+ * the classpath once, when it is first requested, and kept with its
+ * gzip-compressed form and a hash of its content. The links of HTML pages
+ * to other files are rewritten to carry the hash of the file in the
+ * {@link #VERSION_KEY} parameter, so that a request with the current hash
+ * may be cached for good. WebJars have their version in their path, so
+ * they may always be cached for good.
+ */
+final class StaticAssets {
+
+  /**
+   * String for specifying the hash of the file asked for.
+   */
+  public static final String VERSION_KEY = "v";
+
+  /**
+   * Classpath directory of the resources of the GUI.
+   */
+  private static final String GUI_ROOT = "org/apache/giraph/debugger/gui/";
+  /**
+   * Path of the WebJars as requested.
+   */
+  private static final String WEBJARS_PATH = "webjars/";
+  /**
+   * Classpath directory of the WebJars.
+   */
+  private static final String WEBJARS_ROOT = "META-INF/resources/webjars/";
+
+  /**
+   * Content type of the files served, by extension. Other files are not
+   * served, e.g., the classes of this package.
+   */
+  private static final Map<String, String> CONTENT_TYPES =
+    ImmutableMap.<String, String>builder()
+      .put("html", "text/html; charset=utf-8")
+      .put("js", "application/javascript; charset=utf-8")
+      .put("css", "text/css; charset=utf-8")
+      .put("map", "application/json; charset=utf-8")
+      .put("svg", "image/svg+xml")
+      .put("png", "image/png")
+      .put("gif", "image/gif")
+      .put("ico", "image/x-icon")
+      .put("eot", "application/vnd.ms-fontobject")
+      .put("ttf", "application/x-font-ttf")
+      .put("woff", "application/font-woff").build();
+
+  /**
+   * Relative links of HTML pages, which are rewritten to carry hashes.
+   */
+  private static final Pattern LINK_PATTERN = Pattern.compile(
+    "\\b(src|href)=\"([^\"/:?#][^\":?#]*)\"");
+
+  /**
+   * The files read so far by path. Files not found are not kept, as any
+   * path may be requested.
+   */
+  private static final ConcurrentMap<String, Asset> ASSETS =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private StaticAssets() { }
+
+  /**
+   * @param path path of a file relative to the root of the GUI.
+   * @return the file, or null if there is none at the path.
+   * @throws IOException thrown when the file cannot be read.
+   */
+  static Asset get(String path) throws IOException {
+    Asset asset = ASSETS.get(path);
+    if (asset == null) {
+      asset = load(path);
+      if (asset != null) {
+        Asset loadedAsset = ASSETS.putIfAbsent(path, asset);
+        if (loadedAsset != null) {
+          asset = loadedAsset;
+        }
+      }
+    }
+    return asset;
+  }
+
+  /**
+   * @param path path of a file relative to the root of the GUI.
+   * @return the file read from the classpath, or null if there is none.
+   */
+  private static Asset load(String path) throws IOException {
+    String contentType = CONTENT_TYPES.get(path.substring(
+      path.lastIndexOf('.') + 1));
+    if (contentType == null || path.contains("..")) {
+      return null;
+    }
+    String resource = path.startsWith(WEBJARS_PATH) ? WEBJARS_ROOT +
+      path.substring(WEBJARS_PATH.length()) : GUI_ROOT + path;
+    byte[] content;
+    try (InputStream in = StaticAssets.class.getClassLoader()
+      .getResourceAsStream(resource)) {
+      if (in == null) {
+        return null;
+      }
+      content = ByteStreams.toByteArray(in);
+    }
+    if (contentType.startsWith("text/html")) {
+      content = addHashes(path, new String(content, Charsets.UTF_8))
+        .getBytes(Charsets.UTF_8);
+    }
+    return new Asset(contentType, content, path.startsWith(WEBJARS_PATH));
+  }
+
+  /**
+   * @param path path of an HTML page relative to the root of the GUI.
+   * @param html the page.
+   * @return the page with the hashes of the files it links to added to the
+   *         links.
+   */
+  private static String addHashes(String path, String html)
+    throws IOException {
+    String dir = path.substring(0, path.lastIndexOf('/') + 1);
+    Matcher matcher = LINK_PATTERN.matcher(html);
+    StringBuffer hashedHtml = new StringBuffer();
+    while (matcher.find()) {
+      // Links to pages are left alone, as pages may link to each other.
+      Asset asset = matcher.group(2).endsWith(".html") ? null :
+        get(dir + matcher.group(2));
+      String link = asset == null ? matcher.group() : matcher.group(1) +
+        "=\"" + matcher.group(2) + "?" + VERSION_KEY + "=" + asset.hash + "\"";
+      matcher.appendReplacement(hashedHtml, Matcher.quoteReplacement(link));
+    }
+    matcher.appendTail(hashedHtml);
+    return hashedHtml.toString();
+  }
+
+  /**
+   * A file of the GUI.
+   */
+  static class Asset {
+    /**
+     * Content type of the file.
+     */
+    private final String contentType;
+    /**
+     * Content of the file.
+     */
+    private final byte[] content;
+    /**
+     * Content of the file compressed with gzip, or null if compressing it
+     * does not pay.
+     */
+    private final byte[] gzippedContent;
+    /**
+     * Hash of the content of the file.
+     */
+    private final String hash;
+    /**
+     * Whether the file never changes at its path.
+     */
+    private final boolean immutable;
+
+    /**
+     * Constructor.
+     *
+     * @param contentType content type of the file.
+     * @param content content of the file.
+     * @param immutable whether the file never changes at its path.
+     */
+    Asset(String contentType, byte[] content, boolean immutable)
+      throws IOException {
+      this.contentType = contentType;
+      this.content = content;
+      this.gzippedContent = gzip(content);
+      this.hash = Hashing.md5().hashBytes(content).toString().substring(0,
+        16);
+      this.immutable = immutable;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+
+    /**
+     * @param gzip whether the client accepts gzip-compressed files.
+     * @return the content to send, compressed if it pays.
+     */
+    byte[] getContent(boolean gzip) {
+      return gzip && gzippedContent != null ? gzippedContent : content;
+    }
+
+    /**
+     * @param gzip whether the client accepts gzip-compressed files.
+     * @return true if the content sent is compressed.
+     */
+    boolean isGzipped(boolean gzip) {
+      return gzip && gzippedContent != null;
+    }
+
+    /**
+     * @param version the hash the file was asked for with, or null.
+     * @return true if the file may be cached for good.
+     */
+    boolean isImmutable(String version) {
+      return immutable || hash.equals(version);
+    }
+
+    /**
+     * @param content the content of a file.
+     * @return the content compressed with gzip, or null if it is not
+     *         compressible or too short to be worth compressing.
+     */
+    private static byte[] gzip(byte[] content) throws IOException {
+      if (content.length < ServerHttpHandler.MIN_GZIP_LENGTH) {
+        return null;
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+        gzipOut.write(content);
+      }
+      // Images and fonts are mostly compressed already.
+      return out.size() < content.length * 9 / 10 ? out.toByteArray() : null;
+    }
+  }
+}
@@ -0,0 +1,456 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Index of the values of the vertices debugged in each superstep, for
+ * finding the vertices whose value lies in a range, or is NaN, without
+ * reading their traces. The values of a superstep are kept sorted, so a query
+ * is a binary search per superstep. Only values that are numbers, i.e., the
+ * values of the numeric Writables, are indexed.
+ *
+ * The index of a superstep is built on a background pool of
+ * {@link #BUILD_THREADS} threads, reading only the values of the traces, in
+ * parallel. Complete supersteps, i.e., those merged into the job's index or
+ * followed by another superstep, are indexed ahead of queries when the
+ * {@link Prefetcher} or a {@link JobWatcher} comes across them, and their
+ * indexes are kept for good. The indexes of supersteps still being written
+ * are built when a query needs them, and built again only once traces were
+ * added to them. Queries share the builds in progress.
+ */
+final class ValueIndex {
+
+  /**
+   * Number of supersteps indexed at the same time.
+   */
+  public static final int BUILD_THREADS = Integer.getInteger(
+    "giraph.debugger.valueIndexThreads", 2);
+  /**
+   * Maximum total number of values in the cached indexes.
+   */
+  public static final long MAX_INDEXED_VALUES = Long.getLong(
+    "giraph.debugger.valueIndexValues", 4000000);
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(ValueIndex.class);
+
+  /**
+   * The indexes of complete supersteps, and the last ones built of the
+   * supersteps still being written.
+   */
+  private static final Cache<SuperstepKey, SuperstepValues> INDEXES =
+    CacheBuilder.newBuilder().maximumWeight(MAX_INDEXED_VALUES).weigher(
+      new Weigher<SuperstepKey, SuperstepValues>() {
+        @Override
+        public int weigh(SuperstepKey key, SuperstepValues values) {
+          return 1 + values.values.length;
+        }
+      }).recordStats().build();
+
+  /**
+   * The pool indexes are built on.
+   */
+  private static final ExecutorService BUILD_POOL = Executors
+    .newFixedThreadPool(BUILD_THREADS, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "value-indexer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+  /**
+   * The builds in progress.
+   */
+  private static final ConcurrentMap<SuperstepKey, Future<SuperstepValues>>
+  BUILDS = new ConcurrentHashMap<>();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private ValueIndex() { }
+
+  /**
+   * @return the hit, miss and eviction counts of the cached indexes.
+   */
+  static CacheStats getCacheStats() {
+    return INDEXES.stats();
+  }
+
+  /**
+   * @return the number of cached indexes.
+   */
+  static long getCacheSize() {
+    return INDEXES.size();
+  }
+
+  /**
+   * Finds the vertices whose value after a superstep lies in the given
+   * range, in each of the given supersteps. NaN values lie in no range, and
+   * are found with NaN for both bounds.
+   *
+   * @param jobId id of the job.
+   * @param superstepNos the supersteps to search.
+   * @param minValue the smallest value to find, inclusive.
+   * @param maxValue the largest value to find, inclusive.
+   * @param limit maximum number of vertices to return in all.
+   * @return the values of the vertices found by vertex id, in increasing
+   *         order of value, by superstep, in the order of the supersteps.
+   *         Supersteps without a match are left out.
+   * @throws IOException thrown when a trace cannot be read.
+   */
+  static Map<Long, Map<String, Double>> search(String jobId,
+    List<Long> superstepNos, double minValue, double maxValue, int limit)
+    throws IOException {
+    long lastSuperstepNo = getLastSuperstepNo(jobId);
+    Map<Long, Future<SuperstepValues>> builds = new LinkedHashMap<>();
+    for (long superstepNo : superstepNos) {
+      builds.put(superstepNo, getBuild(jobId, superstepNo, isComplete(jobId,
+        superstepNo, lastSuperstepNo)));
+    }
+    Map<Long, Map<String, Double>> matches = new LinkedHashMap<>();
+    int remaining = limit;
+    // The builds not waited for are left to complete, as they are cached.
+    for (Map.Entry<Long, Future<SuperstepValues>> build : builds.entrySet()) {
+      Map<String, Double> superstepMatches = getResult(build.getValue())
+        .find(minValue, maxValue, remaining);
+      if (!superstepMatches.isEmpty()) {
+        matches.put(build.getKey(), superstepMatches);
+        remaining -= superstepMatches.size();
+      }
+      if (remaining <= 0) {
+        break;
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Starts indexing the values of a superstep in the background if it is
+   * complete and not indexed yet, so that queries find it built. Supersteps
+   * still being written are left to the queries, as they change.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep.
+   */
+  static void buildInBackground(String jobId, long superstepNo) {
+    try {
+      if (isComplete(jobId, superstepNo, getLastSuperstepNo(jobId))) {
+        getBuild(jobId, superstepNo, true);
+      }
+    } catch (IOException e) {
+      // The superstep is indexed when a query needs it.
+      LOG.debug("Cannot index the values of superstep " + superstepNo +
+        " of " + jobId + ": " + e);
+    }
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo the superstep.
+   * @param complete whether no more traces are added to the superstep.
+   * @return the index of the superstep if it is cached and the superstep is
+   *         complete or no traces were added to it since, or its build,
+   *         shared with the other callers while in progress.
+   * @throws IOException thrown when the job's index cannot be read.
+   */
+  private static Future<SuperstepValues> getBuild(final String jobId,
+    final long superstepNo, boolean complete) throws IOException {
+    final SuperstepKey key = new SuperstepKey(jobId, superstepNo);
+    final String version = complete ? null : getVersion(jobId, superstepNo);
+    SuperstepValues values = INDEXES.getIfPresent(key);
+    if (values != null && Objects.equal(values.version, version)) {
+      return Futures.immediateFuture(values);
+    }
+    FutureTask<SuperstepValues> build = new FutureTask<SuperstepValues>(
+      new Callable<SuperstepValues>() {
+        @Override
+        public SuperstepValues call() throws Exception {
+          SuperstepValues values = SuperstepValues.build(
+            ScenarioBatchReader.readVertexValues(jobId, superstepNo),
+            version);
+          INDEXES.put(key, values);
+          return values;
+        }
+      }) {
+      @Override
+      protected void done() {
+        BUILDS.remove(key, this);
+      }
+    };
+    Future<SuperstepValues> pendingBuild = BUILDS.putIfAbsent(key, build);
+    if (pendingBuild != null) {
+      return pendingBuild;
+    }
+    BUILD_POOL.execute(build);
+    return build;
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @return the last superstep traced, or -1 if there is none.
+   * @throws IOException thrown when the job's index cannot be read.
+   */
+  private static long getLastSuperstepNo(String jobId) throws IOException {
+    List<Long> superstepNos = ServerUtils.getSuperstepsDebugged(jobId);
+    return superstepNos.isEmpty() ? -1 : Collections.max(superstepNos);
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo the superstep.
+   * @param lastSuperstepNo the last superstep traced.
+   * @return true if no more traces are added to the superstep, i.e., it is
+   *         merged into the job's index or followed by another superstep.
+   * @throws IOException thrown when the job's index cannot be read.
+   */
+  private static boolean isComplete(String jobId, long superstepNo,
+    long lastSuperstepNo) throws IOException {
+    return superstepNo < lastSuperstepNo ||
+      ServerUtils.isSuperstepCompleted(jobId, superstepNo);
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo a superstep still being written.
+   * @return a version of the traces of the superstep, which changes when
+   *         traces are added to it.
+   * @throws IOException thrown when the job's index cannot be read.
+   */
+  private static String getVersion(String jobId, long superstepNo)
+    throws IOException {
+    String version = ServerUtils.getTraceVersion(jobId, superstepNo,
+      superstepNo);
+    // Traces are only ever added to a superstep, so jobs traced without an
+    // index are versioned by their number of traces.
+    return version != null ? version : "n" + ServerUtils.getVerticesDebugged(
+      jobId, superstepNo, DebugTrace.VERTEX_REGULAR).size();
+  }
+
+  /**
+   * @param build a pending build.
+   * @return the index built.
+   * @throws IOException thrown when a trace could not be read.
+   */
+  private static SuperstepValues getResult(Future<SuperstepValues> build)
+    throws IOException {
+    try {
+      return build.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while indexing values", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * The numeric values of the vertices debugged in a superstep, sorted as by
+   * {@link Double#compare}, which puts NaN values last.
+   */
+  static class SuperstepValues {
+    /**
+     * The values, in increasing order.
+     */
+    private final double[] values;
+    /**
+     * The id of the vertex of each value.
+     */
+    private final String[] vertexIds;
+    /**
+     * The version of the traces indexed, or null if the superstep is
+     * complete.
+     */
+    private final String version;
+
+    /**
+     * Constructor.
+     *
+     * @param values the values, in increasing order.
+     * @param vertexIds the id of the vertex of each value.
+     * @param version the version of the traces indexed, or null.
+     */
+    SuperstepValues(double[] values, String[] vertexIds, String version) {
+      this.values = values;
+      this.vertexIds = vertexIds;
+      this.version = version;
+    }
+
+    /**
+     * @param vertexValues the values of the vertices by vertex id.
+     * @param version the version of the traces indexed, or null if the
+     *        superstep is complete.
+     * @return the index of the values that are numbers.
+     */
+    static SuperstepValues build(Map<String, String> vertexValues,
+      String version) {
+      List<Map.Entry<String, Double>> entries = new ArrayList<>(
+        vertexValues.size());
+      for (Map.Entry<String, String> vertexValue : vertexValues.entrySet()) {
+        Double number = parseNumber(vertexValue.getValue());
+        if (number != null) {
+          entries.add(new SimpleImmutableEntry<>(
+            vertexValue.getKey(), number));
+        }
+      }
+      Collections.sort(entries, new Comparator<Map.Entry<String, Double>>() {
+        @Override
+        public int compare(Map.Entry<String, Double> entry1,
+          Map.Entry<String, Double> entry2) {
+          return Double.compare(entry1.getValue(), entry2.getValue());
+        }
+      });
+      double[] values = new double[entries.size()];
+      String[] vertexIds = new String[entries.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = entries.get(i).getValue();
+        vertexIds[i] = entries.get(i).getKey();
+      }
+      return new SuperstepValues(values, vertexIds, version);
+    }
+
+    /**
+     * @param minValue the smallest value to find, inclusive.
+     * @param maxValue the largest value to find, inclusive.
+     * @param limit maximum number of vertices to return.
+     * @return the values found by vertex id, in increasing order of value.
+     */
+    Map<String, Double> find(double minValue, double maxValue, int limit) {
+      int from;
+      int to;
+      if (Double.isNaN(minValue) && Double.isNaN(maxValue)) {
+        from = lowerBound(Double.NaN);
+        to = values.length;
+      } else {
+        from = lowerBound(minValue);
+        // The first value greater than the largest value, or the first NaN.
+        to = Double.isNaN(maxValue) || maxValue == Double.POSITIVE_INFINITY ?
+          lowerBound(Double.NaN) : lowerBound(Math.nextUp(maxValue));
+      }
+      Map<String, Double> found = new LinkedHashMap<>();
+      for (int i = from; i < to && found.size() < limit; i++) {
+        found.put(vertexIds[i], values[i]);
+      }
+      return found;
+    }
+
+    /**
+     * @param value a value.
+     * @return the index of the first value not less than the given one, as
+     *         by {@link Double#compare}.
+     */
+    private int lowerBound(double value) {
+      int low = 0;
+      int high = values.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (Double.compare(values[mid], value) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @param value a vertex value.
+     * @return the value as a number, or null if it is not one.
+     */
+    private static Double parseNumber(String value) {
+      try {
+        return value == null ? null : Double.valueOf(value);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Identifies the index of a superstep.
+   */
+  private static class SuperstepKey {
+    /**
+     * Id of the job.
+     */
+    private final String jobId;
+    /**
+     * The superstep.
+     */
+    private final long superstepNo;
+
+    /**
+     * Constructor.
+     *
+     * @param jobId id of the job.
+     * @param superstepNo the superstep.
+     */
+    SuperstepKey(String jobId, long superstepNo) {
+      this.jobId = jobId;
+      this.superstepNo = superstepNo;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SuperstepKey)) {
+        return false;
+      }
+      SuperstepKey other = (SuperstepKey) obj;
+      return superstepNo == other.superstepNo && jobId.equals(other.jobId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(jobId, superstepNo);
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import java.io.IOException;
+
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexScenarioClasses;
+import org.apache.giraph.debugger.Writables.PackedWritables;
+import org.apache.giraph.debugger.utils.TraceBlobResolver;
+import org.apache.giraph.debugger.utils.TraceStore;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * The value of a vertex after a superstep and the number of messages it
+ * received and sent, read from a serialized {@link GiraphVertexScenario}
+ * without parsing the rest of it. Neighbors, messages and the context shared
+ * with the master are skipped over, and messages are only counted.
+ */
+final class VertexTraceSummary {
+
+  /**
+   * The classes of the trace, or null if they are in its blob dictionary.
+   */
+  private VertexScenarioClasses vertexScenarioClasses;
+  /**
+   * Hash of the classes of the trace in its blob dictionary, or null.
+   */
+  private ByteString vertexScenarioClassesRef;
+  /**
+   * Path of the blob dictionary of the trace, or null.
+   */
+  private String blobDictionary;
+  /**
+   * The serialized Writable value of the vertex after the superstep, or
+   * null.
+   */
+  private ByteString vertexValueAfter;
+  /**
+   * The packed value of the vertex after the superstep, or null.
+   */
+  private PackedWritables packedVertexValueAfter;
+  /**
+   * The number of messages the vertex received.
+   */
+  private int numInMessages;
+  /**
+   * The number of messages the vertex sent.
+   */
+  private int numOutMessages;
+
+  /**
+   * Disallows creating instances other than by {@link #read}.
+   */
+  private VertexTraceSummary() { }
+
+  /**
+   * @param trace a serialized vertex trace, as stored.
+   * @return the summary of the trace.
+   * @throws IOException thrown when the trace is malformed.
+   */
+  static VertexTraceSummary read(ByteString trace) throws IOException {
+    VertexTraceSummary summary = new VertexTraceSummary();
+    CodedInputStream input = trace.newCodedInput();
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+      case GiraphVertexScenario.VERTEXSCENARIOCLASSES_FIELD_NUMBER:
+        summary.vertexScenarioClasses = VertexScenarioClasses.parseFrom(
+          input.readBytes());
+        break;
+      case GiraphVertexScenario.VERTEXSCENARIOCLASSESREF_FIELD_NUMBER:
+        summary.vertexScenarioClassesRef = input.readBytes();
+        break;
+      case GiraphVertexScenario.BLOBDICTIONARY_FIELD_NUMBER:
+        summary.blobDictionary = input.readString();
+        break;
+      case GiraphVertexScenario.CONTEXT_FIELD_NUMBER:
+        int oldLimit = input.pushLimit(input.readRawVarint32());
+        summary.readContext(input);
+        input.popLimit(oldLimit);
+        break;
+      default:
+        input.skipField(tag);
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Reads the value and message counts of a vertex context.
+   *
+   * @param input the serialized context, limited to its end.
+   * @throws IOException thrown when the context is malformed.
+   */
+  private void readContext(CodedInputStream input) throws IOException {
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+      case VertexContext.VERTEXVALUEAFTER_FIELD_NUMBER:
+        vertexValueAfter = input.readBytes();
+        break;
+      case VertexContext.PACKEDVERTEXVALUEAFTER_FIELD_NUMBER:
+        packedVertexValueAfter = PackedWritables.parseFrom(input.readBytes());
+        break;
+      case VertexContext.INMESSAGE_FIELD_NUMBER:
+      case VertexContext.INMESSAGEREF_FIELD_NUMBER:
+        numInMessages++;
+        input.skipField(tag);
+        break;
+      case VertexContext.PACKEDINMESSAGE_FIELD_NUMBER:
+        numInMessages += readCount(input);
+        break;
+      case VertexContext.OUTMESSAGE_FIELD_NUMBER:
+        numOutMessages++;
+        input.skipField(tag);
+        break;
+      case VertexContext.PACKEDOUTMESSAGEDATA_FIELD_NUMBER:
+        numOutMessages += readCount(input);
+        break;
+      default:
+        input.skipField(tag);
+      }
+    }
+  }
+
+  /**
+   * Reads the number of values of {@link PackedWritables} without reading
+   * the values.
+   *
+   * @param input the serialized packed Writables, preceded by their length.
+   * @return the number of values.
+   * @throws IOException thrown when the packed Writables are malformed.
+   */
+  private static int readCount(CodedInputStream input) throws IOException {
+    int oldLimit = input.pushLimit(input.readRawVarint32());
+    int count = 0;
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      if (WireFormat.getTagFieldNumber(tag) ==
+        PackedWritables.COUNT_FIELD_NUMBER) {
+        count = input.readInt32();
+        input.skipRawBytes(input.getBytesUntilLimit());
+        break;
+      }
+      input.skipField(tag);
+    }
+    input.popLimit(oldLimit);
+    return count;
+  }
+
+  /**
+   * @param traceStore the store the trace was read from.
+   * @param jobId id of the job the trace belongs to.
+   * @return the name of the class of the vertex values, read from the blob
+   *         dictionary of the trace if its classes were moved there.
+   * @throws IOException thrown when the classes cannot be read.
+   */
+  String getVertexValueClass(TraceStore traceStore, String jobId)
+    throws IOException {
+    if (vertexScenarioClasses == null) {
+      vertexScenarioClasses = VertexScenarioClasses.parseFrom(
+        TraceBlobResolver.getBlob(traceStore, TraceBlobResolver
+          .getDictionaryPath(jobId, blobDictionary),
+          vertexScenarioClassesRef));
+    }
+    return vertexScenarioClasses.getVertexValueClass();
+  }
+
+  /**
+   * @return the serialized Writable value of the vertex after the superstep,
+   *         or null if the value is packed or missing.
+   */
+  ByteString getVertexValueAfter() {
+    return vertexValueAfter;
+  }
+
+  /**
+   * @return the packed value of the vertex after the superstep, or null if
+   *         it is not packed.
+   */
+  PackedWritables getPackedVertexValueAfter() {
+    return packedVertexValueAfter;
+  }
+
+  /**
+   * @return the number of messages the vertex received.
+   */
+  int getNumInMessages() {
+    return numInMessages;
+  }
+
+  /**
+   * @return the number of messages the vertex sent.
+   */
+  int getNumOutMessages() {
+    return numOutMessages;
+  }
+}
@@ -18,11 +18,9 @@
 package org.apache.giraph.debugger.instrumenter;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.UUID;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.giraph.conf.StrConfOption;
 import org.apache.giraph.debugger.DebugConfig;
@@ -32,18 +30,19 @@ import org.apache.giraph.debugger.utils.ExceptionWrapper;
 import org.apache.giraph.debugger.utils.GiraphVertexScenarioWrapper;
 import org.apache.giraph.debugger.utils.GiraphVertexScenarioWrapper.VertexContextWrapper;
 import org.apache.giraph.debugger.utils.MsgIntegrityViolationWrapper;
+import org.apache.giraph.debugger.utils.TraceStore;
 import org.apache.giraph.edge.Edge;
 import org.apache.giraph.graph.AbstractComputation;
 import org.apache.giraph.graph.Computation;
 import org.apache.giraph.graph.Vertex;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.log4j.Logger;
 
+import com.google.common.base.Charsets;
+
 /**
  * Class that intercepts call to the AbstractComputation's exposed methods for
  * GiraphDebugger.
@@ -275,18 +274,17 @@ public abstract class AbstractInterceptingComputation<
       // last worker records jar signature if necessary
       String jarSignature = getConf().get(JAR_SIGNATURE_KEY);
       if (jarSignature != null) {
-        Path jarSignaturePath = new Path(
+        String jarSignaturePath =
           DebuggerUtils.getTraceFileRoot(COMMON_VERTEX_MASTER_INTERCEPTING_UTIL
-            .getJobId()) + "/" + "jar.signature");
+            .getJobId()) + "/" + "jar.signature";
         LOG.info("Recording jar signature (" + jarSignature + ") at " +
           jarSignaturePath);
-        FileSystem fs = COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.getFileSystem();
+        TraceStore traceStore =
+          COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.getTraceStore();
         try {
-          if (!fs.exists(jarSignaturePath)) {
-            OutputStream f = fs.create(jarSignaturePath,
-              true).getWrappedStream();
-            IOUtils.write(jarSignature, f);
-            f.close();
+          if (traceStore.lookup(jarSignaturePath) == null) {
+            traceStore.write(jarSignaturePath,
+              jarSignature.getBytes(Charsets.UTF_8));
           }
         } catch (IOException e) {
           // When multiple workers try to write the jar.signature, some of them
@@ -442,10 +440,11 @@ public abstract class AbstractInterceptingComputation<
     giraphVertexScenarioWrapperForExceptionTrace
       .setExceptionWrapper(exceptionWrapper);
     COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.saveScenarioWrapper(
-      giraphVertexScenarioWrapperForExceptionTrace, DebuggerUtils
-        .getFullTraceFileName(DebugTrace.VERTEX_EXCEPTION,
-          COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.getJobId(), getSuperstep(),
-          vertex.getId().toString()));
+      giraphVertexScenarioWrapperForExceptionTrace,
+      DebugTrace.VERTEX_EXCEPTION, getSuperstep(), vertex.getId().toString(),
+      null /* no task Id */);
+    // The exception will likely fail the task before the superstep ends.
+    COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.flushTraceManifest();
   }
 
   /**
@@ -465,10 +464,9 @@ public abstract class AbstractInterceptingComputation<
         .setVertexValueAfterWrapper(vertex.getValue());
       // Save vertex scenario.
       COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.saveScenarioWrapper(
-        giraphVertexScenarioWrapperForRegularTraces, DebuggerUtils
-          .getFullTraceFileName(DebugTrace.VERTEX_REGULAR,
-            COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.getJobId(), getSuperstep(),
-            vertex.getId().toString()));
+        giraphVertexScenarioWrapperForRegularTraces,
+        DebugTrace.VERTEX_REGULAR, getSuperstep(), vertex.getId().toString(),
+        null /* no task Id */);
       NUM_VERTICES_LOGGED++;
     }
     if (SHOULD_CHECK_VERTEX_VALUE_INTEGRITY &&
@@ -497,11 +495,11 @@ public abstract class AbstractInterceptingComputation<
     if (SHOULD_CHECK_MESSAGE_INTEGRITY &&
       msgIntegrityViolationWrapper.numMsgWrappers() > 0) {
       COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.saveScenarioWrapper(
-        msgIntegrityViolationWrapper, DebuggerUtils
-          .getMessageIntegrityAllTraceFullFileName(getSuperstep(),
-            COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.getJobId(), UUID.randomUUID()
-              .toString()));
+        msgIntegrityViolationWrapper, DebugTrace.INTEGRITY_MESSAGE_ALL,
+        getSuperstep(), null /* no vertex Id */, UUID.randomUUID().toString());
     }
+    // Make the traces of this superstep visible in the trace index.
+    COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.flushTraceManifest();
     // LOG.info("after postSuperstep done");
   }
 
@@ -519,9 +517,8 @@ public abstract class AbstractInterceptingComputation<
     giraphVertexScenarioWrapper = getGiraphVertexScenario(
       vertex, getPreviousVertexValue(), messages);
     COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.saveScenarioWrapper(
-      giraphVertexScenarioWrapper, DebuggerUtils.getFullTraceFileName(
-        debugTrace, COMMON_VERTEX_MASTER_INTERCEPTING_UTIL.getJobId(),
-        getSuperstep(), vertex.getId().toString()));
+      giraphVertexScenarioWrapper, debugTrace, getSuperstep(),
+      vertex.getId().toString(), null /* no task Id */);
   }
 
   /**
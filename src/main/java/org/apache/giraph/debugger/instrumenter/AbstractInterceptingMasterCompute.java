@@ -22,7 +22,6 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.apache.giraph.debugger.utils.DebuggerUtils;
 import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
 import org.apache.giraph.debugger.utils.ExceptionWrapper;
 import org.apache.giraph.debugger.utils.GiraphMasterScenarioWrapper;
@@ -102,9 +101,9 @@ public abstract class AbstractInterceptingMasterCompute extends MasterCompute {
       ExceptionUtils.getStackTrace(e));
     giraphMasterScenarioWrapper.setExceptionWrapper(exceptionWrapper);
     commonVertexMasterInterceptionUtil.saveScenarioWrapper(
-      giraphMasterScenarioWrapper, DebuggerUtils.getFullMasterTraceFileName(
-        DebugTrace.MASTER_EXCEPTION,
-        commonVertexMasterInterceptionUtil.getJobId(), getSuperstep()));
+      giraphMasterScenarioWrapper, DebugTrace.MASTER_EXCEPTION, getSuperstep(),
+      null /* no vertex Id */, null /* no task Id */);
+    commonVertexMasterInterceptionUtil.flushTraceManifest();
   }
 
   /**
@@ -112,9 +111,9 @@ public abstract class AbstractInterceptingMasterCompute extends MasterCompute {
    */
   public void interceptComputeEnd() {
     commonVertexMasterInterceptionUtil.saveScenarioWrapper(
-      giraphMasterScenarioWrapper, DebuggerUtils.getFullMasterTraceFileName(
-        DebugTrace.MASTER_REGULAR,
-        commonVertexMasterInterceptionUtil.getJobId(), getSuperstep()));
+      giraphMasterScenarioWrapper, DebugTrace.MASTER_REGULAR, getSuperstep(),
+      null /* no vertex Id */, null /* no task Id */);
+    commonVertexMasterInterceptionUtil.flushTraceManifest();
   }
 
   @Override
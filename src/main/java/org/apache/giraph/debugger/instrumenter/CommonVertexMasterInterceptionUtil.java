@@ -23,13 +23,22 @@ import java.util.List;
 
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.debugger.utils.AggregatedValueWrapper;
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
 import org.apache.giraph.debugger.utils.BaseWrapper;
 import org.apache.giraph.debugger.utils.CommonVertexMasterContextWrapper;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.giraph.debugger.utils.TraceBlobInterner;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceManifestWriter;
+import org.apache.giraph.debugger.utils.TraceStore;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.apache.giraph.debugger.utils.TraceWritableCodec;
 import org.apache.hadoop.io.Writable;
 import org.apache.log4j.Logger;
 
+import com.google.protobuf.GeneratedMessage;
+
 /**
  * Common class used by both {@link AbstractInterceptingComputation} and
  * {@link AbstractInterceptingMasterCompute}. Serves following functions:
@@ -39,10 +48,13 @@ import org.apache.log4j.Logger;
  * aggregators that the user accesses, superstepNo, totalNumberOfVertices and
  * edges.
  * <li>Contains helper methods to save a master or vertex trace file to HDFS and
- * maintains a {@link FileSystem} object that can be used to write other traces
- * to HDFS.
+ * maintains a {@link TraceStore} object that can be used to write other traces
+ * to HDFS, or to whichever backend {@link TraceStores} is configured with.
  * <li>Contains a helper method to return the trace directory for a particular
  * job.
+ * <li>Records every saved trace in the manifests of the {@link TraceIndex}.
+ * <li>Interns blobs repeated across saved traces with a
+ * {@link TraceBlobInterner}.
  * </ul>
  *
  * TODO: We might consider adding a method to {@link AbstractComputation} and
@@ -58,13 +70,25 @@ public class CommonVertexMasterInterceptionUtil {
   private static final Logger LOG = Logger
     .getLogger(CommonVertexMasterInterceptionUtil.class);
   /**
-   * The HDFS file system instance to load and save data for debugging.
+   * The trace store instance to load and save data for debugging.
    */
-  private static FileSystem FILE_SYSTEM = null;
+  private static TraceStore TRACE_STORE = null;
   /**
    * The Giraph job id of the job being debugged.
    */
   private final String jobId;
+  /**
+   * The layout trace files of the job are saved in.
+   */
+  private final TraceLayout traceLayout;
+  /**
+   * Records the traces saved through this instance in the trace index.
+   */
+  private final TraceManifestWriter traceManifestWriter;
+  /**
+   * Interns blobs repeated across the traces saved through this instance.
+   */
+  private final TraceBlobInterner traceBlobInterner;
   /**
    * A list of Giraph aggregator values.
    */
@@ -84,13 +108,38 @@ public class CommonVertexMasterInterceptionUtil {
   public CommonVertexMasterInterceptionUtil(String jobId) {
     this.jobId = jobId;
     previousAggregatedValueWrappers = new ArrayList<>();
-    if (FILE_SYSTEM == null) {
+    if (TRACE_STORE == null) {
       try {
-        FILE_SYSTEM = FileSystem.get(new Configuration());
+        TRACE_STORE = TraceStores.getDefault();
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
     }
+    traceLayout = initTraceLayout(jobId);
+    traceManifestWriter = new TraceManifestWriter(TRACE_STORE, jobId);
+    traceBlobInterner = new TraceBlobInterner(TRACE_STORE, jobId);
+  }
+
+  /**
+   * Records the default trace layout for the job unless another worker or the
+   * master already did, and returns the recorded one so that all of them
+   * agree.
+   *
+   * @param jobId The job id of the job being debugged.
+   * @return the layout to save trace files in.
+   */
+  private static TraceLayout initTraceLayout(String jobId) {
+    TraceLayout defaultLayout = TraceLayout.getDefault();
+    try {
+      defaultLayout.save(TRACE_STORE, jobId);
+      return TraceLayout.load(TRACE_STORE, jobId);
+    } catch (IOException e) {
+      // Another worker may be writing the layout at the same time, in which
+      // case it records the same default layout.
+      LOG.warn("Could not record the trace layout, using " + defaultLayout +
+        ": " + e.getMessage());
+      return defaultLayout;
+    }
   }
 
   /**
@@ -144,22 +193,36 @@ public class CommonVertexMasterInterceptionUtil {
   }
 
   /**
-   * Saves captured scenario.
+   * Saves captured scenario in the background and records it in the trace
+   * manifest.
    *
    * @param masterOrVertexScenarioWrapper The scenario to save.
-   * @param fullFileName HDFS path for the saved file.
+   * @param debugTrace The type of the trace.
+   * @param superstepNo The superstep number of the trace.
+   * @param vertexId The vertex id for vertex traces, null otherwise.
+   * @param taskId The task id for message integrity traces, null otherwise.
    */
   public void saveScenarioWrapper(BaseWrapper masterOrVertexScenarioWrapper,
-    String fullFileName) {
-    try {
-      masterOrVertexScenarioWrapper.saveToHDFS(FILE_SYSTEM, fullFileName);
-    } catch (IOException e) {
-      LOG.error("Could not save the " +
-        masterOrVertexScenarioWrapper.getClass().getName() +
-        " protobuf trace. IOException was thrown. exceptionMessage: " +
-        e.getMessage());
-      e.printStackTrace();
-    }
+    DebugTrace debugTrace, long superstepNo, String vertexId, String taskId) {
+    String fullFileName = traceLayout.getFullTraceFileName(debugTrace, jobId,
+      superstepNo, vertexId, taskId);
+    GeneratedMessage message = traceBlobInterner.intern(
+      TraceWritableCodec.pack(masterOrVertexScenarioWrapper
+        .buildProtoObject()), superstepNo);
+    // The blobs the trace refers to are appended to their dictionary first.
+    AsyncHDFSWriteService.writeToTraceStore(message, TRACE_STORE,
+      fullFileName, traceBlobInterner.flush());
+    traceManifestWriter.record(debugTrace, superstepNo, vertexId, taskId,
+      fullFileName, message.getSerializedSize());
+  }
+
+  /**
+   * Writes the blobs interned and the manifest entries of the traces saved so
+   * far in the background. Called at the end of each superstep.
+   */
+  public void flushTraceManifest() {
+    traceBlobInterner.flush();
+    traceManifestWriter.flush();
   }
 
   public List<AggregatedValueWrapper> getPreviousAggregatedValueWrappers() {
@@ -176,8 +239,8 @@ public class CommonVertexMasterInterceptionUtil {
     return commonVertexMasterContextWrapper;
   }
 
-  public FileSystem getFileSystem() {
-    return FILE_SYSTEM;
+  public TraceStore getTraceStore() {
+    return TRACE_STORE;
   }
 
   public String getJobId() {
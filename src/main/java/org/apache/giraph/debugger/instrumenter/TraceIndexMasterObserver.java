@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.instrumenter;
+
+import java.io.IOException;
+
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.apache.giraph.master.DefaultMasterObserver;
+import org.apache.log4j.Logger;
+
+/**
+ * Merges the trace manifests of each superstep into the {@link TraceIndex}
+ * of the job once all workers are done with it, whether or not the job has
+ * a master compute, and merges whatever is left when the job ends or fails.
+ * The master's own traces and manifests, which are written in the
+ * background, are waited for first; the workers wait for theirs before they
+ * finish a superstep, see {@link TraceWriterWorkerObserver}.
+ */
+public class TraceIndexMasterObserver extends DefaultMasterObserver {
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger
+    .getLogger(TraceIndexMasterObserver.class);
+
+  @Override
+  public void postSuperstep(long superstep) {
+    try {
+      AsyncHDFSWriteService.awaitPendingWrites();
+      TraceIndex.mergeSuperstep(TraceStores.getDefault(), getJobId(),
+        superstep);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.error("Interrupted while merging the trace manifests of superstep " +
+        superstep);
+    } catch (IOException e) {
+      LOG.error("Could not merge the trace manifests of superstep " +
+        superstep + ". IOException was thrown. exceptionMessage: " +
+        e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public void postApplication() {
+    mergeAllSupersteps();
+  }
+
+  @Override
+  public void applicationFailed(Exception e) {
+    mergeAllSupersteps();
+  }
+
+  /**
+   * Merges the trace manifests of every superstep not merged yet.
+   */
+  private void mergeAllSupersteps() {
+    try {
+      AsyncHDFSWriteService.awaitPendingWrites();
+      TraceIndex.mergeAllSupersteps(TraceStores.getDefault(), getJobId());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.error("Interrupted while merging the trace manifests");
+    } catch (IOException e) {
+      LOG.error("Could not merge the trace manifests. IOException was " +
+        "thrown. exceptionMessage: " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @return the id of the job, as the traces are saved under.
+   */
+  private String getJobId() {
+    return getConf().get("mapreduce.job.id", getConf().get("mapred.job.id"));
+  }
+}
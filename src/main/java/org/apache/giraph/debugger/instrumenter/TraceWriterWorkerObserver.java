@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.instrumenter;
+
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.worker.DefaultWorkerObserver;
+import org.apache.log4j.Logger;
+
+/**
+ * Waits for the traces and manifests a worker saves in the background at the
+ * end of each superstep, before the worker tells the master it is done with
+ * it, so that {@link TraceIndexMasterObserver} merges complete manifests.
+ */
+public class TraceWriterWorkerObserver extends DefaultWorkerObserver {
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger
+    .getLogger(TraceWriterWorkerObserver.class);
+
+  @Override
+  public void postSuperstep(long superstep) {
+    awaitPendingWrites();
+  }
+
+  @Override
+  public void postApplication() {
+    awaitPendingWrites();
+  }
+
+  /**
+   * Waits for the writes submitted so far.
+   */
+  private void awaitPendingWrites() {
+    try {
+      AsyncHDFSWriteService.awaitPendingWrites();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.error("Interrupted while waiting for traces to be written");
+    }
+  }
+}
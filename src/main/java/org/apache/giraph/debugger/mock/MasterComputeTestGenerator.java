@@ -94,8 +94,8 @@ public class MasterComputeTestGenerator extends TestGenerator {
     String className) throws ClassNotFoundException {
     ContextBuilder builder = new ContextBuilder();
 
-    Class<?> classUnderTest = Class.forName(scenario
-      .getMasterClassUnderTest());
+    Class<?> classUnderTest = scenario.getTypeRegistry().resolveClass(
+      scenario.getMasterClassUnderTest());
     builder.addTestClassInfo(testPackage, classUnderTest, className);
     builder.addCommonMasterVertexContext(scenario
       .getCommonVertexMasterContextWrapper());
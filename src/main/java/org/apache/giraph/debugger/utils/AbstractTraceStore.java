@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * Base class for {@link TraceStore} implementations. Subclasses only need to
+ * provide raw output streams; writing whole messages and batches of
+ * length-delimited records is implemented here once for all backends.
+ */
+public abstract class AbstractTraceStore implements TraceStore {
+
+  /**
+   * Size of the buffer used when writing batches of records.
+   */
+  private static final int APPEND_BUFFER_SIZE = 0x10000;
+
+  /**
+   * Opens the file at the given path for appending, creating it if it does
+   * not exist yet.
+   *
+   * @param path the full path of the file.
+   * @return a stream positioned at the end of the file.
+   * @throws IOException thrown when the file cannot be opened.
+   */
+  protected abstract OutputStream openForAppend(String path)
+    throws IOException;
+
+  @Override
+  public void write(String path, MessageLite message) throws IOException {
+    try (OutputStream output = create(path)) {
+      message.writeTo(output);
+    }
+  }
+
+  @Override
+  public void write(String path, byte[] bytes) throws IOException {
+    try (OutputStream output = create(path)) {
+      output.write(bytes);
+    }
+  }
+
+  @Override
+  public void append(String path, Collection<? extends MessageLite> records)
+    throws IOException {
+    if (records.isEmpty()) {
+      return;
+    }
+    try (OutputStream output = new BufferedOutputStream(openForAppend(path),
+      APPEND_BUFFER_SIZE)) {
+      for (MessageLite record : records) {
+        record.writeDelimitedTo(output);
+      }
+    }
+  }
+
+  /**
+   * Returns the parent directory of the given path.
+   *
+   * @param path a full path.
+   * @return the path without its last component, or "/" for top-level paths.
+   */
+  protected static String getParent(String path) {
+    int lastSlash = path.lastIndexOf('/');
+    return lastSlash <= 0 ? "/" : path.substring(0, lastSlash);
+  }
+
+  /**
+   * Removes trailing slashes from the given path.
+   *
+   * @param path a full path.
+   * @return the path without trailing slashes.
+   */
+  protected static String normalize(String path) {
+    String normalized = path;
+    while (normalized.length() > 1 && normalized.endsWith("/")) {
+      normalized = normalized.substring(0, normalized.length() - 1);
+    }
+    return normalized;
+  }
+}
@@ -82,9 +82,20 @@ public class AggregatedValueWrapper extends BaseWrapper {
   public void loadFromProto(GeneratedMessage protoObject)
     throws ClassNotFoundException, IOException, InstantiationException,
     IllegalAccessException {
-    AggregatedValue aggregatedValueProto = (AggregatedValue) protoObject;
-    this.value = (Writable) Class.forName(
-      aggregatedValueProto.getWritableClass()).newInstance();
+    loadFromProto((AggregatedValue) protoObject, TraceTypeRegistry.current());
+  }
+
+  /**
+   * Loads the aggregated value, resolving its class with the given registry.
+   *
+   * @param aggregatedValueProto The aggregated value.
+   * @param typeRegistry The registry to resolve the class of the value with.
+   * @throws ClassNotFoundException thrown when the class cannot be found.
+   */
+  void loadFromProto(AggregatedValue aggregatedValueProto,
+    TraceTypeRegistry typeRegistry) throws ClassNotFoundException {
+    this.value = (Writable) typeRegistry.newInstance(typeRegistry
+      .resolveClass(aggregatedValueProto.getWritableClass()));
     WritableUtils.readFieldsFromByteArray(aggregatedValueProto.getValue()
       .toByteArray(), this.value);
     this.key = aggregatedValueProto.getKey();
@@ -83,13 +83,15 @@ public class AggregatorWrapper extends BaseWrapper {
     IllegalAccessException {
     org.apache.giraph.debugger.GiraphAggregator.Aggregator aggregatorProto =
       (org.apache.giraph.debugger.GiraphAggregator.Aggregator) protoObject;
+    TraceTypeRegistry typeRegistry = TraceTypeRegistry.current();
     Aggregator<Writable> giraphAggregator =
-      (org.apache.giraph.aggregators.Aggregator<Writable>) Class
-      .forName(aggregatorProto.getAggregatorClass()).newInstance();
+      (org.apache.giraph.aggregators.Aggregator<Writable>) typeRegistry
+      .newInstance(typeRegistry.resolveClass(
+        aggregatorProto.getAggregatorClass()));
     AggregatedValue aggregatedValueProto = aggregatorProto.getAggregatedValue();
     this.key = aggregatedValueProto.getKey();
-    Writable giraphAggregatedValue = (Writable) Class.forName(
-      aggregatedValueProto.getWritableClass()).newInstance();
+    Writable giraphAggregatedValue = (Writable) typeRegistry.newInstance(
+      typeRegistry.resolveClass(aggregatedValueProto.getWritableClass()));
     WritableUtils.readFieldsFromByteArray(aggregatedValueProto.getValue()
       .toByteArray(), giraphAggregatedValue);
     giraphAggregator.setAggregatedValue(giraphAggregatedValue);
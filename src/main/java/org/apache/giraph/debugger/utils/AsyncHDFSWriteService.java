@@ -18,19 +18,22 @@
 package org.apache.giraph.debugger.utils;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.log4j.Logger;
 
 import com.google.protobuf.GeneratedMessage;
+import com.google.protobuf.MessageLite;
 
 /**
- * A utility class for writing to HDFS asynchronously.
+ * A utility class for writing to HDFS, or any other {@link TraceStore},
+ * asynchronously.
  */
 public class AsyncHDFSWriteService {
 
@@ -46,6 +49,15 @@ public class AsyncHDFSWriteService {
    */
   private static ExecutorService HDFS_ASYNC_WRITE_SERVICE = Executors
     .newFixedThreadPool(2);
+  /**
+   * Sequence numbers of the writes that were submitted but have not finished
+   * yet. Also used as the lock for waiting on them.
+   */
+  private static final SortedSet<Long> PENDING_WRITES = new TreeSet<>();
+  /**
+   * Number of writes submitted so far, used for numbering them.
+   */
+  private static long NUM_WRITES_SUBMITTED = 0;
   static {
     // Make sure we finish writing everything before shuting down the VM.
     Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
@@ -85,15 +97,48 @@ public class AsyncHDFSWriteService {
    */
   public static void writeToHDFS(final GeneratedMessage message,
     final FileSystem fs, final String fileName) {
-    HDFS_ASYNC_WRITE_SERVICE.submit(new Runnable() {
+    writeToTraceStore(message, new HDFSTraceStore(fs), fileName);
+  }
+
+  /**
+   * Writes given protobuf message to the given path of a trace store in the
+   * background.
+   *
+   * @param message
+   *          The proto message to write.
+   * @param traceStore
+   *          The trace store to write to.
+   * @param fileName
+   *          The path to write the message to.
+   */
+  public static void writeToTraceStore(final GeneratedMessage message,
+    final TraceStore traceStore, final String fileName) {
+    writeToTraceStore(message, traceStore, fileName, -1);
+  }
+
+  /**
+   * Writes given protobuf message to the given path of a trace store in the
+   * background, once the given write has finished, e.g., the append of the
+   * blobs the message refers to.
+   *
+   * @param message
+   *          The proto message to write.
+   * @param traceStore
+   *          The trace store to write to.
+   * @param fileName
+   *          The path to write the message to.
+   * @param awaitedWriteNo
+   *          The number of the write to wait for, or -1 not to wait.
+   */
+  public static void writeToTraceStore(final GeneratedMessage message,
+    final TraceStore traceStore, final String fileName,
+    long awaitedWriteNo) {
+    submit(false, awaitedWriteNo, new Runnable() {
       @Override
       public void run() {
-        Path pt = new Path(fileName);
         try {
-          LOG.info("Writing " + fileName + " at " + fs.getUri());
-          OutputStream wrappedStream = fs.create(pt, true).getWrappedStream();
-          message.writeTo(wrappedStream);
-          wrappedStream.close();
+          LOG.info("Writing " + fileName + " at " + traceStore);
+          traceStore.write(fileName, message);
           LOG.info("Done writing " + fileName);
         } catch (IOException e) {
           e.printStackTrace();
@@ -102,4 +147,112 @@ public class AsyncHDFSWriteService {
     });
   }
 
+  /**
+   * Appends the given records to the given path of a trace store in the
+   * background, once all writes submitted before have finished, so that the
+   * records may refer to what those writes save, and appends to the same
+   * path never overlap.
+   *
+   * @param records
+   *          The records to append.
+   * @param traceStore
+   *          The trace store to append to.
+   * @param fileName
+   *          The path to append the records to.
+   * @return the number of the write, to wait for with
+   *         {@link #writeToTraceStore(GeneratedMessage, TraceStore, String,
+   *         long)}.
+   */
+  public static long appendToTraceStore(
+    final Collection<? extends MessageLite> records,
+    final TraceStore traceStore, final String fileName) {
+    return submit(true, -1, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          traceStore.append(fileName, records);
+        } catch (IOException e) {
+          LOG.error("Could not append to " + fileName + " at " + traceStore +
+            ": " + e.getMessage());
+          e.printStackTrace();
+        }
+      }
+    });
+  }
+
+  /**
+   * Blocks until all writes submitted before this call have finished. Writes
+   * submitted by other threads in the meantime are not waited for.
+   *
+   * @throws InterruptedException thrown when interrupted while waiting.
+   */
+  public static void awaitPendingWrites() throws InterruptedException {
+    synchronized (PENDING_WRITES) {
+      awaitWritesBefore(NUM_WRITES_SUBMITTED);
+    }
+  }
+
+  /**
+   * Numbers a write and submits it. Writes are numbered in the order they are
+   * submitted in, and start in that order, so a write only ever waits for
+   * writes that already started.
+   *
+   * @param afterPendingWrites
+   *          Whether the write must wait for the writes submitted before it.
+   * @param awaitedWriteNo
+   *          The number of a write submitted before that the write must wait
+   *          for, or -1.
+   * @param write
+   *          The write.
+   * @return the number of the write.
+   */
+  private static long submit(final boolean afterPendingWrites,
+    final long awaitedWriteNo, final Runnable write) {
+    synchronized (PENDING_WRITES) {
+      final long writeNo = NUM_WRITES_SUBMITTED++;
+      PENDING_WRITES.add(writeNo);
+      HDFS_ASYNC_WRITE_SERVICE.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            synchronized (PENDING_WRITES) {
+              if (afterPendingWrites) {
+                awaitWritesBefore(writeNo);
+              } else {
+                while (PENDING_WRITES.contains(awaitedWriteNo)) {
+                  PENDING_WRITES.wait();
+                }
+              }
+            }
+            write.run();
+          } catch (InterruptedException e) {
+            LOG.error("Interrupted while waiting for writes to finish");
+            Thread.currentThread().interrupt();
+          } finally {
+            synchronized (PENDING_WRITES) {
+              PENDING_WRITES.remove(writeNo);
+              PENDING_WRITES.notifyAll();
+            }
+          }
+        }
+      });
+      return writeNo;
+    }
+  }
+
+  /**
+   * Blocks until all writes numbered below the given one have finished. Must
+   * be called holding the lock of {@link #PENDING_WRITES}.
+   *
+   * @param writeNo
+   *          The number of the first write not to wait for.
+   * @throws InterruptedException thrown when interrupted while waiting.
+   */
+  private static void awaitWritesBefore(long writeNo)
+    throws InterruptedException {
+    while (!PENDING_WRITES.isEmpty() && PENDING_WRITES.first() < writeNo) {
+      PENDING_WRITES.wait();
+    }
+  }
+
 }
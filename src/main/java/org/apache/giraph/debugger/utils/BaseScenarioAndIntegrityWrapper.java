@@ -36,6 +36,10 @@ public abstract class BaseScenarioAndIntegrityWrapper<
    * Class of the type of the vertex IDs.
    */
   protected Class<I> vertexIdClass;
+  /**
+   * Resolves the classes of a loaded trace and creates their instances.
+   */
+  protected TraceTypeRegistry typeRegistry = TraceTypeRegistry.current();
 
   /**
    * Default empty constructor.
@@ -54,6 +58,10 @@ public abstract class BaseScenarioAndIntegrityWrapper<
     return vertexIdClass;
   }
 
+  public TraceTypeRegistry getTypeRegistry() {
+    return typeRegistry;
+  }
+
   /**
    * Initializes vertex id class.
    * @param vertexIdClass vertex id class.
@@ -21,15 +21,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
 
 import org.apache.giraph.utils.WritableUtils;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 
 import com.google.protobuf.ByteString;
@@ -86,7 +80,7 @@ public abstract class BaseWrapper {
    */
   public void save(String fileName) throws IOException {
     try (FileOutputStream output = new FileOutputStream(fileName)) {
-      buildProtoObject().writeTo(output);
+      TraceWritableCodec.pack(buildProtoObject()).writeTo(output);
       output.close();
     }
   }
@@ -99,7 +93,20 @@ public abstract class BaseWrapper {
    * @throws IOException thrown when there is an exception during the writing.
    */
   public void saveToHDFS(FileSystem fs, String fileName) throws IOException {
-    AsyncHDFSWriteService.writeToHDFS(buildProtoObject(), fs, fileName);
+    saveToTraceStore(new HDFSTraceStore(fs), fileName);
+  }
+
+  /**
+   * Saves this wrapper object to a file in a {@link TraceStore} in the
+   * background.
+   * @param traceStore {@link TraceStore} to save to.
+   * @param fileName the full path of the file to save this wrapper object.
+   * @throws IOException thrown when there is an exception during the writing.
+   */
+  public void saveToTraceStore(TraceStore traceStore, String fileName)
+    throws IOException {
+    AsyncHDFSWriteService.writeToTraceStore(TraceWritableCodec.pack(
+      buildProtoObject()), traceStore, fileName);
   }
 
   /**
@@ -115,7 +122,8 @@ public abstract class BaseWrapper {
   public void load(String fileName) throws ClassNotFoundException, IOException,
     InstantiationException, IllegalAccessException {
     try (FileInputStream inputStream = new FileInputStream(fileName)) {
-      loadFromProto(parseProtoFromInputStream(inputStream));
+      loadFromProto(TraceWritableCodec.unpack(parseProtoFromInputStream(
+        inputStream)));
     }
   }
 
@@ -128,11 +136,41 @@ public abstract class BaseWrapper {
   public void loadFromHDFS(FileSystem fs, String fileName)
     throws ClassNotFoundException, IOException, InstantiationException,
     IllegalAccessException {
-    try (FSDataInputStream inputStream = fs.open(new Path(fileName))) {
-      loadFromProto(parseProtoFromInputStream(inputStream));
+    loadFromTraceStore(new HDFSTraceStore(fs), fileName);
+  }
+
+  /**
+   * Loads a protocol buffer stored in a file in a {@link TraceStore} into this
+   * wrapper object.
+   * @param traceStore {@link TraceStore} to read from.
+   * @param fileName the full path of the file where the protocol buffer is
+   * stored.
+   */
+  public void loadFromTraceStore(TraceStore traceStore, String fileName)
+    throws ClassNotFoundException, IOException, InstantiationException,
+    IllegalAccessException {
+    try (InputStream inputStream = traceStore.open(fileName)) {
+      loadFromStream(traceStore, DebuggerUtils.getJobIdOfTraceFile(fileName),
+        inputStream);
     }
   }
 
+  /**
+   * Loads a protocol buffer read from a {@link TraceStore} into this wrapper
+   * object, e.g., one read from an archive segment of a compacted job.
+   * @param traceStore {@link TraceStore} the stream was opened from, which
+   * holds the blob dictionaries the protocol buffer may refer to.
+   * @param jobId id of the job that wrote the protocol buffer, whose trace
+   * directory holds its blob dictionaries, or null if unknown.
+   * @param inputStream {@link InputStream} over the protocol buffer.
+   */
+  public void loadFromStream(TraceStore traceStore, String jobId,
+    InputStream inputStream) throws ClassNotFoundException, IOException,
+    InstantiationException, IllegalAccessException {
+    loadFromProto(TraceWritableCodec.unpack(TraceBlobResolver.resolve(
+      traceStore, jobId, parseProtoFromInputStream(inputStream))));
+  }
+
   /**
    * Constructs a protobuf representing this wrapper object from an
    * {@link InputStream}.
@@ -152,54 +190,61 @@ public abstract class BaseWrapper {
     IllegalAccessException;
 
   /**
-   * Add given URLs to the CLASSPATH before loading from HDFS. To do so, we hack
-   * the system class loader, assuming it is an URLClassLoader.
+   * Loads a protocol buffer stored in a file in HDFS into this wrapper object,
+   * resolving the classes it names with the given class loader, e.g., one of
+   * {@link JobClassLoaders} for the jar of the job that wrote it.
    *
-   * XXX Setting the currentThread's context class loader has no effect on
-   * Class#forName().
-   *
-   * @see http://stackoverflow.com/a/12963811/390044
    * @param fs {@link FileSystem} to use for reading from HDFS.
    * @param fileName the name of the file in HDFS.
-   * @param classPaths a possible list of class paths that may contain the
-   *        directories containing the file.
-   */
-  public void loadFromHDFS(FileSystem fs, String fileName, URL... classPaths)
-    throws ClassNotFoundException, InstantiationException,
-    IllegalAccessException, IOException {
-    for (URL url : classPaths) {
-      addPath(url);
+   * @param classLoader the class loader to resolve classes with.
+   */
+  public void loadFromHDFS(FileSystem fs, String fileName,
+    ClassLoader classLoader) throws ClassNotFoundException,
+    InstantiationException, IllegalAccessException, IOException {
+    loadFromTraceStore(new HDFSTraceStore(fs), fileName, classLoader);
+  }
+
+  /**
+   * Loads a protocol buffer stored in a file in a {@link TraceStore} into
+   * this wrapper object, resolving the classes it names with the given class
+   * loader. See {@link #loadFromHDFS(FileSystem, String, ClassLoader)}.
+   *
+   * @param traceStore {@link TraceStore} to read from.
+   * @param fileName the full path of the file in the store.
+   * @param classLoader the class loader to resolve classes with.
+   */
+  public void loadFromTraceStore(TraceStore traceStore, String fileName,
+    ClassLoader classLoader) throws ClassNotFoundException,
+    InstantiationException, IllegalAccessException, IOException {
+    try (InputStream inputStream = traceStore.open(fileName)) {
+      loadFromStream(traceStore, DebuggerUtils.getJobIdOfTraceFile(fileName),
+        inputStream, classLoader);
     }
-    loadFromHDFS(fs, fileName);
   }
 
   /**
-   * @param u
-   *          the URL to add to the CLASSPATH
-   * @see http://stackoverflow.com/a/252967/390044
-   */
-  private static void addPath(URL u) {
-    // need to do add path to Classpath with reflection since the
-    // URLClassLoader.addURL(URL url) method is protected:
-    ClassLoader cl = ClassLoader.getSystemClassLoader();
-    if (cl instanceof URLClassLoader) {
-      URLClassLoader urlClassLoader = (URLClassLoader) cl;
-      Class<URLClassLoader> urlClass = URLClassLoader.class;
-      try {
-        Method method = urlClass.getDeclaredMethod("addURL",
-          new Class[] { URL.class });
-        method.setAccessible(true);
-        method.invoke(urlClassLoader, u);
-      } catch (NoSuchMethodException | SecurityException |
-        IllegalAccessException | IllegalArgumentException |
-        InvocationTargetException e) {
-        throw new IllegalStateException("Cannot add URL to system ClassLoader",
-          e);
-      }
-    } else {
-      throw new IllegalStateException(
-        "Cannot add URL to system ClassLoader of type " +
-          cl.getClass().getSimpleName());
+   * Loads a protocol buffer read from a {@link TraceStore} into this wrapper
+   * object, resolving the classes it names with the given class loader. The
+   * loader is the current thread's context class loader while loading, which
+   * is where {@link TraceTypeRegistry#current()} finds it.
+   *
+   * @param traceStore {@link TraceStore} the stream was opened from.
+   * @param jobId id of the job that wrote the protocol buffer, or null if
+   * unknown.
+   * @param inputStream {@link InputStream} over the protocol buffer.
+   * @param classLoader the class loader to resolve classes with.
+   */
+  public void loadFromStream(TraceStore traceStore, String jobId,
+    InputStream inputStream, ClassLoader classLoader)
+    throws ClassNotFoundException, IOException, InstantiationException,
+    IllegalAccessException {
+    Thread currentThread = Thread.currentThread();
+    ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+    currentThread.setContextClassLoader(classLoader);
+    try {
+      loadFromStream(traceStore, jobId, inputStream);
+    } finally {
+      currentThread.setContextClassLoader(contextClassLoader);
     }
   }
 }
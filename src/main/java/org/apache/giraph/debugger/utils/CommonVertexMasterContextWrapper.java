@@ -28,6 +28,7 @@ import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.debugger.GiraphAggregator.AggregatedValue;
 import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.GeneratedMessage;
 
 /**
@@ -43,6 +44,13 @@ public class CommonVertexMasterContextWrapper extends BaseWrapper {
    * exposes.
    */
   private ImmutableClassesGiraphConfiguration immutableClassesConfig = null;
+  /**
+   * The serialized configuration of a loaded trace, kept until the
+   * configuration is first read as deserializing it is expensive. Guarded,
+   * along with immutableClassesConfig, by this wrapper, as scenarios may be
+   * shared by the threads of the GUI server.
+   */
+  private ByteString serializedConfig = null;
   /**
    * Wraps the superstep number which
    * {@link org.apache.giraph.debugger.Scenario.CommonVertexMasterContext}
@@ -140,20 +148,48 @@ public class CommonVertexMasterContextWrapper extends BaseWrapper {
     return previousAggregatedValueWrappers;
   }
 
-  public ImmutableClassesGiraphConfiguration getConfig() {
+  /**
+   * @return the configuration, deserialized on the first call if this was
+   *         loaded from a trace.
+   */
+  public synchronized ImmutableClassesGiraphConfiguration getConfig() {
+    if (serializedConfig != null) {
+      GiraphConfiguration config = new GiraphConfiguration();
+      fromByteString(serializedConfig, config);
+      immutableClassesConfig = new ImmutableClassesGiraphConfiguration(config);
+      serializedConfig = null;
+    }
     return immutableClassesConfig;
   }
 
-  public void setConfig(
+  public synchronized void setConfig(
     ImmutableClassesGiraphConfiguration immutableClassesConfig) {
     this.immutableClassesConfig = immutableClassesConfig;
+    this.serializedConfig = null;
+  }
+
+  /**
+   * @return the configuration serialized, without deserializing it if this
+   *         was loaded from a trace.
+   */
+  private synchronized ByteString getSerializedConfig() {
+    return serializedConfig != null ? serializedConfig :
+      toByteString(immutableClassesConfig);
+  }
+
+  /**
+   * @param serializedConfig the serialized configuration of a loaded trace.
+   */
+  private synchronized void setSerializedConfig(ByteString serializedConfig) {
+    this.immutableClassesConfig = null;
+    this.serializedConfig = serializedConfig;
   }
 
   @Override
   public GeneratedMessage buildProtoObject() {
     CommonVertexMasterContext.Builder commonContextBuilder =
       CommonVertexMasterContext.newBuilder();
-    commonContextBuilder.setConf(toByteString(immutableClassesConfig))
+    commonContextBuilder.setConf(getSerializedConfig())
       .setSuperstepNo(getSuperstepNoWrapper())
       .setTotalNumVertices(getTotalNumVerticesWrapper())
       .setTotalNumEdges(getTotalNumEdgesWrapper());
@@ -173,23 +209,28 @@ public class CommonVertexMasterContextWrapper extends BaseWrapper {
     IllegalAccessException {
     CommonVertexMasterContext commonContext = (CommonVertexMasterContext)
       generatedMessage;
-    GiraphConfiguration config = new GiraphConfiguration();
-    fromByteString(commonContext.getConf(), config);
-    ImmutableClassesGiraphConfiguration immutableClassesGiraphConfiguration =
-      new ImmutableClassesGiraphConfiguration(config);
-    setConfig(immutableClassesGiraphConfiguration);
+    setSerializedConfig(commonContext.getConf());
 
     setSuperstepNoWrapper(commonContext.getSuperstepNo());
     setTotalNumVerticesWrapper(commonContext.getTotalNumVertices());
     setTotalNumEdgesWrapper(commonContext.getTotalNumEdges());
 
-    for (AggregatedValue previousAggregatedValueProto : commonContext
-      .getPreviousAggregatedValueList()) {
-      AggregatedValueWrapper aggregatedValueWrapper =
-        new AggregatedValueWrapper();
-      aggregatedValueWrapper.loadFromProto(previousAggregatedValueProto);
-      addPreviousAggregatedValue(aggregatedValueWrapper);
-    }
+    // Decoded lazily, but with the classes of the job being loaded.
+    final TraceTypeRegistry typeRegistry = TraceTypeRegistry.current();
+    setPreviousAggregatedValues(new LazyDecodedList<>(
+      commonContext.getPreviousAggregatedValueList(),
+      new LazyDecodedList.Decoder<AggregatedValue, AggregatedValueWrapper>() {
+        @Override
+        public AggregatedValueWrapper decode(
+          AggregatedValue previousAggregatedValueProto)
+          throws IOException, ReflectiveOperationException {
+          AggregatedValueWrapper aggregatedValueWrapper =
+            new AggregatedValueWrapper();
+          aggregatedValueWrapper.loadFromProto(previousAggregatedValueProto,
+            typeRegistry);
+          return aggregatedValueWrapper;
+        }
+      }));
   }
 
   @Override
@@ -201,7 +242,7 @@ public class CommonVertexMasterContextWrapper extends BaseWrapper {
   @Override
   public String toString() {
     StringBuilder stringBuilder = new StringBuilder();
-    stringBuilder.append("\nconfig: " + immutableClassesConfig.toString());
+    stringBuilder.append("\nconfig: " + getConfig().toString());
     stringBuilder.append("superstepNo: " + getSuperstepNoWrapper());
 //    stringBuilder.append("\ntotalNumVertices: " + totalNumVertices);
 //    stringBuilder.append("\ntotalNumEdges: " + totalNumEdges);
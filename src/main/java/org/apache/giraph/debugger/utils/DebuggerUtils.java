@@ -212,7 +212,10 @@ public class DebuggerUtils {
 
   /**
    * Returns the full trace file name for the given type of debug trace. One or
-   * more of the passed arguments will be used in the file name.
+   * more of the passed arguments will be used in the file name. The name is
+   * that of the flat {@link TraceLayout}; use
+   * {@link TraceLayout#getFullTraceFileName} for jobs that may have been
+   * traced in another layout.
    *
    * @param debugTrace The debug trace for generating the file name.
    * @param jobId The job id of the job the debug trace belongs to.
@@ -282,7 +285,7 @@ public class DebuggerUtils {
    * @param taskId The task id.
    * @return The file name that corresponds to the debug trace.
    */
-  private static String getTraceFileName(DebugTrace debugTrace,
+  static String getTraceFileName(DebugTrace debugTrace,
     Long superstepNo, String vertexId, String taskId) {
     String format = getTraceFileFormat(debugTrace);
     switch (debugTrace) {
@@ -363,6 +366,29 @@ public class DebuggerUtils {
     }
   }
 
+  /**
+   * Maps a vertex debug trace to its file name prefix, see
+   * {@link #getVertexDebugTraceForPrefix(String)}.
+   *
+   * @param debugTrace The debug trace.
+   * @return The file name prefix of the debug trace.
+   * @throws IllegalArgumentException Thrown if debugTrace isn't supported.
+   */
+  public static String getPrefixForVertexDebugTrace(DebugTrace debugTrace) {
+    switch (debugTrace) {
+    case VERTEX_REGULAR:
+      return PREFIX_TRACE_REGULAR;
+    case VERTEX_EXCEPTION:
+      return PREFIX_TRACE_EXCEPTION;
+    case INTEGRITY_VERTEX:
+      return PREFIX_TRACE_VERTEX;
+    case INTEGRITY_MESSAGE_SINGLE_VERTEX:
+      return PREFIX_TRACE_MESSAGE;
+    default:
+      throw new IllegalArgumentException("DebugTrace not supported.");
+    }
+  }
+
   /**
    * Returns the root directory of the trace files for the given job.
    *
@@ -372,4 +398,20 @@ public class DebuggerUtils {
   public static String getTraceFileRoot(String jobId) {
     return String.format("%s/%s", DebuggerUtils.TRACE_ROOT, jobId);
   }
+
+  /**
+   * Returns the id of the job a trace file belongs to, i.e., the name of the
+   * directory under {@link #TRACE_ROOT} holding it.
+   *
+   * @param fullFileName The full path of a trace file.
+   * @return The job id, or null if the file is not under the trace root.
+   */
+  public static String getJobIdOfTraceFile(String fullFileName) {
+    String prefix = TRACE_ROOT + "/";
+    if (!fullFileName.startsWith(prefix)) {
+      return null;
+    }
+    int end = fullFileName.indexOf('/', prefix.length());
+    return end < 0 ? null : fullFileName.substring(prefix.length(), end);
+  }
 }
@@ -47,6 +47,10 @@ public class GiraphMasterScenarioWrapper extends BaseWrapper {
    * The exception wrapper instance.
    */
   private ExceptionWrapper exceptionWrapper = null;
+  /**
+   * Resolves the classes of the job this scenario was loaded for.
+   */
+  private TraceTypeRegistry typeRegistry = TraceTypeRegistry.current();
 
   /**
    * Default constructor.
@@ -70,6 +74,10 @@ public class GiraphMasterScenarioWrapper extends BaseWrapper {
     return masterClassUnderTest;
   }
 
+  public TraceTypeRegistry getTypeRegistry() {
+    return typeRegistry;
+  }
+
   public CommonVertexMasterContextWrapper getCommonVertexMasterContextWrapper()
   {
     return commonVertexMasterContextWrapper;
@@ -123,6 +131,7 @@ public class GiraphMasterScenarioWrapper extends BaseWrapper {
     IllegalAccessException {
     GiraphMasterScenario giraphMasterScenario = (GiraphMasterScenario)
       protoObject;
+    this.typeRegistry = TraceTypeRegistry.current();
     this.masterClassUnderTest = giraphMasterScenario.getMasterClassUnderTest();
     this.commonVertexMasterContextWrapper = new
       CommonVertexMasterContextWrapper();
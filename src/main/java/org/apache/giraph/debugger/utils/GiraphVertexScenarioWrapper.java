@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
 import org.apache.giraph.debugger.Scenario.Exception;
@@ -33,6 +34,7 @@ import org.apache.giraph.graph.Computation;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.GeneratedMessage;
 
 /**
@@ -162,17 +164,17 @@ public class GiraphVertexScenarioWrapper<I extends WritableComparable, V extends
      */
     private V vertexValueAfterWrapper;
     /**
-     * List of incoming messages.
+     * List of incoming messages, decoded lazily when loaded from a trace.
      */
-    private ArrayList<M1> inMsgsWrapper;
+    private List<M1> inMsgsWrapper;
     /**
-     * List of neighbor vertices.
+     * List of neighbor vertices, decoded lazily when loaded from a trace.
      */
-    private ArrayList<NeighborWrapper> neighborsWrapper;
+    private List<NeighborWrapper> neighborsWrapper;
     /**
-     * List of outgoing messages.
+     * List of outgoing messages, decoded lazily when loaded from a trace.
      */
-    private ArrayList<OutgoingMessageWrapper> outMsgsWrapper;
+    private List<OutgoingMessageWrapper> outMsgsWrapper;
 
     /**
      * Default constructor.
@@ -293,6 +295,20 @@ public class GiraphVertexScenarioWrapper<I extends WritableComparable, V extends
       return neighborsWrapper;
     }
 
+    /**
+     * Decodes the neighbors, messages and aggregated values not decoded yet,
+     * for callers that read them all anyway to pay for it up front.
+     */
+    public void decodeAll() {
+      LazyDecodedList.decodeAll(neighborsWrapper);
+      LazyDecodedList.decodeAll(inMsgsWrapper);
+      LazyDecodedList.decodeAll(outMsgsWrapper);
+      if (getCommonVertexMasterContextWrapper() != null) {
+        LazyDecodedList.decodeAll(getCommonVertexMasterContextWrapper()
+          .getPreviousAggregatedValues());
+      }
+    }
+
     @Override
     public String toString() {
       StringBuilder stringBuilder = new StringBuilder();
@@ -390,13 +406,12 @@ public class GiraphVertexScenarioWrapper<I extends WritableComparable, V extends
         throws ClassNotFoundException, IOException, InstantiationException,
         IllegalAccessException {
         Neighbor neighbor = (Neighbor) protoObject;
-        this.nbrId = DebuggerUtils
-          .newInstance(vertexScenarioClassesWrapper.vertexIdClass);
+        this.nbrId = newInstance(vertexScenarioClassesWrapper.vertexIdClass);
         fromByteString(neighbor.getNeighborId(), this.nbrId);
 
         if (neighbor.hasEdgeValue()) {
-          this.edgeValue = DebuggerUtils
-            .newInstance(vertexScenarioClassesWrapper.edgeValueClass);
+          this.edgeValue = newInstance(
+            vertexScenarioClassesWrapper.edgeValueClass);
           fromByteString(neighbor.getEdgeValue(), this.edgeValue);
         } else {
           this.edgeValue = null;
@@ -511,12 +526,12 @@ public class GiraphVertexScenarioWrapper<I extends WritableComparable, V extends
         IllegalAccessException {
         OutgoingMessage outgoingMessageProto = (OutgoingMessage)
           generatedMessage;
-        this.setDestinationId(DebuggerUtils
-          .newInstance(getVertexScenarioClassesWrapper().vertexIdClass));
+        this.setDestinationId(
+          newInstance(getVertexScenarioClassesWrapper().vertexIdClass));
         fromByteString(outgoingMessageProto.getDestinationId(),
           getDestinationId());
-        this.setMessage(DebuggerUtils
-          .newInstance(getVertexScenarioClassesWrapper().outgoingMessageClass));
+        this.setMessage(
+          newInstance(getVertexScenarioClassesWrapper().outgoingMessageClass));
         fromByteString(outgoingMessageProto.getMsgData(), this.getMessage());
       }
 
@@ -587,40 +602,56 @@ public class GiraphVertexScenarioWrapper<I extends WritableComparable, V extends
         .loadFromProto(context.getCommonContext());
       this.commonVertexMasterContextWrapper = vertexMasterContextWrapper;
 
-      I vertexId = DebuggerUtils
-        .newInstance(getVertexScenarioClassesWrapper().vertexIdClass);
+      I vertexId = newInstance(getVertexScenarioClassesWrapper().vertexIdClass);
       fromByteString(context.getVertexId(), vertexId);
       this.vertexIdWrapper = vertexId;
 
-      V vertexValueBefore = DebuggerUtils
-        .newInstance(getVertexScenarioClassesWrapper().vertexValueClass);
+      V vertexValueBefore = newInstance(
+        getVertexScenarioClassesWrapper().vertexValueClass);
       fromByteString(context.getVertexValueBefore(), vertexValueBefore);
       this.vertexValueBeforeWrapper = vertexValueBefore;
       if (context.hasVertexValueAfter()) {
-        V vertexValueAfter = DebuggerUtils
-          .newInstance(getVertexScenarioClassesWrapper().vertexValueClass);
+        V vertexValueAfter = newInstance(
+          getVertexScenarioClassesWrapper().vertexValueClass);
         fromByteString(context.getVertexValueAfter(), vertexValueAfter);
         this.vertexValueAfterWrapper = vertexValueAfter;
       }
 
-      for (Neighbor neighbor : context.getNeighborList()) {
-        NeighborWrapper neighborWrapper = new NeighborWrapper();
-        neighborWrapper.loadFromProto(neighbor);
-        this.neighborsWrapper.add(neighborWrapper);
-      }
-      for (int i = 0; i < context.getInMessageCount(); i++) {
-        M1 msg = DebuggerUtils
-          .newInstance(getVertexScenarioClassesWrapper().incomingMessageClass);
-        fromByteString(context.getInMessage(i), msg);
-        this.addIncomingMessageWrapper(msg);
-      }
-
-      for (OutgoingMessage outgoingMessageProto : context.getOutMessageList()) {
-        OutgoingMessageWrapper outgoingMessageWrapper = new
-          OutgoingMessageWrapper();
-        outgoingMessageWrapper.loadFromProto(outgoingMessageProto);
-        this.outMsgsWrapper.add(outgoingMessageWrapper);
-      }
+      // Neighbors and messages are decoded when first read, as many views
+      // only need the vertex id and values, or the number of neighbors.
+      this.neighborsWrapper = new LazyDecodedList<>(context.getNeighborList(),
+        new LazyDecodedList.Decoder<Neighbor, NeighborWrapper>() {
+          @Override
+          public NeighborWrapper decode(Neighbor neighbor)
+            throws IOException, ReflectiveOperationException {
+            NeighborWrapper neighborWrapper = new NeighborWrapper();
+            neighborWrapper.loadFromProto(neighbor);
+            return neighborWrapper;
+          }
+        });
+      this.inMsgsWrapper = new LazyDecodedList<>(context.getInMessageList(),
+        new LazyDecodedList.Decoder<ByteString, M1>() {
+          @Override
+          public M1 decode(ByteString inMessage) {
+            M1 msg = newInstance(
+              getVertexScenarioClassesWrapper().incomingMessageClass);
+            fromByteString(inMessage, msg);
+            return msg;
+          }
+        });
+      this.outMsgsWrapper = new LazyDecodedList<>(context.getOutMessageList(),
+        new LazyDecodedList.Decoder<OutgoingMessage,
+          OutgoingMessageWrapper>() {
+          @Override
+          public OutgoingMessageWrapper decode(
+            OutgoingMessage outgoingMessageProto)
+            throws IOException, ReflectiveOperationException {
+            OutgoingMessageWrapper outgoingMessageWrapper = new
+              OutgoingMessageWrapper();
+            outgoingMessageWrapper.loadFromProto(outgoingMessageProto);
+            return outgoingMessageWrapper;
+          }
+        });
     }
   }
 
@@ -731,22 +762,25 @@ public class GiraphVertexScenarioWrapper<I extends WritableComparable, V extends
       IllegalAccessException {
       VertexScenarioClasses vertexScenarioClass = (VertexScenarioClasses)
         generatedMessage;
-      Class<?> clazz = Class.forName(vertexScenarioClass.getClassUnderTest());
+      this.typeRegistry = TraceTypeRegistry.current();
+      Class<?> clazz = typeRegistry.resolveClass(
+        vertexScenarioClass.getClassUnderTest());
       this.classUnderTest = castClassToUpperBound(clazz, Computation.class);
       this.vertexIdClass = (Class<I>) castClassToUpperBound(
-        Class.forName(vertexScenarioClass.getVertexIdClass()),
+        typeRegistry.resolveClass(vertexScenarioClass.getVertexIdClass()),
         WritableComparable.class);
       this.vertexValueClass = (Class<V>) castClassToUpperBound(
-        Class.forName(vertexScenarioClass.getVertexValueClass()),
+        typeRegistry.resolveClass(vertexScenarioClass.getVertexValueClass()),
         Writable.class);
       this.edgeValueClass = (Class<E>) castClassToUpperBound(
-        Class.forName(vertexScenarioClass.getEdgeValueClass()), Writable.class);
-      this.incomingMessageClass = (Class<M1>) castClassToUpperBound(
-        Class.forName(vertexScenarioClass.getIncomingMessageClass()),
+        typeRegistry.resolveClass(vertexScenarioClass.getEdgeValueClass()),
         Writable.class);
+      this.incomingMessageClass = (Class<M1>) castClassToUpperBound(
+        typeRegistry.resolveClass(
+          vertexScenarioClass.getIncomingMessageClass()), Writable.class);
       this.outgoingMessageClass = (Class<M2>) castClassToUpperBound(
-        Class.forName(vertexScenarioClass.getOutgoingMessageClass()),
-        Writable.class);
+        typeRegistry.resolveClass(
+          vertexScenarioClass.getOutgoingMessageClass()), Writable.class);
     }
 
     @Override
@@ -812,6 +846,18 @@ public class GiraphVertexScenarioWrapper<I extends WritableComparable, V extends
     return vertexScenarioClassesWrapper;
   }
 
+  /**
+   * Creates an instance of one of the classes of this scenario while
+   * loading it, through the registry the classes were resolved with.
+   *
+   * @param clazz The class to instantiate.
+   * @param <T> The type of the class.
+   * @return the new instance.
+   */
+  private <T> T newInstance(Class<T> clazz) {
+    return vertexScenarioClassesWrapper.getTypeRegistry().newInstance(clazz);
+  }
+
   public void setVertexScenarioClassesWrapper(
     VertexScenarioClassesWrapper vertexScenarioClassesWrapper) {
     this.vertexScenarioClassesWrapper = vertexScenarioClassesWrapper;
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.fs.ChecksumFileSystem;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+/**
+ * {@link TraceStore} backed by a Hadoop {@link FileSystem}, usually HDFS. This
+ * is the default store for instrumented jobs running on a cluster.
+ */
+public class HDFSTraceStore extends AbstractTraceStore {
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(HDFSTraceStore.class);
+  /**
+   * Suffix of the temporary files that files are rewritten to.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * The file system traces are stored in.
+   */
+  private final FileSystem fs;
+
+  /**
+   * Constructor.
+   *
+   * @param fs the file system to store traces in.
+   */
+  public HDFSTraceStore(FileSystem fs) {
+    this.fs = fs;
+  }
+
+  public FileSystem getFileSystem() {
+    return fs;
+  }
+
+  @Override
+  public OutputStream create(String path) throws IOException {
+    return fs.create(new Path(path), true);
+  }
+
+  @Override
+  protected OutputStream openForAppend(String path) throws IOException {
+    Path pt = new Path(path);
+    if (!fs.exists(pt)) {
+      return fs.create(pt, false);
+    }
+    // The checksummed file systems, e.g., the local one, fail appends with an
+    // IOException, which must not be confused with a failing append.
+    if (!(fs instanceof ChecksumFileSystem)) {
+      try {
+        return fs.append(pt);
+      } catch (UnsupportedOperationException e) {
+        LOG.debug("append is not supported for " + path + ", rewriting: " +
+          e);
+      }
+    }
+    // Rewriting the file is fine for the small manifests and dictionaries we
+    // append to. The file is rewritten elsewhere and renamed into place, so
+    // that readers never see it cut short.
+    FileStatus fileStatus = fs.getFileStatus(pt);
+    String tempPath = path + "." + UUID.randomUUID() + TEMP_SUFFIX;
+    OutputStream output = fs.create(new Path(tempPath), false);
+    try (FSDataInputStream input = fs.open(pt)) {
+      IOUtils.copyLarge(input, output);
+    } catch (IOException e) {
+      output.close();
+      fs.delete(new Path(tempPath), false);
+      throw e;
+    }
+    return new RewritingOutputStream(output, path, tempPath, fileStatus);
+  }
+
+  /**
+   * Stream rewriting a file under a temporary path, which replaces the file
+   * when the stream is closed. Fails if the file changed in the meantime,
+   * since what was appended to it then would be lost.
+   */
+  private class RewritingOutputStream extends FilterOutputStream {
+    /**
+     * The path of the file rewritten.
+     */
+    private final String path;
+    /**
+     * The temporary path the file is rewritten to.
+     */
+    private final String tempPath;
+    /**
+     * The status of the file when its contents were copied.
+     */
+    private final FileStatus fileStatus;
+    /**
+     * Whether the stream was closed already.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param output The stream writing the temporary file.
+     * @param path The path of the file rewritten.
+     * @param tempPath The temporary path the file is rewritten to.
+     * @param fileStatus The status of the file when its contents were copied.
+     */
+    RewritingOutputStream(OutputStream output, String path, String tempPath,
+      FileStatus fileStatus) {
+      super(output);
+      this.path = path;
+      this.tempPath = tempPath;
+      this.fileStatus = fileStatus;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        out.close();
+        FileStatus current = fs.getFileStatus(new Path(path));
+        if (current.getLen() != fileStatus.getLen() ||
+          current.getModificationTime() != fileStatus.getModificationTime()) {
+          throw new IOException("Concurrent append to " + path +
+            " would be lost, giving up");
+        }
+        rename(tempPath, path);
+      } finally {
+        fs.delete(new Path(tempPath), false);
+      }
+    }
+  }
+
+  @Override
+  public InputStream open(String path) throws IOException {
+    return fs.open(new Path(path));
+  }
+
+  @Override
+  public TraceFileStatus lookup(String path) throws IOException {
+    try {
+      return toTraceFileStatus(path, fs.getFileStatus(new Path(path)));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public List<TraceFileStatus> list(String directory) throws IOException {
+    String dir = normalize(directory);
+    // Hadoop listStatus returns null when path is not found in older
+    // versions and throws FileNotFoundException in newer ones.
+    FileStatus[] fileStatuses = fs.listStatus(new Path(dir));
+    if (fileStatuses == null) {
+      throw new FileNotFoundException("Directory not found: " + dir);
+    }
+    List<TraceFileStatus> statuses = new ArrayList<>(fileStatuses.length);
+    for (FileStatus fileStatus : fileStatuses) {
+      statuses.add(toTraceFileStatus(
+        dir + "/" + fileStatus.getPath().getName(), fileStatus));
+    }
+    return statuses;
+  }
+
+  @Override
+  public boolean delete(String path, boolean recursive) throws IOException {
+    return fs.delete(new Path(path), recursive);
+  }
+
+  @Override
+  public void rename(String source, String destination) throws IOException {
+    Path sourcePath = new Path(source);
+    Path destinationPath = new Path(destination);
+    fs.mkdirs(destinationPath.getParent());
+    if (!(fs instanceof ChecksumFileSystem)) {
+      // FileSystem#rename does not replace existing files in HDFS, while the
+      // rename of FileContext does so atomically.
+      FileContext.getFileContext(fs.getUri(), fs.getConf()).rename(
+        sourcePath, destinationPath, Options.Rename.OVERWRITE);
+      return;
+    }
+    // The checksummed file systems replace existing files, and FileContext
+    // would leave their checksums behind.
+    if (!fs.exists(sourcePath)) {
+      throw new FileNotFoundException("File not found: " + source);
+    }
+    if (!fs.rename(sourcePath, destinationPath)) {
+      throw new IOException("Could not rename " + source + " to " +
+        destination);
+    }
+  }
+
+  /**
+   * Converts a Hadoop {@link FileStatus} to a {@link TraceFileStatus}.
+   *
+   * @param path the path the status was requested for.
+   * @param fileStatus the Hadoop file status.
+   * @return the corresponding trace file status.
+   */
+  private static TraceFileStatus toTraceFileStatus(String path,
+    FileStatus fileStatus) {
+    return new TraceFileStatus(normalize(path), fileStatus.getLen(),
+      fileStatus.getModificationTime(), fileStatus.isDirectory());
+  }
+
+  @Override
+  public String toString() {
+    return "HDFSTraceStore(" + fs.getUri() + ")";
+  }
+}
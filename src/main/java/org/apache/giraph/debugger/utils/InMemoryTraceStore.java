@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link TraceStore} that keeps all traces in memory. Directories are implicit:
+ * a directory exists as long as some file is stored under it. Meant for
+ * benchmarks and for running the debugger end to end without a cluster.
+ */
+public class InMemoryTraceStore extends AbstractTraceStore {
+
+  /**
+   * The files stored, keyed by their normalized full path. Sorted so that the
+   * contents of a directory form a contiguous range.
+   */
+  private final ConcurrentNavigableMap<String, StoredFile> files =
+    new ConcurrentSkipListMap<>();
+
+  /**
+   * Contents and modification time of a stored file.
+   */
+  private static class StoredFile {
+    /**
+     * The contents of the file.
+     */
+    private final byte[] data;
+    /**
+     * The time the file was last written.
+     */
+    private final long modificationTime;
+
+    /**
+     * Constructor.
+     *
+     * @param data The contents of the file.
+     */
+    StoredFile(byte[] data) {
+      this.data = data;
+      this.modificationTime = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Stream that stores its contents in {@link #files} when it is closed.
+   */
+  private class StoringOutputStream extends ByteArrayOutputStream {
+    /**
+     * The normalized path the contents will be stored at.
+     */
+    private final String path;
+    /**
+     * Whether the contents are appended to those stored when closed instead
+     * of replacing them.
+     */
+    private final boolean append;
+    /**
+     * Whether the contents were already stored.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param path The normalized path the contents will be stored at.
+     * @param append Whether to append the contents to those stored.
+     */
+    StoringOutputStream(String path, boolean append) {
+      this.path = path;
+      this.append = append;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      byte[] contents = toByteArray();
+      if (!append) {
+        files.put(path, new StoredFile(contents));
+        return;
+      }
+      // Streams appending to the same file may be closed at the same time,
+      // so the contents are merged into what is stored then, atomically.
+      while (true) {
+        StoredFile existing = files.get(path);
+        if (existing == null) {
+          if (files.putIfAbsent(path, new StoredFile(contents)) == null) {
+            return;
+          }
+        } else {
+          byte[] data = Arrays.copyOf(existing.data, existing.data.length +
+            contents.length);
+          System.arraycopy(contents, 0, data, existing.data.length,
+            contents.length);
+          if (files.replace(path, existing, new StoredFile(data))) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public OutputStream create(String path) throws IOException {
+    return new StoringOutputStream(normalize(path), false);
+  }
+
+  @Override
+  protected OutputStream openForAppend(String path) throws IOException {
+    return new StoringOutputStream(normalize(path), true);
+  }
+
+  @Override
+  public InputStream open(String path) throws IOException {
+    StoredFile file = files.get(normalize(path));
+    if (file == null) {
+      throw new FileNotFoundException("File not found: " + path);
+    }
+    return new ByteArrayInputStream(file.data);
+  }
+
+  @Override
+  public TraceFileStatus lookup(String path) throws IOException {
+    String normalizedPath = normalize(path);
+    StoredFile file = files.get(normalizedPath);
+    if (file != null) {
+      return new TraceFileStatus(normalizedPath, file.data.length,
+        file.modificationTime, false);
+    }
+    Map<String, StoredFile> contents = getContents(normalizedPath);
+    if (contents.isEmpty()) {
+      return null;
+    }
+    return new TraceFileStatus(normalizedPath, 0,
+      getLatestModificationTime(contents.values()), true);
+  }
+
+  @Override
+  public List<TraceFileStatus> list(String directory) throws IOException {
+    String dir = normalize(directory);
+    Map<String, StoredFile> contents = getContents(dir);
+    if (contents.isEmpty()) {
+      throw new FileNotFoundException("Directory not found: " + dir);
+    }
+    // Group everything under the directory by its first path component.
+    Map<String, List<StoredFile>> children = new LinkedHashMap<>();
+    Map<String, Boolean> isDirectory = new LinkedHashMap<>();
+    String prefix = dir.endsWith("/") ? dir : dir + "/";
+    for (Map.Entry<String, StoredFile> entry : contents.entrySet()) {
+      String relativePath = entry.getKey().substring(prefix.length());
+      int slash = relativePath.indexOf('/');
+      String childName = slash < 0 ? relativePath :
+        relativePath.substring(0, slash);
+      List<StoredFile> childFiles = children.get(childName);
+      if (childFiles == null) {
+        childFiles = new ArrayList<>();
+        children.put(childName, childFiles);
+      }
+      childFiles.add(entry.getValue());
+      isDirectory.put(childName, slash >= 0);
+    }
+    List<TraceFileStatus> statuses = new ArrayList<>(children.size());
+    for (Map.Entry<String, List<StoredFile>> child : children.entrySet()) {
+      String childPath = prefix + child.getKey();
+      if (isDirectory.get(child.getKey())) {
+        statuses.add(new TraceFileStatus(childPath, 0,
+          getLatestModificationTime(child.getValue()), true));
+      } else {
+        StoredFile file = child.getValue().get(0);
+        statuses.add(new TraceFileStatus(childPath, file.data.length,
+          file.modificationTime, false));
+      }
+    }
+    return statuses;
+  }
+
+  @Override
+  public boolean delete(String path, boolean recursive) throws IOException {
+    String normalizedPath = normalize(path);
+    if (files.remove(normalizedPath) != null) {
+      return true;
+    }
+    Map<String, StoredFile> contents = getContents(normalizedPath);
+    if (contents.isEmpty()) {
+      return false;
+    }
+    if (!recursive) {
+      throw new IOException("Directory is not empty: " + path);
+    }
+    contents.clear();
+    return true;
+  }
+
+  @Override
+  public void rename(String source, String destination) throws IOException {
+    String sourcePath = normalize(source);
+    StoredFile file = files.get(sourcePath);
+    if (file == null) {
+      throw new FileNotFoundException("File not found: " + source);
+    }
+    files.put(normalize(destination), file);
+    files.remove(sourcePath, file);
+  }
+
+  /**
+   * @param dir a normalized directory path.
+   * @return a live view of all files stored under the given directory.
+   */
+  private Map<String, StoredFile> getContents(String dir) {
+    String prefix = dir.endsWith("/") ? dir : dir + "/";
+    // '0' is the character right after '/', so this covers exactly the keys
+    // starting with the prefix.
+    return files.subMap(prefix, true,
+      prefix.substring(0, prefix.length() - 1) + "0", false);
+  }
+
+  /**
+   * @param storedFiles some stored files.
+   * @return the latest modification time among the given files.
+   */
+  private static long getLatestModificationTime(
+    Iterable<StoredFile> storedFiles) {
+    long modificationTime = 0;
+    for (StoredFile file : storedFiles) {
+      modificationTime = Math.max(modificationTime, file.modificationTime);
+    }
+    return modificationTime;
+  }
+
+  @Override
+  public String toString() {
+    return "InMemoryTraceStore(" + files.size() + " files)";
+  }
+}
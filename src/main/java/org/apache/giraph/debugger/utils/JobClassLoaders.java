@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Class loaders for the jars of the jobs being debugged, so that the classes
+ * named in a job's traces can be loaded without adding its jar to the system
+ * class loader. Jobs share a loader when they were launched with the same
+ * jar, i.e., have the same jar signature. Jars are copied from
+ * {@link DebuggerUtils#JARCACHE_HDFS} to {@link DebuggerUtils#JARCACHE_LOCAL}
+ * the first time they are needed, once even when many requests need them at
+ * the same time.
+ */
+public class JobClassLoaders {
+
+  /**
+   * Maximum number of job jars to keep class loaders for.
+   */
+  public static final int MAX_JOB_CLASS_LOADERS = Integer.getInteger(
+    "giraph.debugger.maxJobClassLoaders", 16);
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(JobClassLoaders.class);
+  /**
+   * File name of the jar signature in the job's trace directory.
+   */
+  private static final String JAR_SIGNATURE_FILE = "jar.signature";
+  /**
+   * Maximum number of jobs to remember the jar signature of.
+   */
+  private static final int MAX_JAR_SIGNATURES = 1024;
+
+  /**
+   * Jar signature of each job. A job's jar signature is written when it is
+   * launched and never changes.
+   */
+  private static final Cache<String, String> JAR_SIGNATURES = CacheBuilder
+    .newBuilder().maximumSize(MAX_JAR_SIGNATURES).build();
+  /**
+   * Class loaders keyed by the jar signature. Evicted loaders are not closed,
+   * as wrappers loaded with them may still load classes lazily; their jars
+   * are closed once they are garbage collected.
+   */
+  private static final Cache<String, ClassLoader> CLASS_LOADERS = CacheBuilder
+    .newBuilder().maximumSize(MAX_JOB_CLASS_LOADERS).build();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private JobClassLoaders() { }
+
+  /**
+   * Returns the class loader for the jar of the given job. Jobs without a jar
+   * signature get the loader of the debugger's own classes, which finds the
+   * classes on the class path.
+   *
+   * @param traceStore The store holding the traces and cached jars.
+   * @param jobId The job id of the job.
+   * @return the class loader to load the classes of the job's traces with.
+   * @throws IOException thrown when the job's jar cannot be copied.
+   */
+  public static ClassLoader get(final TraceStore traceStore, String jobId)
+    throws IOException {
+    final String jarSignature = getJarSignature(traceStore, jobId);
+    if (jarSignature == null) {
+      return getDefaultClassLoader();
+    }
+    try {
+      return CLASS_LOADERS.get(jarSignature, new Callable<ClassLoader>() {
+        @Override
+        public ClassLoader call() throws IOException {
+          return new URLClassLoader(new URL[] {
+            getLocalJar(traceStore, jarSignature).toURI().toURL() },
+            getDefaultClassLoader());
+        }
+      });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * @return the loader of the debugger's own classes.
+   */
+  public static ClassLoader getDefaultClassLoader() {
+    return JobClassLoaders.class.getClassLoader();
+  }
+
+  /**
+   * @param traceStore The store holding the traces.
+   * @param jobId The job id of the job.
+   * @return the jar signature of the job, or null if it has none.
+   * @throws IOException thrown when the jar signature cannot be read.
+   */
+  private static String getJarSignature(TraceStore traceStore, String jobId)
+    throws IOException {
+    String jarSignature = JAR_SIGNATURES.getIfPresent(jobId);
+    if (jarSignature != null) {
+      return jarSignature;
+    }
+    try (InputStream input = traceStore.open(DebuggerUtils.getTraceFileRoot(
+      jobId) + "/" + JAR_SIGNATURE_FILE)) {
+      List<String> lines = IOUtils.readLines(input);
+      if (lines.isEmpty()) {
+        return null;
+      }
+      jarSignature = lines.get(0);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    JAR_SIGNATURES.put(jobId, jarSignature);
+    return jarSignature;
+  }
+
+  /**
+   * Returns the local copy of a cached jar, copying it from the trace store
+   * first if necessary. The copy is renamed into place once complete, so that
+   * a partial copy is never used.
+   *
+   * @param traceStore The store holding the cached jars.
+   * @param jarSignature The jar signature of the jar.
+   * @return the local copy of the jar.
+   * @throws IOException thrown when the jar cannot be copied.
+   */
+  private static File getLocalJar(TraceStore traceStore, String jarSignature)
+    throws IOException {
+    File localFile = new File(DebuggerUtils.JARCACHE_LOCAL + "/" +
+      jarSignature + ".jar");
+    if (!localFile.exists()) {
+      String cachedJarPath = DebuggerUtils.JARCACHE_HDFS + "/" +
+        jarSignature + ".jar";
+      LOG.info("Copying from HDFS: " + cachedJarPath + " to " + localFile);
+      FileUtils.forceMkdir(localFile.getParentFile());
+      File tempFile = File.createTempFile(jarSignature, ".tmp",
+        localFile.getParentFile());
+      try {
+        try (InputStream jarInput = traceStore.open(cachedJarPath)) {
+          FileUtils.copyInputStreamToFile(jarInput, tempFile);
+        }
+        // Another process may have copied the jar in the meantime.
+        if (!tempFile.renameTo(localFile) && !localFile.exists()) {
+          throw new IOException("Could not rename " + tempFile + " to " +
+            localFile);
+        }
+      } finally {
+        FileUtils.deleteQuietly(tempFile);
+      }
+    }
+    return localFile;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A list over the repeated field of a loaded trace, e.g., the neighbors or
+ * messages of a vertex, that decodes each element the first time it is read.
+ * Its size is known without decoding anything, so views that only need a
+ * count or a few elements do not pay for the whole field. Modifying the list
+ * decodes all remaining elements first.
+ *
+ * @param <P> type of the encoded elements.
+ * @param <T> type of the decoded elements.
+ */
+class LazyDecodedList<P, T> extends AbstractList<T> {
+
+  /**
+   * Decodes an element of the list.
+   *
+   * @param <P> type of the encoded elements.
+   * @param <T> type of the decoded elements.
+   */
+  interface Decoder<P, T> {
+    /**
+     * @param encoded An encoded element.
+     * @return the decoded element.
+     * @throws IOException thrown when the element cannot be decoded.
+     * @throws ReflectiveOperationException thrown when the element cannot be
+     *         instantiated.
+     */
+    T decode(P encoded) throws IOException, ReflectiveOperationException;
+  }
+
+  /**
+   * The encoded elements, or null once all have been decoded.
+   */
+  private List<P> encoded;
+  /**
+   * Decodes the encoded elements.
+   */
+  private final Decoder<P, T> decoder;
+  /**
+   * The elements, null where not yet decoded.
+   */
+  private final List<T> elements;
+  /**
+   * Positions of the elements already decoded, as decoded elements may be
+   * null, e.g., for {@link org.apache.hadoop.io.NullWritable}.
+   */
+  private final BitSet decoded = new BitSet();
+
+  /**
+   * Constructor.
+   *
+   * @param encoded The encoded elements.
+   * @param decoder Decodes the encoded elements.
+   */
+  LazyDecodedList(List<P> encoded, Decoder<P, T> decoder) {
+    this.encoded = encoded;
+    this.decoder = decoder;
+    this.elements = new ArrayList<>(encoded.size());
+    for (int i = 0; i < encoded.size(); i++) {
+      elements.add(null);
+    }
+  }
+
+  @Override
+  public T get(int index) {
+    if (encoded != null && !decoded.get(index)) {
+      try {
+        elements.set(index, decoder.decode(encoded.get(index)));
+      } catch (IOException | ReflectiveOperationException e) {
+        // Thrown as runtime exception because List does not declare it.
+        throw new IllegalStateException("Could not decode element " + index +
+          " of a trace", e);
+      }
+      decoded.set(index);
+    }
+    return elements.get(index);
+  }
+
+  @Override
+  public int size() {
+    return elements.size();
+  }
+
+  @Override
+  public T set(int index, T element) {
+    decodeAll();
+    return elements.set(index, element);
+  }
+
+  @Override
+  public void add(int index, T element) {
+    decodeAll();
+    elements.add(index, element);
+    modCount++;
+  }
+
+  @Override
+  public T remove(int index) {
+    decodeAll();
+    modCount++;
+    return elements.remove(index);
+  }
+
+  /**
+   * Decodes the elements of a collection not decoded yet, if it is a lazily
+   * decoded list.
+   *
+   * @param elements A collection, which may be a lazily decoded list.
+   */
+  static void decodeAll(Collection<?> elements) {
+    if (elements instanceof LazyDecodedList) {
+      ((LazyDecodedList<?, ?>) elements).decodeAll();
+    }
+  }
+
+  /**
+   * Decodes the elements not decoded yet, after which the list no longer
+   * refers to the encoded elements.
+   */
+  private void decodeAll() {
+    if (encoded != null) {
+      for (int i = 0; i < elements.size(); i++) {
+        get(i);
+      }
+      encoded = null;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * {@link TraceStore} that keeps traces on the local filesystem. Trace paths
+ * are resolved relative to a root directory, so the default
+ * {@link DebuggerUtils#TRACE_ROOT} does not need to be writable locally. Used
+ * for running instrumented jobs and the GUI server in local mode.
+ */
+public class LocalTraceStore extends AbstractTraceStore {
+
+  /**
+   * The local directory all trace paths are resolved against.
+   */
+  private final File rootDir;
+
+  /**
+   * Constructor.
+   *
+   * @param rootDir the local directory all trace paths are resolved against.
+   */
+  public LocalTraceStore(File rootDir) {
+    this.rootDir = rootDir;
+  }
+
+  /**
+   * @param path a trace path.
+   * @return the local file the given trace path maps to.
+   */
+  private File toFile(String path) {
+    return new File(rootDir, normalize(path));
+  }
+
+  @Override
+  public OutputStream create(String path) throws IOException {
+    File file = toFile(path);
+    FileUtils.forceMkdir(file.getParentFile());
+    return new FileOutputStream(file, false);
+  }
+
+  @Override
+  protected OutputStream openForAppend(String path) throws IOException {
+    File file = toFile(path);
+    FileUtils.forceMkdir(file.getParentFile());
+    return new FileOutputStream(file, true);
+  }
+
+  @Override
+  public InputStream open(String path) throws IOException {
+    return new FileInputStream(toFile(path));
+  }
+
+  @Override
+  public TraceFileStatus lookup(String path) throws IOException {
+    File file = toFile(path);
+    if (!file.exists()) {
+      return null;
+    }
+    return toTraceFileStatus(normalize(path), file);
+  }
+
+  @Override
+  public List<TraceFileStatus> list(String directory) throws IOException {
+    String dir = normalize(directory);
+    File[] files = toFile(dir).listFiles();
+    if (files == null) {
+      throw new FileNotFoundException("Directory not found: " + dir);
+    }
+    List<TraceFileStatus> statuses = new ArrayList<>(files.length);
+    for (File file : files) {
+      statuses.add(toTraceFileStatus(dir + "/" + file.getName(), file));
+    }
+    return statuses;
+  }
+
+  @Override
+  public boolean delete(String path, boolean recursive) throws IOException {
+    File file = toFile(path);
+    if (!file.exists()) {
+      return false;
+    }
+    if (file.isDirectory() && recursive) {
+      FileUtils.deleteDirectory(file);
+      return true;
+    }
+    return file.delete();
+  }
+
+  @Override
+  public void rename(String source, String destination) throws IOException {
+    File destinationFile = toFile(destination);
+    FileUtils.forceMkdir(destinationFile.getParentFile());
+    try {
+      Files.move(toFile(source).toPath(), destinationFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException("File not found: " + source);
+    }
+  }
+
+  /**
+   * @param path the trace path of the file.
+   * @param file a local file.
+   * @return the status of the local file.
+   */
+  private static TraceFileStatus toTraceFileStatus(String path, File file) {
+    boolean isDirectory = file.isDirectory();
+    return new TraceFileStatus(path, isDirectory ? 0 : file.length(),
+      file.lastModified(), isDirectory);
+  }
+
+  @Override
+  public String toString() {
+    return "LocalTraceStore(" + rootDir + ")";
+  }
+}
@@ -200,12 +200,12 @@ public class MsgIntegrityViolationWrapper<I extends WritableComparable,
       IllegalAccessException {
       ExtendedOutgoingMessage extendedOutgoingMessage =
         (ExtendedOutgoingMessage) generatedMessage;
-      this.setSrcId(DebuggerUtils.newInstance(vertexIdClass));
+      this.setSrcId(typeRegistry.newInstance(vertexIdClass));
       fromByteString(extendedOutgoingMessage.getSrcId(), this.getSrcId());
-      this.setDestinationId(DebuggerUtils.newInstance(vertexIdClass));
+      this.setDestinationId(typeRegistry.newInstance(vertexIdClass));
       fromByteString(extendedOutgoingMessage.getDestinationId(),
         this.getDestinationId());
-      this.setMessage(DebuggerUtils.newInstance(outgoingMessageClass));
+      this.setMessage(typeRegistry.newInstance(outgoingMessageClass));
       fromByteString(extendedOutgoingMessage.getMsgData(), this.getMessage());
     }
 
@@ -285,13 +285,14 @@ public class MsgIntegrityViolationWrapper<I extends WritableComparable,
     IllegalAccessException {
     MessageIntegrityViolation msgIntegrityViolation =
       (MessageIntegrityViolation) generatedMessage;
+    this.typeRegistry = TraceTypeRegistry.current();
     Class<I> vertexIdClass = (Class<I>) castClassToUpperBound(
-      Class.forName(msgIntegrityViolation.getVertexIdClass()),
+      typeRegistry.resolveClass(msgIntegrityViolation.getVertexIdClass()),
       WritableComparable.class);
 
     Class<M2> outgoingMessageClazz = (Class<M2>) castClassToUpperBound(
-      Class.forName(msgIntegrityViolation.getOutgoingMessageClass()),
-      Writable.class);
+      typeRegistry.resolveClass(
+        msgIntegrityViolation.getOutgoingMessageClass()), Writable.class);
 
     initialize(vertexIdClass, outgoingMessageClazz);
     setSuperstepNo(msgIntegrityViolation.getSuperstepNo());
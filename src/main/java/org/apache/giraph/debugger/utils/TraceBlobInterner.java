@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.giraph.debugger.GiraphAggregator.AggregatedValue;
+import org.apache.giraph.debugger.Scenario.Blob;
+import org.apache.giraph.debugger.Scenario.BlobRef;
+import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
+import org.apache.giraph.debugger.Scenario.GiraphMasterScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessage;
+
+/**
+ * Replaces blobs that repeat across the traces of a worker or the master with
+ * references into a blob dictionary. Interned blobs are the configuration,
+ * the previous aggregated values and the scenario classes every trace
+ * carries, and incoming messages that many vertices receive, e.g., when a
+ * value is broadcast.
+ *
+ * Each superstep of each writer is a segment with its own dictionary, keyed
+ * by the SHA-1 of the blob contents. A blob is kept inline the first time it
+ * is seen in a segment, and is added to the dictionary and referenced from
+ * the second time on, so blobs that never repeat never reach the dictionary.
+ * Blobs are hashed without holding the lock the threads of a worker share,
+ * and blobs added to a dictionary are queued, to be appended in the
+ * background by {@link AsyncHDFSWriteService} when {@link #flush()}ed before
+ * the trace referring to them is written, which waits for the append.
+ * Traces name their dictionary relative to the trace directory of the job.
+ * {@link TraceBlobResolver} inlines the blobs back on load.
+ */
+public class TraceBlobInterner {
+
+  /**
+   * Blobs smaller than this many bytes are never interned, as a reference
+   * would not be much smaller.
+   */
+  public static final int MIN_INTERNED_BLOB_SIZE = Integer.getInteger(
+    "giraph.debugger.minInternedBlobSize", 64);
+
+  /**
+   * Name of the directory under the job's trace directory holding the blob
+   * dictionaries.
+   */
+  static final String BLOB_DIR = "_blobs";
+  /**
+   * Suffix of blob dictionary files.
+   */
+  private static final String DICTIONARY_SUFFIX = ".blobs";
+
+  /**
+   * The store dictionaries are written to.
+   */
+  private final TraceStore traceStore;
+  /**
+   * The job id of the job being debugged.
+   */
+  private final String jobId;
+  /**
+   * Unique id of this writer, used as the file name of its dictionaries.
+   */
+  private final String writerId = UUID.randomUUID().toString();
+  /**
+   * The superstep of the current segment.
+   */
+  private long segmentSuperstepNo = -1;
+  /**
+   * Blobs added to dictionaries since the last flush, by dictionary path as
+   * traces name it.
+   */
+  private Map<String, List<Blob>> pendingBlobs = new HashMap<>();
+  /**
+   * Number of the last append to a dictionary, see
+   * {@link AsyncHDFSWriteService#appendToTraceStore}, or -1 if none.
+   */
+  private long lastAppendNo = -1;
+  /**
+   * Hashes of the blobs seen once in the current segment.
+   */
+  private final Set<ByteString> seenBlobs = new HashSet<>();
+  /**
+   * Hashes of the blobs in the dictionary of the current segment.
+   */
+  private final Set<ByteString> storedBlobs = new HashSet<>();
+
+  /**
+   * Constructor.
+   *
+   * @param traceStore The store dictionaries are written to.
+   * @param jobId The job id of the job being debugged.
+   */
+  public TraceBlobInterner(TraceStore traceStore, String jobId) {
+    this.traceStore = traceStore;
+    this.jobId = jobId;
+  }
+
+  /**
+   * Interns the repeated blobs of a vertex or master scenario. Other messages
+   * are returned as they are.
+   *
+   * @param message The trace about to be saved.
+   * @param superstepNo The superstep of the trace.
+   * @return the trace to save, referring to the dictionary where possible.
+   */
+  public GeneratedMessage intern(GeneratedMessage message, long superstepNo) {
+    if (message instanceof GiraphVertexScenario) {
+      return internVertexScenario((GiraphVertexScenario) message,
+        superstepNo);
+    } else if (message instanceof GiraphMasterScenario) {
+      return internMasterScenario((GiraphMasterScenario) message,
+        superstepNo);
+    } else {
+      return message;
+    }
+  }
+
+  /**
+   * Appends the blobs added to dictionaries since the last flush in the
+   * background, after the traces saved so far. Called before writing each
+   * interned trace, and at the end of each superstep.
+   *
+   * @return the number of the last append to a dictionary, including those
+   *         of earlier flushes, for the interned trace to be written after,
+   *         see {@link AsyncHDFSWriteService#writeToTraceStore(
+   *         GeneratedMessage, TraceStore, String, long)}, or -1 if none.
+   */
+  public synchronized long flush() {
+    // Appends are submitted holding the lock, so that a trace referring to
+    // blobs another thread added waits for them too.
+    for (Map.Entry<String, List<Blob>> blobs : pendingBlobs.entrySet()) {
+      lastAppendNo = AsyncHDFSWriteService.appendToTraceStore(
+        blobs.getValue(), traceStore, DebuggerUtils.getTraceFileRoot(jobId) +
+        "/" + blobs.getKey());
+    }
+    pendingBlobs = new HashMap<>();
+    return lastAppendNo;
+  }
+
+  /**
+   * @param scenario A vertex scenario.
+   * @param superstepNo The superstep of the scenario.
+   * @return the scenario referring to the dictionary where possible.
+   */
+  private GiraphVertexScenario internVertexScenario(
+    GiraphVertexScenario scenario, long superstepNo) {
+    GiraphVertexScenario.Builder builder = scenario.toBuilder();
+    boolean hasRefs = false;
+    if (builder.hasVertexScenarioClasses()) {
+      ByteString hash = intern(builder.getVertexScenarioClasses()
+        .toByteString(), superstepNo);
+      if (hash != null) {
+        builder.clearVertexScenarioClasses().setVertexScenarioClassesRef(hash);
+        hasRefs = true;
+      }
+    }
+    VertexContext.Builder context = builder.getContextBuilder();
+    hasRefs |= internCommonContext(context.getCommonContextBuilder(),
+      superstepNo);
+    List<ByteString> inMessages = new ArrayList<>(context.getInMessageList());
+    context.clearInMessage();
+    for (int i = 0; i < inMessages.size(); i++) {
+      ByteString hash = intern(inMessages.get(i), superstepNo);
+      if (hash != null) {
+        context.addInMessageRef(BlobRef.newBuilder().setPosition(i)
+          .setHash(hash));
+        hasRefs = true;
+      } else {
+        context.addInMessage(inMessages.get(i));
+      }
+    }
+    if (hasRefs) {
+      builder.setBlobDictionary(getDictionaryPath(superstepNo));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param scenario A master scenario.
+   * @param superstepNo The superstep of the scenario.
+   * @return the scenario referring to the dictionary where possible.
+   */
+  private GiraphMasterScenario internMasterScenario(
+    GiraphMasterScenario scenario, long superstepNo) {
+    GiraphMasterScenario.Builder builder = scenario.toBuilder();
+    if (internCommonContext(builder.getCommonContextBuilder(), superstepNo)) {
+      builder.setBlobDictionary(getDictionaryPath(superstepNo));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param context The common context of a scenario, modified in place.
+   * @param superstepNo The superstep of the scenario.
+   * @return whether the context now refers to the dictionary.
+   */
+  private boolean internCommonContext(
+    CommonVertexMasterContext.Builder context, long superstepNo) {
+    boolean hasRefs = false;
+    if (context.hasConf()) {
+      ByteString hash = intern(context.getConf(), superstepNo);
+      if (hash != null) {
+        context.clearConf().setConfRef(hash);
+        hasRefs = true;
+      }
+    }
+    List<AggregatedValue> aggregatedValues = new ArrayList<>(
+      context.getPreviousAggregatedValueList());
+    context.clearPreviousAggregatedValue();
+    for (int i = 0; i < aggregatedValues.size(); i++) {
+      ByteString hash = intern(aggregatedValues.get(i).toByteString(),
+        superstepNo);
+      if (hash != null) {
+        context.addPreviousAggregatedValueRef(BlobRef.newBuilder()
+          .setPosition(i).setHash(hash));
+        hasRefs = true;
+      } else {
+        context.addPreviousAggregatedValue(aggregatedValues.get(i));
+      }
+    }
+    return hasRefs;
+  }
+
+  /**
+   * @param data A blob.
+   * @param superstepNo The superstep of the trace the blob belongs to.
+   * @return the hash to refer to the blob with, or null to keep it inline.
+   */
+  private ByteString intern(ByteString data, long superstepNo) {
+    if (data.size() < MIN_INTERNED_BLOB_SIZE) {
+      return null;
+    }
+    ByteString hash = ByteString.copyFrom(Hashing.sha1().hashBytes(
+      data.toByteArray()).asBytes());
+    return intern(hash, data, superstepNo) ? hash : null;
+  }
+
+  /**
+   * @param hash The hash of a blob.
+   * @param data The blob.
+   * @param superstepNo The superstep of the trace the blob belongs to.
+   * @return whether to refer to the blob rather than keep it inline.
+   */
+  private synchronized boolean intern(ByteString hash, ByteString data,
+    long superstepNo) {
+    if (superstepNo != segmentSuperstepNo) {
+      segmentSuperstepNo = superstepNo;
+      seenBlobs.clear();
+      storedBlobs.clear();
+    }
+    if (storedBlobs.contains(hash)) {
+      return true;
+    }
+    if (seenBlobs.add(hash)) {
+      // Seen for the first time.
+      return false;
+    }
+    seenBlobs.remove(hash);
+    storedBlobs.add(hash);
+    String dictionaryPath = getDictionaryPath(superstepNo);
+    List<Blob> blobs = pendingBlobs.get(dictionaryPath);
+    if (blobs == null) {
+      blobs = new ArrayList<>();
+      pendingBlobs.put(dictionaryPath, blobs);
+    }
+    blobs.add(Blob.newBuilder().setHash(hash).setData(data).build());
+    return true;
+  }
+
+  /**
+   * @param superstepNo The superstep of a segment.
+   * @return the path of the dictionary of the segment, relative to the trace
+   *         directory of the job, see
+   *         {@link TraceBlobResolver#getDictionaryPath}.
+   */
+  private String getDictionaryPath(long superstepNo) {
+    return BLOB_DIR + "/stp_" + superstepNo + "/" + writerId +
+      DICTIONARY_SUFFIX;
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.giraph.debugger.GiraphAggregator.AggregatedValue;
+import org.apache.giraph.debugger.Scenario.Blob;
+import org.apache.giraph.debugger.Scenario.BlobRef;
+import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
+import org.apache.giraph.debugger.Scenario.GiraphMasterScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexScenarioClasses;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Inlines the blobs {@link TraceBlobInterner} moved to blob dictionaries back
+ * into traces, so that wrappers never see references. Dictionaries are cached
+ * by their full path, as many traces of a superstep share the same one.
+ */
+public class TraceBlobResolver {
+
+  /**
+   * Maximum total size of the cached dictionaries in bytes.
+   */
+  public static final long BLOB_CACHE_SIZE = Long.getLong(
+    "giraph.debugger.blobCacheSize", 64L * 1024 * 1024);
+
+  /**
+   * Recently used dictionaries, keyed by their full path.
+   */
+  private static final Cache<String, Map<ByteString, ByteString>>
+  DICTIONARIES = CacheBuilder.newBuilder().maximumWeight(BLOB_CACHE_SIZE)
+    .weigher(new Weigher<String, Map<ByteString, ByteString>>() {
+      @Override
+      public int weigh(String path, Map<ByteString, ByteString> blobs) {
+        int size = 0;
+        for (ByteString data : blobs.values()) {
+          size += data.size();
+        }
+        return size;
+      }
+    }).build();
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private TraceBlobResolver() { }
+
+  /**
+   * Inlines the blobs a trace refers to.
+   *
+   * @param traceStore The store the trace was read from.
+   * @param jobId The id of the job the trace belongs to, or null if unknown,
+   *        in which case only dictionaries named by their full path can be
+   *        read.
+   * @param message A trace.
+   * @return the trace without references to blob dictionaries.
+   * @throws IOException thrown when a referenced blob cannot be read.
+   */
+  public static GeneratedMessage resolve(TraceStore traceStore, String jobId,
+    GeneratedMessage message) throws IOException {
+    if (message instanceof GiraphVertexScenario) {
+      GiraphVertexScenario scenario = (GiraphVertexScenario) message;
+      if (scenario.hasBlobDictionary()) {
+        return resolveVertexScenario(traceStore, getDictionaryPath(jobId,
+          scenario.getBlobDictionary()), scenario);
+      }
+    } else if (message instanceof GiraphMasterScenario) {
+      GiraphMasterScenario scenario = (GiraphMasterScenario) message;
+      if (scenario.hasBlobDictionary()) {
+        GiraphMasterScenario.Builder builder = scenario.toBuilder();
+        resolveCommonContext(traceStore, getDictionaryPath(jobId,
+          scenario.getBlobDictionary()), builder.getCommonContextBuilder());
+        return builder.clearBlobDictionary().build();
+      }
+    }
+    return message;
+  }
+
+  /**
+   * Returns the full path of a blob dictionary as a trace names it. Traces
+   * name their dictionary relative to the trace directory of their job, so
+   * that they stay readable if the directory moves, except for those written
+   * by earlier versions, which name it by its full path.
+   *
+   * @param jobId The id of the job the trace belongs to, or null if unknown.
+   * @param dictionary The dictionary as the trace names it.
+   * @return the full path of the dictionary.
+   * @throws IOException thrown when the dictionary is relative to the trace
+   *         directory of an unknown job.
+   */
+  public static String getDictionaryPath(String jobId, String dictionary)
+    throws IOException {
+    if (!dictionary.startsWith(TraceBlobInterner.BLOB_DIR + "/")) {
+      return dictionary;
+    } else if (jobId == null) {
+      throw new IOException("Job of blob dictionary " + dictionary +
+        " is unknown");
+    }
+    return DebuggerUtils.getTraceFileRoot(jobId) + "/" + dictionary;
+  }
+
+  /**
+   * @param traceStore The store to read the dictionary from.
+   * @param dictionary The full path of the dictionary.
+   * @param scenario A vertex scenario referring to the dictionary.
+   * @return the scenario with the blobs inlined.
+   * @throws IOException thrown when a referenced blob cannot be read.
+   */
+  private static GiraphVertexScenario resolveVertexScenario(
+    TraceStore traceStore, String dictionary, GiraphVertexScenario scenario)
+    throws IOException {
+    GiraphVertexScenario.Builder builder = scenario.toBuilder();
+    if (builder.hasVertexScenarioClassesRef()) {
+      ByteString classes = getBlob(traceStore, dictionary,
+        builder.getVertexScenarioClassesRef());
+      builder.setVertexScenarioClasses(VertexScenarioClasses.parseFrom(
+        classes)).clearVertexScenarioClassesRef();
+    }
+    VertexContext.Builder context = builder.getContextBuilder();
+    resolveCommonContext(traceStore, dictionary,
+      context.getCommonContextBuilder());
+    if (context.getInMessageRefCount() > 0) {
+      List<ByteString> inMessages = Lists.newArrayList(
+        context.getInMessageList());
+      // Refs were added in increasing order of position.
+      for (BlobRef ref : context.getInMessageRefList()) {
+        inMessages.add(ref.getPosition(), getBlob(traceStore, dictionary,
+          ref.getHash()));
+      }
+      context.clearInMessage().addAllInMessage(inMessages).clearInMessageRef();
+    }
+    return builder.clearBlobDictionary().build();
+  }
+
+  /**
+   * @param traceStore The store to read the dictionary from.
+   * @param dictionary The full path of the dictionary.
+   * @param context The common context of a scenario, modified in place.
+   * @throws IOException thrown when a referenced blob cannot be read.
+   */
+  private static void resolveCommonContext(TraceStore traceStore,
+    String dictionary, CommonVertexMasterContext.Builder context)
+    throws IOException {
+    if (context.hasConfRef()) {
+      context.setConf(getBlob(traceStore, dictionary, context.getConfRef()))
+        .clearConfRef();
+    }
+    if (context.getPreviousAggregatedValueRefCount() > 0) {
+      List<AggregatedValue> aggregatedValues = Lists.newArrayList(
+        context.getPreviousAggregatedValueList());
+      // Refs were added in increasing order of position.
+      for (BlobRef ref : context.getPreviousAggregatedValueRefList()) {
+        aggregatedValues.add(ref.getPosition(), AggregatedValue.parseFrom(
+          getBlob(traceStore, dictionary, ref.getHash())));
+      }
+      context.clearPreviousAggregatedValue()
+        .addAllPreviousAggregatedValue(aggregatedValues)
+        .clearPreviousAggregatedValueRef();
+    }
+  }
+
+  /**
+   * Returns a blob of a dictionary. The dictionary is read again if the blob
+   * is missing from the cached copy, as dictionaries grow while a superstep
+   * is running.
+   *
+   * @param traceStore The store to read the dictionary from.
+   * @param dictionary The full path of the dictionary, see
+   *        {@link #getDictionaryPath}.
+   * @param hash The hash of the blob.
+   * @return the contents of the blob.
+   * @throws IOException thrown when the blob cannot be read.
+   */
+  public static ByteString getBlob(TraceStore traceStore, String dictionary,
+    ByteString hash) throws IOException {
+    ByteString data = getDictionary(traceStore, dictionary).get(hash);
+    if (data == null) {
+      DICTIONARIES.invalidate(dictionary);
+      data = getDictionary(traceStore, dictionary).get(hash);
+      if (data == null) {
+        throw new IOException("Blob not found in " + dictionary);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * @param traceStore The store to read the dictionary from.
+   * @param dictionary The full path of the dictionary.
+   * @return the blobs of the dictionary keyed by their hash.
+   * @throws IOException thrown when the dictionary cannot be read.
+   */
+  private static Map<ByteString, ByteString> getDictionary(
+    final TraceStore traceStore, final String dictionary) throws IOException {
+    try {
+      return DICTIONARIES.get(dictionary,
+        new Callable<Map<ByteString, ByteString>>() {
+          @Override
+          public Map<ByteString, ByteString> call() throws IOException {
+            return readDictionary(traceStore, dictionary);
+          }
+        });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * @param traceStore The store to read the dictionary from.
+   * @param dictionary The full path of the dictionary.
+   * @return the blobs of the dictionary keyed by their hash.
+   * @throws IOException thrown when the dictionary cannot be read.
+   */
+  private static Map<ByteString, ByteString> readDictionary(
+    TraceStore traceStore, String dictionary) throws IOException {
+    Map<ByteString, ByteString> blobs = new HashMap<>();
+    try (InputStream input = traceStore.open(dictionary)) {
+      Blob blob;
+      while ((blob = Blob.parseDelimitedFrom(input)) != null) {
+        blobs.put(blob.getHash(), blob.getData());
+      }
+    } catch (InvalidProtocolBufferException e) {
+      // The end of the dictionary is being appended to. Blobs of traces
+      // already written are always complete.
+      return blobs;
+    }
+    return blobs;
+  }
+}
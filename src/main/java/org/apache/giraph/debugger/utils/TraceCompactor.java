@@ -0,0 +1,515 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.giraph.debugger.Manifest.TraceManifestEntry;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.log4j.Logger;
+
+/**
+ * Compacts the traces of a finished job: the trace files, one per captured
+ * vertex, task or master superstep, are concatenated into a few large archive
+ * segments under the {@link #ARCHIVE_DIR} directory of the job, and the
+ * {@link TraceIndex} of the job is rewritten to point into them. Reading a
+ * trace then takes a seek into a segment instead of a file open, and
+ * deleting or copying the job touches a handful of files.
+ *
+ * Segments are written in parallel, and each one is read back and checked
+ * against the length and checksum of what was written before any original
+ * trace file is deleted. The
+ * compacted layout is recorded only once the index points into the archive,
+ * so a job whose compaction failed midway is still read from its original
+ * files, and compacting it again starts over.
+ * Jobs traced without an index get one built from a listing of their files.
+ */
+public class TraceCompactor {
+
+  /**
+   * Name of the directory under the job's trace directory holding the
+   * archive segments.
+   */
+  public static final String ARCHIVE_DIR = "_archive";
+
+  /**
+   * Traces are added to a segment until it holds this many bytes.
+   */
+  public static final int ARCHIVE_SEGMENT_SIZE = Integer.getInteger(
+    "giraph.debugger.archiveSegmentSize", 64 * 1024 * 1024);
+  /**
+   * Number of segments written at the same time.
+   */
+  public static final int COMPACTION_THREADS = Integer.getInteger(
+    "giraph.debugger.compactionThreads", 4);
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(TraceCompactor.class);
+  /**
+   * Prefix of the archive segment files.
+   */
+  private static final String SEGMENT_PREFIX = "seg_";
+  /**
+   * Suffix of the archive segment files.
+   */
+  private static final String SEGMENT_SUFFIX = ".tra";
+  /**
+   * Size of the buffer traces are copied into a segment through.
+   */
+  private static final int SEGMENT_BUFFER_SIZE = 0x10000;
+  /**
+   * Prefix of the superstep directories of the sharded layout.
+   */
+  private static final String SUPERSTEP_DIR_PREFIX = "stp_";
+  /**
+   * Patterns matching the file names of each trace type, for jobs traced
+   * without an index.
+   */
+  private static final Map<DebugTrace, Pattern> TRACE_FILE_PATTERNS =
+    new EnumMap<>(DebugTrace.class);
+
+  static {
+    for (DebugTrace debugTrace : EnumSet.of(DebugTrace.VERTEX_REGULAR,
+      DebugTrace.VERTEX_EXCEPTION, DebugTrace.INTEGRITY_MESSAGE_ALL,
+      DebugTrace.INTEGRITY_MESSAGE_SINGLE_VERTEX, DebugTrace.INTEGRITY_VERTEX,
+      DebugTrace.MASTER_REGULAR, DebugTrace.MASTER_EXCEPTION)) {
+      StringBuilder regex = new StringBuilder();
+      String[] parts = DebuggerUtils.getTraceFileFormat(debugTrace).split(
+        "%s", -1);
+      for (int i = 0; i < parts.length; i++) {
+        if (i > 0) {
+          regex.append("(.+?)");
+        }
+        regex.append(Pattern.quote(parts[i]));
+      }
+      TRACE_FILE_PATTERNS.put(debugTrace, Pattern.compile(regex.toString()));
+    }
+  }
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private TraceCompactor() { }
+
+  /**
+   * Compacts the traces of a job. The job must have finished, so jobs that
+   * may still be running, as told by
+   * {@link TraceIndex#isRunning(TraceStore, String, long)}, are refused.
+   * Compacting a compacted job only removes original trace files left behind
+   * by an interrupted compaction.
+   *
+   * @param traceStore The store holding the traces.
+   * @param jobId The job id.
+   * @throws IOException thrown when the traces cannot be compacted or the
+   *         job may still be running.
+   */
+  public static void compact(TraceStore traceStore, String jobId)
+    throws IOException {
+    if (TraceIndex.isRunning(traceStore, jobId, System.currentTimeMillis())) {
+      throw new IOException("Job " + jobId + " may still be running, as its " +
+        "trace index changed recently or has unmerged supersteps");
+    }
+    TraceLayout traceLayout = TraceLayout.load(traceStore, jobId);
+    ExecutorService executor = Executors.newFixedThreadPool(
+      COMPACTION_THREADS);
+    try {
+      if (!traceLayout.isCompacted()) {
+        SortedMap<Long, List<TraceManifestEntry>> entries =
+          archive(traceStore, jobId, executor, getEntries(traceStore, jobId,
+            traceLayout));
+        TraceIndex.replaceIndex(traceStore, jobId, entries);
+        traceLayout = traceLayout.toCompacted();
+        traceLayout.save(traceStore, jobId);
+      }
+      deleteTraceFiles(traceStore, jobId, executor, traceLayout);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the entries of all traces of a job, from its index if it has one
+   * and from a listing of its trace files otherwise.
+   *
+   * @param traceStore The store holding the traces.
+   * @param jobId The job id.
+   * @param traceLayout The layout of the job.
+   * @return the entries by superstep.
+   * @throws IOException thrown when the traces cannot be found.
+   */
+  private static SortedMap<Long, List<TraceManifestEntry>> getEntries(
+    TraceStore traceStore, String jobId, TraceLayout traceLayout)
+    throws IOException {
+    SortedMap<Long, List<TraceManifestEntry>> entries = new TreeMap<>();
+    TraceIndex traceIndex = TraceIndex.load(traceStore, jobId);
+    if (traceIndex != null) {
+      for (long superstepNo : traceIndex.getSupersteps()) {
+        entries.put(superstepNo, traceIndex.getEntries(superstepNo));
+      }
+      return entries;
+    }
+    for (String traceDir : traceLayout.getTraceDirs(traceStore, jobId)) {
+      for (TraceFileStatus fileStatus : traceStore.list(traceDir)) {
+        if (fileStatus.isDirectory()) {
+          continue;
+        }
+        TraceManifestEntry entry = parseTraceFile(jobId, fileStatus);
+        if (entry == null) {
+          continue;
+        }
+        List<TraceManifestEntry> superstepEntries = entries.get(
+          entry.getSuperstepNo());
+        if (superstepEntries == null) {
+          superstepEntries = new ArrayList<>();
+          entries.put(entry.getSuperstepNo(), superstepEntries);
+        }
+        superstepEntries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * @param jobId The job id.
+   * @param fileStatus A file in one of the trace directories of the job.
+   * @return the entry describing the file, or null if it is not a trace.
+   */
+  private static TraceManifestEntry parseTraceFile(String jobId,
+    TraceFileStatus fileStatus) {
+    for (Map.Entry<DebugTrace, Pattern> pattern :
+      TRACE_FILE_PATTERNS.entrySet()) {
+      Matcher m = pattern.getValue().matcher(fileStatus.getName());
+      if (!m.matches()) {
+        continue;
+      }
+      DebugTrace debugTrace = pattern.getKey();
+      TraceManifestEntry.Builder entry = TraceManifestEntry.newBuilder()
+        .setTraceType(debugTrace.name())
+        .setLocation(TraceIndex.getLocation(jobId, fileStatus.getPath()))
+        .setSize(fileStatus.getLength());
+      try {
+        switch (debugTrace) {
+        case INTEGRITY_MESSAGE_ALL:
+          entry.setTaskId(m.group(1)).setSuperstepNo(Long.parseLong(
+            m.group(2)));
+          break;
+        case MASTER_REGULAR:
+        case MASTER_EXCEPTION:
+          entry.setSuperstepNo(Long.parseLong(m.group(1)));
+          break;
+        default:
+          entry.setSuperstepNo(Long.parseLong(m.group(1))).setVertexId(
+            m.group(2));
+        }
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      return entry.build();
+    }
+    return null;
+  }
+
+  /**
+   * Copies the traces into archive segments, replacing any segments left
+   * behind by an earlier attempt.
+   *
+   * @param traceStore The store holding the traces.
+   * @param jobId The job id.
+   * @param executor The executor writing the segments.
+   * @param entries The entries of the traces to archive, by superstep.
+   * @return the entries pointing into the archive, by superstep.
+   * @throws IOException thrown when a segment cannot be written.
+   */
+  private static SortedMap<Long, List<TraceManifestEntry>> archive(
+    TraceStore traceStore, String jobId, ExecutorService executor,
+    SortedMap<Long, List<TraceManifestEntry>> entries) throws IOException {
+    traceStore.delete(DebuggerUtils.getTraceFileRoot(jobId) + "/" +
+      ARCHIVE_DIR, true);
+    // Traces are sorted by superstep and location, so that the traces of a
+    // superstep, which are usually browsed together, are next to each other.
+    List<SegmentWriter> segmentWriters = new ArrayList<>();
+    List<TraceManifestEntry> segmentEntries = new ArrayList<>();
+    long segmentSize = 0;
+    for (List<TraceManifestEntry> superstepEntries : entries.values()) {
+      List<TraceManifestEntry> sortedEntries = new ArrayList<>(
+        superstepEntries);
+      Collections.sort(sortedEntries, new Comparator<TraceManifestEntry>() {
+        @Override
+        public int compare(TraceManifestEntry e1, TraceManifestEntry e2) {
+          return e1.getLocation().compareTo(e2.getLocation());
+        }
+      });
+      for (TraceManifestEntry entry : sortedEntries) {
+        if (segmentSize >= ARCHIVE_SEGMENT_SIZE) {
+          segmentWriters.add(new SegmentWriter(traceStore, jobId,
+            getSegment(segmentWriters.size()), segmentEntries));
+          segmentEntries = new ArrayList<>();
+          segmentSize = 0;
+        }
+        segmentEntries.add(entry);
+        segmentSize += entry.getSize();
+      }
+    }
+    if (!segmentEntries.isEmpty()) {
+      segmentWriters.add(new SegmentWriter(traceStore, jobId,
+        getSegment(segmentWriters.size()), segmentEntries));
+    }
+
+    SortedMap<Long, List<TraceManifestEntry>> archivedEntries =
+      new TreeMap<>();
+    for (long superstepNo : entries.keySet()) {
+      archivedEntries.put(superstepNo, new ArrayList<TraceManifestEntry>());
+    }
+    for (List<TraceManifestEntry> segment : invokeAll(executor,
+      segmentWriters)) {
+      for (TraceManifestEntry entry : segment) {
+        archivedEntries.get(entry.getSuperstepNo()).add(entry);
+      }
+    }
+    LOG.info("Compacted the traces of job " + jobId + " into " +
+      segmentWriters.size() + " archive segments");
+    return archivedEntries;
+  }
+
+  /**
+   * Deletes the original trace files of a compacted job, i.e., only the files
+   * the index points into the archive for, so that files the archive does
+   * not hold are kept. The superstep directories of the sharded layout are
+   * deleted once they are left empty.
+   *
+   * @param traceStore The store holding the traces.
+   * @param jobId The job id.
+   * @param executor The executor deleting the files.
+   * @param traceLayout The layout of the job.
+   * @throws IOException thrown when a trace file cannot be deleted.
+   */
+  private static void deleteTraceFiles(final TraceStore traceStore,
+    String jobId, ExecutorService executor, TraceLayout traceLayout)
+    throws IOException {
+    final String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId);
+    List<Callable<Void>> deleters = new ArrayList<>();
+    TraceIndex traceIndex = TraceIndex.load(traceStore, jobId);
+    for (long superstepNo : traceIndex.getSupersteps()) {
+      final List<TraceManifestEntry> entries = traceIndex.getEntries(
+        superstepNo);
+      deleters.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          for (TraceManifestEntry entry : entries) {
+            if (entry.hasArchive()) {
+              traceStore.delete(traceFileRoot + "/" + entry.getLocation(),
+                false);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(executor, deleters);
+    if (traceLayout.getVersion() != TraceLayout.FLAT_VERSION) {
+      for (TraceFileStatus fileStatus : traceStore.list(traceFileRoot)) {
+        if (fileStatus.isDirectory() &&
+          fileStatus.getName().startsWith(SUPERSTEP_DIR_PREFIX)) {
+          if (!deleteIfEmpty(traceStore, fileStatus.getPath())) {
+            LOG.warn("Keeping " + fileStatus.getPath() + ", which holds " +
+              "files that were not compacted");
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes a directory if it holds nothing but empty directories.
+   *
+   * @param traceStore The store holding the directory.
+   * @param dir The directory.
+   * @return true if the directory was empty.
+   * @throws IOException thrown when the directory cannot be deleted.
+   */
+  private static boolean deleteIfEmpty(TraceStore traceStore, String dir)
+    throws IOException {
+    List<TraceFileStatus> fileStatuses;
+    try {
+      fileStatuses = traceStore.list(dir);
+    } catch (FileNotFoundException e) {
+      return true;
+    }
+    boolean empty = true;
+    for (TraceFileStatus fileStatus : fileStatuses) {
+      empty &= fileStatus.isDirectory() && deleteIfEmpty(traceStore,
+        fileStatus.getPath());
+    }
+    if (empty) {
+      traceStore.delete(dir, true);
+    }
+    return empty;
+  }
+
+  /**
+   * Runs the given tasks and waits for all of them to complete.
+   *
+   * @param <T> The type of the results.
+   * @param executor The executor to run the tasks on.
+   * @param tasks The tasks.
+   * @return the results of the tasks, in order.
+   * @throws IOException thrown when a task fails.
+   */
+  private static <T> List<T> invokeAll(ExecutorService executor,
+    List<? extends Callable<T>> tasks) throws IOException {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compacting traces");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * @param segmentNo The number of the segment.
+   * @return the path of the segment relative to the job's trace directory.
+   */
+  private static String getSegment(int segmentNo) {
+    return String.format("%s/%s%05d%s", ARCHIVE_DIR, SEGMENT_PREFIX, segmentNo,
+      SEGMENT_SUFFIX);
+  }
+
+  /**
+   * Writes one archive segment and verifies it.
+   */
+  private static class SegmentWriter implements
+    Callable<List<TraceManifestEntry>> {
+
+    /**
+     * The store holding the traces.
+     */
+    private final TraceStore traceStore;
+    /**
+     * The trace directory of the job.
+     */
+    private final String traceFileRoot;
+    /**
+     * Path of the segment relative to the job's trace directory.
+     */
+    private final String segment;
+    /**
+     * Entries of the traces to copy into the segment.
+     */
+    private final List<TraceManifestEntry> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param traceStore The store holding the traces.
+     * @param jobId The job id.
+     * @param segment Path of the segment relative to the job's trace
+     *        directory.
+     * @param entries Entries of the traces to copy into the segment.
+     */
+    public SegmentWriter(TraceStore traceStore, String jobId, String segment,
+      List<TraceManifestEntry> entries) {
+      this.traceStore = traceStore;
+      this.traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId) + "/";
+      this.segment = segment;
+      this.entries = entries;
+    }
+
+    @Override
+    public List<TraceManifestEntry> call() throws IOException {
+      // The traces are streamed into the segment, and only its length and
+      // checksum are kept to verify it.
+      String segmentPath = traceFileRoot + segment;
+      List<TraceManifestEntry> archivedEntries = new ArrayList<>(
+        entries.size());
+      long offset = 0;
+      CheckedOutputStream output = new CheckedOutputStream(
+        new BufferedOutputStream(traceStore.create(segmentPath),
+          SEGMENT_BUFFER_SIZE), new CRC32());
+      try {
+        for (TraceManifestEntry entry : entries) {
+          long size;
+          try (InputStream input = traceStore.open(traceFileRoot +
+            entry.getLocation())) {
+            size = IOUtils.copyLarge(input, output);
+          } catch (FileNotFoundException e) {
+            // The trace was never written, e.g., because its write failed.
+            LOG.warn("Dropping missing trace " + entry.getLocation() +
+              " from the index");
+            continue;
+          }
+          if (entry.hasSize() && entry.getSize() != size) {
+            throw new IOException("Trace " + entry.getLocation() + " has " +
+              size + " bytes instead of " + entry.getSize() +
+              ". Is the job still running?");
+          }
+          archivedEntries.add(entry.toBuilder().setArchive(segment)
+            .setOffset(offset).setSize(size).build());
+          offset += size;
+        }
+      } finally {
+        output.close();
+      }
+      long checksum = output.getChecksum().getValue();
+      try (CheckedInputStream input = new CheckedInputStream(
+        traceStore.open(segmentPath), new CRC32())) {
+        long length = IOUtils.copyLarge(input, new NullOutputStream());
+        if (length != offset || input.getChecksum().getValue() != checksum) {
+          throw new IOException("Archive segment " + segmentPath +
+            " does not match the traces written to it");
+        }
+      }
+      return archivedEntries;
+    }
+  }
+}
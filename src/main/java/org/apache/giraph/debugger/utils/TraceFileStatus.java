@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+/**
+ * Status of a file or directory in a {@link TraceStore}.
+ */
+public class TraceFileStatus {
+  /**
+   * The full path of the file.
+   */
+  private final String path;
+  /**
+   * The length of the file in bytes. Zero for directories.
+   */
+  private final long length;
+  /**
+   * The last modification time of the file in milliseconds since the epoch.
+   */
+  private final long modificationTime;
+  /**
+   * Whether this is a directory.
+   */
+  private final boolean directory;
+
+  /**
+   * Constructor with field values.
+   *
+   * @param path The full path of the file.
+   * @param length The length of the file in bytes.
+   * @param modificationTime The last modification time of the file.
+   * @param directory Whether this is a directory.
+   */
+  public TraceFileStatus(String path, long length, long modificationTime,
+    boolean directory) {
+    this.path = path;
+    this.length = length;
+    this.modificationTime = modificationTime;
+    this.directory = directory;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return the last component of the path.
+   */
+  public String getName() {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public long getModificationTime() {
+    return modificationTime;
+  }
+
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  @Override
+  public String toString() {
+    return (directory ? "dir: " : "file: ") + path + " length: " + length +
+      " modificationTime: " + modificationTime;
+  }
+}
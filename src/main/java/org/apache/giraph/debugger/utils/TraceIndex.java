@@ -0,0 +1,813 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.giraph.debugger.Manifest.JobTraceIndex;
+import org.apache.giraph.debugger.Manifest.JobTraceIndex.SuperstepIndex;
+import org.apache.giraph.debugger.Manifest.JobTraceIndex.TraceTypeCount;
+import org.apache.giraph.debugger.Manifest.TraceManifestEntry;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.log4j.Logger;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Index over the traces of a job, so that supersteps, vertices and tasks that
+ * were debugged can be found without listing the job's trace directory.
+ *
+ * The index lives in the {@link #INDEX_DIR} directory of the job:
+ * <ul>
+ * <li>stp_&lt;superstepNo&gt;/&lt;writerId&gt;.mf: the manifest of each
+ * worker or master, appended to by {@link TraceManifestWriter} at the end of
+ * every superstep, and deleted once merged.
+ * <li>stp_&lt;superstepNo&gt;.mf: the manifests of a superstep merged into one
+ * by the master once the superstep completes, and once more when the job
+ * ends.
+ * <li>job.idx: a {@link JobTraceIndex} summarizing the merged supersteps.
+ * </ul>
+ * Manifests contain length-delimited {@link TraceManifestEntry} records.
+ * Supersteps that were not merged yet, e.g., the one running, are merged
+ * in memory when the index is loaded. Once {@link TraceCompactor} compacted a
+ * job, every superstep is merged and the entries point into the archive.
+ */
+public class TraceIndex {
+
+  /**
+   * Name of the directory under the job's trace directory holding the index.
+   */
+  public static final String INDEX_DIR = "_index";
+  /**
+   * A job whose index changed within this many milliseconds is taken to be
+   * running, e.g., because its master is merging the last superstep.
+   */
+  public static final long QUIET_PERIOD = Long.getLong(
+    "giraph.debugger.indexQuietPeriod", TimeUnit.MINUTES.toMillis(10));
+  /**
+   * A job with unmerged supersteps is taken to be running until its index
+   * did not change for this many milliseconds, after which it is taken to
+   * have been killed before it could merge them.
+   */
+  public static final long ABANDONED_INDEX_AGE = Long.getLong(
+    "giraph.debugger.abandonedIndexAge", TimeUnit.DAYS.toMillis(1));
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(TraceIndex.class);
+  /**
+   * File name of the job-level index.
+   */
+  private static final String JOB_INDEX_FILE = "job.idx";
+  /**
+   * Prefix of the manifest directories and files of each superstep.
+   */
+  private static final String SUPERSTEP_PREFIX = "stp_";
+  /**
+   * Suffix of manifest files.
+   */
+  private static final String MANIFEST_SUFFIX = ".mf";
+  /**
+   * Suffix of the files the merged manifests and the job-level index are
+   * written to before they are renamed into place.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * The store the index is read from.
+   */
+  private final TraceStore traceStore;
+  /**
+   * The job id of the job this index belongs to.
+   */
+  private final String jobId;
+  /**
+   * Summaries of the supersteps whose manifests were merged.
+   */
+  private final SortedMap<Long, SuperstepIndex> mergedSupersteps;
+  /**
+   * Supersteps that only have the manifests of each writer.
+   */
+  private final SortedSet<Long> unmergedSupersteps;
+  /**
+   * Modification time of the job-level index read, or -1 if there was none.
+   */
+  private final long jobIndexModificationTime;
+  /**
+   * Lengths of the writers' manifests of the unmerged supersteps read so far,
+   * keyed by superstep and manifest name, to tell whether they grew since.
+   */
+  private final Map<Long, Map<String, Long>> manifestLengths =
+    new ConcurrentHashMap<>();
+  /**
+   * Manifest entries of the supersteps read so far.
+   */
+  private final Map<Long, List<TraceManifestEntry>> entriesBySuperstep =
+    new ConcurrentHashMap<>();
+  /**
+   * Manifest entries of the supersteps looked up so far, keyed by location.
+   */
+  private final Map<Long, Map<String, TraceManifestEntry>>
+  entriesByLocation = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param traceStore The store the index is read from.
+   * @param jobId The job id of the job this index belongs to.
+   * @param mergedSupersteps Summaries of the merged supersteps.
+   * @param unmergedSupersteps Supersteps that were not merged yet.
+   * @param jobIndexModificationTime Modification time of the job-level index
+   *        read, or -1.
+   */
+  private TraceIndex(TraceStore traceStore, String jobId,
+    SortedMap<Long, SuperstepIndex> mergedSupersteps,
+    SortedSet<Long> unmergedSupersteps, long jobIndexModificationTime) {
+    this.traceStore = traceStore;
+    this.jobId = jobId;
+    this.mergedSupersteps = mergedSupersteps;
+    this.unmergedSupersteps = unmergedSupersteps;
+    this.jobIndexModificationTime = jobIndexModificationTime;
+  }
+
+  /**
+   * Loads the index of the given job.
+   *
+   * @param traceStore The store to read from.
+   * @param jobId The job id.
+   * @return the index, or null if the job's traces were written without one.
+   * @throws IOException thrown when the index cannot be read.
+   */
+  public static TraceIndex load(TraceStore traceStore, String jobId)
+    throws IOException {
+    return load(traceStore, jobId, null);
+  }
+
+  /**
+   * Loads the index of the given job, reusing the job-level index of a
+   * previous load if it did not change since.
+   *
+   * @param traceStore The store to read from.
+   * @param jobId The job id.
+   * @param previous An index of the job loaded before, or null.
+   * @return the index, or null if the job's traces were written without one.
+   * @throws IOException thrown when the index cannot be read.
+   */
+  private static TraceIndex load(TraceStore traceStore, String jobId,
+    TraceIndex previous) throws IOException {
+    List<TraceFileStatus> fileStatuses;
+    try {
+      fileStatuses = traceStore.list(getIndexRoot(jobId));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    SortedMap<Long, SuperstepIndex> mergedSupersteps = new TreeMap<>();
+    SortedSet<Long> unmergedSupersteps = new TreeSet<>();
+    long jobIndexModificationTime = -1;
+    for (TraceFileStatus fileStatus : fileStatuses) {
+      String name = fileStatus.getName();
+      if (fileStatus.isDirectory() && name.startsWith(SUPERSTEP_PREFIX)) {
+        unmergedSupersteps.add(Long.parseLong(name.substring(
+          SUPERSTEP_PREFIX.length())));
+      } else if (name.equals(JOB_INDEX_FILE)) {
+        if (previous != null && previous.jobIndexModificationTime ==
+          fileStatus.getModificationTime()) {
+          mergedSupersteps.putAll(previous.mergedSupersteps);
+          jobIndexModificationTime = fileStatus.getModificationTime();
+          continue;
+        }
+        jobIndexModificationTime = fileStatus.getModificationTime();
+        for (SuperstepIndex superstepIndex :
+          readJobIndex(traceStore, jobId).getSuperstepList()) {
+          mergedSupersteps.put(superstepIndex.getSuperstepNo(),
+            superstepIndex);
+        }
+      }
+    }
+    unmergedSupersteps.removeAll(mergedSupersteps.keySet());
+    return new TraceIndex(traceStore, jobId, mergedSupersteps,
+      unmergedSupersteps, jobIndexModificationTime);
+  }
+
+  /**
+   * Tells whether a job may still be adding traces, so that its traces must
+   * not be compacted or deleted: either its index changed within the
+   * {@link #QUIET_PERIOD}, or it has supersteps whose manifests were not
+   * merged yet and it changed within the {@link #ABANDONED_INDEX_AGE}. Jobs
+   * traced without an index are never taken to be running.
+   *
+   * @param traceStore The store to read from.
+   * @param jobId The job id.
+   * @param now The current time.
+   * @return true if the job may still be running.
+   * @throws IOException thrown when the index cannot be listed.
+   */
+  public static boolean isRunning(TraceStore traceStore, String jobId,
+    long now) throws IOException {
+    List<TraceFileStatus> fileStatuses;
+    try {
+      fileStatuses = traceStore.list(getIndexRoot(jobId));
+    } catch (FileNotFoundException e) {
+      return false;
+    }
+    boolean hasUnmergedSupersteps = false;
+    long lastModificationTime = 0;
+    for (TraceFileStatus fileStatus : fileStatuses) {
+      lastModificationTime = Math.max(lastModificationTime,
+        fileStatus.getModificationTime());
+      if (!fileStatus.isDirectory() ||
+        !fileStatus.getName().startsWith(SUPERSTEP_PREFIX)) {
+        continue;
+      }
+      hasUnmergedSupersteps = true;
+      for (TraceFileStatus manifest : traceStore.list(fileStatus.getPath())) {
+        lastModificationTime = Math.max(lastModificationTime,
+          manifest.getModificationTime());
+      }
+    }
+    return lastModificationTime > now - (hasUnmergedSupersteps ?
+      Math.max(QUIET_PERIOD, ABANDONED_INDEX_AGE) : QUIET_PERIOD);
+  }
+
+  /**
+   * Loads the index of the job again, e.g., while the job is still running,
+   * reusing the entries of this index that did not change: those of
+   * supersteps that are merged in both, and those of unmerged supersteps
+   * whose manifests did not grow. Entries of a job compacted since may point
+   * to trace files that no longer exist, so the index must be loaded from
+   * scratch once a job is compacted.
+   *
+   * @return the current index of the job, or null if it has none anymore.
+   * @throws IOException thrown when the index cannot be read.
+   */
+  public TraceIndex refresh() throws IOException {
+    TraceIndex traceIndex = load(traceStore, jobId, this);
+    if (traceIndex == null) {
+      return null;
+    }
+    for (Map.Entry<Long, SuperstepIndex> superstepIndex :
+      traceIndex.mergedSupersteps.entrySet()) {
+      long superstepNo = superstepIndex.getKey();
+      if (superstepIndex.getValue().equals(mergedSupersteps.get(
+        superstepNo))) {
+        traceIndex.reuseEntries(this, superstepNo);
+      }
+    }
+    for (long superstepNo : traceIndex.unmergedSupersteps) {
+      Map<String, Long> lengths = manifestLengths.get(superstepNo);
+      if (lengths != null && unmergedSupersteps.contains(superstepNo) &&
+        lengths.equals(getLengths(traceStore.list(getSuperstepManifestDir(
+          jobId, superstepNo))))) {
+        traceIndex.reuseEntries(this, superstepNo);
+        traceIndex.manifestLengths.put(superstepNo, lengths);
+      }
+    }
+    return traceIndex;
+  }
+
+  /**
+   * @param traceIndex An index of the same job loaded before.
+   * @param superstepNo A superstep whose entries did not change since.
+   */
+  private void reuseEntries(TraceIndex traceIndex, long superstepNo) {
+    List<TraceManifestEntry> entries = traceIndex.entriesBySuperstep.get(
+      superstepNo);
+    if (entries != null) {
+      entriesBySuperstep.put(superstepNo, entries);
+    }
+    Map<String, TraceManifestEntry> entriesOfLocations =
+      traceIndex.entriesByLocation.get(superstepNo);
+    if (entriesOfLocations != null) {
+      entriesByLocation.put(superstepNo, entriesOfLocations);
+    }
+  }
+
+  /**
+   * @return all supersteps that have a manifest, in increasing order.
+   */
+  public SortedSet<Long> getSupersteps() {
+    SortedSet<Long> superstepNos = new TreeSet<>(mergedSupersteps.keySet());
+    superstepNos.addAll(unmergedSupersteps);
+    return superstepNos;
+  }
+
+  /**
+   * @param superstepNo The superstep number.
+   * @return true if the manifests of the superstep were merged, which the
+   *         master does once the superstep is over, so that no more traces
+   *         are added to it.
+   */
+  public boolean isMerged(long superstepNo) {
+    return mergedSupersteps.containsKey(superstepNo);
+  }
+
+  /**
+   * Returns a version of the traces of a superstep, which changes whenever
+   * traces are added to it or it is merged. Versions of the same traces are
+   * equal across loads of the index.
+   *
+   * @param superstepNo The superstep number.
+   * @return the version.
+   * @throws IOException thrown when a manifest cannot be read.
+   */
+  public long getVersion(long superstepNo) throws IOException {
+    SuperstepIndex superstepIndex = mergedSupersteps.get(superstepNo);
+    if (superstepIndex != null) {
+      // Not the message's hash code, which depends on its descriptor's
+      // identity.
+      return superstepIndex.toByteString().hashCode();
+    }
+    if (!unmergedSupersteps.contains(superstepNo)) {
+      return 0;
+    }
+    getEntries(superstepNo);
+    Map<String, Long> lengths = manifestLengths.get(superstepNo);
+    // Kept apart from the versions of merged supersteps.
+    return ((long) (lengths == null ? 0 : lengths.hashCode()) << 32) | 1;
+  }
+
+  /**
+   * Returns the supersteps that have at least one trace of the given types.
+   *
+   * @param traceTypes The trace types to look for.
+   * @return the supersteps in increasing order.
+   * @throws IOException thrown when a manifest cannot be read.
+   */
+  public SortedSet<Long> getSupersteps(Set<DebugTrace> traceTypes)
+    throws IOException {
+    SortedSet<Long> superstepNos = new TreeSet<>();
+    for (SuperstepIndex superstepIndex : mergedSupersteps.values()) {
+      for (TraceTypeCount count : superstepIndex.getCountList()) {
+        if (count.getCount() > 0 &&
+          traceTypes.contains(DebugTrace.valueOf(count.getTraceType()))) {
+          superstepNos.add(superstepIndex.getSuperstepNo());
+          break;
+        }
+      }
+    }
+    for (long superstepNo : unmergedSupersteps) {
+      if (!getEntries(superstepNo, traceTypes).isEmpty()) {
+        superstepNos.add(superstepNo);
+      }
+    }
+    return superstepNos;
+  }
+
+  /**
+   * Returns the entries of the traces of the given types saved in the given
+   * superstep.
+   *
+   * @param superstepNo The superstep number.
+   * @param traceTypes The trace types to look for.
+   * @return the matching entries, in no particular order.
+   * @throws IOException thrown when a manifest cannot be read.
+   */
+  public List<TraceManifestEntry> getEntries(long superstepNo,
+    Set<DebugTrace> traceTypes) throws IOException {
+    List<TraceManifestEntry> entries = new ArrayList<>();
+    for (TraceManifestEntry entry : getEntries(superstepNo)) {
+      if (traceTypes.contains(DebugTrace.valueOf(entry.getTraceType()))) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the entries of all traces saved in the given superstep.
+   *
+   * @param superstepNo The superstep number.
+   * @return the entries, in no particular order.
+   * @throws IOException thrown when a manifest cannot be read.
+   */
+  public List<TraceManifestEntry> getEntries(long superstepNo)
+    throws IOException {
+    List<TraceManifestEntry> entries = entriesBySuperstep.get(superstepNo);
+    if (entries == null) {
+      SuperstepIndex superstepIndex = mergedSupersteps.get(superstepNo);
+      if (superstepIndex != null) {
+        entries = readManifest(traceStore, DebuggerUtils.getTraceFileRoot(
+          jobId) + "/" + superstepIndex.getManifest());
+      } else if (unmergedSupersteps.contains(superstepNo)) {
+        List<TraceFileStatus> manifests = traceStore.list(
+          getSuperstepManifestDir(jobId, superstepNo));
+        // Recorded before reading, so that manifests that grow meanwhile
+        // are read again on refresh.
+        manifestLengths.put(superstepNo, getLengths(manifests));
+        entries = readManifests(traceStore, manifests);
+      } else {
+        entries = Collections.emptyList();
+      }
+      entriesBySuperstep.put(superstepNo, entries);
+    }
+    return entries;
+  }
+
+  /**
+   * Finds the entry of a trace.
+   *
+   * @param superstepNo The superstep number of the trace.
+   * @param location The path of the trace file relative to the job's trace
+   *        directory, see {@link #getLocation(String, String)}.
+   * @return the entry of the trace, or null if the trace is not indexed.
+   * @throws IOException thrown when a manifest cannot be read.
+   */
+  public TraceManifestEntry findEntry(long superstepNo, String location)
+    throws IOException {
+    Map<String, TraceManifestEntry> entries = entriesByLocation.get(
+      superstepNo);
+    if (entries == null) {
+      entries = new HashMap<>();
+      for (TraceManifestEntry entry : getEntries(superstepNo)) {
+        entries.put(entry.getLocation(), entry);
+      }
+      entriesByLocation.put(superstepNo, entries);
+    }
+    return entries.get(location);
+  }
+
+  /**
+   * Opens a trace, reading it from its archive segment if the job was
+   * compacted.
+   *
+   * @param superstepNo The superstep number of the trace.
+   * @param location The path of the trace file relative to the job's trace
+   *        directory.
+   * @return a stream over the trace. Callers must close it.
+   * @throws java.io.FileNotFoundException thrown when the trace is not
+   *         indexed or its file does not exist.
+   * @throws IOException thrown when the trace cannot be opened.
+   */
+  public InputStream openTrace(long superstepNo, String location)
+    throws IOException {
+    TraceManifestEntry entry = findEntry(superstepNo, location);
+    if (entry == null) {
+      throw new FileNotFoundException("No trace at " + location +
+        " in the index of job " + jobId);
+    }
+    String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId) + "/";
+    if (!entry.hasArchive()) {
+      return traceStore.open(traceFileRoot + entry.getLocation());
+    }
+    InputStream input = traceStore.open(traceFileRoot + entry.getArchive());
+    try {
+      IOUtils.skipFully(input, entry.getOffset());
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+    return new BoundedInputStream(input, entry.getSize());
+  }
+
+  /**
+   * Expands the debug traces standing for several trace types.
+   *
+   * @param debugTrace A debug trace, e.g., {@link DebugTrace#VERTEX_ALL}.
+   * @return the trace types the given debug trace stands for.
+   */
+  public static Set<DebugTrace> expand(DebugTrace debugTrace) {
+    switch (debugTrace) {
+    case VERTEX_ALL:
+      return EnumSet.of(DebugTrace.VERTEX_REGULAR,
+        DebugTrace.VERTEX_EXCEPTION);
+    case MASTER_ALL:
+      return EnumSet.of(DebugTrace.MASTER_REGULAR,
+        DebugTrace.MASTER_EXCEPTION);
+    default:
+      return EnumSet.of(debugTrace);
+    }
+  }
+
+  /**
+   * Merges the manifests every writer saved in the given superstep into one,
+   * along with any merged manifest of the superstep, adds the superstep to
+   * the job-level index and deletes the manifests it merged. Must be called
+   * only after the superstep completes and its manifests are written, which
+   * {@link org.apache.giraph.debugger.instrumenter.TraceIndexMasterObserver}
+   * makes sure of.
+   *
+   * @param traceStore The store to read from and write to.
+   * @param jobId The job id.
+   * @param superstepNo The superstep number.
+   * @throws IOException thrown when the index cannot be updated.
+   */
+  public static void mergeSuperstep(TraceStore traceStore, String jobId,
+    long superstepNo) throws IOException {
+    String manifestDir = getSuperstepManifestDir(jobId, superstepNo);
+    List<TraceFileStatus> manifests;
+    try {
+      manifests = traceStore.list(manifestDir);
+    } catch (FileNotFoundException e) {
+      // No traces were saved in this superstep, or it was merged already.
+      return;
+    }
+
+    // Only the master updates the job-level index, so no one else can change
+    // it between reading and writing it back.
+    SortedMap<Long, SuperstepIndex> supersteps = new TreeMap<>();
+    if (traceStore.lookup(getJobIndexPath(jobId)) != null) {
+      for (SuperstepIndex existing :
+        readJobIndex(traceStore, jobId).getSuperstepList()) {
+        supersteps.put(existing.getSuperstepNo(), existing);
+      }
+    }
+    // A superstep is merged again if its writers appended to their manifests
+    // after it was merged, e.g., when it is merged at the end of the job.
+    Map<String, TraceManifestEntry> entries = new LinkedHashMap<>();
+    SuperstepIndex merged = supersteps.get(superstepNo);
+    if (merged != null) {
+      for (TraceManifestEntry entry : readManifest(traceStore,
+        DebuggerUtils.getTraceFileRoot(jobId) + "/" + merged.getManifest())) {
+        entries.put(entry.getLocation(), entry);
+      }
+    }
+    for (TraceManifestEntry entry : readManifests(traceStore, manifests)) {
+      entries.put(entry.getLocation(), entry);
+    }
+    supersteps.put(superstepNo, writeSuperstepManifest(traceStore, jobId,
+      superstepNo, new ArrayList<>(entries.values())));
+    writeJobIndex(traceStore, jobId, JobTraceIndex.newBuilder()
+      .addAllSuperstep(supersteps.values()).build());
+
+    for (TraceFileStatus manifest : manifests) {
+      traceStore.delete(manifest.getPath(), false);
+    }
+    try {
+      if (traceStore.list(manifestDir).isEmpty()) {
+        traceStore.delete(manifestDir, true);
+      }
+    } catch (FileNotFoundException e) {
+      // Stores without directories of their own dropped it already.
+      return;
+    }
+  }
+
+  /**
+   * Merges every superstep of a job that still has manifests of its writers.
+   * Called once the job is over, so that the last superstep is merged too.
+   *
+   * @param traceStore The store to read from and write to.
+   * @param jobId The job id.
+   * @throws IOException thrown when the index cannot be updated.
+   */
+  public static void mergeAllSupersteps(TraceStore traceStore, String jobId)
+    throws IOException {
+    List<TraceFileStatus> fileStatuses;
+    try {
+      fileStatuses = traceStore.list(getIndexRoot(jobId));
+    } catch (FileNotFoundException e) {
+      return;
+    }
+    for (TraceFileStatus fileStatus : fileStatuses) {
+      String name = fileStatus.getName();
+      if (fileStatus.isDirectory() && name.startsWith(SUPERSTEP_PREFIX)) {
+        mergeSuperstep(traceStore, jobId, Long.parseLong(name.substring(
+          SUPERSTEP_PREFIX.length())));
+      }
+    }
+  }
+
+  /**
+   * Replaces the whole index of a job with the given entries, merging every
+   * superstep and dropping the manifests of each writer. Used by
+   * {@link TraceCompactor} once the job finished.
+   *
+   * @param traceStore The store to write to.
+   * @param jobId The job id.
+   * @param entries The entries of all traces of the job, by superstep.
+   * @throws IOException thrown when the index cannot be written.
+   */
+  static void replaceIndex(TraceStore traceStore, String jobId,
+    SortedMap<Long, List<TraceManifestEntry>> entries) throws IOException {
+    JobTraceIndex.Builder jobTraceIndex = JobTraceIndex.newBuilder();
+    for (Map.Entry<Long, List<TraceManifestEntry>> superstepEntries :
+      entries.entrySet()) {
+      jobTraceIndex.addSuperstep(writeSuperstepManifest(traceStore, jobId,
+        superstepEntries.getKey(), superstepEntries.getValue()));
+    }
+    writeJobIndex(traceStore, jobId, jobTraceIndex.build());
+    for (TraceFileStatus fileStatus : traceStore.list(getIndexRoot(jobId))) {
+      if (fileStatus.isDirectory() &&
+        fileStatus.getName().startsWith(SUPERSTEP_PREFIX)) {
+        traceStore.delete(fileStatus.getPath(), true);
+      }
+    }
+  }
+
+  /**
+   * Writes the job-level index, replacing any existing one. It is renamed
+   * into place, so that the GUI server polling the index of a running job
+   * never finds it missing or half written.
+   *
+   * @param traceStore The store to write to.
+   * @param jobId The job id.
+   * @param jobTraceIndex The job-level index.
+   * @throws IOException thrown when the index cannot be written.
+   */
+  private static void writeJobIndex(TraceStore traceStore, String jobId,
+    JobTraceIndex jobTraceIndex) throws IOException {
+    String jobIndexPath = getJobIndexPath(jobId);
+    traceStore.write(jobIndexPath + TEMP_SUFFIX, jobTraceIndex);
+    traceStore.rename(jobIndexPath + TEMP_SUFFIX, jobIndexPath);
+  }
+
+  /**
+   * Writes the merged manifest of a superstep, replacing any existing one.
+   * Like the job-level index, it is renamed into place once written.
+   *
+   * @param traceStore The store to write to.
+   * @param jobId The job id.
+   * @param superstepNo The superstep number.
+   * @param entries The entries of all traces of the superstep.
+   * @return the summary of the superstep for the job-level index.
+   * @throws IOException thrown when the manifest cannot be written.
+   */
+  private static SuperstepIndex writeSuperstepManifest(TraceStore traceStore,
+    String jobId, long superstepNo, List<TraceManifestEntry> entries)
+    throws IOException {
+    String manifest = INDEX_DIR + "/" + SUPERSTEP_PREFIX + superstepNo +
+      MANIFEST_SUFFIX;
+    String manifestPath = DebuggerUtils.getTraceFileRoot(jobId) + "/" +
+      manifest;
+    String tempPath = manifestPath + TEMP_SUFFIX;
+    // A manifest left behind by a master that failed while writing it must
+    // not be appended to.
+    traceStore.delete(tempPath, false);
+    if (entries.isEmpty()) {
+      traceStore.write(tempPath, new byte[0]);
+    } else {
+      traceStore.append(tempPath, entries);
+    }
+    traceStore.rename(tempPath, manifestPath);
+
+    Map<String, Long> counts = new TreeMap<>();
+    for (TraceManifestEntry entry : entries) {
+      Long count = counts.get(entry.getTraceType());
+      counts.put(entry.getTraceType(), count == null ? 1 : count + 1);
+    }
+    SuperstepIndex.Builder superstepIndex = SuperstepIndex.newBuilder()
+      .setSuperstepNo(superstepNo).setManifest(manifest);
+    for (Map.Entry<String, Long> count : counts.entrySet()) {
+      superstepIndex.addCount(TraceTypeCount.newBuilder()
+        .setTraceType(count.getKey()).setCount(count.getValue()));
+    }
+    return superstepIndex.build();
+  }
+
+  /**
+   * @param jobId The job id.
+   * @return the directory holding the index of the given job.
+   */
+  public static String getIndexRoot(String jobId) {
+    return DebuggerUtils.getTraceFileRoot(jobId) + "/" + INDEX_DIR;
+  }
+
+  /**
+   * @param jobId The job id.
+   * @param superstepNo The superstep number.
+   * @param writerId The unique id of the worker or master writing traces.
+   * @return the path of the manifest the writer appends to in the superstep.
+   */
+  public static String getWriterManifestPath(String jobId, long superstepNo,
+    String writerId) {
+    return getSuperstepManifestDir(jobId, superstepNo) + "/" + writerId +
+      MANIFEST_SUFFIX;
+  }
+
+  /**
+   * @param jobId The job id.
+   * @param fullFileName The full path of a trace file of the job.
+   * @return the path of the trace file relative to the job's trace directory.
+   */
+  public static String getLocation(String jobId, String fullFileName) {
+    String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId) + "/";
+    return fullFileName.startsWith(traceFileRoot) ?
+      fullFileName.substring(traceFileRoot.length()) : fullFileName;
+  }
+
+  /**
+   * @param jobId The job id.
+   * @param superstepNo The superstep number.
+   * @return the directory holding the manifest of each writer.
+   */
+  private static String getSuperstepManifestDir(String jobId,
+    long superstepNo) {
+    return getIndexRoot(jobId) + "/" + SUPERSTEP_PREFIX + superstepNo;
+  }
+
+  /**
+   * @param jobId The job id.
+   * @return the path of the job-level index.
+   */
+  private static String getJobIndexPath(String jobId) {
+    return getIndexRoot(jobId) + "/" + JOB_INDEX_FILE;
+  }
+
+  /**
+   * Reads the job-level index. It is always replaced as a whole, so one that
+   * cannot be parsed is corrupt and reported as such.
+   *
+   * @param traceStore The store to read from.
+   * @param jobId The job id.
+   * @return the job-level index.
+   * @throws IOException thrown when the index cannot be read.
+   */
+  private static JobTraceIndex readJobIndex(TraceStore traceStore,
+    String jobId) throws IOException {
+    try (InputStream input = traceStore.open(getJobIndexPath(jobId))) {
+      return JobTraceIndex.parseFrom(input);
+    }
+  }
+
+  /**
+   * Reads and concatenates the given manifests.
+   *
+   * @param traceStore The store to read from.
+   * @param fileStatuses The files of a directory holding manifests.
+   * @return the entries of all manifests.
+   * @throws IOException thrown when a manifest cannot be read.
+   */
+  private static List<TraceManifestEntry> readManifests(
+    TraceStore traceStore, List<TraceFileStatus> fileStatuses)
+    throws IOException {
+    List<TraceManifestEntry> entries = new ArrayList<>();
+    for (TraceFileStatus fileStatus : fileStatuses) {
+      if (fileStatus.getName().endsWith(MANIFEST_SUFFIX)) {
+        entries.addAll(readManifest(traceStore, fileStatus.getPath()));
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * @param fileStatuses The files of a directory holding manifests.
+   * @return the length of each manifest, keyed by its name.
+   */
+  private static Map<String, Long> getLengths(
+    List<TraceFileStatus> fileStatuses) {
+    Map<String, Long> lengths = new HashMap<>();
+    for (TraceFileStatus fileStatus : fileStatuses) {
+      if (fileStatus.getName().endsWith(MANIFEST_SUFFIX)) {
+        lengths.put(fileStatus.getName(), fileStatus.getLength());
+      }
+    }
+    return lengths;
+  }
+
+  /**
+   * Reads the entries of a manifest. A truncated last entry, e.g., one that
+   * is being appended, is skipped.
+   *
+   * @param traceStore The store to read from.
+   * @param path The path of the manifest.
+   * @return the entries of the manifest.
+   * @throws IOException thrown when the manifest cannot be read.
+   */
+  private static List<TraceManifestEntry> readManifest(
+    TraceStore traceStore, String path) throws IOException {
+    List<TraceManifestEntry> entries = new ArrayList<>();
+    try (InputStream input = traceStore.open(path)) {
+      TraceManifestEntry entry;
+      while ((entry = TraceManifestEntry.parseDelimitedFrom(input)) != null) {
+        entries.add(entry);
+      }
+    } catch (InvalidProtocolBufferException e) {
+      LOG.warn("Skipping the truncated end of manifest " + path + ": " + e);
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+
+/**
+ * Describes where the trace files of a job are stored under the job's trace
+ * directory. Two versions exist:
+ * <ul>
+ * <li>1 (flat): all trace files directly under the job's trace directory, as
+ * named by {@link DebuggerUtils#getTraceFileFormat(DebugTrace)}. Jobs traced
+ * before layouts were introduced use this one.
+ * <li>2 (sharded): trace files grouped by superstep and trace type, and vertex
+ * traces further spread over hash buckets of the vertex id, e.g.,
+ * stp_3/reg/1f/reg_stp_3_vid_42.tr.
+ * </ul>
+ * The layout of a job is recorded in the {@link #LAYOUT_FILE} of its trace
+ * directory. Jobs without one use the flat layout. Jobs of either layout may
+ * be compacted by {@link TraceCompactor}, after which their traces are only
+ * found through the {@link TraceIndex}.
+ */
+public final class TraceLayout {
+
+  /**
+   * Version of the flat layout.
+   */
+  public static final int FLAT_VERSION = 1;
+  /**
+   * Version of the sharded layout.
+   */
+  public static final int SHARDED_VERSION = 2;
+  /**
+   * The flat layout.
+   */
+  public static final TraceLayout FLAT = new TraceLayout(FLAT_VERSION, 1,
+    false);
+
+  /**
+   * The layout version new jobs are traced with.
+   */
+  public static final int TRACE_LAYOUT_VERSION = Integer.getInteger(
+    "giraph.debugger.traceLayoutVersion", SHARDED_VERSION);
+  /**
+   * The number of hash buckets vertex traces of new jobs are spread over.
+   */
+  public static final int TRACE_LAYOUT_NUM_BUCKETS = Integer.getInteger(
+    "giraph.debugger.traceLayoutNumBuckets", 256);
+
+  /**
+   * File name of the layout description in the job's trace directory.
+   */
+  public static final String LAYOUT_FILE = "layout.properties";
+  /**
+   * Layout property holding the version.
+   */
+  private static final String VERSION_KEY = "version";
+  /**
+   * Layout property holding the number of buckets.
+   */
+  private static final String NUM_BUCKETS_KEY = "numBuckets";
+  /**
+   * Layout property telling whether the traces were compacted.
+   */
+  private static final String COMPACTED_KEY = "compacted";
+  /**
+   * Prefix of the superstep directories of the sharded layout.
+   */
+  private static final String SUPERSTEP_DIR_PREFIX = "stp_";
+
+  /**
+   * The layout version.
+   */
+  private final int version;
+  /**
+   * The number of hash buckets vertex traces are spread over.
+   */
+  private final int numBuckets;
+  /**
+   * Whether the trace files were moved into archive segments.
+   */
+  private final boolean compacted;
+
+  /**
+   * Constructor.
+   *
+   * @param version The layout version.
+   * @param numBuckets The number of hash buckets for vertex traces.
+   * @param compacted Whether the trace files were moved into archives.
+   */
+  private TraceLayout(int version, int numBuckets, boolean compacted) {
+    if (version != FLAT_VERSION && version != SHARDED_VERSION) {
+      throw new IllegalArgumentException("Unknown trace layout version: " +
+        version);
+    }
+    if (numBuckets < 1) {
+      throw new IllegalArgumentException("Invalid number of buckets: " +
+        numBuckets);
+    }
+    this.version = version;
+    this.numBuckets = numBuckets;
+    this.compacted = compacted;
+  }
+
+  /**
+   * @return the layout new jobs are traced with, as configured with the
+   *         giraph.debugger.traceLayoutVersion and
+   *         giraph.debugger.traceLayoutNumBuckets system properties.
+   */
+  public static TraceLayout getDefault() {
+    return TRACE_LAYOUT_VERSION == FLAT_VERSION ? FLAT :
+      new TraceLayout(TRACE_LAYOUT_VERSION, TRACE_LAYOUT_NUM_BUCKETS, false);
+  }
+
+  /**
+   * Reads the layout of the given job.
+   *
+   * @param traceStore The store to read from.
+   * @param jobId The job id.
+   * @return the layout of the job, {@link #FLAT} if none was recorded.
+   * @throws IOException thrown when the layout cannot be read.
+   */
+  public static TraceLayout load(TraceStore traceStore, String jobId)
+    throws IOException {
+    String layoutPath = getLayoutPath(jobId);
+    if (traceStore.lookup(layoutPath) == null) {
+      return FLAT;
+    }
+    Properties properties = new Properties();
+    try (InputStream input = traceStore.open(layoutPath)) {
+      properties.load(input);
+    }
+    try {
+      return new TraceLayout(
+        Integer.parseInt(properties.getProperty(VERSION_KEY)),
+        Integer.parseInt(properties.getProperty(NUM_BUCKETS_KEY, "1")),
+        Boolean.parseBoolean(properties.getProperty(COMPACTED_KEY)));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid trace layout at " + layoutPath, e);
+    }
+  }
+
+  /**
+   * Records this layout for the given job unless one was already recorded.
+   * The flat layout needs no record. A compacted layout always replaces the
+   * recorded one.
+   *
+   * @param traceStore The store to write to.
+   * @param jobId The job id.
+   * @throws IOException thrown when the layout cannot be written.
+   */
+  public void save(TraceStore traceStore, String jobId) throws IOException {
+    String layoutPath = getLayoutPath(jobId);
+    if (!compacted && (version == FLAT_VERSION ||
+      traceStore.lookup(layoutPath) != null)) {
+      return;
+    }
+    Properties properties = new Properties();
+    properties.setProperty(VERSION_KEY, String.valueOf(version));
+    properties.setProperty(NUM_BUCKETS_KEY, String.valueOf(numBuckets));
+    properties.setProperty(COMPACTED_KEY, String.valueOf(compacted));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    properties.store(output, "Graft trace layout");
+    traceStore.write(layoutPath, output.toByteArray());
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  public int getNumBuckets() {
+    return numBuckets;
+  }
+
+  public boolean isCompacted() {
+    return compacted;
+  }
+
+  /**
+   * @return this layout with the trace files moved into archive segments.
+   */
+  public TraceLayout toCompacted() {
+    return new TraceLayout(version, numBuckets, true);
+  }
+
+  /**
+   * Returns the full trace file name for the given type of debug trace in
+   * this layout. Arguments are as in
+   * {@link DebuggerUtils#getFullTraceFileName(DebugTrace, String, Long,
+   * String, String)}.
+   *
+   * @param debugTrace The debug trace for generating the file name.
+   * @param jobId The job id of the job the debug trace belongs to.
+   * @param superstepNo The superstep number of the debug trace.
+   * @param vertexId The vertex id of the debug trace.
+   * @param taskId The task id of the debug trace.
+   * @return The full trace file name.
+   */
+  public String getFullTraceFileName(DebugTrace debugTrace, String jobId,
+    Long superstepNo, String vertexId, String taskId) {
+    String fileName = DebuggerUtils.getTraceFileName(debugTrace, superstepNo,
+      vertexId, taskId);
+    if (version == FLAT_VERSION) {
+      return DebuggerUtils.getTraceFileRoot(jobId) + "/" + fileName;
+    }
+    return getTraceTypeDir(jobId, superstepNo, debugTrace) +
+      (vertexId == null ? "" : "/" + getBucket(vertexId)) + "/" + fileName;
+  }
+
+  /**
+   * Returns the directories that hold all the trace files of the given job in
+   * this layout, which is just the job's trace directory for the flat layout.
+   * Used for finding traces of jobs without a {@link TraceIndex}.
+   *
+   * @param traceStore The store to read from.
+   * @param jobId The job id.
+   * @return paths of the directories holding trace files.
+   * @throws IOException thrown when the directories cannot be listed.
+   */
+  public List<String> getTraceDirs(TraceStore traceStore,
+    String jobId) throws IOException {
+    List<String> dirs = new ArrayList<>();
+    String traceFileRoot = DebuggerUtils.getTraceFileRoot(jobId);
+    if (version == FLAT_VERSION) {
+      dirs.add(traceFileRoot);
+      return dirs;
+    }
+    for (TraceFileStatus superstepDir : traceStore.list(traceFileRoot)) {
+      if (!superstepDir.isDirectory() ||
+        !superstepDir.getName().startsWith(SUPERSTEP_DIR_PREFIX)) {
+        continue;
+      }
+      for (TraceFileStatus typeDir : traceStore.list(superstepDir.getPath())) {
+        if (!typeDir.isDirectory()) {
+          continue;
+        }
+        dirs.add(typeDir.getPath());
+        for (TraceFileStatus bucketDir : traceStore.list(typeDir.getPath())) {
+          if (bucketDir.isDirectory()) {
+            dirs.add(bucketDir.getPath());
+          }
+        }
+      }
+    }
+    return dirs;
+  }
+
+  /**
+   * @param jobId The job id.
+   * @param superstepNo The superstep number.
+   * @param debugTrace The debug trace.
+   * @return the directory of the sharded layout for the given trace type.
+   */
+  private String getTraceTypeDir(String jobId, Long superstepNo,
+    DebugTrace debugTrace) {
+    return DebuggerUtils.getTraceFileRoot(jobId) + "/" +
+      SUPERSTEP_DIR_PREFIX + superstepNo + "/" + getTraceTypeDirName(
+        debugTrace);
+  }
+
+  /**
+   * @param debugTrace The debug trace.
+   * @return the name of the directory of the given trace type.
+   */
+  private static String getTraceTypeDirName(DebugTrace debugTrace) {
+    switch (debugTrace) {
+    case VERTEX_REGULAR:
+      return DebuggerUtils.PREFIX_TRACE_REGULAR;
+    case VERTEX_EXCEPTION:
+      return DebuggerUtils.PREFIX_TRACE_EXCEPTION;
+    case INTEGRITY_MESSAGE_ALL:
+      return "task_" + DebuggerUtils.PREFIX_TRACE_MESSAGE;
+    case INTEGRITY_MESSAGE_SINGLE_VERTEX:
+      return DebuggerUtils.PREFIX_TRACE_MESSAGE;
+    case INTEGRITY_VERTEX:
+      return DebuggerUtils.PREFIX_TRACE_VERTEX;
+    case MASTER_REGULAR:
+    case MASTER_EXCEPTION:
+      return "master";
+    default:
+      throw new IllegalArgumentException("DebugTrace not supported.");
+    }
+  }
+
+  /**
+   * @param vertexId The vertex id.
+   * @return the name of the hash bucket directory of the given vertex.
+   */
+  private String getBucket(String vertexId) {
+    // String.hashCode() is specified, so buckets are the same on every JVM.
+    return Integer.toHexString((vertexId.hashCode() & Integer.MAX_VALUE) %
+      numBuckets);
+  }
+
+  /**
+   * @param jobId The job id.
+   * @return the path of the layout description of the given job.
+   */
+  private static String getLayoutPath(String jobId) {
+    return DebuggerUtils.getTraceFileRoot(jobId) + "/" + LAYOUT_FILE;
+  }
+
+  @Override
+  public String toString() {
+    return "TraceLayout(version=" + version + ", numBuckets=" + numBuckets +
+      ", compacted=" + compacted + ")";
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.giraph.debugger.Manifest.TraceManifestEntry;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+
+/**
+ * Collects a {@link TraceManifestEntry} for every trace a worker or the master
+ * saves, and appends them to the writer's manifest of each superstep when
+ * flushed. See {@link TraceIndex} for how the manifests are laid out and
+ * merged.
+ */
+public class TraceManifestWriter {
+
+  /**
+   * The store manifests are written to.
+   */
+  private final TraceStore traceStore;
+  /**
+   * The job id of the job being debugged.
+   */
+  private final String jobId;
+  /**
+   * Unique id of this writer, used as the file name of its manifests.
+   */
+  private final String writerId = UUID.randomUUID().toString();
+  /**
+   * Entries recorded since the last flush, grouped by superstep.
+   */
+  private SortedMap<Long, List<TraceManifestEntry>> pendingEntries =
+    new TreeMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param traceStore The store manifests are written to.
+   * @param jobId The job id of the job being debugged.
+   */
+  public TraceManifestWriter(TraceStore traceStore, String jobId) {
+    this.traceStore = traceStore;
+    this.jobId = jobId;
+  }
+
+  /**
+   * Records a trace that was saved or is being saved.
+   *
+   * @param debugTrace The type of the trace.
+   * @param superstepNo The superstep number of the trace.
+   * @param vertexId The vertex id of the trace, or null.
+   * @param taskId The task id of the trace, or null.
+   * @param fullFileName The full path of the trace file.
+   * @param size The size of the trace in bytes.
+   */
+  public synchronized void record(DebugTrace debugTrace, long superstepNo,
+    String vertexId, String taskId, String fullFileName, long size) {
+    TraceManifestEntry.Builder entry = TraceManifestEntry.newBuilder()
+      .setTraceType(debugTrace.name()).setSuperstepNo(superstepNo)
+      .setLocation(TraceIndex.getLocation(jobId, fullFileName))
+      .setSize(size);
+    if (vertexId != null) {
+      entry.setVertexId(vertexId);
+    }
+    if (taskId != null) {
+      entry.setTaskId(taskId);
+    }
+    List<TraceManifestEntry> entries = pendingEntries.get(superstepNo);
+    if (entries == null) {
+      entries = new ArrayList<>();
+      pendingEntries.put(superstepNo, entries);
+    }
+    entries.add(entry.build());
+  }
+
+  /**
+   * Appends the recorded entries to the manifests in the background, once
+   * the traces saved in the background before have been written, so that a
+   * manifest never points to a trace that does not exist yet. Returns
+   * without waiting for them.
+   */
+  public void flush() {
+    SortedMap<Long, List<TraceManifestEntry>> entriesToFlush;
+    synchronized (this) {
+      if (pendingEntries.isEmpty()) {
+        return;
+      }
+      entriesToFlush = pendingEntries;
+      pendingEntries = new TreeMap<>();
+    }
+    for (Map.Entry<Long, List<TraceManifestEntry>> entries :
+      entriesToFlush.entrySet()) {
+      AsyncHDFSWriteService.appendToTraceStore(entries.getValue(),
+        traceStore, TraceIndex.getWriterManifestPath(jobId, entries.getKey(),
+          writerId));
+    }
+  }
+}
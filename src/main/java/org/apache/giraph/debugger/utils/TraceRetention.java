@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Deletes the traces of old jobs under {@link DebuggerUtils#TRACE_ROOT} so
+ * that the trace root does not grow without bounds, along with the jars in
+ * {@link DebuggerUtils#JARCACHE_HDFS} no remaining job refers to. Jobs are
+ * ordered by the time they were launched, i.e., when their jar signature was
+ * written.
+ */
+public class TraceRetention {
+
+  /**
+   * Jars no job refers to are kept this long, as a job being launched
+   * uploads its jar before writing its jar signature.
+   */
+  private static final long UNREFERENCED_JAR_MIN_AGE = TimeUnit.DAYS.toMillis(
+    1);
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(TraceRetention.class);
+  /**
+   * File name of the jar signature in the job's trace directory.
+   */
+  private static final String JAR_SIGNATURE_FILE = "jar.signature";
+  /**
+   * Suffix of the cached jars.
+   */
+  private static final String JAR_SUFFIX = ".jar";
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private TraceRetention() { }
+
+  /**
+   * Deletes the traces of the jobs launched more than maxAge milliseconds
+   * ago, then the traces of the oldest jobs until all traces take at most
+   * maxTotalSize bytes, and finally the cached jars no longer needed. Jobs
+   * that may still be running, as told by
+   * {@link TraceIndex#isRunning(TraceStore, String, long)}, are kept, though
+   * their traces count towards maxTotalSize.
+   *
+   * @param traceStore The store holding the traces.
+   * @param maxAge The maximum age of jobs in milliseconds, or 0 for no limit.
+   * @param maxTotalSize The maximum size of all traces in bytes, or 0 for no
+   *        limit.
+   * @return the ids of the jobs whose traces were deleted.
+   * @throws IOException thrown when the traces cannot be listed or deleted.
+   */
+  public static List<String> apply(TraceStore traceStore, long maxAge,
+    long maxTotalSize) throws IOException {
+    long now = System.currentTimeMillis();
+    List<String> deletedJobIds = new ArrayList<>();
+    List<TraceFileStatus> remainingJobs = new ArrayList<>();
+    Set<TraceFileStatus> runningJobs = new HashSet<>();
+    for (TraceFileStatus job : getJobs(traceStore)) {
+      if (TraceIndex.isRunning(traceStore, job.getName(), now)) {
+        LOG.info("Keeping the traces of job " + job.getName() +
+          ", which may still be running");
+        runningJobs.add(job);
+        remainingJobs.add(job);
+      } else if (maxAge > 0 && job.getModificationTime() < now - maxAge) {
+        deleteJob(traceStore, job, deletedJobIds);
+      } else {
+        remainingJobs.add(job);
+      }
+    }
+    if (maxTotalSize > 0) {
+      long totalSize = 0;
+      List<Long> sizes = new ArrayList<>(remainingJobs.size());
+      for (TraceFileStatus job : remainingJobs) {
+        sizes.add(getSize(traceStore, job.getPath()));
+        totalSize += sizes.get(sizes.size() - 1);
+      }
+      List<TraceFileStatus> keptJobs = new ArrayList<>();
+      for (int i = 0; i < remainingJobs.size(); i++) {
+        TraceFileStatus job = remainingJobs.get(i);
+        if (totalSize > maxTotalSize && !runningJobs.contains(job)) {
+          deleteJob(traceStore, job, deletedJobIds);
+          totalSize -= sizes.get(i);
+        } else {
+          keptJobs.add(job);
+        }
+      }
+      remainingJobs = keptJobs;
+    }
+    deleteUnreferencedJars(traceStore, remainingJobs, now);
+    return deletedJobIds;
+  }
+
+  /**
+   * @param traceStore The store holding the traces.
+   * @return the trace directories of all jobs with the time each job was
+   *         launched, oldest first.
+   * @throws IOException thrown when the trace root cannot be listed.
+   */
+  private static List<TraceFileStatus> getJobs(TraceStore traceStore)
+    throws IOException {
+    List<TraceFileStatus> jobs = new ArrayList<>();
+    List<TraceFileStatus> fileStatuses;
+    try {
+      fileStatuses = traceStore.list(DebuggerUtils.TRACE_ROOT);
+    } catch (FileNotFoundException e) {
+      return jobs;
+    }
+    // Paths may be spelled differently, e.g., with a trailing slash, and job
+    // ids never clash with the name of the jar cache.
+    String jarCacheName = new TraceFileStatus(AbstractTraceStore.normalize(
+      DebuggerUtils.JARCACHE_HDFS), 0, 0, true).getName();
+    for (TraceFileStatus fileStatus : fileStatuses) {
+      if (!fileStatus.isDirectory() ||
+        fileStatus.getName().equals(jarCacheName)) {
+        continue;
+      }
+      // The directory itself changes whenever traces are added or compacted.
+      TraceFileStatus jarSignature = traceStore.lookup(fileStatus.getPath() +
+        "/" + JAR_SIGNATURE_FILE);
+      jobs.add(new TraceFileStatus(fileStatus.getPath(), 0,
+        jarSignature != null ? jarSignature.getModificationTime() :
+          fileStatus.getModificationTime(), true));
+    }
+    Collections.sort(jobs, new Comparator<TraceFileStatus>() {
+      @Override
+      public int compare(TraceFileStatus job1, TraceFileStatus job2) {
+        return Long.compare(job1.getModificationTime(),
+          job2.getModificationTime());
+      }
+    });
+    return jobs;
+  }
+
+  /**
+   * @param traceStore The store holding the traces.
+   * @param job The trace directory of the job to delete.
+   * @param deletedJobIds Collects the ids of the deleted jobs.
+   * @throws IOException thrown when the traces cannot be deleted.
+   */
+  private static void deleteJob(TraceStore traceStore, TraceFileStatus job,
+    List<String> deletedJobIds) throws IOException {
+    LOG.info("Deleting the traces of job " + job.getName());
+    traceStore.delete(job.getPath(), true);
+    deletedJobIds.add(job.getName());
+  }
+
+  /**
+   * @param traceStore The store holding the traces.
+   * @param path A file or directory.
+   * @return the total size of the files under the path in bytes.
+   * @throws IOException thrown when the path cannot be listed.
+   */
+  private static long getSize(TraceStore traceStore, String path)
+    throws IOException {
+    long size = 0;
+    for (TraceFileStatus fileStatus : traceStore.list(path)) {
+      size += fileStatus.isDirectory() ? getSize(traceStore,
+        fileStatus.getPath()) : fileStatus.getLength();
+    }
+    return size;
+  }
+
+  /**
+   * Deletes the cached jars none of the given jobs refers to.
+   *
+   * @param traceStore The store holding the jars.
+   * @param jobs The trace directories of the remaining jobs.
+   * @param now The current time.
+   * @throws IOException thrown when the jars cannot be deleted.
+   */
+  private static void deleteUnreferencedJars(TraceStore traceStore,
+    List<TraceFileStatus> jobs, long now) throws IOException {
+    Set<String> jarSignatures = new HashSet<>();
+    for (TraceFileStatus job : jobs) {
+      try (InputStream input = traceStore.open(job.getPath() + "/" +
+        JAR_SIGNATURE_FILE)) {
+        List<String> lines = IOUtils.readLines(input);
+        if (!lines.isEmpty()) {
+          jarSignatures.add(lines.get(0));
+        }
+      } catch (FileNotFoundException e) {
+        continue;
+      }
+    }
+    List<TraceFileStatus> jars;
+    try {
+      jars = traceStore.list(DebuggerUtils.JARCACHE_HDFS);
+    } catch (FileNotFoundException e) {
+      return;
+    }
+    for (TraceFileStatus jar : jars) {
+      String name = jar.getName();
+      if (jar.isDirectory() || !name.endsWith(JAR_SUFFIX) ||
+        jar.getModificationTime() > now - UNREFERENCED_JAR_MIN_AGE ||
+        jarSignatures.contains(name.substring(0, name.length() -
+          JAR_SUFFIX.length()))) {
+        continue;
+      }
+      LOG.info("Deleting unreferenced jar " + jar.getPath());
+      traceStore.delete(jar.getPath(), false);
+    }
+  }
+}
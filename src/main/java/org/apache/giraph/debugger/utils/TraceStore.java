@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * Storage backend for Graft traces. The instrumenter writes traces through a
+ * TraceStore and the GUI server and the command line read them back through
+ * one, so neither side needs to know whether the traces live in HDFS, on the
+ * local filesystem or in memory.
+ *
+ * Paths are plain '/'-separated strings as produced by {@link DebuggerUtils},
+ * e.g., {@link DebuggerUtils#getTraceFileRoot(String)}. Directories are
+ * created implicitly when a file is written under them.
+ *
+ * @see TraceStores
+ */
+public interface TraceStore {
+
+  /**
+   * Writes a protobuf message to the given path, replacing any existing file.
+   *
+   * @param path the full path of the file to write.
+   * @param message the message to write.
+   * @throws IOException thrown when the write fails.
+   */
+  void write(String path, MessageLite message) throws IOException;
+
+  /**
+   * Writes the given bytes to the given path, replacing any existing file.
+   *
+   * @param path the full path of the file to write.
+   * @param bytes the contents of the file.
+   * @throws IOException thrown when the write fails.
+   */
+  void write(String path, byte[] bytes) throws IOException;
+
+  /**
+   * Creates the file at the given path for writing, replacing any existing
+   * file. Meant for files too large to be put together in memory first.
+   *
+   * @param path the full path of the file to write.
+   * @return a stream to write the contents of the file to. Callers must close
+   *         it.
+   * @throws IOException thrown when the file cannot be created.
+   */
+  OutputStream create(String path) throws IOException;
+
+  /**
+   * Appends a batch of length-delimited protobuf records to the given path,
+   * creating the file if it does not exist yet. Records can be read back with
+   * {@link MessageLite#parseDelimitedFrom(InputStream)}-style parsers.
+   *
+   * @param path the full path of the file to append to.
+   * @param records the records to append, in order.
+   * @throws IOException thrown when the append fails.
+   */
+  void append(String path, Collection<? extends MessageLite> records)
+    throws IOException;
+
+  /**
+   * Opens the file at the given path for reading.
+   *
+   * @param path the full path of the file to read.
+   * @return a stream over the contents of the file. Callers must close it.
+   * @throws java.io.FileNotFoundException thrown when there is no such file.
+   * @throws IOException thrown when the file cannot be opened.
+   */
+  InputStream open(String path) throws IOException;
+
+  /**
+   * Looks up a single file or directory.
+   *
+   * @param path the full path to look up.
+   * @return the status of the path, or null if nothing exists there.
+   * @throws IOException thrown when the lookup fails.
+   */
+  TraceFileStatus lookup(String path) throws IOException;
+
+  /**
+   * Lists the files and directories directly under the given directory.
+   *
+   * @param directory the full path of the directory to list.
+   * @return the statuses of the children of the directory.
+   * @throws java.io.FileNotFoundException thrown when the directory does not
+   *         exist.
+   * @throws IOException thrown when the listing fails.
+   */
+  List<TraceFileStatus> list(String directory) throws IOException;
+
+  /**
+   * Deletes a file or a directory.
+   *
+   * @param path the full path to delete.
+   * @param recursive whether to delete the contents of a directory as well.
+   * @return true if something was deleted.
+   * @throws IOException thrown when the deletion fails.
+   */
+  boolean delete(String path, boolean recursive) throws IOException;
+
+  /**
+   * Moves a file to another path, replacing any file already there. Readers
+   * of the destination see either the file it replaced or the whole moved
+   * file, so files read while they change are written elsewhere and renamed
+   * into place.
+   *
+   * @param source the full path of the file to move.
+   * @param destination the full path to move the file to.
+   * @throws java.io.FileNotFoundException thrown when there is no file at the
+   *         source.
+   * @throws IOException thrown when the file cannot be moved.
+   */
+  void rename(String source, String destination) throws IOException;
+}
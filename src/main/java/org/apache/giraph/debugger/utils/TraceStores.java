@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.log4j.Logger;
+
+/**
+ * Creates the {@link TraceStore} the instrumenter, the GUI server and the
+ * command line use. The backend is chosen with the
+ * giraph.debugger.traceStore system property:
+ * <ul>
+ * <li>hdfs (default): the default Hadoop {@link FileSystem}.
+ * <li>local: the local filesystem under giraph.debugger.traceStoreLocalRoot.
+ * <li>memory: an in-memory store that lives as long as the JVM.
+ * </ul>
+ */
+public class TraceStores {
+
+  /**
+   * Name of the HDFS backend.
+   */
+  public static final String HDFS = "hdfs";
+  /**
+   * Name of the local filesystem backend.
+   */
+  public static final String LOCAL = "local";
+  /**
+   * Name of the in-memory backend.
+   */
+  public static final String MEMORY = "memory";
+
+  /**
+   * The backend used for storing Graft traces.
+   */
+  public static final String TRACE_STORE = System.getProperty(
+    "giraph.debugger.traceStore", HDFS);
+  /**
+   * The local root directory for the local backend.
+   */
+  public static final String TRACE_STORE_LOCAL_ROOT = System.getProperty(
+    "giraph.debugger.traceStoreLocalRoot", System.getProperty(
+      "java.io.tmpdir") + "/giraph-debug-traces");
+
+  /**
+   * Logger for this class.
+   */
+  private static final Logger LOG = Logger.getLogger(TraceStores.class);
+
+  /**
+   * The store returned by {@link #getDefault()}.
+   */
+  private static TraceStore DEFAULT_TRACE_STORE;
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private TraceStores() { }
+
+  /**
+   * Returns the store configured for this JVM, creating it on first use.
+   *
+   * @return the default trace store.
+   * @throws IOException thrown when the backend cannot be initialized.
+   */
+  public static synchronized TraceStore getDefault() throws IOException {
+    if (DEFAULT_TRACE_STORE == null) {
+      DEFAULT_TRACE_STORE = create(TRACE_STORE, new Configuration());
+      LOG.info("Using trace store: " + DEFAULT_TRACE_STORE);
+    }
+    return DEFAULT_TRACE_STORE;
+  }
+
+  /**
+   * Overrides the store returned by {@link #getDefault()}, e.g., to run a job
+   * or the GUI server in benchmarks against an {@link InMemoryTraceStore}.
+   *
+   * @param traceStore the store to use from now on.
+   */
+  public static synchronized void setDefault(TraceStore traceStore) {
+    DEFAULT_TRACE_STORE = traceStore;
+  }
+
+  /**
+   * Creates a new store of the given type.
+   *
+   * @param type one of {@link #HDFS}, {@link #LOCAL} or {@link #MEMORY}.
+   * @param conf the Hadoop configuration to use for the HDFS backend.
+   * @return a new trace store.
+   * @throws IOException thrown when the backend cannot be initialized.
+   */
+  public static TraceStore create(String type, Configuration conf)
+    throws IOException {
+    if (HDFS.equalsIgnoreCase(type)) {
+      return new HDFSTraceStore(FileSystem.get(conf));
+    } else if (LOCAL.equalsIgnoreCase(type)) {
+      return new LocalTraceStore(new File(TRACE_STORE_LOCAL_ROOT));
+    } else if (MEMORY.equalsIgnoreCase(type)) {
+      return new InMemoryTraceStore();
+    } else {
+      throw new IllegalArgumentException("Unknown trace store: " + type);
+    }
+  }
+}
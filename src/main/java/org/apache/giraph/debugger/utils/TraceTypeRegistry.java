@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.io.NullWritable;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Resolves the classes named in traces, e.g., the vertex id, value and
+ * message classes, and creates their instances. Classes are looked up by name
+ * once and their no-argument constructors are reflected on once, after which
+ * every trace read reuses them. There is one registry per class loader, i.e.,
+ * per set of job jars the classes are loaded from.
+ */
+public class TraceTypeRegistry {
+
+  /**
+   * The registry of each class loader. Loaders are weakly and registries
+   * softly referenced, as a registry refers to its loader through the
+   * classes it holds.
+   */
+  private static final LoadingCache<ClassLoader, TraceTypeRegistry>
+  REGISTRIES = CacheBuilder.newBuilder().weakKeys().softValues().build(
+    new CacheLoader<ClassLoader, TraceTypeRegistry>() {
+      @Override
+      public TraceTypeRegistry load(ClassLoader classLoader) {
+        return new TraceTypeRegistry(classLoader);
+      }
+    });
+
+  /**
+   * The class loader classes are resolved with.
+   */
+  private final ClassLoader classLoader;
+  /**
+   * Classes resolved so far, keyed by their name.
+   */
+  private final ConcurrentMap<String, Class<?>> classes =
+    new ConcurrentHashMap<>();
+  /**
+   * No-argument constructors of the classes instantiated so far.
+   */
+  private final ConcurrentMap<Class<?>, Constructor<?>> constructors =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param classLoader The class loader classes are resolved with.
+   */
+  private TraceTypeRegistry(ClassLoader classLoader) {
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * @param classLoader A class loader.
+   * @return the registry resolving classes with the given loader.
+   */
+  public static TraceTypeRegistry forClassLoader(ClassLoader classLoader) {
+    return REGISTRIES.getUnchecked(classLoader);
+  }
+
+  /**
+   * @return the registry of the current thread's context class loader, or of
+   *         the loader of this class if the thread has none.
+   */
+  public static TraceTypeRegistry current() {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return forClassLoader(classLoader != null ? classLoader :
+      TraceTypeRegistry.class.getClassLoader());
+  }
+
+  public ClassLoader getClassLoader() {
+    return classLoader;
+  }
+
+  /**
+   * Returns the class with the given name. Classes that are not found are
+   * looked up again on the next call, as jars may be added to the loader.
+   *
+   * @param className The fully qualified name of the class.
+   * @return the class.
+   * @throws ClassNotFoundException thrown when the class cannot be found.
+   */
+  public Class<?> resolveClass(String className)
+    throws ClassNotFoundException {
+    Class<?> clazz = classes.get(className);
+    if (clazz == null) {
+      clazz = Class.forName(className, true, classLoader);
+      classes.putIfAbsent(className, clazz);
+    }
+    return clazz;
+  }
+
+  /**
+   * Creates an instance of a class with its no-argument constructor. Like
+   * {@link DebuggerUtils#newInstance(Class)}, returns null for
+   * {@link NullWritable}, which has a single shared instance.
+   *
+   * @param clazz The class to instantiate.
+   * @param <T> The type of the class.
+   * @return the new instance.
+   */
+  public <T> T newInstance(Class<T> clazz) {
+    if (NullWritable.class.isAssignableFrom(clazz)) {
+      return null;
+    }
+    try {
+      Constructor<?> constructor = constructors.get(clazz);
+      if (constructor == null) {
+        constructor = clazz.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        constructors.putIfAbsent(clazz, constructor);
+      }
+      return clazz.cast(constructor.newInstance());
+    } catch (NoSuchMethodException | InstantiationException |
+      IllegalAccessException | InvocationTargetException e) {
+      // Throwing a runtime exception as DebuggerUtils#newInstance does, so
+      // that lazily decoded lists can create instances too.
+      throw new RuntimeException("Could not instantiate " + clazz.getName(),
+        e);
+    }
+  }
+}
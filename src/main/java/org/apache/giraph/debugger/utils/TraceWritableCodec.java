@@ -0,0 +1,557 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.giraph.debugger.Integrity.MessageIntegrityViolation;
+import org.apache.giraph.debugger.Integrity.MessageIntegrityViolation.ExtendedOutgoingMessage;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext.Neighbor;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext.OutgoingMessage;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexScenarioClasses;
+import org.apache.giraph.debugger.Writables.PackedWritables;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessage;
+
+/**
+ * Stores the ids, values and messages of traces that are of the common
+ * Hadoop Writable types as {@link PackedWritables} instead of one serialized
+ * Writable each. A LongWritable vertex id then takes a varint instead of a
+ * length-prefixed 8-byte string, and a neighbor list a packed array of
+ * varints instead of a message per neighbor.
+ *
+ * Packing works on the serialized Writables, whose format is fixed for these
+ * types, so no Writable is instantiated and unpacking gives back the exact
+ * same bytes. Wrappers never see packed fields: traces are packed right
+ * before they are saved and unpacked right after they are loaded.
+ */
+public class TraceWritableCodec {
+
+  /**
+   * The Writable types that can be packed.
+   */
+  private enum PackedType {
+    /**
+     * {@link NullWritable}.
+     */
+    NULL(0),
+    /**
+     * {@link BooleanWritable}.
+     */
+    BOOLEAN(1),
+    /**
+     * {@link IntWritable}.
+     */
+    INT(4),
+    /**
+     * {@link FloatWritable}.
+     */
+    FLOAT(4),
+    /**
+     * {@link LongWritable}.
+     */
+    LONG(8),
+    /**
+     * {@link DoubleWritable}.
+     */
+    DOUBLE(8);
+
+    /**
+     * Size of a serialized Writable of this type in bytes.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param size Size of a serialized Writable of this type in bytes.
+     */
+    private PackedType(int size) {
+      this.size = size;
+    }
+  }
+
+  /**
+   * The packable types by the name of their Writable class.
+   */
+  private static final Map<String, PackedType> PACKED_TYPES =
+    new HashMap<>();
+
+  static {
+    PACKED_TYPES.put(NullWritable.class.getName(), PackedType.NULL);
+    PACKED_TYPES.put(BooleanWritable.class.getName(), PackedType.BOOLEAN);
+    PACKED_TYPES.put(IntWritable.class.getName(), PackedType.INT);
+    PACKED_TYPES.put(FloatWritable.class.getName(), PackedType.FLOAT);
+    PACKED_TYPES.put(LongWritable.class.getName(), PackedType.LONG);
+    PACKED_TYPES.put(DoubleWritable.class.getName(), PackedType.DOUBLE);
+  }
+
+  /**
+   * Disallows creating instances of this class.
+   */
+  private TraceWritableCodec() { }
+
+  /**
+   * Packs the Writables of a vertex scenario or message integrity violation.
+   * Other messages are returned as they are.
+   *
+   * @param message The trace about to be saved.
+   * @return the trace with the Writables of common types packed.
+   */
+  public static GeneratedMessage pack(GeneratedMessage message) {
+    if (message instanceof GiraphVertexScenario) {
+      GiraphVertexScenario scenario = (GiraphVertexScenario) message;
+      if (scenario.hasVertexScenarioClasses()) {
+        return packVertexScenario(scenario);
+      }
+    } else if (message instanceof MessageIntegrityViolation) {
+      return packMessageIntegrityViolation(
+        (MessageIntegrityViolation) message);
+    }
+    return message;
+  }
+
+  /**
+   * Unpacks the Writables {@link #pack(GeneratedMessage)} packed.
+   *
+   * @param message A loaded trace.
+   * @return the trace with serialized Writables only.
+   * @throws IOException thrown when the packed Writables are invalid.
+   */
+  public static GeneratedMessage unpack(GeneratedMessage message)
+    throws IOException {
+    if (message instanceof GiraphVertexScenario) {
+      GiraphVertexScenario scenario = (GiraphVertexScenario) message;
+      if (isPacked(scenario.getContext())) {
+        return unpackVertexScenario(scenario);
+      }
+    } else if (message instanceof MessageIntegrityViolation) {
+      MessageIntegrityViolation violation =
+        (MessageIntegrityViolation) message;
+      if (violation.hasPackedSrcId()) {
+        return unpackMessageIntegrityViolation(violation);
+      }
+    }
+    return message;
+  }
+
+  /**
+   * @param scenario A vertex scenario with its classes inline.
+   * @return the scenario with the Writables of common types packed.
+   */
+  private static GiraphVertexScenario packVertexScenario(
+    GiraphVertexScenario scenario) {
+    VertexScenarioClasses classes = scenario.getVertexScenarioClasses();
+    GiraphVertexScenario.Builder builder = scenario.toBuilder();
+    VertexContext.Builder context = builder.getContextBuilder();
+    PackedWritables packed = pack(classes.getVertexIdClass(),
+      Collections.singletonList(context.getVertexId()));
+    if (packed != null) {
+      context.clearVertexId().setPackedVertexId(packed);
+    }
+    packed = pack(classes.getVertexValueClass(), Collections.singletonList(
+      context.getVertexValueBefore()));
+    if (packed != null) {
+      context.clearVertexValueBefore().setPackedVertexValueBefore(packed);
+    }
+    if (context.hasVertexValueAfter()) {
+      packed = pack(classes.getVertexValueClass(), Collections.singletonList(
+        context.getVertexValueAfter()));
+      if (packed != null) {
+        context.clearVertexValueAfter().setPackedVertexValueAfter(packed);
+      }
+    }
+    if (context.getNeighborCount() > 0) {
+      packNeighbors(classes, context);
+    }
+    if (context.getInMessageCount() > 0) {
+      packed = pack(classes.getIncomingMessageClass(),
+        context.getInMessageList());
+      if (packed != null) {
+        context.clearInMessage().setPackedInMessage(packed);
+      }
+    }
+    if (context.getOutMessageCount() > 0) {
+      List<ByteString> destinationIds = new ArrayList<>();
+      List<ByteString> msgData = new ArrayList<>();
+      for (OutgoingMessage outMessage : context.getOutMessageList()) {
+        destinationIds.add(outMessage.getDestinationId());
+        msgData.add(outMessage.getMsgData());
+      }
+      PackedWritables packedDestinationIds = pack(classes.getVertexIdClass(),
+        destinationIds);
+      PackedWritables packedMsgData = pack(
+        classes.getOutgoingMessageClass(), msgData);
+      if (packedDestinationIds != null && packedMsgData != null) {
+        context.clearOutMessage()
+          .setPackedOutMessageDestinationId(packedDestinationIds)
+          .setPackedOutMessageData(packedMsgData);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Packs the neighbors of a vertex if both their ids and their edge values
+   * can be packed. Edge values are either set for all neighbors or for none.
+   *
+   * @param classes The classes of the scenario.
+   * @param context The context of the scenario, modified in place.
+   */
+  private static void packNeighbors(VertexScenarioClasses classes,
+    VertexContext.Builder context) {
+    List<ByteString> neighborIds = new ArrayList<>();
+    List<ByteString> edgeValues = new ArrayList<>();
+    for (Neighbor neighbor : context.getNeighborList()) {
+      neighborIds.add(neighbor.getNeighborId());
+      if (neighbor.hasEdgeValue()) {
+        edgeValues.add(neighbor.getEdgeValue());
+      }
+    }
+    PackedWritables packedNeighborIds = pack(classes.getVertexIdClass(),
+      neighborIds);
+    if (packedNeighborIds == null) {
+      return;
+    }
+    PackedWritables packedEdgeValues = null;
+    if (!edgeValues.isEmpty()) {
+      if (edgeValues.size() != neighborIds.size()) {
+        return;
+      }
+      packedEdgeValues = pack(classes.getEdgeValueClass(), edgeValues);
+      if (packedEdgeValues == null) {
+        return;
+      }
+      context.setPackedEdgeValue(packedEdgeValues);
+    }
+    context.clearNeighbor().setPackedNeighborId(packedNeighborIds);
+  }
+
+  /**
+   * @param scenario A vertex scenario with packed Writables.
+   * @return the scenario with serialized Writables only.
+   * @throws IOException thrown when the packed Writables are invalid.
+   */
+  private static GiraphVertexScenario unpackVertexScenario(
+    GiraphVertexScenario scenario) throws IOException {
+    if (!scenario.hasVertexScenarioClasses()) {
+      throw new IOException("Packed vertex scenario without classes");
+    }
+    VertexScenarioClasses classes = scenario.getVertexScenarioClasses();
+    GiraphVertexScenario.Builder builder = scenario.toBuilder();
+    VertexContext.Builder context = builder.getContextBuilder();
+    if (context.hasPackedVertexId()) {
+      context.setVertexId(unpack(classes.getVertexIdClass(),
+        context.getPackedVertexId()).get(0)).clearPackedVertexId();
+    }
+    if (context.hasPackedVertexValueBefore()) {
+      context.setVertexValueBefore(unpack(classes.getVertexValueClass(),
+        context.getPackedVertexValueBefore()).get(0))
+        .clearPackedVertexValueBefore();
+    }
+    if (context.hasPackedVertexValueAfter()) {
+      context.setVertexValueAfter(unpack(classes.getVertexValueClass(),
+        context.getPackedVertexValueAfter()).get(0))
+        .clearPackedVertexValueAfter();
+    }
+    if (context.hasPackedNeighborId()) {
+      List<ByteString> neighborIds = unpack(classes.getVertexIdClass(),
+        context.getPackedNeighborId());
+      List<ByteString> edgeValues = context.hasPackedEdgeValue() ?
+        unpack(classes.getEdgeValueClass(), context.getPackedEdgeValue()) :
+        null;
+      if (edgeValues != null) {
+        checkSameSize(neighborIds, edgeValues);
+      }
+      for (int i = 0; i < neighborIds.size(); i++) {
+        Neighbor.Builder neighbor = Neighbor.newBuilder().setNeighborId(
+          neighborIds.get(i));
+        if (edgeValues != null) {
+          neighbor.setEdgeValue(edgeValues.get(i));
+        }
+        context.addNeighbor(neighbor);
+      }
+      context.clearPackedNeighborId().clearPackedEdgeValue();
+    }
+    if (context.hasPackedInMessage()) {
+      context.addAllInMessage(unpack(classes.getIncomingMessageClass(),
+        context.getPackedInMessage())).clearPackedInMessage();
+    }
+    if (context.hasPackedOutMessageDestinationId()) {
+      List<ByteString> destinationIds = unpack(classes.getVertexIdClass(),
+        context.getPackedOutMessageDestinationId());
+      List<ByteString> msgData = unpack(classes.getOutgoingMessageClass(),
+        context.getPackedOutMessageData());
+      checkSameSize(destinationIds, msgData);
+      for (int i = 0; i < destinationIds.size(); i++) {
+        context.addOutMessage(OutgoingMessage.newBuilder()
+          .setDestinationId(destinationIds.get(i)).setMsgData(msgData.get(i)));
+      }
+      context.clearPackedOutMessageDestinationId()
+        .clearPackedOutMessageData();
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param violation A message integrity violation.
+   * @return the violation with the Writables of common types packed.
+   */
+  private static MessageIntegrityViolation packMessageIntegrityViolation(
+    MessageIntegrityViolation violation) {
+    if (violation.getMessageCount() == 0) {
+      return violation;
+    }
+    List<ByteString> srcIds = new ArrayList<>();
+    List<ByteString> destinationIds = new ArrayList<>();
+    List<ByteString> msgData = new ArrayList<>();
+    for (ExtendedOutgoingMessage message : violation.getMessageList()) {
+      srcIds.add(message.getSrcId());
+      destinationIds.add(message.getDestinationId());
+      msgData.add(message.getMsgData());
+    }
+    PackedWritables packedSrcIds = pack(violation.getVertexIdClass(), srcIds);
+    PackedWritables packedDestinationIds = pack(violation.getVertexIdClass(),
+      destinationIds);
+    PackedWritables packedMsgData = pack(violation.getOutgoingMessageClass(),
+      msgData);
+    if (packedSrcIds == null || packedDestinationIds == null ||
+      packedMsgData == null) {
+      return violation;
+    }
+    return violation.toBuilder().clearMessage().setPackedSrcId(packedSrcIds)
+      .setPackedDestinationId(packedDestinationIds)
+      .setPackedMsgData(packedMsgData).build();
+  }
+
+  /**
+   * @param violation A message integrity violation with packed Writables.
+   * @return the violation with serialized Writables only.
+   * @throws IOException thrown when the packed Writables are invalid.
+   */
+  private static MessageIntegrityViolation unpackMessageIntegrityViolation(
+    MessageIntegrityViolation violation) throws IOException {
+    List<ByteString> srcIds = unpack(violation.getVertexIdClass(),
+      violation.getPackedSrcId());
+    List<ByteString> destinationIds = unpack(violation.getVertexIdClass(),
+      violation.getPackedDestinationId());
+    List<ByteString> msgData = unpack(violation.getOutgoingMessageClass(),
+      violation.getPackedMsgData());
+    checkSameSize(srcIds, destinationIds);
+    checkSameSize(srcIds, msgData);
+    MessageIntegrityViolation.Builder builder = violation.toBuilder()
+      .clearPackedSrcId().clearPackedDestinationId().clearPackedMsgData();
+    for (int i = 0; i < srcIds.size(); i++) {
+      builder.addMessage(ExtendedOutgoingMessage.newBuilder()
+        .setSrcId(srcIds.get(i)).setDestinationId(destinationIds.get(i))
+        .setMsgData(msgData.get(i)));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param values1 Unpacked values of one part of a list of items.
+   * @param values2 Unpacked values of another part of the same items.
+   * @throws IOException thrown when the number of values differ.
+   */
+  private static void checkSameSize(List<ByteString> values1,
+    List<ByteString> values2) throws IOException {
+    if (values1.size() != values2.size()) {
+      throw new IOException("Packed parts of " + values1.size() +
+        " items have " + values2.size() + " values");
+    }
+  }
+
+  /**
+   * @param context A vertex context.
+   * @return whether any of the Writables of the context are packed.
+   */
+  private static boolean isPacked(VertexContext context) {
+    return context.hasPackedVertexId() ||
+      context.hasPackedVertexValueBefore() ||
+      context.hasPackedVertexValueAfter() || context.hasPackedNeighborId() ||
+      context.hasPackedInMessage() ||
+      context.hasPackedOutMessageDestinationId();
+  }
+
+  /**
+   * Packs a list of serialized Writables.
+   *
+   * @param className The name of the Writable class.
+   * @param values The serialized Writables.
+   * @return the packed Writables, or null if they cannot be packed.
+   */
+  private static PackedWritables pack(String className,
+    List<ByteString> values) {
+    PackedType packedType = PACKED_TYPES.get(className);
+    if (packedType == null) {
+      return null;
+    }
+    PackedWritables.Builder packed = PackedWritables.newBuilder().setCount(
+      values.size());
+    long previous = 0;
+    for (ByteString value : values) {
+      if (value.size() != packedType.size) {
+        return null;
+      }
+      ByteBuffer buffer = value.asReadOnlyByteBuffer();
+      switch (packedType) {
+      case BOOLEAN:
+        byte b = buffer.get();
+        if (b != 0 && b != 1) {
+          // Would not be read back as the same byte.
+          return null;
+        }
+        packed.addBooleanValue(b == 1);
+        break;
+      case INT:
+        int intValue = buffer.getInt();
+        packed.addIntValue(intValue - (int) previous);
+        previous = intValue;
+        break;
+      case FLOAT:
+        packed.addFloatValue(Float.intBitsToFloat(buffer.getInt()));
+        break;
+      case LONG:
+        long longValue = buffer.getLong();
+        packed.addLongValue(longValue - previous);
+        previous = longValue;
+        break;
+      case DOUBLE:
+        packed.addDoubleValue(Double.longBitsToDouble(buffer.getLong()));
+        break;
+      default:
+        break;
+      }
+    }
+    return packed.build();
+  }
+
+  /**
+   * Renders the first of a list of packed Writables as its Writable's
+   * toString would, without knowing its class or instantiating it, e.g., to
+   * show a packed vertex value.
+   *
+   * @param packed The packed Writables.
+   * @return the first value as a string, or null if there is none.
+   */
+  public static String getFirstValueString(PackedWritables packed) {
+    if (packed.getCount() == 0) {
+      return null;
+    } else if (packed.getDoubleValueCount() > 0) {
+      return Double.toString(packed.getDoubleValue(0));
+    } else if (packed.getFloatValueCount() > 0) {
+      return Float.toString(packed.getFloatValue(0));
+    } else if (packed.getLongValueCount() > 0) {
+      // The first value is a difference to zero.
+      return Long.toString(packed.getLongValue(0));
+    } else if (packed.getIntValueCount() > 0) {
+      return Integer.toString(packed.getIntValue(0));
+    } else if (packed.getBooleanValueCount() > 0) {
+      return Boolean.toString(packed.getBooleanValue(0));
+    }
+    return NullWritable.get().toString();
+  }
+
+  /**
+   * Unpacks a list of serialized Writables.
+   *
+   * @param className The name of the Writable class.
+   * @param packed The packed Writables.
+   * @return the serialized Writables.
+   * @throws IOException thrown when the packed Writables do not match the
+   *         class.
+   */
+  private static List<ByteString> unpack(String className,
+    PackedWritables packed) throws IOException {
+    PackedType packedType = PACKED_TYPES.get(className);
+    if (packedType == null) {
+      throw new IOException("Writables of " + className +
+        " cannot be packed");
+    }
+    int count = packed.getCount();
+    int numValues;
+    switch (packedType) {
+    case BOOLEAN:
+      numValues = packed.getBooleanValueCount();
+      break;
+    case INT:
+      numValues = packed.getIntValueCount();
+      break;
+    case FLOAT:
+      numValues = packed.getFloatValueCount();
+      break;
+    case LONG:
+      numValues = packed.getLongValueCount();
+      break;
+    case DOUBLE:
+      numValues = packed.getDoubleValueCount();
+      break;
+    default:
+      numValues = count;
+    }
+    if (numValues != count) {
+      throw new IOException("Expected " + count + " packed " + className +
+        "s but found " + numValues);
+    }
+    List<ByteString> values = new ArrayList<>(count);
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      ByteBuffer buffer = ByteBuffer.allocate(packedType.size);
+      switch (packedType) {
+      case BOOLEAN:
+        buffer.put((byte) (packed.getBooleanValue(i) ? 1 : 0));
+        break;
+      case INT:
+        previous = (int) previous + packed.getIntValue(i);
+        buffer.putInt((int) previous);
+        break;
+      case FLOAT:
+        buffer.putInt(Float.floatToRawIntBits(packed.getFloatValue(i)));
+        break;
+      case LONG:
+        previous += packed.getLongValue(i);
+        buffer.putLong(previous);
+        break;
+      case DOUBLE:
+        buffer.putLong(Double.doubleToRawLongBits(packed.getDoubleValue(i)));
+        break;
+      default:
+        break;
+      }
+      buffer.flip();
+      values.add(ByteString.copyFrom(buffer));
+    }
+    return values;
+  }
+}
@@ -107,6 +107,12 @@ GiraphDebugger.prototype.onCaptureMaster = function(done, fail) {
  * Reset job-related vars to the initial state. 
  */
 GiraphDebugger.prototype.resetVars = function() { 
+    // Stop following the job currently being debugged.
+    if (this.jobEvents) {
+        this.jobEvents.close();
+    }
+    // Stream of the supersteps traced for the job, pushed by the debugger server.
+    this.jobEvents = null;
     // Node that is currently double clicked.
     this.selectedNodeId = null;
     // Initialize current superstep to -2 (Not in debug mode)
@@ -421,6 +427,7 @@ GiraphDebugger.prototype.initSuperstepControlEvents = function() {
     // Fetch the scenario for this job for superstep -1
     $(this.btnFetchJob).click((function(event) {
         this.currentJobId = $(this.fetchJobIdInput).val();
+        this.followJob();
         this.changeSuperstep(0);
         this.toggleMode();
     }).bind(this));
@@ -514,29 +521,20 @@ GiraphDebugger.prototype.changeSuperstep = function(targetSuperstepNumber) {
     // Update data of the valpanel
     this.valpanel.setData(this.currentJobId, targetSuperstepNumber);
 
-    // Fetch the max number of supersteps again. (Online case)
-    $.ajax({
-        url : this.debuggerServerRoot + "/supersteps",
-        data : {'jobId' : this.currentJobId}
-    })
-    .done((function(response) {
-        this.maxSuperstepNumber = Math.max.apply(Math, response);
-    }).bind(this));
-
-    // If we are going backwards, we have already cached this state. 
-    if (targetSuperstepNumber <= this.currentSuperstepNumber) {
-        this.handleSuperstepChange(targetSuperstepNumber);
-        return;
-    }
-
-    // If we are going forward, we must cache all intermediate steps to understand the state of the graph.
-    var superstepNumber = this.currentSuperstepNumber + 1;
-
-    while (superstepNumber <= targetSuperstepNumber && (superstepNumber in this.stateCache)) {
-        superstepNumber += 1;
+    // Fetch the max number of supersteps again (Online case), unless the server
+    // pushes it.
+    if (!this.jobEvents) {
+        $.ajax({
+            url : this.debuggerServerRoot + "/supersteps",
+            data : {'jobId' : this.currentJobId}
+        })
+        .done((function(response) {
+            this.maxSuperstepNumber = Math.max.apply(Math, response);
+        }).bind(this));
     }
 
-    if (superstepNumber === targetSuperstepNumber + 1) {
+    // If we have already cached this state, show it.
+    if (targetSuperstepNumber in this.stateCache) {
         this.handleSuperstepChange(targetSuperstepNumber);
         return;
     }
@@ -546,55 +544,56 @@ GiraphDebugger.prototype.changeSuperstep = function(targetSuperstepNumber) {
     $(this.btnPrevStep).attr('disabled', true);
     $(this.btnGotoStep).attr('disabled', true);
 
-    // Send serialized async AJAX requests for each superstep till we reach the target superstep.
-    // Every AJAX request builds a local cache when it finished.
-    // The last request modifies the editor after merging the local cache with the stateCache serially
-    var stepsToTarget = targetSuperstepNumber - superstepNumber + 1;
-    var statesFetched = 0;
-    var localDataCache = {};
-    var superstepIndex = superstepNumber;
-    this.editor.showPreloader();
-
-    while (superstepIndex <= targetSuperstepNumber) {
-        // Create a function closure to track this superstep number
-        (function(_superstepIndex) {
-          // Fetch from the debugger server.
-          $.ajax({
-              url : this.debuggerServerRoot + '/scenario',
-              dataType : 'json',
-              data: { 'jobId' : this.currentJobId, 'superstepId' : _superstepIndex }
-          })
-          .retry({
-              times : 5, 
-              timeout : 2000,
-              retryCallback : function(remainingTimes) {
-                  // Failed intermediately. Will be retried. 
-                  noty({text : 'Failed to fetch job. Retrying ' + remainingTimes + ' more times...', type : 'warning', timeout : 1000});
-              }
-          })
-          .done((function(data) {
-              console.log(data);
-              localDataCache[_superstepIndex] = data;
-              statesFetched += 1;
-              this.editor.showPreloader("Loading {0}/{1}".format(statesFetched, stepsToTarget));
-              // Add data to the state cache. 
-              // This method will only be called if this superstepNumber was not
-              // in the cache already. This method just overwrites without check.
-              // When all AJAX requests are finished (this is the last one), merge
-              // states serially.
-              if (statesFetched === stepsToTarget) {
-                for (var i = superstepNumber; i <= targetSuperstepNumber; i++) {
-                  this.stateCache[i] = this.mergeStates(this.stateCache[i - 1], localDataCache[i]);
-                }
-                this.handleSuperstepChange(targetSuperstepNumber);
-              }
-          }).bind(this))
-          .fail(function(error) {
-              noty({text : 'Failed to fetch job. Please check your network and debugger server.', type : 'error'});
-          });
-        }).bind(this)(superstepIndex);
-        superstepIndex += 1;
+    // Fetch the state of the graph as of the target superstep in a single request.
+    // The server materializes it from its snapshots, so it does not matter how many
+    // supersteps there are in between.
+    this.editor.showPreloader("Loading superstep {0}".format(targetSuperstepNumber));
+
+    // Fetch from the debugger server.
+    $.ajax({
+        url : this.debuggerServerRoot + '/state',
+        dataType : 'json',
+        data: { 'jobId' : this.currentJobId, 'superstepId' : targetSuperstepNumber }
+    })
+    .retry({
+        times : 5, 
+        timeout : 2000,
+        retryCallback : function(remainingTimes) {
+            // Failed intermediately. Will be retried. 
+            noty({text : 'Failed to fetch job. Retrying ' + remainingTimes + ' more times...', type : 'warning', timeout : 1000});
+        }
+    })
+    .done((function(data) {
+        console.log(data);
+        // Add data to the state cache. 
+        this.stateCache[targetSuperstepNumber] = data;
+        this.handleSuperstepChange(targetSuperstepNumber);
+    }).bind(this))
+    .fail(function(error) {
+        noty({text : 'Failed to fetch job. Please check your network and debugger server.', type : 'error'});
+    });
+}
+
+/*
+ * Follows the supersteps traced for the current job through the events the
+ * debugger server pushes, so that the max superstep number stays current while
+ * the job runs. Falls back to fetching it on each superstep change if the
+ * browser does not support Server-Sent Events.
+ */
+GiraphDebugger.prototype.followJob = function() {
+    if (!window.EventSource) {
+        return;
     }
+    this.jobEvents = new EventSource(this.debuggerServerRoot + '/events?' +
+        $.param({'jobId' : this.currentJobId}));
+    this.jobEvents.addEventListener('superstep', (function(event) {
+        var superstep = JSON.parse(event.data);
+        this.maxSuperstepNumber = superstep.lastSuperstepId;
+        // Leave the buttons disabled while a superstep is loading.
+        if (!$(this.btnGotoStep).prop('disabled')) {
+            $(this.btnNextStep).attr('disabled', this.currentSuperstepNumber === this.maxSuperstepNumber);
+        }
+    }).bind(this));
 }
 
 GiraphDebugger.prototype.handleSuperstepChange = function(targetSuperstepNumber) {
@@ -896,33 +895,6 @@ GiraphDebugger.prototype.showEdgeValues = function() {
     }).bind(this));
 }
 
-/*
- * Merges deltaState on baseState. Merge implies ->
- * Keep all the values of baseState but overwrite if deltaState
- * has them too. If deltaState has some vertices not in baseState, add them.
- */
-GiraphDebugger.prototype.mergeStates = function(baseState, deltaState) {
-    // If the baseState is -1, deltaState should be the actual scenario object for superstep 0
-    if (baseState === -1) {
-      this.stateCache[deltaState] = $.extend({}, deltaState);
-      return;
-    }
-    
-    var newState = $.extend(true, {}, baseState);
-    // Start with marking all nodes in baseState as not debugged.
-    // Only nodes debugged in deltaState will be marked as debugged.
-    for (nodeId in baseState) {
-        newState[nodeId].enabled = false;    
-    }
-    for (nodeId in deltaState) {
-        // Add this node's properties from deltaState
-        newState[nodeId] = $.extend({}, deltaState[nodeId]);
-        // If nodeId was in deltaState, mark as debugged.
-        newState[nodeId].enabled = true;
-    }
-    return newState;
-}
-
 /*
  * Toggles between the debug and edit modes.
  */
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.giraph.debugger.utils.InMemoryTraceStore;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceManifestWriter;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the graph states {@link GraphStates} builds from snapshots and the
+ * scenarios of the supersteps after them. The scenarios are put in the
+ * {@link ScenarioCache}, so that no trace needs to be decoded.
+ */
+public class TestGraphStates {
+
+  /**
+   * Number of supersteps between two snapshots.
+   */
+  private static final int INTERVAL = GraphStates.SNAPSHOT_INTERVAL;
+
+  /**
+   * The store the server reads traces from during the tests.
+   */
+  private InMemoryTraceStore traceStore;
+
+  /**
+   * Makes the server read traces from memory.
+   */
+  @Before
+  public void setUp() {
+    traceStore = new InMemoryTraceStore();
+    TraceStores.setDefault(traceStore);
+  }
+
+  /**
+   * Restores the default store.
+   */
+  @After
+  public void tearDown() {
+    TraceStores.setDefault(null);
+  }
+
+  /**
+   * Snapshots are taken at the last superstep of each interval, and the
+   * empty state comes before the first.
+   */
+  @Test
+  public void testSnapshotNo() {
+    assertEquals(-1, GraphStates.getSnapshotNo(-2));
+    assertEquals(-1, GraphStates.getSnapshotNo(-1));
+    assertEquals(-1, GraphStates.getSnapshotNo(INTERVAL - 2));
+    assertEquals(INTERVAL - 1, GraphStates.getSnapshotNo(INTERVAL - 1));
+    assertEquals(INTERVAL - 1, GraphStates.getSnapshotNo(2 * INTERVAL - 2));
+    assertEquals(2 * INTERVAL - 1, GraphStates.getSnapshotNo(
+      2 * INTERVAL - 1));
+  }
+
+  /**
+   * The state of a superstep has the last scenario of every vertex debugged
+   * so far, and enables the vertices debugged in the superstep itself.
+   */
+  @Test
+  public void testGetState() throws Exception {
+    String jobId = "job_states";
+    record(jobId, 0, "a", "b");
+    record(jobId, 1, "a");
+    record(jobId, INTERVAL + 1, "c");
+    record(jobId, 2 * INTERVAL + 1, "b");
+
+    JSONObject state = GraphStates.getState(jobId, 1);
+    assertEquals(new TreeSet<>(Arrays.asList("a", "b")), keys(state));
+    assertEquals("a@1", state.getJSONObject("a").get("vertexValue"));
+    assertTrue(state.getJSONObject("a").getBoolean("enabled"));
+    assertEquals("b@0", state.getJSONObject("b").get("vertexValue"));
+    assertFalse(state.getJSONObject("b").getBoolean("enabled"));
+
+    // Supersteps without traces enable no vertex.
+    state = GraphStates.getState(jobId, INTERVAL);
+    assertEquals(new TreeSet<>(Arrays.asList("a", "b")), keys(state));
+    assertFalse(state.getJSONObject("a").getBoolean("enabled"));
+
+    state = GraphStates.getState(jobId, 2 * INTERVAL + 1);
+    assertEquals(new TreeSet<>(Arrays.asList("a", "b", "c")), keys(state));
+    assertEquals("b@" + (2 * INTERVAL + 1), state.getJSONObject("b").get(
+      "vertexValue"));
+    assertTrue(state.getJSONObject("b").getBoolean("enabled"));
+    assertFalse(state.getJSONObject("c").getBoolean("enabled"));
+
+    // States past the last superstep traced are that of the last one.
+    state = GraphStates.getState(jobId, Long.MAX_VALUE - 1);
+    assertEquals(3, state.length());
+    assertFalse(state.getJSONObject("b").getBoolean("enabled"));
+
+    // Scenarios returned are copies, which may be modified.
+    state.getJSONObject("a").put("vertexValue", "changed");
+    assertEquals("a@1", GraphStates.getState(jobId, 1).getJSONObject("a")
+      .get("vertexValue"));
+  }
+
+  /**
+   * Records regular traces of the given vertices in the index of a job, and
+   * puts their scenarios in the cache, with the vertex and superstep as
+   * value.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the traces.
+   * @param vertexIds the vertices traced.
+   */
+  private void record(String jobId, long superstepNo, String... vertexIds)
+    throws Exception {
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    for (String vertexId : vertexIds) {
+      manifestWriter.record(DebugTrace.VERTEX_REGULAR, superstepNo, vertexId,
+        null, TraceLayout.getDefault().getFullTraceFileName(
+          DebugTrace.VERTEX_REGULAR, jobId, superstepNo, vertexId, null), 10);
+      ScenarioCache.put(jobId, superstepNo, vertexId,
+        DebugTrace.VERTEX_REGULAR, new JSONObject().put("vertexValue",
+          vertexId + "@" + superstepNo));
+    }
+    manifestWriter.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+  }
+
+  /**
+   * @param state a state.
+   * @return the vertices of the state.
+   */
+  private static TreeSet<String> keys(JSONObject state) {
+    return new TreeSet<>(Arrays.asList(JSONObject.getNames(state)));
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.giraph.debugger.utils.InMemoryTraceStore;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceManifestWriter;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link JobTraceCache} keeps the traces of jobs between requests
+ * and reads them again once they are invalidated. Each test uses its own
+ * jobs, as the cache is shared.
+ */
+public class TestJobTraceCache {
+
+  /**
+   * The store the server reads traces from during the tests.
+   */
+  private InMemoryTraceStore traceStore;
+
+  /**
+   * Makes the server read traces from memory.
+   */
+  @Before
+  public void setUp() {
+    traceStore = new InMemoryTraceStore();
+    TraceStores.setDefault(traceStore);
+  }
+
+  /**
+   * Restores the default store.
+   */
+  @After
+  public void tearDown() {
+    TraceStores.setDefault(null);
+  }
+
+  /**
+   * The index of a job is loaded once until it is due for a refresh, and
+   * jobs traced without one have none.
+   */
+  @Test
+  public void testTraceIndex() throws Exception {
+    String jobId = "job_cache_index";
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    manifestWriter.record(DebugTrace.VERTEX_REGULAR, 0, "v0", null,
+      TraceLayout.getDefault().getFullTraceFileName(DebugTrace.VERTEX_REGULAR,
+        jobId, 0L, "v0", null), 10);
+    manifestWriter.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+
+    TraceIndex traceIndex = JobTraceCache.getTraceIndex(jobId);
+    assertEquals(1, traceIndex.getEntries(0).size());
+    assertSame(traceIndex, JobTraceCache.getTraceIndex(jobId));
+    JobTraceCache.invalidate(jobId);
+    TraceIndex reloaded = JobTraceCache.getTraceIndex(jobId);
+    assertNotSame(traceIndex, reloaded);
+    assertEquals(1, reloaded.getEntries(0).size());
+
+    assertNull(JobTraceCache.getTraceIndex("job_cache_noindex"));
+  }
+
+  /**
+   * The trace files of jobs traced without an index are listed from the
+   * directories of their layout, and listed again once invalidated.
+   */
+  @Test
+  public void testTraceFileNames() throws IOException {
+    String jobId = "job_cache_files";
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    traceLayout.save(traceStore, jobId);
+    String fileName = write(traceLayout, jobId, 0, "a");
+    String otherFileName = write(traceLayout, jobId, 1, "b");
+
+    assertEquals(new TreeSet<>(Arrays.asList(fileName, otherFileName)),
+      new TreeSet<>(JobTraceCache.getTraceFileNames(jobId)));
+    assertTrue(JobTraceCache.hasTraceFile(jobId, fileName));
+    String newFileName = write(traceLayout, jobId, 1, "c");
+    assertFalse(JobTraceCache.hasTraceFile(jobId, newFileName));
+    JobTraceCache.invalidate(jobId);
+    assertTrue(JobTraceCache.hasTraceFile(jobId, newFileName));
+    assertEquals(3, JobTraceCache.getTraceFileNames(jobId).size());
+  }
+
+  /**
+   * Jobs without traces are reported as missing.
+   */
+  @Test
+  public void testMissingJob() throws IOException {
+    try {
+      JobTraceCache.getTraceFileNames("job_cache_missing");
+      fail("Listed the traces of a missing job");
+    } catch (FileNotFoundException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Writes an empty vertex trace.
+   *
+   * @param traceLayout the layout of the job.
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the trace.
+   * @param vertexId the vertex traced.
+   * @return the name of the trace file.
+   */
+  private String write(TraceLayout traceLayout, String jobId,
+    long superstepNo, String vertexId) throws IOException {
+    String path = traceLayout.getFullTraceFileName(
+      DebugTrace.VERTEX_REGULAR, jobId, superstepNo, vertexId, null);
+    traceStore.write(path, new byte[0]);
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.giraph.debugger.utils.InMemoryTraceStore;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceManifestWriter;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Tests that {@link JobWatcher} sends the supersteps of a job to each
+ * browser following it, without one browser holding up the others.
+ */
+public class TestJobWatcher {
+
+  /**
+   * Time in milliseconds to wait for events.
+   */
+  private static final long TIMEOUT = 10000;
+
+  /**
+   * The store the server reads traces from during the tests.
+   */
+  private InMemoryTraceStore traceStore;
+
+  /**
+   * An event stream that keeps what is written to it.
+   */
+  private static class EventStream extends OutputStream {
+    /**
+     * What was written so far.
+     */
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    @Override
+    public synchronized void write(int b) {
+      written.write(b);
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      written.write(b, off, len);
+      notifyAll();
+    }
+
+    /**
+     * Waits for the stream to receive the given text.
+     *
+     * @param text a text.
+     * @return everything received so far.
+     */
+    synchronized String await(String text) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (!getText().contains(text) &&
+        System.currentTimeMillis() < deadline) {
+        wait(100);
+      }
+      return getText();
+    }
+
+    /**
+     * @return everything received so far.
+     */
+    private String getText() {
+      return new String(written.toByteArray(), Charsets.UTF_8);
+    }
+  }
+
+  /**
+   * Makes the server read traces from memory.
+   */
+  @Before
+  public void setUp() {
+    traceStore = new InMemoryTraceStore();
+    TraceStores.setDefault(traceStore);
+  }
+
+  /**
+   * Restores the default store.
+   */
+  @After
+  public void tearDown() {
+    TraceStores.setDefault(null);
+  }
+
+  /**
+   * Browsers are sent the supersteps traced so far when they start following
+   * a job, even while another browser does not take its events.
+   */
+  @Test
+  public void testSubscribe() throws Exception {
+    String jobId = "job_watch";
+    record(jobId, 0);
+    record(jobId, 1);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    try {
+      JobWatcher.subscribe(jobId, new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          try {
+            unblock.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        }
+      });
+      EventStream stream = new EventStream();
+      JobWatcher.subscribe(jobId, stream);
+      String events = stream.await(":\n\n");
+      assertTrue(events, events.startsWith("event: superstep\n"));
+      assertTrue(events, events.contains("\"superstepId\":0"));
+      assertTrue(events, events.contains("\"complete\":true"));
+      assertTrue(events, events.contains("\"superstepId\":1"));
+      assertTrue(events, events.contains("\"lastSuperstepId\":1"));
+    } finally {
+      unblock.countDown();
+    }
+  }
+
+  /**
+   * Browsers that disconnected have their stream closed, and do not keep
+   * the others from being sent events.
+   */
+  @Test
+  public void testDisconnected() throws Exception {
+    String jobId = "job_watch_disconnected";
+    record(jobId, 0);
+    final CountDownLatch closed = new CountDownLatch(1);
+    JobWatcher.subscribe(jobId, new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("Disconnected");
+      }
+
+      @Override
+      public void close() {
+        closed.countDown();
+      }
+    });
+    EventStream stream = new EventStream();
+    JobWatcher.subscribe(jobId, stream);
+    assertTrue(closed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    assertTrue(stream.await(":\n\n").contains("\"superstepId\":0"));
+  }
+
+  /**
+   * Records a regular trace in the index of a job.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the trace.
+   */
+  private void record(String jobId, long superstepNo) throws Exception {
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    manifestWriter.record(DebugTrace.VERTEX_REGULAR, superstepNo, "v", null,
+      TraceLayout.getDefault().getFullTraceFileName(DebugTrace.VERTEX_REGULAR,
+        jobId, superstepNo, "v", null), 10);
+    manifestWriter.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+  }
+}
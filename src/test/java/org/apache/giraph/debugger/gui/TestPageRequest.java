@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the ordering and paging of ids by {@link PageRequest}.
+ */
+public class TestPageRequest {
+
+  /**
+   * Ids of vertices, in no particular order.
+   */
+  private static final List<String> IDS = Arrays.asList("10", "b", "-3",
+    "2", "a10", "99999999999999999999", "a9", "0", "+7");
+
+  /**
+   * Numbers come first in numeric order, then other ids in string order.
+   * Numbers too large for a long are ordered as strings.
+   */
+  @Test
+  public void testOrder() {
+    assertEquals(Arrays.asList("-3", "0", "2", "+7", "10",
+      "99999999999999999999", "a10", "a9", "b"), select(IDS, params()));
+    assertEquals(Arrays.asList("b", "a9", "a10", "99999999999999999999",
+      "10", "+7", "2", "0", "-3"), select(IDS, params("sort", "desc")));
+  }
+
+  /**
+   * Ids are restricted to the range between the smallest and largest ids,
+   * which need not be ids themselves.
+   */
+  @Test
+  public void testIdRange() {
+    assertEquals(Arrays.asList("2", "+7", "10"), select(IDS,
+      params("minId", "1", "maxId", "10")));
+    assertEquals(Arrays.asList("a10", "a9", "b"), select(IDS,
+      params("minId", "a")));
+    assertEquals(Arrays.asList("0", "-3"), select(IDS,
+      params("maxId", "1", "sort", "desc")));
+  }
+
+  /**
+   * Walking the pages from cursor to cursor gives every id once, in order.
+   */
+  @Test
+  public void testPaging() {
+    for (String sort : new String[] {"asc", "desc" }) {
+      List<String> walked = new ArrayList<>();
+      String cursor = null;
+      do {
+        Map<String, String> paramMap = params("sort", sort, "limit", "4");
+        if (cursor != null) {
+          paramMap.put(PageRequest.CURSOR_KEY, cursor);
+        }
+        PageRequest page = new PageRequest(paramMap, Integer.MAX_VALUE);
+        List<String> ids = page.select(IDS);
+        if (ids.size() > page.getLimit()) {
+          ids = ids.subList(0, page.getLimit());
+          cursor = ids.get(ids.size() - 1);
+        } else {
+          cursor = null;
+        }
+        walked.addAll(ids);
+      } while (cursor != null);
+      assertEquals(select(IDS, params("sort", sort)), walked);
+    }
+  }
+
+  /**
+   * Ids added before the cursor while walking the pages are skipped, so no
+   * id is given twice.
+   */
+  @Test
+  public void testCursorAfterNewIds() {
+    List<String> ids = new ArrayList<>(IDS);
+    ids.add("1");
+    ids.add("11");
+    assertEquals(Arrays.asList("10", "11", "99999999999999999999", "a10",
+      "a9", "b"), select(ids, params("cursor", "+7")));
+  }
+
+  /**
+   * The page size defaults to the given one, and must be positive.
+   */
+  @Test
+  public void testLimit() {
+    assertEquals(25, new PageRequest(params(), 25).getLimit());
+    assertEquals(3, new PageRequest(params("limit", "3"), 25).getLimit());
+    for (String limit : new String[] {"0", "-1", "x", "1.5" }) {
+      try {
+        new PageRequest(params("limit", limit), 25);
+        fail("Accepted limit " + limit);
+      } catch (InvalidParameterException e) {
+        assertEquals("limit must be a positive integer.", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Invalid sort orders and value bounds are reported by parameter.
+   */
+  @Test
+  public void testInvalidParameters() {
+    try {
+      new PageRequest(params("sort", "up"), 25);
+      fail("Accepted sort order up");
+    } catch (InvalidParameterException e) {
+      assertEquals("sort must be asc or desc.", e.getMessage());
+    }
+    try {
+      new PageRequest(params("maxValue", "high"), 25);
+      fail("Accepted maxValue high");
+    } catch (InvalidParameterException e) {
+      assertEquals("maxValue must be a number.", e.getMessage());
+    }
+  }
+
+  /**
+   * Values are accepted if they are numbers within the bounds.
+   */
+  @Test
+  public void testAcceptsValue() {
+    PageRequest page = new PageRequest(params("minValue", "1",
+      "maxValue", "2.5"), 25);
+    assertTrue(page.acceptsValue(1.0));
+    assertTrue(page.acceptsValue("2.5"));
+    assertFalse(page.acceptsValue(3L));
+    assertFalse(page.acceptsValue("NaN"));
+    assertFalse(page.acceptsValue("text"));
+    assertFalse(page.acceptsValue(null));
+    assertTrue(new PageRequest(params(), 25).acceptsValue(null));
+  }
+
+  /**
+   * @param ids the ids to select from.
+   * @param paramMap the URL parameters of the request.
+   * @return the ids selected.
+   */
+  private static List<String> select(List<String> ids,
+    Map<String, String> paramMap) {
+    return new PageRequest(paramMap, Integer.MAX_VALUE).select(ids);
+  }
+
+  /**
+   * @param keysAndValues URL parameters, as keys followed by their values.
+   * @return the parameters by key.
+   */
+  private static Map<String, String> params(String... keysAndValues) {
+    Map<String, String> paramMap = new HashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      paramMap.put(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return paramMap;
+  }
+}
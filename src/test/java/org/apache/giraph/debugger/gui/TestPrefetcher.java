@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.giraph.debugger.utils.InMemoryTraceStore;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceManifestWriter;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link Prefetcher} reads the traces of the supersteps around
+ * the one accessed in the background. The traces are not valid scenarios,
+ * as only reading them is checked.
+ */
+public class TestPrefetcher {
+
+  /**
+   * Time in milliseconds to wait for traces to be read.
+   */
+  private static final long TIMEOUT = 10000;
+
+  /**
+   * The store the server reads traces from during the tests.
+   */
+  private ReadTracingTraceStore traceStore;
+
+  /**
+   * An in-memory store that remembers which files were read.
+   */
+  private static class ReadTracingTraceStore extends InMemoryTraceStore {
+    /**
+     * Paths read so far.
+     */
+    private final Set<String> readPaths = new HashSet<>();
+
+    @Override
+    public InputStream open(String path) throws IOException {
+      synchronized (this) {
+        readPaths.add(path);
+        notifyAll();
+      }
+      return super.open(path);
+    }
+
+    /**
+     * Waits for a file to be read.
+     *
+     * @param path path of the file.
+     * @return whether the file was read in time.
+     */
+    synchronized boolean awaitRead(String path) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (!readPaths.contains(path) &&
+        System.currentTimeMillis() < deadline) {
+        wait(100);
+      }
+      return readPaths.contains(path);
+    }
+
+    /**
+     * @param path path of a file.
+     * @return whether the file was read.
+     */
+    synchronized boolean wasRead(String path) {
+      return readPaths.contains(path);
+    }
+  }
+
+  /**
+   * Makes the server read traces from memory.
+   */
+  @Before
+  public void setUp() {
+    traceStore = new ReadTracingTraceStore();
+    TraceStores.setDefault(traceStore);
+  }
+
+  /**
+   * Restores the default store.
+   */
+  @After
+  public void tearDown() {
+    TraceStores.setDefault(null);
+  }
+
+  /**
+   * The supersteps next to the one accessed are read, but not those further
+   * away or the one accessed itself, with the default prefetch distance.
+   */
+  @Test
+  public void testPrefetchAround() throws Exception {
+    String jobId = "job_prefetch";
+    String[] paths = new String[5];
+    for (int superstepNo = 0; superstepNo < paths.length; superstepNo++) {
+      paths[superstepNo] = writeTrace(jobId, superstepNo);
+    }
+    TraceIndex.mergeAllSupersteps(traceStore, jobId);
+
+    Prefetcher.prefetchAround(jobId, 2);
+    assertTrue(traceStore.awaitRead(paths[3]));
+    assertTrue(traceStore.awaitRead(paths[1]));
+    assertFalse(traceStore.wasRead(paths[2]));
+    assertFalse(traceStore.wasRead(paths[0]));
+    assertFalse(traceStore.wasRead(paths[4]));
+  }
+
+  /**
+   * Supersteps without traces are skipped, and the supersteps around that
+   * of the input are prefetched too.
+   */
+  @Test
+  public void testPrefetchUntraced() throws Exception {
+    String jobId = "job_prefetch_untraced";
+    String path = writeTrace(jobId, 0);
+    TraceIndex.mergeAllSupersteps(traceStore, jobId);
+
+    Prefetcher.prefetchAround(jobId, 0);
+    Prefetcher.prefetchAround(jobId, -1);
+    assertTrue(traceStore.awaitRead(path));
+  }
+
+  /**
+   * Writes a regular vertex trace and records it in the manifest of the job.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the trace.
+   * @return path of the trace.
+   */
+  private String writeTrace(String jobId, long superstepNo)
+    throws IOException, InterruptedException {
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    traceLayout.save(traceStore, jobId);
+    String path = traceLayout.getFullTraceFileName(DebugTrace.VERTEX_REGULAR,
+      jobId, superstepNo, "v", null);
+    byte[] trace = {1, 2, 3 };
+    traceStore.write(path, trace);
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    manifestWriter.record(DebugTrace.VERTEX_REGULAR, superstepNo, "v", null,
+      path, trace.length);
+    manifestWriter.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+    return path;
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.Scenario.RawTraceRecord;
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.giraph.debugger.utils.InMemoryTraceStore;
+import org.apache.giraph.debugger.utils.TraceBlobInterner;
+import org.apache.giraph.debugger.utils.TraceBlobResolver;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceManifestWriter;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessage;
+
+/**
+ * Tests how {@link ScenarioBatchReader} sends the traces of a range of
+ * supersteps. Each test uses its own jobs, as the server caches what it
+ * reads of them.
+ */
+public class TestScenarioBatchReader {
+
+  /**
+   * The vertices traced in each superstep by the tests sending blobs.
+   */
+  private static final String[] VERTEX_IDS = {"v0", "v1", "v2" };
+
+  /**
+   * The store the server reads traces from during the tests.
+   */
+  private InMemoryTraceStore traceStore;
+
+  /**
+   * Makes the server read traces from memory.
+   */
+  @Before
+  public void setUp() {
+    traceStore = new InMemoryTraceStore();
+    TraceStores.setDefault(traceStore);
+  }
+
+  /**
+   * Restores the default store.
+   */
+  @After
+  public void tearDown() {
+    TraceStores.setDefault(null);
+  }
+
+  /**
+   * Ranges keep the supersteps within their inclusive bounds, and may be
+   * unbounded.
+   */
+  @Test
+  public void testSuperstepsInRange() {
+    TreeSet<Long> superstepNos = new TreeSet<>(Arrays.asList(0L, 3L, 7L));
+    assertEquals(new TreeSet<>(Arrays.asList(3L, 7L)),
+      ServerUtils.getSuperstepsInRange(superstepNos, 3, 7));
+    assertEquals(new TreeSet<>(Arrays.asList(3L, 7L)),
+      ServerUtils.getSuperstepsInRange(superstepNos, 1, Long.MAX_VALUE));
+    assertEquals(new TreeSet<Long>(), ServerUtils.getSuperstepsInRange(
+      superstepNos, 4, 6));
+    assertEquals(new TreeSet<Long>(), ServerUtils.getSuperstepsInRange(
+      superstepNos, 7, 3));
+  }
+
+  /**
+   * Only the supersteps traced within a range are sent, in order, however
+   * large the range is.
+   */
+  @Test
+  public void testRawScenarioRange() throws Exception {
+    String jobId = "job_batch_range";
+    List<GeneratedMessage> traces = new ArrayList<>();
+    traces.add(writeTrace(jobId, 0, "v0"));
+    traces.add(writeTrace(jobId, 5, "v0"));
+    traces.add(writeTrace(jobId, 5, "v1"));
+    TraceIndex.mergeAllSupersteps(traceStore, jobId);
+
+    // Vertex v1 has no trace in superstep 0.
+    List<String> vertexIds = Arrays.asList("v0", "v1");
+    assertEquals(traces, readRawScenarios(jobId, 0, Long.MAX_VALUE,
+      vertexIds));
+    assertEquals(traces.subList(1, 3), readRawScenarios(jobId, 1,
+      Long.MAX_VALUE, vertexIds));
+    assertEquals(traces.subList(0, 1), readRawScenarios(jobId, -1, 4,
+      vertexIds));
+    assertEquals(new ArrayList<GeneratedMessage>(), readRawScenarios(jobId,
+      6, Long.MAX_VALUE, vertexIds));
+    assertEquals(3, readRawScenarios(jobId, 0, Long.MAX_VALUE, null)
+      .size());
+  }
+
+  /**
+   * Traces are sent as stored, each after the blobs of its dictionary, which
+   * are sent once, and with which the traces resolve to what was traced.
+   */
+  @Test
+  public void testRawScenarioBlobs() throws Exception {
+    String jobId = "job_batch_blobs";
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    traceLayout.save(traceStore, jobId);
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    TraceBlobInterner interner = new TraceBlobInterner(traceStore, jobId);
+    List<GiraphVertexScenario> scenarios = new ArrayList<>();
+    List<ByteString> storedTraces = new ArrayList<>();
+    byte[] conf = new byte[1000];
+    Arrays.fill(conf, (byte) 7);
+    for (long superstepNo = 0; superstepNo < 2; superstepNo++) {
+      for (String vertexId : VERTEX_IDS) {
+        GiraphVertexScenario scenario = newScenario(superstepNo, vertexId,
+          ByteString.copyFrom(conf));
+        GeneratedMessage interned = interner.intern(scenario, superstepNo);
+        String path = traceLayout.getFullTraceFileName(
+          DebugTrace.VERTEX_REGULAR, jobId, superstepNo, vertexId, null);
+        traceStore.write(path, interned);
+        manifestWriter.record(DebugTrace.VERTEX_REGULAR, superstepNo,
+          vertexId, null, path, interned.getSerializedSize());
+        scenarios.add(scenario);
+        storedTraces.add(interned.toByteString());
+      }
+      interner.flush();
+      manifestWriter.flush();
+      AsyncHDFSWriteService.awaitPendingWrites();
+    }
+    TraceIndex.mergeAllSupersteps(traceStore, jobId);
+
+    // The client keeps the blobs it is sent under a job of its own, so
+    // that none are resolved from those cached for the server.
+    String clientJobId = "client_" + jobId;
+    InMemoryTraceStore clientStore = new InMemoryTraceStore();
+    List<ByteString> sentTraces = new ArrayList<>();
+    List<GeneratedMessage> resolved = new ArrayList<>();
+    int numInterned = 0;
+    for (RawTraceRecord record : writeRawScenarios(jobId, 0,
+      Long.MAX_VALUE, Arrays.asList(VERTEX_IDS))) {
+      if (record.hasBlobDictionary()) {
+        String path = TraceBlobResolver.getDictionaryPath(clientJobId,
+          record.getBlobDictionary());
+        assertNull(clientStore.lookup(path));
+        assertEquals(ByteString.readFrom(traceStore.open(
+          TraceBlobResolver.getDictionaryPath(jobId,
+            record.getBlobDictionary()))), record.getBlobs());
+        clientStore.write(path, record.getBlobs().toByteArray());
+        continue;
+      }
+      sentTraces.add(record.getVertexScenario());
+      GiraphVertexScenario trace = GiraphVertexScenario.parseFrom(
+        record.getVertexScenario());
+      if (trace.hasBlobDictionary()) {
+        numInterned++;
+      }
+      resolved.add(TraceBlobResolver.resolve(clientStore, clientJobId,
+        trace));
+    }
+    assertEquals(storedTraces, sentTraces);
+    assertEquals(scenarios, resolved);
+    // Blobs are interned once they repeat within a superstep.
+    assertEquals(4, numInterned);
+  }
+
+  /**
+   * @param superstepNo the superstep of the scenario.
+   * @param vertexId the vertex of the scenario.
+   * @param conf the configuration of the job.
+   * @return a scenario of the vertex.
+   */
+  private static GiraphVertexScenario newScenario(long superstepNo,
+    String vertexId, ByteString conf) {
+    return GiraphVertexScenario.newBuilder().setContext(
+      VertexContext.newBuilder().setVertexId(ByteString.copyFromUtf8(
+        vertexId)).setVertexValueBefore(ByteString.copyFromUtf8(
+        Long.toString(superstepNo))).setCommonContext(
+        CommonVertexMasterContext.newBuilder().setConf(conf)
+          .setSuperstepNo(superstepNo).setTotalNumVertices(2)
+          .setTotalNumEdges(0))).build();
+  }
+
+  /**
+   * Writes a regular vertex trace and records it in the manifest of the job.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the trace.
+   * @param vertexId the vertex traced.
+   * @return the trace.
+   */
+  private GeneratedMessage writeTrace(String jobId, long superstepNo,
+    String vertexId) throws IOException, InterruptedException {
+    GiraphVertexScenario scenario = newScenario(superstepNo, vertexId,
+      ByteString.EMPTY);
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    traceLayout.save(traceStore, jobId);
+    String path = traceLayout.getFullTraceFileName(DebugTrace.VERTEX_REGULAR,
+      jobId, superstepNo, vertexId, null);
+    traceStore.write(path, scenario);
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    manifestWriter.record(DebugTrace.VERTEX_REGULAR, superstepNo, vertexId,
+      null, path, scenario.getSerializedSize());
+    manifestWriter.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+    return scenario;
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep to read.
+   * @param lastSuperstepNo the last superstep to read.
+   * @param vertexIds the vertices to read, or null for all.
+   * @return the traces sent for the vertices.
+   */
+  private static List<GeneratedMessage> readRawScenarios(String jobId,
+    long firstSuperstepNo, long lastSuperstepNo, List<String> vertexIds)
+    throws IOException {
+    List<GeneratedMessage> traces = new ArrayList<>();
+    for (RawTraceRecord record : writeRawScenarios(jobId, firstSuperstepNo,
+      lastSuperstepNo, vertexIds)) {
+      traces.add(GiraphVertexScenario.parseFrom(record.getVertexScenario()));
+    }
+    return traces;
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param firstSuperstepNo the first superstep to read.
+   * @param lastSuperstepNo the last superstep to read.
+   * @param vertexIds the vertices to read, or null for all.
+   * @return the records sent for the vertices.
+   */
+  private static List<RawTraceRecord> writeRawScenarios(String jobId,
+    long firstSuperstepNo, long lastSuperstepNo, List<String> vertexIds)
+    throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ScenarioBatchReader.writeRawScenarios(out, jobId, firstSuperstepNo,
+      lastSuperstepNo, vertexIds);
+    List<RawTraceRecord> records = new ArrayList<>();
+    InputStream input = new ByteArrayInputStream(out.toByteArray());
+    RawTraceRecord record;
+    while ((record = RawTraceRecord.parseDelimitedFrom(input)) != null) {
+      records.add(record);
+    }
+    return records;
+  }
+}
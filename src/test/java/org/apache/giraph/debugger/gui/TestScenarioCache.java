@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.giraph.debugger.gui.ScenarioCache.SizedJSONObject;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests the cache of scenarios rendered as JSON, {@link ScenarioCache}.
+ */
+public class TestScenarioCache {
+
+  /**
+   * Scenarios are cached per job, superstep, vertex and trace type.
+   */
+  @Test
+  public void testGetAndPut() throws JSONException {
+    String jobId = "job_scenario_cache";
+    JSONObject scenario = new JSONObject().put("vertexId", "v");
+    ScenarioCache.put(jobId, 1, "v", DebugTrace.VERTEX_REGULAR, scenario);
+    assertSame(scenario, ScenarioCache.get(jobId, 1, "v",
+      DebugTrace.VERTEX_REGULAR));
+    assertNull(ScenarioCache.get(jobId, 2, "v", DebugTrace.VERTEX_REGULAR));
+    assertNull(ScenarioCache.get(jobId, 1, "w", DebugTrace.VERTEX_REGULAR));
+    assertNull(ScenarioCache.get(jobId, 1, "v",
+      DebugTrace.VERTEX_EXCEPTION));
+    assertNull(ScenarioCache.get("job_other", 1, "v",
+      DebugTrace.VERTEX_REGULAR));
+  }
+
+  /**
+   * Scenarios counted while they are rendered are sized from the text of
+   * their values, and others from their whole text.
+   */
+  @Test
+  public void testEstimateSize() throws JSONException {
+    SizedJSONObject sized = new SizedJSONObject();
+    sized.putText("value", 12345);
+    assertEquals("abc", sized.countText("abc"));
+    assertNull(sized.countText(null));
+    sized.putText("missing", null);
+    assertFalse(sized.has("missing"));
+    int empty = ScenarioCache.estimateSize(new SizedJSONObject());
+    assertEquals(empty + 2 * (5 + 3 + 2 * 16), ScenarioCache.estimateSize(
+      sized));
+
+    JSONObject plain = new JSONObject().put("value", "12345");
+    assertEquals(empty + 2 * plain.toString().length(),
+      ScenarioCache.estimateSize(plain));
+  }
+}
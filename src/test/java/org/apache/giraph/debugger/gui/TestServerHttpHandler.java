@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests how {@link ServerHttpHandler} answers requests, through a server on
+ * the loopback interface.
+ */
+public class TestServerHttpHandler {
+
+  /**
+   * Number of requests {@link EchoHandler} waits for before answering any.
+   */
+  private static final int NUM_CONCURRENT_REQUESTS = 4;
+  /**
+   * Released once {@link #NUM_CONCURRENT_REQUESTS} requests are handled at
+   * the same time.
+   */
+  private static CountDownLatch concurrentRequests;
+
+  /**
+   * The server the handlers are registered with.
+   */
+  private HttpServer server;
+  /**
+   * Runs the requests of the server.
+   */
+  private ExecutorService executor;
+
+  /**
+   * Answers with its value parameter, after as many requests as the test
+   * sends are handled at the same time.
+   */
+  static class EchoHandler extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      this.response = paramMap.get(ServerUtils.VALUE_KEY);
+      concurrentRequests.countDown();
+      try {
+        concurrentRequests.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      this.statusCode = HttpURLConnection.HTTP_OK;
+    }
+  }
+
+  /**
+   * Answers with a JSON object holding as many characters as its value
+   * parameter tells, or with a plain text of that length if the raw
+   * parameter is set.
+   */
+  static class TextHandler extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      char[] text = new char[Integer.parseInt(paramMap.get(
+        ServerUtils.VALUE_KEY))];
+      Arrays.fill(text, 'x');
+      if (isRaw(paramMap)) {
+        this.statusCode = HttpURLConnection.HTTP_OK;
+        this.response = new String(text);
+        return;
+      }
+      try {
+        setJSONResponse(new JSONObject().put("text", new String(text)));
+      } catch (JSONException e) {
+        handleException(e, null);
+      }
+    }
+  }
+
+  /**
+   * Answers with a response whose version is its value parameter, and which
+   * never changes if the raw parameter is set.
+   */
+  static class VersionedHandler extends ServerHttpHandler {
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      if (checkNotModified(paramMap.get(ServerUtils.VALUE_KEY),
+        isRaw(paramMap))) {
+        return;
+      }
+      this.statusCode = HttpURLConnection.HTTP_OK;
+      this.response = "versioned";
+    }
+  }
+
+  /**
+   * A handler without a constructor taking no arguments.
+   */
+  static class UnconstructibleHandler extends ServerHttpHandler {
+    /**
+     * Constructor.
+     *
+     * @param response The response.
+     */
+    UnconstructibleHandler(String response) {
+      this.response = response;
+    }
+
+    @Override
+    public void processRequest(HttpExchange httpExchange,
+      Map<String, String> paramMap) {
+      this.statusCode = HttpURLConnection.HTTP_OK;
+    }
+  }
+
+  /**
+   * Starts the server.
+   */
+  @Before
+  public void startServer() throws IOException {
+    executor = Executors.newCachedThreadPool();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /**
+   * Stops the server.
+   */
+  @After
+  public void stopServer() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Requests handled concurrently each get their own response.
+   */
+  @Test
+  public void testConcurrentRequests() throws Exception {
+    concurrentRequests = new CountDownLatch(NUM_CONCURRENT_REQUESTS);
+    server.createContext("/echo", ServerHttpHandler.forEachRequest(
+      EchoHandler.class));
+    ExecutorService clients = Executors.newFixedThreadPool(
+      NUM_CONCURRENT_REQUESTS);
+    try {
+      List<Future<String>> responses = new ArrayList<>();
+      for (int i = 0; i < NUM_CONCURRENT_REQUESTS; i++) {
+        final String value = "value" + i;
+        responses.add(clients.submit(new Callable<String>() {
+          @Override
+          public String call() throws IOException {
+            return readResponse(open("/echo?value=" + value));
+          }
+        }));
+      }
+      for (int i = 0; i < NUM_CONCURRENT_REQUESTS; i++) {
+        assertEquals("value" + i, responses.get(i).get(20, TimeUnit.SECONDS));
+      }
+    } finally {
+      clients.shutdownNow();
+    }
+  }
+
+  /**
+   * Handlers that cannot be created for each request are refused when they
+   * are registered.
+   */
+  @Test
+  public void testHandlerWithoutConstructor() {
+    try {
+      ServerHttpHandler.forEachRequest(UnconstructibleHandler.class);
+      fail("Registered a handler without a constructor without arguments");
+    } catch (IllegalArgumentException e) {
+      assertEquals(NoSuchMethodException.class, e.getCause().getClass());
+    }
+  }
+
+  /**
+   * Clients accept gzip unless they do not name it, or give it a quality of
+   * zero.
+   */
+  @Test
+  public void testAcceptsGzip() {
+    assertFalse(ServerHttpHandler.acceptsGzip(new Headers()));
+    assertTrue(ServerHttpHandler.acceptsGzip(acceptEncoding("gzip")));
+    assertTrue(ServerHttpHandler.acceptsGzip(acceptEncoding(
+      "deflate, GZIP;q=0.5")));
+    assertFalse(ServerHttpHandler.acceptsGzip(acceptEncoding("deflate")));
+    assertFalse(ServerHttpHandler.acceptsGzip(acceptEncoding("x-gzip")));
+    assertFalse(ServerHttpHandler.acceptsGzip(acceptEncoding("gzip;q=0")));
+    assertFalse(ServerHttpHandler.acceptsGzip(acceptEncoding(
+      "br, gzip; q=0.000")));
+  }
+
+  /**
+   * Responses are compressed when the client accepts it, unless they are
+   * short.
+   */
+  @Test
+  public void testGzipResponses() throws Exception {
+    server.createContext("/text", ServerHttpHandler.forEachRequest(
+      TextHandler.class));
+    int length = 2 * ServerHttpHandler.MIN_GZIP_LENGTH;
+    String json = "{\"text\":\"" + new String(new char[length])
+      .replace('\0', 'x') + "\"}";
+
+    HttpURLConnection connection = open("/text?value=" + length);
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+    assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+    try (InputStream input = new GZIPInputStream(
+      connection.getInputStream())) {
+      assertEquals(json, new String(ByteStreams.toByteArray(input),
+        Charsets.UTF_8));
+    }
+
+    connection = open("/text?value=" + length);
+    assertNull(connection.getHeaderField("Content-Encoding"));
+    assertEquals(json, readResponse(connection));
+
+    connection = open("/text?raw&value=10");
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    assertNull(connection.getHeaderField("Content-Encoding"));
+    assertEquals("xxxxxxxxxx", readResponse(connection));
+  }
+
+  /**
+   * If-None-Match names an ETag of either encoding of the response, weakly
+   * or not, or any ETag.
+   */
+  @Test
+  public void testMatchingETag() {
+    String eTag = "\"v1\"";
+    String gzipETag = "\"v1-gzip\"";
+    assertNull(ServerHttpHandler.getMatchingETag(new Headers(), eTag,
+      gzipETag));
+    assertEquals(eTag, ServerHttpHandler.getMatchingETag(ifNoneMatch(eTag),
+      eTag, gzipETag));
+    assertEquals(gzipETag, ServerHttpHandler.getMatchingETag(ifNoneMatch(
+      "\"v0\", W/" + gzipETag), eTag, gzipETag));
+    assertEquals(eTag, ServerHttpHandler.getMatchingETag(ifNoneMatch("*"),
+      eTag, gzipETag));
+    assertNull(ServerHttpHandler.getMatchingETag(ifNoneMatch("\"v0\""),
+      eTag, gzipETag));
+    assertNull(ServerHttpHandler.getMatchingETag(ifNoneMatch("v1"), eTag,
+      gzipETag));
+  }
+
+  /**
+   * Versioned responses carry an ETag, and are answered with 304 Not
+   * Modified, along with the headers every response has, when the client has
+   * them already.
+   */
+  @Test
+  public void testNotModified() throws IOException {
+    server.createContext("/versioned", ServerHttpHandler.forEachRequest(
+      VersionedHandler.class));
+    HttpURLConnection connection = open("/versioned?value=v1");
+    assertEquals("versioned", readResponse(connection));
+    String eTag = connection.getHeaderField("ETag");
+    assertEquals("\"v1\"", eTag);
+    assertEquals("no-cache", connection.getHeaderField("Cache-Control"));
+
+    connection = open("/versioned?value=v1");
+    connection.setRequestProperty("If-None-Match", eTag);
+    assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED,
+      connection.getResponseCode());
+    assertEquals(eTag, connection.getHeaderField("ETag"));
+    assertEquals("*", connection.getHeaderField(
+      "Access-Control-Allow-Origin"));
+    assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+
+    connection = open("/versioned?value=v2&raw");
+    connection.setRequestProperty("If-None-Match", eTag);
+    assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+    assertEquals("\"v2\"", connection.getHeaderField("ETag"));
+    assertTrue(connection.getHeaderField("Cache-Control").contains(
+      "immutable"));
+    readResponse(connection);
+
+    connection = open("/versioned");
+    assertNull(connection.getHeaderField("ETag"));
+    readResponse(connection);
+  }
+
+  /**
+   * @param value value of the header.
+   * @return request headers with the given If-None-Match header.
+   */
+  private static Headers ifNoneMatch(String value) {
+    Headers headers = new Headers();
+    headers.add("If-None-Match", value);
+    return headers;
+  }
+
+  /**
+   * @param value value of the header.
+   * @return request headers with the given Accept-Encoding header.
+   */
+  private static Headers acceptEncoding(String value) {
+    Headers headers = new Headers();
+    headers.add("Accept-Encoding", value);
+    return headers;
+  }
+
+  /**
+   * @param pathAndQuery the path and query of a request to the server.
+   * @return a connection sending the request.
+   * @throws IOException thrown when the request cannot be sent.
+   */
+  private HttpURLConnection open(String pathAndQuery) throws IOException {
+    return (HttpURLConnection) new URL("http", "127.0.0.1",
+      server.getAddress().getPort(), pathAndQuery).openConnection();
+  }
+
+  /**
+   * @param connection a connection to the server.
+   * @return the body of the response, as text.
+   * @throws IOException thrown when the response cannot be read.
+   */
+  private static String readResponse(HttpURLConnection connection)
+    throws IOException {
+    try (InputStream input = connection.getInputStream()) {
+      return new String(ByteStreams.toByteArray(input), Charsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the metrics {@link ServerMetrics} writes. Metrics are kept for the
+ * whole server, so the tests check how they change.
+ */
+public class TestServerMetrics {
+
+  /**
+   * Prefix of the names of the metrics.
+   */
+  private static final String PREFIX = "giraph_debugger_";
+  /**
+   * Time in milliseconds to wait for requests to be counted.
+   */
+  private static final long TIMEOUT = 10000;
+
+  /**
+   * Times are counted in the buckets of the histograms they fit in and all
+   * those above, and added to the sum.
+   */
+  @Test
+  public void testHistogram() throws IOException {
+    String name = "json_write_duration_seconds";
+    String metrics = getMetrics();
+    assertTrue(metrics, metrics.contains("# TYPE " + PREFIX + name +
+      " histogram\n"));
+    double bucket1 = getSample(metrics, name + "_bucket{le=\"1.0\"}");
+    double bucket5 = getSample(metrics, name + "_bucket{le=\"5.0\"}");
+    double bucketInf = getSample(metrics, name + "_bucket{le=\"+Inf\"}");
+    double sum = getSample(metrics, name + "_sum");
+    double count = getSample(metrics, name + "_count");
+
+    ServerMetrics.observeJsonWrite(System.nanoTime() -
+      TimeUnit.SECONDS.toNanos(2));
+    metrics = getMetrics();
+    assertEquals(bucket1, getSample(metrics, name + "_bucket{le=\"1.0\"}"),
+      0);
+    assertEquals(bucket5 + 1, getSample(metrics, name +
+      "_bucket{le=\"5.0\"}"), 0);
+    assertEquals(bucketInf + 1, getSample(metrics, name +
+      "_bucket{le=\"+Inf\"}"), 0);
+    assertEquals(count + 1, getSample(metrics, name + "_count"), 0);
+    assertTrue(getSample(metrics, name + "_sum") >= sum + 2);
+  }
+
+  /**
+   * Requests to instrumented handlers are counted by status code, and timed.
+   */
+  @Test
+  public void testInstrument() throws IOException, InterruptedException {
+    String endpoint = "/test_metrics";
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1",
+      0), 0);
+    server.createContext(endpoint, ServerMetrics.instrument(endpoint,
+      new HttpHandler() {
+        @Override
+        public void handle(HttpExchange httpExchange) throws IOException {
+          int statusCode = httpExchange.getRequestURI().getQuery() == null ?
+            HttpURLConnection.HTTP_OK : HttpURLConnection.HTTP_NOT_FOUND;
+          httpExchange.sendResponseHeaders(statusCode, -1);
+          httpExchange.close();
+        }
+      }));
+    server.start();
+    try {
+      String url = "http://127.0.0.1:" + server.getAddress().getPort() +
+        endpoint;
+      assertEquals(HttpURLConnection.HTTP_OK, getResponseCode(url));
+      assertEquals(HttpURLConnection.HTTP_OK, getResponseCode(url));
+      assertEquals(HttpURLConnection.HTTP_NOT_FOUND, getResponseCode(url +
+        "?missing"));
+    } finally {
+      server.stop(0);
+    }
+
+    // Requests are counted once their response is sent, in the order they
+    // are handled.
+    String labels = "endpoint=\"" + endpoint + "\"";
+    String lastCount = PREFIX + "http_requests_total{" + labels +
+      ",code=\"404\"} 1\n";
+    String metrics = getMetrics();
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!metrics.contains(lastCount) &&
+      System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      metrics = getMetrics();
+    }
+    assertEquals(2, getSample(metrics, "http_requests_total{" + labels +
+      ",code=\"200\"}"), 0);
+    assertEquals(1, getSample(metrics, "http_requests_total{" + labels +
+      ",code=\"404\"}"), 0);
+    assertEquals(3, getSample(metrics, "http_request_duration_seconds_count{" +
+      labels + "}"), 0);
+    assertEquals(3, getSample(metrics,
+      "http_request_duration_seconds_bucket{" + labels + ",le=\"+Inf\"}"), 0);
+  }
+
+  /**
+   * The statistics of every cache of the server are written.
+   */
+  @Test
+  public void testCaches() throws IOException {
+    String metrics = getMetrics();
+    for (String cache : new String[] {"scenario", "state_snapshot",
+      "value_index" }) {
+      for (String name : new String[] {"cache_hits_total",
+        "cache_misses_total", "cache_evictions_total", "cache_entries" }) {
+        assertTrue(getSample(metrics, name + "{cache=\"" + cache + "\"}") >=
+          0);
+      }
+    }
+  }
+
+  /**
+   * @return the metrics as written for /metrics.
+   */
+  private static String getMetrics() throws IOException {
+    StringWriter writer = new StringWriter();
+    ServerMetrics.write(writer);
+    return writer.toString();
+  }
+
+  /**
+   * @param metrics the metrics as written.
+   * @param sample name and labels of a sample, without the prefix.
+   * @return the value of the sample.
+   */
+  private static double getSample(String metrics, String sample) {
+    String start = PREFIX + sample + " ";
+    for (String line : metrics.split("\n")) {
+      if (line.startsWith(start)) {
+        return Double.parseDouble(line.substring(start.length()));
+      }
+    }
+    throw new AssertionError("No sample " + sample + " in:\n" + metrics);
+  }
+
+  /**
+   * @param url a URL.
+   * @return the status code of the response to a GET request to the URL.
+   */
+  private static int getResponseCode(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url)
+      .openConnection();
+    try {
+      return connection.getResponseCode();
+    } finally {
+      connection.disconnect();
+    }
+  }
+}
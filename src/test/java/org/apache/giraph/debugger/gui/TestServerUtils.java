@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.apache.giraph.debugger.utils.InMemoryTraceStore;
+import org.apache.giraph.debugger.utils.TraceFileStatus;
+import org.apache.giraph.debugger.utils.TraceIndex;
+import org.apache.giraph.debugger.utils.TraceLayout;
+import org.apache.giraph.debugger.utils.TraceManifestWriter;
+import org.apache.giraph.debugger.utils.TraceStores;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests how {@link ServerUtils} reads the traces of vertices. Each test uses
+ * its own jobs, as the server caches what it reads of them.
+ */
+public class TestServerUtils {
+
+  /**
+   * The store the server reads traces from during the tests.
+   */
+  private TracingTraceStore traceStore;
+
+  /**
+   * An in-memory store that remembers which traces were read or looked up.
+   */
+  private static class TracingTraceStore extends InMemoryTraceStore {
+    /**
+     * Paths read or looked up outside of the indexes of jobs.
+     */
+    private final List<String> accessedPaths = new ArrayList<>();
+
+    @Override
+    public InputStream open(String path) throws IOException {
+      access(path);
+      return super.open(path);
+    }
+
+    @Override
+    public TraceFileStatus lookup(String path) throws IOException {
+      access(path);
+      return super.lookup(path);
+    }
+
+    /**
+     * @param path a path read or looked up.
+     */
+    private synchronized void access(String path) {
+      if (!path.contains("/" + TraceIndex.INDEX_DIR)) {
+        accessedPaths.add(path);
+      }
+    }
+  }
+
+  /**
+   * Makes the server read traces from memory.
+   */
+  @Before
+  public void setUp() {
+    traceStore = new TracingTraceStore();
+    TraceStores.setDefault(traceStore);
+  }
+
+  /**
+   * Restores the default store.
+   */
+  @After
+  public void tearDown() {
+    TraceStores.setDefault(null);
+  }
+
+  /**
+   * Vertices the index of a merged superstep has no trace of are known to
+   * have none without looking any up, while known traces are read.
+   */
+  @Test
+  public void testMissingIndexedTraces() throws Exception {
+    String jobId = "job_utils_indexed";
+    byte[] trace = writeIndexedTrace(jobId, 0, "v0");
+    TraceIndex.mergeAllSupersteps(traceStore, jobId);
+    assertTrue(ServerUtils.isSuperstepIndexed(jobId, 0));
+    // The layout of the job is read once, and cached.
+    ServerUtils.getTraceLayout(jobId);
+    traceStore.accessedPaths.clear();
+
+    assertNull(ServerUtils.readScenarioFromTrace(jobId, 0, "v1",
+      DebugTrace.VERTEX_ALL));
+    assertNull(ServerUtils.readRawScenario(jobId, 0, "v1",
+      DebugTrace.VERTEX_REGULAR));
+    assertNull(ServerUtils.readVertexValue(jobId, 0, "v1"));
+    assertEquals(new ArrayList<String>(), traceStore.accessedPaths);
+
+    assertEquals(ByteString.copyFrom(trace), ServerUtils.readRawScenario(
+      jobId, 0, "v0", DebugTrace.VERTEX_REGULAR));
+    assertEquals(1, traceStore.accessedPaths.size());
+  }
+
+  /**
+   * Traces of supersteps not merged yet are looked up, as their index may
+   * miss some.
+   */
+  @Test
+  public void testMissingUnindexedTraces() throws Exception {
+    String jobId = "job_utils_unindexed";
+    writeIndexedTrace(jobId, 0, "v0");
+    assertFalse(ServerUtils.isSuperstepIndexed(jobId, 0));
+    traceStore.accessedPaths.clear();
+
+    assertNull(ServerUtils.readRawScenario(jobId, 0, "v1",
+      DebugTrace.VERTEX_REGULAR));
+    assertFalse(traceStore.accessedPaths.isEmpty());
+    assertNull(ServerUtils.readScenarioFromTrace(jobId, 0, "v1",
+      DebugTrace.VERTEX_ALL));
+  }
+
+  /**
+   * Writes a regular vertex trace and records it in the manifest of the job,
+   * without merging it.
+   *
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the trace.
+   * @param vertexId the vertex traced.
+   * @return the trace as stored.
+   */
+  private byte[] writeIndexedTrace(String jobId, long superstepNo,
+    String vertexId) throws IOException, InterruptedException {
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    traceLayout.save(traceStore, jobId);
+    String path = traceLayout.getFullTraceFileName(DebugTrace.VERTEX_REGULAR,
+      jobId, superstepNo, vertexId, null);
+    byte[] trace = {1, 2, 3 };
+    traceStore.write(path, trace);
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    manifestWriter.record(DebugTrace.VERTEX_REGULAR, superstepNo, vertexId,
+      null, path, trace.length);
+    manifestWriter.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+    return trace;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.giraph.debugger.gui.StaticAssets.Asset;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Tests how {@link StaticAssets} serves the files of the GUI from the
+ * resources of this package.
+ */
+public class TestStaticAssets {
+
+  /**
+   * Files are read once, compressed when it pays, and may be cached for
+   * good when asked for with their current hash.
+   */
+  @Test
+  public void testGet() throws IOException {
+    Asset asset = StaticAssets.get("css/app.css");
+    assertSame(asset, StaticAssets.get("css/app.css"));
+    assertEquals("text/css; charset=utf-8", asset.getContentType());
+    assertEquals(16, asset.getHash().length());
+    assertFalse(asset.isImmutable(null));
+    assertFalse(asset.isImmutable("0123456789abcdef"));
+    assertTrue(asset.isImmutable(asset.getHash()));
+
+    assertTrue(asset.isGzipped(true));
+    assertFalse(asset.isGzipped(false));
+    assertArrayEquals(asset.getContent(false), gunzip(asset.getContent(
+      true)));
+  }
+
+  /**
+   * Paths without a served content type, outside of the GUI or without a
+   * file are not served.
+   */
+  @Test
+  public void testNotServed() throws IOException {
+    assertNull(StaticAssets.get("StaticAssets.class"));
+    assertNull(StaticAssets.get("css/missing.css"));
+    assertNull(StaticAssets.get("../gui/css/app.css"));
+    assertNull(StaticAssets.get("webjars/missing/1.0/missing.js"));
+  }
+
+  /**
+   * The links of HTML pages to the other files of the GUI carry the hashes
+   * of the files.
+   */
+  @Test
+  public void testHashedLinks() throws IOException {
+    String html = new String(StaticAssets.get("index.html").getContent(
+      false), Charsets.UTF_8);
+    assertTrue(html.contains("href=\"css/app.css?" +
+      StaticAssets.VERSION_KEY + "=" + StaticAssets.get("css/app.css")
+        .getHash() + "\""));
+    assertTrue(html.contains("src=\"js/utils.js?" +
+      StaticAssets.VERSION_KEY + "=" + StaticAssets.get("js/utils.js")
+        .getHash() + "\""));
+  }
+
+  /**
+   * Files that do not compress well, or are short, are sent as they are,
+   * and immutable files may always be cached for good.
+   */
+  @Test
+  public void testAsset() throws IOException {
+    byte[] content = new byte[2 * ServerHttpHandler.MIN_GZIP_LENGTH];
+    new Random(0).nextBytes(content);
+    Asset asset = new Asset("image/png", content, true);
+    assertFalse(asset.isGzipped(true));
+    assertSame(content, asset.getContent(true));
+    assertTrue(asset.isImmutable(null));
+
+    byte[] shortContent = new byte[ServerHttpHandler.MIN_GZIP_LENGTH - 1];
+    assertFalse(new Asset("text/css", shortContent, false).isGzipped(true));
+
+    byte[] compressible = new byte[ServerHttpHandler.MIN_GZIP_LENGTH];
+    Arrays.fill(compressible, (byte) 'a');
+    assertTrue(new Asset("text/css", compressible, false).isGzipped(true));
+  }
+
+  /**
+   * @param content gzip-compressed content.
+   * @return the content uncompressed.
+   */
+  private static byte[] gunzip(byte[] content) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(
+      content))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.giraph.debugger.gui.ValueIndex.SuperstepValues;
+import org.junit.Test;
+
+/**
+ * Tests the search of vertex values in the index of a superstep,
+ * {@link ValueIndex.SuperstepValues}.
+ */
+public class TestValueIndex {
+
+  /**
+   * Values of the vertices of a superstep, some of which are not numbers.
+   */
+  private static final SuperstepValues VALUES = SuperstepValues.build(
+    values("a", "2", "b", "-1.5", "c", "NaN", "d", "2.5", "e", "text",
+      "f", "Infinity", "g", "2", "h", "-Infinity", "i", null), null);
+
+  /**
+   * Both bounds are inclusive, and values are found in increasing order.
+   */
+  @Test
+  public void testInclusiveBounds() {
+    assertEquals(Arrays.asList("a", "g", "d"), find(2, 2.5, 10));
+    assertEquals(Arrays.asList("a", "g"), find(2, 2, 10));
+    assertEquals(Arrays.asList("b", "a", "g"), find(-1.5, 2, 10));
+    assertEquals(Arrays.asList(), find(2.1, 2.4, 10));
+    assertEquals(Arrays.asList(), find(3, 2, 10));
+  }
+
+  /**
+   * Infinite bounds find infinite values but not NaN, which is only found
+   * with NaN for both bounds.
+   */
+  @Test
+  public void testInfinityAndNaN() {
+    assertEquals(Arrays.asList("h", "b", "a", "g", "d", "f"), find(
+      Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 10));
+    assertEquals(Arrays.asList("d", "f"), find(2.5, Double.NaN, 10));
+    assertEquals(Arrays.asList("c"), find(Double.NaN, Double.NaN, 10));
+    assertEquals(Arrays.asList(), find(Double.NaN, 0, 10));
+  }
+
+  /**
+   * No more vertices than the limit are found, those with the smallest
+   * values first.
+   */
+  @Test
+  public void testLimit() {
+    assertEquals(Arrays.asList("h", "b"), find(Double.NEGATIVE_INFINITY,
+      Double.POSITIVE_INFINITY, 2));
+    assertEquals(Arrays.asList(), find(Double.NEGATIVE_INFINITY,
+      Double.POSITIVE_INFINITY, 0));
+    assertEquals(Double.valueOf(2.5), VALUES.find(2.5, 2.5, 1).get("d"));
+  }
+
+  /**
+   * @param minValue the smallest value to find, inclusive.
+   * @param maxValue the largest value to find, inclusive.
+   * @param limit maximum number of vertices to find.
+   * @return the vertices found, in the order they were found in.
+   */
+  private static List<String> find(double minValue, double maxValue,
+    int limit) {
+    return new ArrayList<>(VALUES.find(minValue, maxValue, limit).keySet());
+  }
+
+  /**
+   * @param vertexIdsAndValues vertex ids, each followed by its value.
+   * @return the values by vertex id, in the given order.
+   */
+  private static Map<String, String> values(String... vertexIdsAndValues) {
+    Map<String, String> values = new LinkedHashMap<>();
+    for (int i = 0; i < vertexIdsAndValues.length; i += 2) {
+      values.put(vertexIdsAndValues[i], vertexIdsAndValues[i + 1]);
+    }
+    return values;
+  }
+}
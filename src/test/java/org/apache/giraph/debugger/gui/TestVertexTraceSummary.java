@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext.Neighbor;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext.OutgoingMessage;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexScenarioClasses;
+import org.apache.giraph.debugger.Writables.PackedWritables;
+import org.apache.giraph.debugger.utils.AsyncHDFSWriteService;
+import org.apache.giraph.debugger.utils.InMemoryTraceStore;
+import org.apache.giraph.debugger.utils.TraceBlobInterner;
+import org.apache.giraph.debugger.utils.TraceBlobResolver;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests that {@link VertexTraceSummary} reads the same value, message counts
+ * and classes from a serialized trace as parsing all of it would.
+ */
+public class TestVertexTraceSummary {
+
+  /**
+   * The classes of the traces.
+   */
+  private static final VertexScenarioClasses CLASSES = VertexScenarioClasses
+    .newBuilder().setClassUnderTest("org.apache.giraph.examples.Computation")
+    .setVertexIdClass("org.apache.hadoop.io.LongWritable")
+    .setVertexValueClass("org.apache.hadoop.io.DoubleWritable")
+    .setEdgeValueClass("org.apache.hadoop.io.FloatWritable")
+    .setIncomingMessageClass("org.apache.hadoop.io.DoubleWritable")
+    .setOutgoingMessageClass("org.apache.hadoop.io.DoubleWritable").build();
+
+  /**
+   * Values and messages stored as serialized Writables are read or counted,
+   * while neighbors and the context shared with the master are skipped.
+   */
+  @Test
+  public void testSerializedWritables() throws Exception {
+    VertexContext.Builder context = newContext(ByteString.copyFromUtf8(
+      "conf"));
+    context.setVertexValueAfter(ByteString.copyFromUtf8("after"))
+      .addNeighbor(Neighbor.newBuilder().setNeighborId(
+        ByteString.copyFromUtf8("n")))
+      .addInMessage(ByteString.copyFromUtf8("m0"))
+      .addInMessage(ByteString.copyFromUtf8("m1"))
+      .addOutMessage(OutgoingMessage.newBuilder().setDestinationId(
+        ByteString.copyFromUtf8("n")).setMsgData(ByteString.copyFromUtf8(
+          "m2")));
+    VertexTraceSummary summary = VertexTraceSummary.read(
+      GiraphVertexScenario.newBuilder().setVertexScenarioClasses(CLASSES)
+        .setContext(context).build().toByteString());
+    assertEquals(ByteString.copyFromUtf8("after"),
+      summary.getVertexValueAfter());
+    assertNull(summary.getPackedVertexValueAfter());
+    assertEquals(2, summary.getNumInMessages());
+    assertEquals(1, summary.getNumOutMessages());
+    assertEquals(CLASSES.getVertexValueClass(), summary.getVertexValueClass(
+      new InMemoryTraceStore(), "job_summary"));
+  }
+
+  /**
+   * Packed values are read, and packed messages are counted without reading
+   * them.
+   */
+  @Test
+  public void testPackedWritables() throws Exception {
+    PackedWritables value = PackedWritables.newBuilder().setCount(1)
+      .addDoubleValue(2.5).build();
+    VertexContext.Builder context = newContext(ByteString.EMPTY);
+    context.setPackedVertexValueAfter(value)
+      .setPackedInMessage(PackedWritables.newBuilder().setCount(3)
+        .addAllDoubleValue(Arrays.asList(1.0, 2.0, 3.0)))
+      .setPackedOutMessageDestinationId(PackedWritables.newBuilder()
+        .setCount(2).addAllLongValue(Arrays.asList(4L, 5L)))
+      .setPackedOutMessageData(PackedWritables.newBuilder().setCount(2)
+        .addAllDoubleValue(Arrays.asList(6.0, 7.0)));
+    VertexTraceSummary summary = VertexTraceSummary.read(
+      GiraphVertexScenario.newBuilder().setVertexScenarioClasses(CLASSES)
+        .setContext(context).build().toByteString());
+    assertNull(summary.getVertexValueAfter());
+    assertEquals(value, summary.getPackedVertexValueAfter());
+    assertEquals(3, summary.getNumInMessages());
+    assertEquals(2, summary.getNumOutMessages());
+  }
+
+  /**
+   * Messages moved to the blob dictionary of a trace are still counted, and
+   * its classes are read from the dictionary.
+   */
+  @Test
+  public void testInternedBlobs() throws Exception {
+    String jobId = "job_summary_interned";
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    TraceBlobInterner interner = new TraceBlobInterner(traceStore, jobId);
+    byte[] message = new byte[TraceBlobInterner.MIN_INTERNED_BLOB_SIZE];
+    Arrays.fill(message, (byte) 1);
+    GiraphVertexScenario scenario = GiraphVertexScenario.newBuilder()
+      .setVertexScenarioClasses(CLASSES).setContext(newContext(
+        ByteString.EMPTY).addInMessage(ByteString.copyFrom(message))
+        .addInMessage(ByteString.copyFromUtf8("m"))).build();
+    // Blobs are interned once they repeat within a superstep.
+    interner.intern(scenario, 0);
+    GiraphVertexScenario interned = (GiraphVertexScenario) interner.intern(
+      scenario, 0);
+    interner.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+    assertFalse(interned.hasVertexScenarioClasses());
+    assertEquals(1, interned.getContext().getInMessageRefCount());
+
+    VertexTraceSummary summary = VertexTraceSummary.read(
+      interned.toByteString());
+    assertEquals(2, summary.getNumInMessages());
+    assertNotNull(traceStore.lookup(TraceBlobResolver.getDictionaryPath(
+      jobId, interned.getBlobDictionary())));
+    assertEquals(CLASSES.getVertexValueClass(), summary.getVertexValueClass(
+      traceStore, jobId));
+  }
+
+  /**
+   * @param conf the configuration of the job.
+   * @return a context of a vertex, with the required fields only.
+   */
+  private static VertexContext.Builder newContext(ByteString conf) {
+    return VertexContext.newBuilder().setVertexId(ByteString.copyFromUtf8(
+      "v")).setCommonContext(CommonVertexMasterContext.newBuilder()
+      .setConf(conf).setSuperstepNo(0).setTotalNumVertices(1)
+      .setTotalNumEdges(1));
+  }
+}
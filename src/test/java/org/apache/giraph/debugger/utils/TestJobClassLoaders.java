@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests the class loaders {@link JobClassLoaders} picks for jobs. Jobs with
+ * a jar are not tested, as their jars are copied to the local jar cache of
+ * the user.
+ */
+public class TestJobClassLoaders {
+
+  /**
+   * Jobs without a jar signature, or with an empty one, load their classes
+   * from the class path.
+   */
+  @Test
+  public void testJobsWithoutJar() throws IOException {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    assertSame(JobClassLoaders.getDefaultClassLoader(), JobClassLoaders.get(
+      traceStore, "job_nojar"));
+    traceStore.write(DebuggerUtils.getTraceFileRoot("job_emptyjar") +
+      "/jar.signature", new byte[0]);
+    assertSame(JobClassLoaders.getDefaultClassLoader(), JobClassLoaders.get(
+      traceStore, "job_emptyjar"));
+    assertSame(JobClassLoaders.class.getClassLoader(),
+      JobClassLoaders.getDefaultClassLoader());
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link LazyDecodedList} decodes each element once, and only
+ * when it is needed.
+ */
+public class TestLazyDecodedList {
+
+  /**
+   * Decodes strings into their lengths, counting the strings decoded.
+   */
+  private static class CountingDecoder implements
+    LazyDecodedList.Decoder<String, Integer> {
+    /**
+     * The strings decoded so far.
+     */
+    private final List<String> decoded = new ArrayList<>();
+
+    @Override
+    public Integer decode(String encoded) throws IOException {
+      decoded.add(encoded);
+      if (encoded == null) {
+        return null;
+      } else if (encoded.equals("bad")) {
+        throw new IOException("Malformed element");
+      }
+      return encoded.length();
+    }
+  }
+
+  /**
+   * The size is known without decoding, and elements are decoded once, the
+   * first time they are read.
+   */
+  @Test
+  public void testGet() {
+    CountingDecoder decoder = new CountingDecoder();
+    List<Integer> list = new LazyDecodedList<>(Arrays.asList("a", "bb",
+      null), decoder);
+    assertEquals(3, list.size());
+    assertEquals(0, decoder.decoded.size());
+    assertEquals(2, (int) list.get(1));
+    assertEquals(2, (int) list.get(1));
+    assertEquals(Arrays.asList("bb"), decoder.decoded);
+    // Elements decoded to null are not decoded again.
+    assertNull(list.get(2));
+    assertNull(list.get(2));
+    assertEquals(Arrays.asList("bb", null), decoder.decoded);
+    assertEquals(Arrays.asList(1, 2, null), list);
+    assertEquals(Arrays.asList("bb", null, "a"), decoder.decoded);
+  }
+
+  /**
+   * Modifying the list decodes the remaining elements first, and decodes
+   * nothing afterwards.
+   */
+  @Test
+  public void testModify() {
+    CountingDecoder decoder = new CountingDecoder();
+    List<Integer> list = new LazyDecodedList<>(Arrays.asList("a", "bb",
+      "ccc"), decoder);
+    list.get(0);
+    list.add(4);
+    assertEquals(Arrays.asList("a", "bb", "ccc"), decoder.decoded);
+    list.remove(0);
+    list.set(0, 5);
+    assertEquals(Arrays.asList(5, 3, 4), list);
+    assertEquals(3, decoder.decoded.size());
+  }
+
+  /**
+   * {@link LazyDecodedList#decodeAll(java.util.Collection)} decodes lazy
+   * lists and leaves other collections alone.
+   */
+  @Test
+  public void testDecodeAll() {
+    CountingDecoder decoder = new CountingDecoder();
+    List<Integer> list = new LazyDecodedList<>(Arrays.asList("a", "bb"),
+      decoder);
+    LazyDecodedList.decodeAll(list);
+    assertEquals(Arrays.asList("a", "bb"), decoder.decoded);
+    LazyDecodedList.decodeAll(list);
+    assertEquals(2, decoder.decoded.size());
+    LazyDecodedList.decodeAll(Arrays.asList(1, 2));
+  }
+
+  /**
+   * Elements that cannot be decoded are reported when they are read.
+   */
+  @Test
+  public void testDecodeFailure() {
+    List<Integer> list = new LazyDecodedList<>(Arrays.asList("a", "bad"),
+      new CountingDecoder());
+    assertEquals(1, (int) list.get(0));
+    try {
+      list.get(1);
+      fail("Decoded a malformed element");
+    } catch (IllegalStateException e) {
+      assertEquals(IOException.class, e.getCause().getClass());
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.giraph.debugger.GiraphAggregator.AggregatedValue;
+import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexScenarioClasses;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests that traces interned by {@link TraceBlobInterner} are resolved by
+ * {@link TraceBlobResolver} to what they were.
+ */
+public class TestTraceBlobInterner {
+
+  /**
+   * Id of the job traced.
+   */
+  private static final String JOB_ID = "job_interner";
+  /**
+   * Size of the blobs that are large enough to be interned.
+   */
+  private static final int LARGE = TraceBlobInterner.MIN_INTERNED_BLOB_SIZE;
+
+  /**
+   * Repeated large blobs are referred to from their second occurrence on,
+   * while small ones and those that do not repeat stay inline, and the
+   * aggregated values keep their order.
+   */
+  @Test
+  public void testInternResolveRoundTrip() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    TraceBlobInterner interner = new TraceBlobInterner(traceStore, JOB_ID);
+    List<GiraphVertexScenario> scenarios = new ArrayList<>();
+    List<GiraphVertexScenario> interned = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      GiraphVertexScenario scenario = newScenario(i);
+      scenarios.add(scenario);
+      interned.add((GiraphVertexScenario) interner.intern(scenario, 1));
+    }
+    interner.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+
+    assertFalse(interned.get(0).hasBlobDictionary());
+    for (GiraphVertexScenario scenario : interned.subList(1, 3)) {
+      assertTrue(scenario.hasBlobDictionary());
+      assertTrue(scenario.hasVertexScenarioClassesRef());
+      CommonVertexMasterContext context = scenario.getContext()
+        .getCommonContext();
+      assertTrue(context.hasConfRef());
+      // The small and the changing values stay inline, around the
+      // repeated one.
+      assertEquals(2, context.getPreviousAggregatedValueCount());
+      assertEquals(1, context.getPreviousAggregatedValueRefCount());
+      assertEquals(1, context.getPreviousAggregatedValueRef(0)
+        .getPosition());
+      assertEquals(1, scenario.getContext().getInMessageRefCount());
+      assertEquals(1, scenario.getContext().getInMessageCount());
+    }
+    for (int i = 0; i < scenarios.size(); i++) {
+      assertEquals(scenarios.get(i), TraceBlobResolver.resolve(traceStore,
+        JOB_ID, GiraphVertexScenario.parseFrom(interned.get(i)
+          .toByteArray())));
+    }
+  }
+
+  /**
+   * Each superstep is a segment of its own, whose first occurrence of a blob
+   * stays inline.
+   */
+  @Test
+  public void testSegmentPerSuperstep() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    TraceBlobInterner interner = new TraceBlobInterner(traceStore, JOB_ID);
+    interner.intern(newScenario(0), 1);
+    GiraphVertexScenario scenario = newScenario(1);
+    GiraphVertexScenario interned = (GiraphVertexScenario) interner.intern(
+      scenario, 2);
+    assertFalse(interned.hasBlobDictionary());
+    assertEquals(scenario, interned);
+  }
+
+  /**
+   * Traces name their dictionary relative to the trace directory of the job,
+   * while those naming it by its full path, as earlier versions did, are
+   * still resolved.
+   */
+  @Test
+  public void testDictionaryPaths() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    TraceBlobInterner interner = new TraceBlobInterner(traceStore, JOB_ID);
+    GiraphVertexScenario scenario = newScenario(1);
+    interner.intern(newScenario(0), 1);
+    GiraphVertexScenario interned = (GiraphVertexScenario) interner.intern(
+      scenario, 1);
+    assertTrue(interned.getBlobDictionary().startsWith(
+      TraceBlobInterner.BLOB_DIR + "/"));
+    // Traces are written after the blobs they refer to.
+    AsyncHDFSWriteService.writeToTraceStore(interned, traceStore, "trace",
+      interner.flush());
+    AsyncHDFSWriteService.awaitPendingWrites();
+    String dictionaryPath = DebuggerUtils.getTraceFileRoot(JOB_ID) + "/" +
+      interned.getBlobDictionary();
+    assertEquals(dictionaryPath, TraceBlobResolver.getDictionaryPath(JOB_ID,
+      interned.getBlobDictionary()));
+    assertEquals(scenario, TraceBlobResolver.resolve(traceStore, JOB_ID,
+      interned));
+    GiraphVertexScenario legacy = interned.toBuilder().setBlobDictionary(
+      dictionaryPath).build();
+    assertEquals(scenario, TraceBlobResolver.resolve(traceStore, null,
+      legacy));
+  }
+
+  /**
+   * @param i number of the vertex.
+   * @return a scenario of the vertex with blobs shared by all vertices,
+   *         blobs of its own, and blobs too small to be interned.
+   */
+  private static GiraphVertexScenario newScenario(int i) {
+    ByteString sharedBlob = newBlob(LARGE, 1);
+    AggregatedValue smallValue = AggregatedValue.newBuilder()
+      .setWritableClass("org.apache.hadoop.io.LongWritable").setKey("count")
+      .setValue(ByteString.copyFrom(new byte[8])).build();
+    AggregatedValue sharedValue = AggregatedValue.newBuilder()
+      .setWritableClass("org.example.LargeWritable").setKey("shared")
+      .setValue(sharedBlob).build();
+    AggregatedValue ownValue = AggregatedValue.newBuilder()
+      .setWritableClass("org.example.LargeWritable").setKey("own")
+      .setValue(newBlob(LARGE, 100 + i)).build();
+    VertexContext.Builder context = VertexContext.newBuilder()
+      .setVertexId(ByteString.copyFromUtf8("v" + i))
+      .setVertexValueBefore(ByteString.copyFromUtf8("1"))
+      .addInMessage(sharedBlob).addInMessage(ByteString.copyFromUtf8("m"))
+      .setCommonContext(CommonVertexMasterContext.newBuilder()
+        .setConf(newBlob(4 * LARGE, 2)).setSuperstepNo(1)
+        .setTotalNumVertices(3).setTotalNumEdges(0)
+        .addPreviousAggregatedValue(smallValue)
+        .addPreviousAggregatedValue(sharedValue)
+        .addPreviousAggregatedValue(ownValue));
+    return GiraphVertexScenario.newBuilder().setVertexScenarioClasses(
+      VertexScenarioClasses.newBuilder()
+        .setClassUnderTest("org.example.SomeComputationWithALongName")
+        .setVertexIdClass("org.apache.hadoop.io.Text")
+        .setVertexValueClass("org.apache.hadoop.io.Text")
+        .setEdgeValueClass("org.apache.hadoop.io.NullWritable")
+        .setIncomingMessageClass("org.apache.hadoop.io.Text")
+        .setOutgoingMessageClass("org.apache.hadoop.io.Text"))
+      .setContext(context).build();
+  }
+
+  /**
+   * @param size size of the blob.
+   * @param seed what the blob is made of.
+   * @return a blob.
+   */
+  private static ByteString newBlob(int size, int seed) {
+    byte[] blob = new byte[size];
+    for (int i = 0; i < size; i++) {
+      blob[i] = (byte) (seed * 31 + i);
+    }
+    return ByteString.copyFrom(blob);
+  }
+}
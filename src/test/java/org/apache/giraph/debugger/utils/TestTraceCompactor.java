@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.giraph.debugger.Manifest.TraceManifestEntry;
+import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessage;
+
+/**
+ * Tests {@link TraceCompactor} and the index it leaves behind, see
+ * {@link TraceIndex#replaceIndex}.
+ */
+public class TestTraceCompactor {
+
+  /**
+   * Number of supersteps of the jobs traced.
+   */
+  private static final int NUM_SUPERSTEPS = 3;
+  /**
+   * Number of vertices traced per superstep.
+   */
+  private static final int NUM_VERTICES = 20;
+
+  /**
+   * Jobs whose index just changed may still be running, and are left alone.
+   */
+  @Test
+  public void testRefusesRunningJob() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    String jobId = "job_running";
+    writeIndexedJob(traceStore, jobId);
+    try {
+      TraceCompactor.compact(traceStore, jobId);
+      fail("Compacted a running job");
+    } catch (IOException e) {
+      assertFalse(TraceLayout.load(traceStore, jobId).isCompacted());
+    }
+  }
+
+  /**
+   * The traces of a finished job are archived, with their blobs still
+   * interned, and read back the same from the index.
+   */
+  @Test
+  public void testCompactIndexedJob() throws Exception {
+    TraceStore traceStore = new AgedTraceStore();
+    String jobId = "job_indexed";
+    Map<String, GiraphVertexScenario> scenarios = writeIndexedJob(
+      traceStore, jobId);
+    TraceCompactor.compact(traceStore, jobId);
+    assertTrue(TraceLayout.load(traceStore, jobId).isCompacted());
+    assertCompacted(traceStore, jobId, scenarios);
+    // Compacting again changes nothing.
+    TraceCompactor.compact(traceStore, jobId);
+    assertCompacted(traceStore, jobId, scenarios);
+  }
+
+  /**
+   * Jobs traced without an index get one when they are compacted.
+   */
+  @Test
+  public void testCompactJobWithoutIndex() throws IOException {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    String jobId = "job_flat";
+    Map<String, GiraphVertexScenario> scenarios = new LinkedHashMap<>();
+    for (long superstepNo = 0; superstepNo < NUM_SUPERSTEPS; superstepNo++) {
+      for (int i = 0; i < NUM_VERTICES; i++) {
+        String path = TraceLayout.FLAT.getFullTraceFileName(
+          DebugTrace.VERTEX_REGULAR, jobId, superstepNo, "v" + i, null);
+        GiraphVertexScenario scenario = newScenario(superstepNo, i);
+        traceStore.write(path, scenario);
+        scenarios.put(path, scenario);
+      }
+    }
+    TraceCompactor.compact(traceStore, jobId);
+    assertCompacted(traceStore, jobId, scenarios);
+  }
+
+  /**
+   * Replacing the index merges every superstep and drops the manifests of
+   * the writers.
+   */
+  @Test
+  public void testReplaceIndex() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    String jobId = "job_replaced";
+    writeIndexedJob(traceStore, jobId);
+    SortedMap<Long, List<TraceManifestEntry>> entries = new TreeMap<>();
+    for (long superstepNo : Arrays.asList(1L, 5L)) {
+      List<TraceManifestEntry> superstepEntries = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        superstepEntries.add(TraceManifestEntry.newBuilder()
+          .setTraceType(DebugTrace.VERTEX_REGULAR.name())
+          .setSuperstepNo(superstepNo).setVertexId("v" + i)
+          .setLocation("_archive/" + superstepNo).setArchive("_archive/" +
+            superstepNo).setOffset(i * 10).setSize(10).build());
+      }
+      entries.put(superstepNo, superstepEntries);
+    }
+    TraceIndex.replaceIndex(traceStore, jobId, entries);
+    for (TraceFileStatus fileStatus : traceStore.list(TraceIndex
+      .getIndexRoot(jobId))) {
+      assertFalse(fileStatus.getPath(), fileStatus.isDirectory());
+    }
+    TraceIndex traceIndex = TraceIndex.load(traceStore, jobId);
+    assertEquals(new TreeSet<>(entries.keySet()), traceIndex.getSupersteps());
+    for (Map.Entry<Long, List<TraceManifestEntry>> superstepEntries :
+      entries.entrySet()) {
+      assertTrue(traceIndex.isMerged(superstepEntries.getKey()));
+      assertEquals(superstepEntries.getValue(), traceIndex.getEntries(
+        superstepEntries.getKey()));
+    }
+  }
+
+  /**
+   * Asserts that the traces of a job were compacted, and read back the same.
+   *
+   * @param traceStore the store holding the traces.
+   * @param jobId id of the job.
+   * @param scenarios the traces by the path they were saved at.
+   */
+  private static void assertCompacted(TraceStore traceStore, String jobId,
+    Map<String, GiraphVertexScenario> scenarios) throws IOException {
+    TraceIndex traceIndex = TraceIndex.load(traceStore, jobId);
+    assertEquals(NUM_SUPERSTEPS, traceIndex.getSupersteps().size());
+    for (Map.Entry<String, GiraphVertexScenario> scenario :
+      scenarios.entrySet()) {
+      assertNull(traceStore.lookup(scenario.getKey()));
+      long superstepNo = scenario.getValue().getContext().getCommonContext()
+        .getSuperstepNo();
+      try (InputStream input = traceIndex.openTrace(superstepNo,
+        TraceIndex.getLocation(jobId, scenario.getKey()))) {
+        assertEquals(scenario.getValue(), TraceBlobResolver.resolve(
+          traceStore, jobId, GiraphVertexScenario.parseFrom(input)));
+      }
+    }
+  }
+
+  /**
+   * Traces a job as its workers would, with interned blobs and an index
+   * whose supersteps are all merged.
+   *
+   * @param traceStore the store to save the traces to.
+   * @param jobId id of the job.
+   * @return the traces by the path they were saved at.
+   */
+  private static Map<String, GiraphVertexScenario> writeIndexedJob(
+    TraceStore traceStore, String jobId) throws IOException,
+    InterruptedException {
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    traceLayout.save(traceStore, jobId);
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    TraceBlobInterner interner = new TraceBlobInterner(traceStore, jobId);
+    Map<String, GiraphVertexScenario> scenarios = new LinkedHashMap<>();
+    for (long superstepNo = 0; superstepNo < NUM_SUPERSTEPS; superstepNo++) {
+      for (int i = 0; i < NUM_VERTICES; i++) {
+        String path = traceLayout.getFullTraceFileName(
+          DebugTrace.VERTEX_REGULAR, jobId, superstepNo, "v" + i, null);
+        GiraphVertexScenario scenario = newScenario(superstepNo, i);
+        GeneratedMessage interned = interner.intern(scenario, superstepNo);
+        traceStore.write(path, interned);
+        manifestWriter.record(DebugTrace.VERTEX_REGULAR, superstepNo,
+          "v" + i, null, path, interned.getSerializedSize());
+        scenarios.put(path, scenario);
+      }
+      interner.flush();
+      manifestWriter.flush();
+      AsyncHDFSWriteService.awaitPendingWrites();
+    }
+    TraceIndex.mergeAllSupersteps(traceStore, jobId);
+    return scenarios;
+  }
+
+  /**
+   * @param superstepNo the superstep.
+   * @param i number of the vertex.
+   * @return a scenario of the vertex, with a configuration shared by all.
+   */
+  private static GiraphVertexScenario newScenario(long superstepNo, int i) {
+    byte[] conf = new byte[1000];
+    Arrays.fill(conf, (byte) 7);
+    return GiraphVertexScenario.newBuilder().setContext(
+      VertexContext.newBuilder().setVertexId(ByteString.copyFromUtf8("v" + i))
+        .setVertexValueBefore(ByteString.copyFromUtf8(Integer.toString(i)))
+        .setCommonContext(CommonVertexMasterContext.newBuilder()
+          .setConf(ByteString.copyFrom(conf)).setSuperstepNo(superstepNo)
+          .setTotalNumVertices(NUM_VERTICES).setTotalNumEdges(0))).build();
+  }
+
+  /**
+   * A store whose files all look as if they had not changed for days, as
+   * those of a finished job.
+   */
+  private static class AgedTraceStore extends InMemoryTraceStore {
+    /**
+     * How much older the files look, in milliseconds.
+     */
+    private static final long AGE = TimeUnit.DAYS.toMillis(2) + Math.max(
+      TraceIndex.QUIET_PERIOD, TraceIndex.ABANDONED_INDEX_AGE);
+
+    @Override
+    public List<TraceFileStatus> list(String directory) throws IOException {
+      List<TraceFileStatus> agedFileStatuses = new ArrayList<>();
+      for (TraceFileStatus fileStatus : super.list(directory)) {
+        agedFileStatuses.add(new TraceFileStatus(fileStatus.getPath(),
+          fileStatus.getLength(), fileStatus.getModificationTime() - AGE,
+          fileStatus.isDirectory()));
+      }
+      return agedFileStatuses;
+    }
+  }
+}
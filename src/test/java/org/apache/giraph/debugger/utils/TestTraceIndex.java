@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.TreeSet;
+
+import org.apache.giraph.debugger.Manifest.TraceManifestEntry;
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.junit.Test;
+
+/**
+ * Tests that {@link TraceIndex} lists the traces the writers recorded with
+ * {@link TraceManifestWriter}, before and after their manifests are merged.
+ */
+public class TestTraceIndex {
+
+  /**
+   * Traces of a superstep are listed from the manifests of the writers until
+   * it is merged, and from its merged manifest after.
+   */
+  @Test
+  public void testMergeSuperstep() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    String jobId = "job_merge";
+    record(traceStore, jobId, 0, DebugTrace.VERTEX_REGULAR, "v0", "v1");
+    record(traceStore, jobId, 0, DebugTrace.VERTEX_EXCEPTION, "v1");
+    record(traceStore, jobId, 1, DebugTrace.VERTEX_REGULAR, "v2");
+
+    TraceIndex traceIndex = TraceIndex.load(traceStore, jobId);
+    assertEquals(new TreeSet<>(Arrays.asList(0L, 1L)),
+      traceIndex.getSupersteps());
+    assertFalse(traceIndex.isMerged(0));
+    assertEquals(3, traceIndex.getEntries(0).size());
+    assertEquals(new TreeSet<>(Arrays.asList(0L)), traceIndex.getSupersteps(
+      EnumSet.of(DebugTrace.VERTEX_EXCEPTION)));
+    long unmergedVersion = traceIndex.getVersion(0);
+
+    TraceIndex.mergeSuperstep(traceStore, jobId, 0);
+    traceIndex = TraceIndex.load(traceStore, jobId);
+    assertTrue(traceIndex.isMerged(0));
+    assertFalse(traceIndex.isMerged(1));
+    assertEquals(3, traceIndex.getEntries(0).size());
+    assertEquals(1, traceIndex.getEntries(0, EnumSet.of(
+      DebugTrace.VERTEX_EXCEPTION)).size());
+    assertTrue(unmergedVersion != traceIndex.getVersion(0));
+    String location = TraceIndex.getLocation(jobId, getPath(jobId, 0,
+      DebugTrace.VERTEX_REGULAR, "v1"));
+    TraceManifestEntry entry = traceIndex.findEntry(0, location);
+    assertEquals("v1", entry.getVertexId());
+    assertNull(traceIndex.findEntry(0, location + "x"));
+    assertNoTemporaryFiles(traceStore, jobId);
+  }
+
+  /**
+   * Traces recorded after their superstep was merged are added to its merged
+   * manifest when it is merged again.
+   */
+  @Test
+  public void testMergeSuperstepAgain() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    String jobId = "job_remerge";
+    record(traceStore, jobId, 0, DebugTrace.VERTEX_REGULAR, "v0", "v1");
+    TraceIndex.mergeSuperstep(traceStore, jobId, 0);
+    TraceIndex traceIndex = TraceIndex.load(traceStore, jobId);
+    long version = traceIndex.getVersion(0);
+
+    record(traceStore, jobId, 0, DebugTrace.VERTEX_REGULAR, "v1", "v2");
+    TraceIndex.mergeAllSupersteps(traceStore, jobId);
+    TraceIndex refreshed = traceIndex.refresh();
+    assertTrue(refreshed.isMerged(0));
+    assertTrue(version != refreshed.getVersion(0));
+    TreeSet<String> vertexIds = new TreeSet<>();
+    for (TraceManifestEntry entry : refreshed.getEntries(0)) {
+      vertexIds.add(entry.getVertexId());
+    }
+    assertEquals(new TreeSet<>(Arrays.asList("v0", "v1", "v2")), vertexIds);
+    // Nothing left to merge.
+    TraceIndex.mergeSuperstep(traceStore, jobId, 0);
+    assertEquals(refreshed.getVersion(0), TraceIndex.load(traceStore, jobId)
+      .getVersion(0));
+    assertNoTemporaryFiles(traceStore, jobId);
+  }
+
+  /**
+   * A job-level index that cannot be parsed is reported, rather than taken
+   * for an empty one.
+   */
+  @Test
+  public void testCorruptJobIndex() throws Exception {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    String jobId = "job_corrupt";
+    record(traceStore, jobId, 0, DebugTrace.VERTEX_REGULAR, "v0");
+    TraceIndex.mergeSuperstep(traceStore, jobId, 0);
+    traceStore.write(TraceIndex.getIndexRoot(jobId) + "/job.idx",
+      new byte[] {(byte) 0xff, (byte) 0xff });
+    try {
+      TraceIndex.load(traceStore, jobId);
+      fail("Loaded a corrupt index");
+    } catch (IOException e) {
+      assertNotNull(e.getMessage());
+    }
+  }
+
+  /**
+   * Records traces the way a writer does, and waits for their manifest
+   * entries to be written.
+   *
+   * @param traceStore the store to write the manifests to.
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the traces.
+   * @param debugTrace the type of the traces.
+   * @param vertexIds the vertices traced.
+   */
+  private static void record(TraceStore traceStore, String jobId,
+    long superstepNo, DebugTrace debugTrace, String... vertexIds)
+    throws InterruptedException {
+    TraceManifestWriter manifestWriter = new TraceManifestWriter(traceStore,
+      jobId);
+    for (String vertexId : vertexIds) {
+      manifestWriter.record(debugTrace, superstepNo, vertexId, null,
+        getPath(jobId, superstepNo, debugTrace, vertexId), 10);
+    }
+    manifestWriter.flush();
+    AsyncHDFSWriteService.awaitPendingWrites();
+  }
+
+  /**
+   * @param jobId id of the job.
+   * @param superstepNo the superstep of the trace.
+   * @param debugTrace the type of the trace.
+   * @param vertexId the vertex traced.
+   * @return the path of the trace.
+   */
+  private static String getPath(String jobId, long superstepNo,
+    DebugTrace debugTrace, String vertexId) {
+    return TraceLayout.getDefault().getFullTraceFileName(debugTrace, jobId,
+      superstepNo, vertexId, null);
+  }
+
+  /**
+   * Asserts that the merged manifests and the job-level index were renamed
+   * into place.
+   *
+   * @param traceStore the store holding the index.
+   * @param jobId id of the job.
+   */
+  private static void assertNoTemporaryFiles(TraceStore traceStore,
+    String jobId) throws IOException {
+    for (TraceFileStatus fileStatus : traceStore.list(
+      TraceIndex.getIndexRoot(jobId))) {
+      assertFalse(fileStatus.getPath(), fileStatus.getName().endsWith(
+        ".tmp"));
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.giraph.debugger.utils.DebuggerUtils.DebugTrace;
+import org.junit.Test;
+
+/**
+ * Tests where {@link TraceLayout} puts trace files, and how it is recorded
+ * for each job.
+ */
+public class TestTraceLayout {
+
+  /**
+   * Id of the job traced.
+   */
+  private static final String JOB_ID = "job_layout";
+
+  /**
+   * Vertex traces are sharded by superstep, trace type and a bucket that
+   * only depends on the vertex id, while master traces have no bucket.
+   */
+  @Test
+  public void testShardedFileNames() {
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    assertEquals(TraceLayout.SHARDED_VERSION, traceLayout.getVersion());
+    String root = DebuggerUtils.getTraceFileRoot(JOB_ID) + "/stp_3/";
+    Set<String> buckets = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      String vertexId = Integer.toString(i);
+      String path = traceLayout.getFullTraceFileName(
+        DebugTrace.VERTEX_REGULAR, JOB_ID, 3L, vertexId, null);
+      assertTrue(path, path.startsWith(root +
+        DebuggerUtils.PREFIX_TRACE_REGULAR + "/"));
+      assertTrue(path, path.endsWith("/" + DebuggerUtils.getTraceFileName(
+        DebugTrace.VERTEX_REGULAR, 3L, vertexId, null)));
+      assertEquals(path, traceLayout.getFullTraceFileName(
+        DebugTrace.VERTEX_REGULAR, JOB_ID, 3L, vertexId, null));
+      buckets.add(path.split("/")[path.split("/").length - 2]);
+    }
+    assertTrue(buckets.size() > 1);
+    assertTrue(buckets.size() <= traceLayout.getNumBuckets());
+    assertEquals(root + "master/" + DebuggerUtils.getTraceFileName(
+      DebugTrace.MASTER_REGULAR, 3L, null, null),
+      traceLayout.getFullTraceFileName(DebugTrace.MASTER_REGULAR, JOB_ID, 3L,
+        null, null));
+    assertEquals(DebuggerUtils.getFullTraceFileName(DebugTrace.VERTEX_REGULAR,
+      JOB_ID, 3L, "7", null), TraceLayout.FLAT.getFullTraceFileName(
+      DebugTrace.VERTEX_REGULAR, JOB_ID, 3L, "7", null));
+  }
+
+  /**
+   * The layout a job was traced with is recorded once, except when it is
+   * compacted, and jobs without a record are flat.
+   */
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    assertSame(TraceLayout.FLAT, TraceLayout.load(traceStore, JOB_ID));
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    traceLayout.save(traceStore, JOB_ID);
+    TraceLayout loaded = TraceLayout.load(traceStore, JOB_ID);
+    assertEquals(traceLayout.toString(), loaded.toString());
+    traceLayout.toCompacted().save(traceStore, JOB_ID);
+    assertTrue(TraceLayout.load(traceStore, JOB_ID).isCompacted());
+    traceLayout.save(traceStore, JOB_ID);
+    assertTrue(TraceLayout.load(traceStore, JOB_ID).isCompacted());
+
+    traceStore.write(DebuggerUtils.getTraceFileRoot(JOB_ID) + "/" +
+      TraceLayout.LAYOUT_FILE, "version=9\n".getBytes("UTF-8"));
+    try {
+      TraceLayout.load(traceStore, JOB_ID);
+      fail("Loaded an unknown layout");
+    } catch (IOException e) {
+      assertFalse(e.getMessage().isEmpty());
+    }
+  }
+
+  /**
+   * The trace directories of a sharded job are those of its trace types and
+   * buckets.
+   */
+  @Test
+  public void testTraceDirs() throws IOException {
+    InMemoryTraceStore traceStore = new InMemoryTraceStore();
+    TraceLayout traceLayout = TraceLayout.getDefault();
+    Set<String> parents = new HashSet<>();
+    for (long superstepNo = 0; superstepNo < 2; superstepNo++) {
+      for (String vertexId : new String[] {"a", "b", "c" }) {
+        String path = traceLayout.getFullTraceFileName(
+          DebugTrace.VERTEX_REGULAR, JOB_ID, superstepNo, vertexId, null);
+        traceStore.write(path, new byte[1]);
+        parents.add(path.substring(0, path.lastIndexOf('/')));
+      }
+    }
+    Set<String> traceDirs = new HashSet<>(traceLayout.getTraceDirs(
+      traceStore, JOB_ID));
+    assertTrue(traceDirs.containsAll(parents));
+    for (String traceDir : traceDirs) {
+      assertTrue(traceDir, traceDir.startsWith(DebuggerUtils.getTraceFileRoot(
+        JOB_ID) + "/stp_"));
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.giraph.debugger.Scenario.Blob;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests that the in-memory, local and HDFS {@link TraceStore}s behave the
+ * same. The HDFS store runs on the local file system, which cannot append,
+ * so appends rewrite the file.
+ */
+public class TestTraceStores {
+
+  /**
+   * Directory the local stores keep their files in.
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Files are written, read back, looked up and listed.
+   */
+  @Test
+  public void testWriteAndList() throws IOException {
+    for (TraceStore traceStore : newTraceStores()) {
+      String root = getRoot(traceStore);
+      byte[] bytes = {1, 2, 3 };
+      traceStore.write(root + "/job/a", bytes);
+      try (OutputStream output = traceStore.create(root + "/job/dir/b")) {
+        output.write(bytes, 0, 2);
+      }
+      assertArrayEquals(bytes, read(traceStore, root + "/job/a"));
+      assertEquals(3, traceStore.lookup(root + "/job/a").getLength());
+      assertEquals(2, traceStore.lookup(root + "/job/dir/b").getLength());
+      assertTrue(traceStore.lookup(root + "/job/dir").isDirectory());
+      assertNull(traceStore.lookup(root + "/job/c"));
+      TreeSet<String> names = new TreeSet<>();
+      for (TraceFileStatus fileStatus : traceStore.list(root + "/job")) {
+        names.add(fileStatus.getName());
+      }
+      assertEquals(new TreeSet<>(Arrays.asList("a", "dir")), names);
+      try {
+        traceStore.open(root + "/job/c");
+        fail("Opened a missing file in " + traceStore);
+      } catch (FileNotFoundException e) {
+        // Expected.
+      }
+      assertTrue(traceStore.delete(root + "/job", true));
+      assertNull(traceStore.lookup(root + "/job/a"));
+    }
+  }
+
+  /**
+   * Appended batches of records follow each other in order.
+   */
+  @Test
+  public void testAppend() throws IOException {
+    for (TraceStore traceStore : newTraceStores()) {
+      String root = getRoot(traceStore);
+      String path = root + "/job/records";
+      traceStore.append(path, Arrays.asList(newBlob(0), newBlob(1)));
+      traceStore.append(path, Arrays.asList(newBlob(2)));
+      List<Blob> blobs = new ArrayList<>();
+      try (InputStream input = traceStore.open(path)) {
+        Blob blob;
+        while ((blob = Blob.parseDelimitedFrom(input)) != null) {
+          blobs.add(blob);
+        }
+      }
+      assertEquals(Arrays.asList(newBlob(0), newBlob(1), newBlob(2)), blobs);
+      // Rewrites leave no temporary files behind.
+      assertEquals(1, traceStore.list(root + "/job").size());
+    }
+  }
+
+  /**
+   * Renaming replaces the destination, and fails for missing files.
+   */
+  @Test
+  public void testRename() throws IOException {
+    for (TraceStore traceStore : newTraceStores()) {
+      String root = getRoot(traceStore);
+      traceStore.write(root + "/job/new", new byte[] {1 });
+      traceStore.write(root + "/job/old", new byte[] {2, 2 });
+      traceStore.rename(root + "/job/new", root + "/job/old");
+      assertNull(traceStore.lookup(root + "/job/new"));
+      assertArrayEquals(new byte[] {1 }, read(traceStore, root + "/job/old"));
+      traceStore.rename(root + "/job/old", root + "/job/moved/file");
+      assertArrayEquals(new byte[] {1 }, read(traceStore,
+        root + "/job/moved/file"));
+      try {
+        traceStore.rename(root + "/job/old", root + "/job/other");
+        fail("Renamed a missing file in " + traceStore);
+      } catch (FileNotFoundException e) {
+        assertFalse(traceStore.delete(root + "/job/other", false));
+      }
+    }
+  }
+
+  /**
+   * @return a store of each kind, each with its own root.
+   * @throws IOException thrown when the local directories cannot be made.
+   */
+  private List<TraceStore> newTraceStores() throws IOException {
+    return Arrays.asList(new InMemoryTraceStore(), new LocalTraceStore(
+      folder.newFolder("local")), new HDFSTraceStore(FileSystem.getLocal(
+      new Configuration())));
+  }
+
+  /**
+   * @param traceStore a store.
+   * @return the directory under which the test keeps its files.
+   * @throws IOException thrown when the directory cannot be made.
+   */
+  private String getRoot(TraceStore traceStore) throws IOException {
+    if (traceStore instanceof HDFSTraceStore) {
+      return folder.newFolder().getAbsolutePath();
+    }
+    return "/traces";
+  }
+
+  /**
+   * @param traceStore a store.
+   * @param path the path of a file in the store.
+   * @return the contents of the file.
+   * @throws IOException thrown when the file cannot be read.
+   */
+  private static byte[] read(TraceStore traceStore, String path)
+    throws IOException {
+    try (InputStream input = traceStore.open(path)) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  /**
+   * @param i number of the blob.
+   * @return a blob.
+   */
+  private static Blob newBlob(int i) {
+    return Blob.newBuilder().setHash(ByteString.copyFrom(new byte[] {
+      (byte) i })).setData(ByteString.copyFromUtf8("blob" + i)).build();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Test;
+
+/**
+ * Tests that {@link TraceTypeRegistry} resolves and instantiates the classes
+ * of traces with the class loader it is registered for.
+ */
+public class TestTraceTypeRegistry {
+
+  /**
+   * A class whose no-argument constructor is private.
+   */
+  private static final class PrivateConstructor {
+    /**
+     * Constructor.
+     */
+    private PrivateConstructor() { }
+  }
+
+  /**
+   * There is one registry per class loader.
+   */
+  @Test
+  public void testForClassLoader() {
+    ClassLoader classLoader = getClass().getClassLoader();
+    TraceTypeRegistry registry = TraceTypeRegistry.forClassLoader(
+      classLoader);
+    assertSame(registry, TraceTypeRegistry.forClassLoader(classLoader));
+    assertSame(classLoader, registry.getClassLoader());
+    ClassLoader otherClassLoader = new URLClassLoader(new URL[0],
+      classLoader);
+    assertNotSame(registry, TraceTypeRegistry.forClassLoader(
+      otherClassLoader));
+    assertSame(otherClassLoader, TraceTypeRegistry.forClassLoader(
+      otherClassLoader).getClassLoader());
+  }
+
+  /**
+   * Classes are resolved by name, and missing ones are reported.
+   */
+  @Test
+  public void testResolveClass() throws ClassNotFoundException {
+    TraceTypeRegistry registry = TraceTypeRegistry.forClassLoader(
+      getClass().getClassLoader());
+    assertSame(LongWritable.class, registry.resolveClass(
+      LongWritable.class.getName()));
+    assertSame(LongWritable.class, registry.resolveClass(
+      LongWritable.class.getName()));
+    try {
+      registry.resolveClass("org.example.MissingWritable");
+      fail("Resolved a missing class");
+    } catch (ClassNotFoundException e) {
+      // Expected, and again on the next lookup.
+    }
+    try {
+      registry.resolveClass("org.example.MissingWritable");
+      fail("Resolved a missing class");
+    } catch (ClassNotFoundException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Instances are created with no-argument constructors, even private ones,
+   * except for {@link NullWritable}.
+   */
+  @Test
+  public void testNewInstance() {
+    TraceTypeRegistry registry = TraceTypeRegistry.current();
+    LongWritable value = registry.newInstance(LongWritable.class);
+    assertEquals(new LongWritable(), value);
+    assertNotSame(value, registry.newInstance(LongWritable.class));
+    assertEquals(PrivateConstructor.class, registry.newInstance(
+      PrivateConstructor.class).getClass());
+    assertNull(registry.newInstance(NullWritable.class));
+    try {
+      registry.newInstance(Integer.class);
+      fail("Instantiated a class without a no-argument constructor");
+    } catch (RuntimeException e) {
+      assertEquals(NoSuchMethodException.class, e.getCause().getClass());
+    }
+  }
+}
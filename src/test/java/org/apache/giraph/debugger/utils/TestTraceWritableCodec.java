@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.debugger.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.giraph.debugger.Integrity.MessageIntegrityViolation;
+import org.apache.giraph.debugger.Integrity.MessageIntegrityViolation.ExtendedOutgoingMessage;
+import org.apache.giraph.debugger.Scenario.CommonVertexMasterContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext.Neighbor;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexContext.OutgoingMessage;
+import org.apache.giraph.debugger.Scenario.GiraphVertexScenario.VertexScenarioClasses;
+import org.apache.giraph.utils.WritableUtils;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests that {@link TraceWritableCodec} gives back the exact bytes it
+ * packed, and leaves alone what it cannot pack.
+ */
+public class TestTraceWritableCodec {
+
+  /**
+   * Neighbor ids whose differences overflow a long.
+   */
+  @Test
+  public void testLongDeltaOverflow() throws IOException {
+    VertexContext.Builder context = newContext(new LongWritable(7),
+      new DoubleWritable(1));
+    for (long id : new long[] {Long.MIN_VALUE, Long.MAX_VALUE, -1, 0,
+      Long.MAX_VALUE, Long.MIN_VALUE }) {
+      context.addNeighbor(Neighbor.newBuilder().setNeighborId(
+        serialize(new LongWritable(id))).setEdgeValue(serialize(
+        NullWritable.get())));
+    }
+    GiraphVertexScenario scenario = newScenario(LongWritable.class,
+      DoubleWritable.class, NullWritable.class, DoubleWritable.class,
+      context);
+    GiraphVertexScenario packed = (GiraphVertexScenario)
+      TraceWritableCodec.pack(scenario);
+    assertTrue(packed.getContext().hasPackedNeighborId());
+    assertEquals(0, packed.getContext().getNeighborCount());
+    assertEquals(scenario, roundTrip(scenario));
+  }
+
+  /**
+   * Ids and messages whose differences overflow an int.
+   */
+  @Test
+  public void testIntDeltaOverflow() throws IOException {
+    VertexContext.Builder context = newContext(new IntWritable(
+      Integer.MIN_VALUE), new IntWritable(Integer.MAX_VALUE));
+    for (int value : new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, -1,
+      Integer.MAX_VALUE }) {
+      context.addInMessage(serialize(new IntWritable(value)));
+      context.addOutMessage(OutgoingMessage.newBuilder().setDestinationId(
+        serialize(new IntWritable(-value))).setMsgData(serialize(
+        new IntWritable(value))));
+    }
+    GiraphVertexScenario scenario = newScenario(IntWritable.class,
+      IntWritable.class, NullWritable.class, IntWritable.class, context);
+    GiraphVertexScenario packed = (GiraphVertexScenario)
+      TraceWritableCodec.pack(scenario);
+    assertTrue(packed.getContext().hasPackedInMessage());
+    assertTrue(packed.getContext().hasPackedOutMessageDestinationId());
+    assertEquals(scenario, roundTrip(scenario));
+  }
+
+  /**
+   * NaNs keep their bit patterns, and negative zeros their sign.
+   */
+  @Test
+  public void testNaNBitPatterns() throws IOException {
+    VertexContext.Builder context = newContext(new LongWritable(1),
+      new DoubleWritable(Double.NaN));
+    context.setVertexValueAfter(ByteString.copyFrom(ByteBuffer.allocate(8)
+      .putLong(0xfff0000000000001L).array()));
+    for (int bits : new int[] {0x7fc00000, 0x7f800001, 0xffc00123,
+      Float.floatToRawIntBits(-0.0f) }) {
+      context.addInMessage(ByteString.copyFrom(ByteBuffer.allocate(4)
+        .putInt(bits).array()));
+    }
+    GiraphVertexScenario scenario = newScenario(LongWritable.class,
+      DoubleWritable.class, NullWritable.class, FloatWritable.class,
+      context);
+    GiraphVertexScenario packed = (GiraphVertexScenario)
+      TraceWritableCodec.pack(scenario);
+    assertTrue(packed.getContext().hasPackedVertexValueAfter());
+    assertTrue(packed.getContext().hasPackedInMessage());
+    assertEquals(scenario, roundTrip(scenario));
+    assertEquals("NaN", TraceWritableCodec.getFirstValueString(
+      packed.getContext().getPackedVertexValueAfter()));
+  }
+
+  /**
+   * Booleans are packed, unless a byte would not be read back the same.
+   */
+  @Test
+  public void testBoolean() throws IOException {
+    VertexContext.Builder context = newContext(new LongWritable(1),
+      new BooleanWritable(true));
+    context.addInMessage(serialize(new BooleanWritable(false)));
+    context.addInMessage(serialize(new BooleanWritable(true)));
+    GiraphVertexScenario scenario = newScenario(LongWritable.class,
+      BooleanWritable.class, NullWritable.class, BooleanWritable.class,
+      context);
+    GiraphVertexScenario packed = (GiraphVertexScenario)
+      TraceWritableCodec.pack(scenario);
+    assertTrue(packed.getContext().hasPackedInMessage());
+    assertEquals("true", TraceWritableCodec.getFirstValueString(
+      packed.getContext().getPackedVertexValueBefore()));
+    assertEquals(scenario, roundTrip(scenario));
+
+    context.addInMessage(ByteString.copyFrom(new byte[] {2 }));
+    scenario = newScenario(LongWritable.class, BooleanWritable.class,
+      NullWritable.class, BooleanWritable.class, context);
+    packed = (GiraphVertexScenario) TraceWritableCodec.pack(scenario);
+    assertFalse(packed.getContext().hasPackedInMessage());
+    assertEquals(3, packed.getContext().getInMessageCount());
+    assertEquals(scenario, roundTrip(scenario));
+  }
+
+  /**
+   * Writables of other types, or of unexpected sizes, are kept as they are,
+   * while the others of the same scenario are packed.
+   */
+  @Test
+  public void testMixedTypeFallback() throws IOException {
+    VertexContext.Builder context = newContext(new LongWritable(3),
+      new DoubleWritable(0.5));
+    context.setVertexId(ByteString.copyFromUtf8("custom id"));
+    context.addNeighbor(Neighbor.newBuilder().setNeighborId(
+      ByteString.copyFromUtf8("n")).setEdgeValue(serialize(
+      new FloatWritable(1))));
+    context.addInMessage(serialize(new DoubleWritable(2)));
+    context.addInMessage(serialize(new LongWritable(3)));
+    context.addInMessage(serialize(new IntWritable(4)));
+    GiraphVertexScenario scenario = GiraphVertexScenario.newBuilder()
+      .setVertexScenarioClasses(newClasses(LongWritable.class,
+      DoubleWritable.class, FloatWritable.class, DoubleWritable.class)
+      .setVertexIdClass("org.example.CustomId")).setContext(context).build();
+    GiraphVertexScenario packed = (GiraphVertexScenario)
+      TraceWritableCodec.pack(scenario);
+    VertexContext packedContext = packed.getContext();
+    assertTrue(packedContext.hasVertexId());
+    assertEquals(1, packedContext.getNeighborCount());
+    assertFalse(packedContext.hasPackedEdgeValue());
+    assertTrue(packedContext.hasPackedVertexValueBefore());
+    assertEquals(3, packedContext.getInMessageCount());
+    assertEquals(scenario, roundTrip(scenario));
+  }
+
+  /**
+   * Message integrity violations are packed as a whole or not at all.
+   */
+  @Test
+  public void testMessageIntegrityViolation() throws IOException {
+    MessageIntegrityViolation.Builder violation = MessageIntegrityViolation
+      .newBuilder().setVertexIdClass(IntWritable.class.getName())
+      .setOutgoingMessageClass(BooleanWritable.class.getName())
+      .setSuperstepNo(3);
+    for (int i = 0; i < 10; i++) {
+      violation.addMessage(ExtendedOutgoingMessage.newBuilder()
+        .setSrcId(serialize(new IntWritable(-i))).setDestinationId(serialize(
+        new IntWritable(Integer.MAX_VALUE - i))).setMsgData(serialize(
+        new BooleanWritable(i % 3 == 0))));
+    }
+    MessageIntegrityViolation packable = violation.build();
+    MessageIntegrityViolation packed = (MessageIntegrityViolation)
+      TraceWritableCodec.pack(packable);
+    assertTrue(packed.hasPackedSrcId());
+    assertEquals(0, packed.getMessageCount());
+    assertEquals(packable, TraceWritableCodec.unpack(
+      MessageIntegrityViolation.parseFrom(packed.toByteArray())));
+
+    MessageIntegrityViolation unpackable = violation.setOutgoingMessageClass(
+      "org.example.CustomMessage").build();
+    assertEquals(unpackable, TraceWritableCodec.pack(unpackable));
+  }
+
+  /**
+   * @param message a trace.
+   * @return the trace packed, saved, loaded and unpacked.
+   */
+  private static GiraphVertexScenario roundTrip(GiraphVertexScenario message)
+    throws IOException {
+    return (GiraphVertexScenario) TraceWritableCodec.unpack(
+      GiraphVertexScenario.parseFrom(TraceWritableCodec.pack(message)
+        .toByteArray()));
+  }
+
+  /**
+   * @param vertexId id of the vertex.
+   * @param vertexValue value of the vertex before the superstep.
+   * @return a context of the vertex with nothing else.
+   */
+  private static VertexContext.Builder newContext(Writable vertexId,
+    Writable vertexValue) {
+    return VertexContext.newBuilder().setVertexId(serialize(vertexId))
+      .setVertexValueBefore(serialize(vertexValue)).setCommonContext(
+        CommonVertexMasterContext.newBuilder().setSuperstepNo(1)
+        .setTotalNumVertices(1).setTotalNumEdges(1));
+  }
+
+  /**
+   * @param vertexIdClass class of the vertex ids.
+   * @param vertexValueClass class of the vertex values.
+   * @param edgeValueClass class of the edge values.
+   * @param messageClass class of the messages.
+   * @param context context of the vertex.
+   * @return a scenario of the vertex.
+   */
+  private static GiraphVertexScenario newScenario(Class<?> vertexIdClass,
+    Class<?> vertexValueClass, Class<?> edgeValueClass,
+    Class<?> messageClass, VertexContext.Builder context) {
+    return GiraphVertexScenario.newBuilder().setVertexScenarioClasses(
+      newClasses(vertexIdClass, vertexValueClass, edgeValueClass,
+        messageClass)).setContext(context).build();
+  }
+
+  /**
+   * @param vertexIdClass class of the vertex ids.
+   * @param vertexValueClass class of the vertex values.
+   * @param edgeValueClass class of the edge values.
+   * @param messageClass class of the messages.
+   * @return the classes of a scenario.
+   */
+  private static VertexScenarioClasses.Builder newClasses(
+    Class<?> vertexIdClass, Class<?> vertexValueClass,
+    Class<?> edgeValueClass, Class<?> messageClass) {
+    return VertexScenarioClasses.newBuilder().setClassUnderTest("Computation")
+      .setVertexIdClass(vertexIdClass.getName())
+      .setVertexValueClass(vertexValueClass.getName())
+      .setEdgeValueClass(edgeValueClass.getName())
+      .setIncomingMessageClass(messageClass.getName())
+      .setOutgoingMessageClass(messageClass.getName());
+  }
+
+  /**
+   * @param writable a Writable.
+   * @return the Writable serialized.
+   */
+  private static ByteString serialize(Writable writable) {
+    return ByteString.copyFrom(WritableUtils.writeToByteArray(writable));
+  }
+}